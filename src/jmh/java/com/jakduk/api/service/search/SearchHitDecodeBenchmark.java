@@ -0,0 +1,90 @@
+package com.jakduk.api.service.search;
+
+import com.jakduk.api.common.util.ObjectMapperUtils;
+import com.jakduk.api.model.elasticsearch.EsArticleSource;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.text.Text;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.fetch.subphase.highlight.HighlightField;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 글 검색 한 페이지의 hit 를 읽는 시간.
+ *
+ * decodeSourceBytes 는 ElasticsearchSearchBackend 가 쓰는 방법이고, convertSourceMap 은 그 전에 쓰던
+ * getSourceAsMap + ObjectMapper.convertValue 방법이다. SearchHit 는 읽은 Map 을 들고 있으므로 매번 새로 만든다.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SearchHitDecodeBenchmark {
+
+	// 글 검색에서 받은 hit 의 _source. content 는 setFetchSource 로 뺀다.
+	private static final String ARTICLE_SOURCE = "{\"id\":\"5a0f6e4b7b6f5a2b1c3d4e5f\",\"seq\":32,\"board\":\"FREE\",\"category\":\"FOOTBALL\","
+			+ "\"writer\":{\"userId\":\"58b7b9dd716dce06b10e449a\",\"username\":\"jakduk\",\"providerId\":\"JAKDUK\"},"
+			+ "\"subject\":\"손흥민 골\",\"galleries\":[\"5a0f6e4b7b6f5a2b1c3d4e62\",\"5a0f6e4b7b6f5a2b1c3d4e61\"]}";
+
+	@Param({"10", "50"})
+	private int hits;
+
+	private ElasticsearchSearchBackend searchBackend;
+	private BytesArray source;
+	private Map<String, HighlightField> highlightFields;
+
+	@Setup
+	public void setUp() {
+		searchBackend = new ElasticsearchSearchBackend();
+		source = new BytesArray(ARTICLE_SOURCE);
+
+		highlightFields = new HashMap<>();
+		highlightFields.put("subject", new HighlightField("subject", new Text[]{new Text("<em>손흥민</em> 골")}));
+		highlightFields.put("content", new HighlightField("content",
+				new Text[]{new Text("토트넘에서 <em>손흥민</em>이"), new Text("<em>손흥민</em>의 도움")}));
+	}
+
+	@Benchmark
+	public void decodeSourceBytes(Blackhole blackhole) {
+		for (int i = 0; i < hits; i++)
+			blackhole.consume(searchBackend.toArticleSource(this.getSearchHit(i)));
+	}
+
+	@Benchmark
+	public void convertSourceMap(Blackhole blackhole) {
+		for (int i = 0; i < hits; i++) {
+			SearchHit searchHit = this.getSearchHit(i);
+
+			EsArticleSource esArticleSource = ObjectMapperUtils.convertValue(searchHit.getSourceAsMap(), EsArticleSource.class);
+			esArticleSource.setScore(searchHit.getScore());
+
+			Map<String, List<String>> highlight = new HashMap<>();
+
+			for (Map.Entry<String, HighlightField> highlightField : searchHit.getHighlightFields().entrySet()) {
+				List<String> fragments = new ArrayList<>();
+
+				for (Text text : highlightField.getValue().fragments())
+					fragments.add(text.string());
+
+				highlight.put(highlightField.getKey(), fragments);
+			}
+
+			esArticleSource.setHighlight(highlight);
+
+			blackhole.consume(esArticleSource);
+		}
+	}
+
+	private SearchHit getSearchHit(int docId) {
+		SearchHit searchHit = new SearchHit(docId, "5a0f6e4b7b6f5a2b1c3d4e5f", new Text("doc"), Collections.emptyMap());
+		searchHit.sourceRef(source);
+		searchHit.score(3.2f);
+		searchHit.highlightFields(highlightFields);
+
+		return searchHit;
+	}
+
+}
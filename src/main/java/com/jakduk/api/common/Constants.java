@@ -1,4 +1,8 @@
 package com.jakduk.api.common;
+
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * @author <a href="mailto:phjang1983@daum.net">Jang,Pyohwan</a>
  * @company  : http://jakduk.com
@@ -35,6 +39,35 @@ public class Constants {
 	public final static Integer HOME_COMMENT_CONTENT_MAX_LENGTH = 110;
 	public final static Integer SEARCH_NO_MATCH_SIZE = 200;
 	public final static Integer SEARCH_FRAGMENT_SIZE = 200;
+	// 통합 검색 결과 캐시. 같은 검색이 몰릴 때 ES 에 보내는 요청을 줄인다.
+	public final static Integer SEARCH_CACHE_MAX_SIZE = 1000;
+	public final static long SEARCH_CACHE_TTL_MS = 10000;
+	// 통합 검색에서 종류별로 기다리는 시간. 지나면 그 종류는 timedOut 으로 빠진다.
+	public final static long SEARCH_ARTICLE_TIMEOUT_MS = 1000;
+	public final static long SEARCH_COMMENT_TIMEOUT_MS = 1000;
+	public final static long SEARCH_GALLERY_TIMEOUT_MS = 500;
+	// ES 가 샤드별 timeout 으로 돌려주는 부분 결과를 더 기다리는 시간
+	public final static long SEARCH_TIMEOUT_GRACE_MS = 200;
+	// 인기 검색어. 최근 며칠, 날짜별로 셀 검색어 개수, 돌려줄 최대 개수
+	public final static Integer SEARCH_POPULAR_WORD_WINDOW_DAYS = 21;
+	public final static Integer SEARCH_POPULAR_WORD_CAPACITY = 1000;
+	public final static Integer SEARCH_POPULAR_WORD_MAX_SIZE = 50;
+
+	public final static Integer SEARCH_SUGGEST_MAX_SIZE = 10;
+	public final static Integer SEARCH_SUGGEST_MAX_KEY_LENGTH = 30;
+	public final static long SEARCH_SUGGEST_REBUILD_INTERVAL_MS = 3600000;
+	public final static long SEARCH_SUGGEST_FOOTBALL_CLUB_WEIGHT = 100;
+
+	public final static Integer RELATED_ARTICLE_SIZE = 5;
+	public final static Integer RELATED_ARTICLE_MIN_DOC_FREQ = 2;
+	public final static Integer RELATED_ARTICLE_MAX_QUERY_TERMS = 25;
+	public final static long RELATED_ARTICLE_TIMEOUT_MS = 3000;
+	public final static long RELATED_ARTICLE_REFRESH_DELAY_MS = 3000;
+	public final static Integer RELATED_ARTICLE_CACHE_MAX_SIZE = 1000;
+	public final static long RELATED_ARTICLE_CACHE_TTL_MS = 60000;
+	public final static long RELATED_ARTICLE_RECOMPUTE_INTERVAL_MS = 600000;
+	public final static long RELATED_ARTICLE_MAX_AGE_HOURS = 24;
+	public final static Integer RELATED_ARTICLE_RECOMPUTE_BATCH_SIZE = 100;
 	public final static Integer COMMENT_MAX_LIMIT = 30;
 	public final static Integer GALLERY_SIZE = 24;
 	public final static Integer BOARD_TOP_LIMIT = 3;
@@ -81,6 +114,28 @@ public class Constants {
 	public final static Integer GALLERY_THUMBNAIL_SIZE_HEIGHT = 230;
 	public final static Integer USER_SMALL_PICTURE_SIZE_WIDTH = 50;
 	public final static Integer USER_SMALL_PICTURE_SIZE_HEIGHT = 50;
+	public final static Integer GALLERY_PLACEHOLDER_SIZE = 16; // 사진 미리보기 긴 쪽 길이
+
+	/**
+	 * 사진 dHash 의 해밍 거리 기준
+	 */
+	public final static Integer GALLERY_NEAR_DUPLICATE_DISTANCE = 4; // 이 거리 이하면 같은 사진을 다시 저장한 것으로 본다.
+	public final static Integer GALLERY_DHASH_DECODE_SIZE = 128; // dHash 를 구할 때 적어도 이 길이로 읽은 다음 9x8 로 줄인다.
+	public final static long TEMP_CLEANUP_LEASE_MS = 1800000; // TEMP 사진 청소는 모든 서버에서 돌므로, 먼저 권한을 잡은 서버만 한다.
+	public final static Integer GALLERY_SIMILAR_DISTANCE = 12; // 비슷한 사진으로 보여줄 최대 거리
+	public final static Integer GALLERY_SIMILAR_MAX_SIZE = 30; // 비슷한 사진 목록 최대 개수
+	public final static long GALLERY_SIMILARITY_REFRESH_MS = 300000; // 다른 서버에서 바뀐 사진을 반영하도록 dHash BK-tree 를 DB 에서 다시 만드는 간격
+
+	/**
+	 * 미디어 저장소 참조 수
+	 */
+	public final static long MEDIA_DELETION_WAIT_MS = 100; // 다른 서버가 파일을 지우는 중이면 이만큼 쉬고 다시 참조해 본다.
+	public final static long MEDIA_DELETION_STALE_MS = 30000; // 파일을 지우기 시작한 지 이만큼 지나면 지우던 서버가 죽은 것으로 보고 다시 참조한다.
+
+	/**
+	 * 사진 요청시 고를 수 있는 가로 길이 (?w=)
+	 */
+	public final static List<Integer> GALLERY_VARIANT_WIDTHS = Arrays.asList(160, 360, 720, 1080);
 
 	/**
 	 * 사진 상태값.
@@ -91,9 +146,36 @@ public class Constants {
 	}
 
 	/**
-	 * 그림의 용량을 축소시키는 기준 값.
+	 * JPEG 사진의 목표 용량. 이 용량 이하가 되는 가장 높은 품질로 저장한다.
 	 */
 	public final static long GALLERY_MAXIMUM_CAPACITY = 1048576; // Byte 단위. 현재 1MB.
+
+	/**
+	 * 사진 최적화 기준
+	 */
+	public final static Integer GALLERY_MAXIMUM_LONG_SIDE = 2560; // 저장할 사진의 긴 쪽 최대 길이
+	public final static float GALLERY_JPEG_MAX_QUALITY = 0.85f;
+	public final static float GALLERY_JPEG_MIN_QUALITY = 0.7f;
+	public final static double GALLERY_OPTIMIZATION_MIN_SAVING_RATIO = 0.1; // 이미 저장된 사진은 이 비율 이상 줄어야 바꾼다.
+
+	/**
+	 * 글의 사진들을 ZIP 으로 내려받을 때 기준
+	 */
+	public final static Integer GALLERY_ZIP_MAXIMUM_ITEMS = 100; // 담을 최대 사진 수
+	public final static long GALLERY_ZIP_MAXIMUM_SIZE = 200 * 1024 * 1024; // Byte 단위. 현재 200MB.
+	public final static List<String> GALLERY_ZIP_STORED_FORMATS = Arrays.asList("jpeg", "jpg", "png", "gif"); // 다시 압축하지 않는 포맷
+
+	/**
+	 * 사진을 조각으로 나눠 올릴 때 기준
+	 */
+	public final static long GALLERY_UPLOAD_MAXIMUM_SIZE = 30 * 1024 * 1024; // 전체 최대 크기. 현재 30MB.
+	public final static Integer GALLERY_UPLOAD_CHUNK_SIZE = 1024 * 1024; // 권장 조각 크기. 현재 1MB.
+	public final static Integer GALLERY_UPLOAD_MAXIMUM_CHUNK_SIZE = 5 * 1024 * 1024; // 조각 최대 크기. 현재 5MB.
+
+	/**
+	 * 이미지를 읽을 때 메모리에 올릴 최대 픽셀 수. 넘으면 subsampling 해서 읽는다.
+	 */
+	public final static long GALLERY_MAXIMUM_DECODE_PIXELS = 4096 * 4096;
 	
 	/**
 	 * K리그 줄임말. 삭제 되어야 한다. Competition 클래스를 만들었다.
@@ -104,6 +186,33 @@ public class Constants {
 	public final static String ES_TYPE_COMMENT = "comment";
 	public final static String ES_TYPE_GALLERY = "gallery";
 	public final static String ES_TYPE_SEARCH_WORD = "search_word";
+	public final static String ES_TYPE_SEARCH_WORD_ROLLUP = "search_word_rollup";
+
+	// bulk 요청이 거절(rejected)되었을 때 다시 보내는 간격의 시작값과 횟수. 간격은 늘어난다.
+	public final static long ES_BULK_BACKOFF_INITIAL_DELAY_MS = 100;
+	public final static int ES_BULK_BACKOFF_MAX_RETRIES = 3;
+	// 다시 색인하는 중인 alias 목록을 각 서버가 Mongo 에서 다시 읽는 간격
+	public final static long ES_REINDEX_CAPTURE_REFRESH_MS = 1000;
+	// 다시 색인을 시작하거나 alias 를 옮긴 뒤, 모든 서버가 바뀐 상태를 읽고 하던 bulk 를 끝내도록 기다리는 시간
+	public final static long ES_REINDEX_CAPTURE_PROPAGATION_MS = 5000;
+	// 다시 색인하는 동안 바뀐 문서 ID 는 Mongo 에 모은다. 끝나고 지우지 못한 것은 하루 뒤에 Mongo 가 지운다.
+	public final static int ES_REINDEX_CAPTURE_RETENTION_SECONDS = 86400;
+	// 다시 색인할 때 Mongo 에서 한번에 읽는 개수
+	public final static int ES_REINDEX_PAGE_SIZE = 1000;
+	// 검색어 일별 집계를 만들 때 한번에 가져오는 검색어 개수
+	public final static int ES_SEARCH_WORD_ROLLUP_PAGE_SIZE = 1000;
+	// 검색어 일별 집계는 모든 서버에서 같은 시각에 돌므로, 먼저 권한을 잡은 서버만 한다.
+	public final static long ES_SEARCH_WORD_ROLLUP_LEASE_MS = 3600000;
+	// 검색 백엔드 (jakduk.elasticsearch.backend)
+	public final static String SEARCH_BACKEND_ELASTICSEARCH = "elasticsearch";
+	public final static String SEARCH_BACKEND_LUCENE = "lucene";
+	// 내장 Lucene 색인을 디스크에 commit 하는 간격
+	public final static long LUCENE_COMMIT_INTERVAL_MS = 60000;
+
+	public final static long OUTBOX_RELAY_LEASE_MS = 30000;
+	public final static long OUTBOX_CONFIRM_TIMEOUT_MS = 5000;
+	public final static int OUTBOX_MAX_ATTEMPTS = 10; // 브로커가 이만큼 거절한 메시지는 PARKED 로 빼 두고 다음 메시지를 보낸다.
+	public final static int OUTBOX_SENT_RETENTION_SECONDS = 604800; // 보낸 메시지는 7 일 뒤에 Mongo 가 지운다.
 
 
 	// 이름 타입.
@@ -158,6 +267,42 @@ public class Constants {
 		GALLERY    // 사진첩
 	}
 
+	/**
+	 * 자동 완성 항목 종류
+	 */
+	public enum SEARCH_SUGGEST_TYPE {
+		SEARCH_WORD,	// 인기 검색어
+		FOOTBALL_CLUB,	// 축구단 이름
+		ARTICLE			// 글 제목
+	}
+
+	/**
+	 * outbox 메시지 상태
+	 */
+	public enum OUTBOX_STATUS_TYPE {
+		PENDING,	// 보낼 차례를 기다림
+		SENT,		// 브로커가 받았음
+		PARKED		// 브로커가 계속 거절해서 더 보내지 않음. 직접 확인해야 한다.
+	}
+
+	/**
+	 * 배치 작업 상태
+	 */
+	public enum JOB_STATUS_TYPE {
+		RUNNING,	// 진행 중
+		STOPPED,	// 중단됨. 이어서 할 수 있다.
+		COMPLETED	// 완료
+	}
+
+	/**
+	 * 미디어 저장소에 hash 별로 저장되는 파생 이미지 타입
+	 */
+	public enum MEDIA_DERIVATIVE_TYPE {
+		IMAGE,				// 용량을 줄인 전체 크기 (사진첩, 회원 사진 공용)
+		GALLERY_THUMBNAIL,	// 사진첩 썸네일
+		USER_PICTURE_SMALL	// 회원 작은 사진
+	}
+
 	public enum IMAGE_SIZE_TYPE {
 		LARGE,
 		SMALL
@@ -0,0 +1,227 @@
+package com.jakduk.api.common.rabbitmq;
+
+import com.jakduk.api.common.Constants;
+import com.jakduk.api.configuration.JakdukProperties;
+import com.jakduk.api.model.db.OutboxMessage;
+import com.jakduk.api.repository.outbox.OutboxMessageRepository;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * outbox(OutboxMessage)에 쌓인 메시지를 RabbitMQ 로 보낸다.
+ *
+ * 메시지 순서를 지키기 위해 lease 를 가진 한 서버만 보낸다. 쌓인 메시지를 오래된 순으로 jakduk.rabbitmq.outbox-batch-size 개씩 보내고,
+ * 브로커가 모두 받았다고 확인(publisher confirm)하면 보낸 것으로 표시한다. 꺼진 큐의 메시지는 쌓을 때 빼므로 큐 설정은 보지 않는다.
+ *
+ * 확인을 못 받으면 어느 메시지가 거절됐는지 모르므로 그 묶음을 하나씩 다시 보낸다. 거절된 메시지에서 멈추고 잠시 뒤에 그 메시지부터 다시 보낸다.
+ * Constants.OUTBOX_MAX_ATTEMPTS 번 거절된 메시지는 PARKED 로 빼 두어 뒤의 메시지를 막지 않게 한다. 브로커에 연결이 안 되는 것은 횟수로 세지 않는다.
+ * 같은 메시지가 두 번 갈 수 있다.
+ */
+
+@Component
+public class OutboxRelay {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    // 브로커나 Mongo 에 연결이 안 될 때 다시 시도하기 전에 쉬는 시간
+    private static final long ERROR_BACKOFF_MS = 5000;
+
+    @Resource private JakdukProperties.Rabbitmq rabbitmqProperties;
+
+    @Autowired private RabbitTemplate rabbitTemplate;
+    @Autowired private OutboxMessageRepository outboxMessageRepository;
+
+    // 새 메시지가 쌓이면 기다리지 않고 바로 보낸다.
+    private final Semaphore wakeUps = new Semaphore(0);
+
+    private String owner;
+    private int batchSize;
+    private long pollIntervalMs;
+
+    private ExecutorService relayExecutor;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void init() {
+
+        try {
+            owner = InetAddress.getLocalHost().getHostName() + "-" + UUID.randomUUID();
+        } catch (UnknownHostException e) {
+            owner = "localhost-" + UUID.randomUUID();
+        }
+
+        batchSize = Objects.nonNull(rabbitmqProperties.getOutboxBatchSize()) ? rabbitmqProperties.getOutboxBatchSize() : 100;
+        pollIntervalMs = Objects.nonNull(rabbitmqProperties.getOutboxPollIntervalMs()) ? rabbitmqProperties.getOutboxPollIntervalMs() : 1000L;
+
+        relayExecutor = Executors.newSingleThreadExecutor();
+
+        running = true;
+        relayExecutor.submit(this::relay);
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        running = false;
+        wakeUps.release();
+        relayExecutor.shutdown();
+        relayExecutor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * outbox 에 메시지를 쌓았다고 알린다.
+     */
+    public void wakeUp() {
+        wakeUps.release();
+    }
+
+    private void relay() {
+
+        while (running) {
+            try {
+                if (this.send() < batchSize) {
+                    wakeUps.tryAcquire(pollIntervalMs, TimeUnit.MILLISECONDS);
+                    wakeUps.drainPermits();
+                }
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.warn("failed to relay outbox messages. retry after {}ms", ERROR_BACKOFF_MS, e);
+
+                try {
+                    Thread.sleep(ERROR_BACKOFF_MS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 한 묶음을 보내고, 보낸 메시지 개수를 돌려준다.
+     */
+    private int send() {
+
+        LocalDateTime now = LocalDateTime.now();
+
+        if (! outboxMessageRepository.acquireRelayLease(owner, now, now.plus(Constants.OUTBOX_RELAY_LEASE_MS, ChronoUnit.MILLIS)))
+            return 0;
+
+        List<OutboxMessage> outboxMessages = outboxMessageRepository.findPendingMessages(batchSize);
+
+        if (outboxMessages.isEmpty())
+            return 0;
+
+        List<String> ids = outboxMessages.stream()
+                .map(OutboxMessage::getId)
+                .collect(Collectors.toList());
+
+        try {
+            this.publish(outboxMessages);
+        } catch (AmqpConnectException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            log.warn("failed to confirm outbox messages. send them one by one. messages={}", ids.size(), e);
+            return this.sendOneByOne(outboxMessages);
+        }
+
+        outboxMessageRepository.markSent(ids, LocalDateTime.now());
+
+        log.debug("outbox messages sent. messages={}", ids.size());
+
+        return ids.size();
+    }
+
+    /**
+     * 순서대로 하나씩 보낸다. 거절된 메시지에서 멈추고, 너무 많이 거절된 메시지는 PARKED 로 빼고 다음 메시지를 보낸다.
+     */
+    private int sendOneByOne(List<OutboxMessage> outboxMessages) {
+
+        int sent = 0;
+
+        for (OutboxMessage outboxMessage : outboxMessages) {
+            try {
+                this.publish(Collections.singletonList(outboxMessage));
+            } catch (AmqpConnectException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                String error = StringUtils.abbreviate(e.toString(), 500);
+                int attempts = (Objects.nonNull(outboxMessage.getAttempts()) ? outboxMessage.getAttempts() : 0) + 1;
+
+                if (attempts < Constants.OUTBOX_MAX_ATTEMPTS) {
+                    outboxMessageRepository.markFailed(Collections.singletonList(outboxMessage.getId()), error);
+                    throw e;
+                }
+
+                outboxMessageRepository.markParked(outboxMessage.getId(), error);
+
+                log.error("outbox message parked. id={}, queue={}, routingKey={}, attempts={}", outboxMessage.getId(),
+                        outboxMessage.getQueue(), outboxMessage.getRoutingKey(), attempts, e);
+
+                continue;
+            }
+
+            outboxMessageRepository.markSent(Collections.singletonList(outboxMessage.getId()), LocalDateTime.now());
+            sent++;
+        }
+
+        return sent;
+    }
+
+    /**
+     * 한 채널로 보내고 브로커가 모두 받았다고 확인할 때까지 기다린다.
+     */
+    private void publish(List<OutboxMessage> outboxMessages) {
+        rabbitTemplate.invoke(operations -> {
+            for (OutboxMessage outboxMessage : outboxMessages)
+                operations.send(rabbitmqProperties.getExchangeName(), outboxMessage.getRoutingKey(), this.toMessage(outboxMessage));
+
+            operations.waitForConfirmsOrDie(Constants.OUTBOX_CONFIRM_TIMEOUT_MS);
+
+            return null;
+        });
+    }
+
+    private Message toMessage(OutboxMessage outboxMessage) {
+
+        MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setMessageId(outboxMessage.getId());
+        messageProperties.setContentType(outboxMessage.getContentType());
+        messageProperties.setContentEncoding(StandardCharsets.UTF_8.name());
+        messageProperties.setDeliveryMode(MessageDeliveryMode.PERSISTENT);
+
+        if (Objects.nonNull(outboxMessage.getHeaders()))
+            outboxMessage.getHeaders().forEach(messageProperties::setHeader);
+
+        return new Message(outboxMessage.getBody().getBytes(StandardCharsets.UTF_8), messageProperties);
+    }
+
+}
@@ -3,21 +3,27 @@ package com.jakduk.api.common.rabbitmq;
 import com.jakduk.api.common.Constants;
 import com.jakduk.api.common.util.JakdukUtils;
 import com.jakduk.api.configuration.JakdukProperties;
+import com.jakduk.api.model.db.OutboxMessage;
 import com.jakduk.api.model.elasticsearch.EsArticle;
 import com.jakduk.api.model.elasticsearch.EsComment;
 import com.jakduk.api.model.elasticsearch.EsGallery;
+import com.jakduk.api.model.elasticsearch.EsParentArticle;
 import com.jakduk.api.model.elasticsearch.EsSearchWord;
 import com.jakduk.api.model.embedded.ArticleItem;
 import com.jakduk.api.model.embedded.CommonWriter;
 import com.jakduk.api.model.embedded.SimpleWriter;
 import com.jakduk.api.model.rabbitmq.EmailPayload;
+import com.jakduk.api.repository.outbox.OutboxMessageRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
@@ -26,6 +32,8 @@ import java.util.Objects;
 
 /**
  * Created by pyohwanjang on 2017. 6. 17..
+ *
+ * 메시지는 outbox(OutboxMessage)에 저장하고 돌아온다. 브로커가 느리거나 멈춰도 요청이 기다리지 않고, 메시지는 OutboxRelay 가 나중에 보낸다.
  */
 
 @Component
@@ -39,6 +47,8 @@ public class RabbitMQPublisher {
     @Resource private JakdukProperties.Rabbitmq rabbitmqProperties;
 
     @Autowired private RabbitTemplate rabbitTemplate;
+    @Autowired private OutboxMessageRepository outboxMessageRepository;
+    @Autowired private OutboxRelay outboxRelay;
 
     public void sendWelcome(Locale locale, String recipientEmail, String userName) {
         EmailPayload emailPayload = new EmailPayload();
@@ -108,11 +118,23 @@ public class RabbitMQPublisher {
         this.publishElasticsearch(routingKey, id);
     }
 
-    public void indexDocumentComment(String id, ArticleItem articleItem, CommonWriter writer, String content, List<String> galleryIds) {
+    /**
+     * 댓글 색인 요청. 글 검색 결과에 보여줄 글의 정보를 댓글 문서에 함께 넣는다.
+     */
+    public void indexDocumentComment(String id, ArticleItem articleItem, String articleCategory, String articleSubject,
+                                     CommonWriter writer, String content, List<String> galleryIds) {
+
+        EsParentArticle esParentArticle = new EsParentArticle();
+        esParentArticle.setId(articleItem.getId());
+        esParentArticle.setSeq(articleItem.getSeq());
+        esParentArticle.setBoard(articleItem.getBoard());
+        esParentArticle.setCategory(articleCategory);
+        esParentArticle.setSubject(JakdukUtils.stripHtmlTag(articleSubject));
 
         EsComment esComment = new EsComment();
         esComment.setId(id);
-        esComment.setArticle(articleItem);
+        esComment.setArticle(esParentArticle);
+        esComment.setWriter(writer);
         esComment.setContent(JakdukUtils.stripHtmlTag(content));
         esComment.setGalleries(galleryIds);
 
@@ -135,6 +157,17 @@ public class RabbitMQPublisher {
         this.publishElasticsearch(routingKey, esGallery);
     }
 
+    /**
+     * 여러 사진의 색인 요청을 하나의 메시지로 보낸다.
+     */
+    public void indexDocumentGalleries(List<EsGallery> esGalleries) {
+        if (esGalleries.isEmpty())
+            return;
+
+        String routingKey = rabbitmqProperties.getRoutingKeys().get(ElasticsearchRoutingKey.ELASTICSEARCH_INDEX_DOCUMENT_GALLERIES.getRoutingKey());
+        this.publishElasticsearch(routingKey, esGalleries);
+    }
+
     public void deleteDocumentGallery(String id) {
         String routingKey = rabbitmqProperties.getRoutingKeys().get(ElasticsearchRoutingKey.ELASTICSEARCH_DELETE_DOCUMENT_GALLERY.getRoutingKey());
         this.publishElasticsearch(routingKey, id);
@@ -151,19 +184,39 @@ public class RabbitMQPublisher {
     }
 
     public void publishEmail(String routingKey, EmailPayload message) {
-        if (rabbitmqProperties.getQueues().get(QUEUE_EMAIL).getEnabled()) {
-            rabbitTemplate.convertAndSend(rabbitmqProperties.getExchangeName(), routingKey, message);
-        } else {
-            log.info("Can not publish message. {} queue is disabled.", QUEUE_EMAIL);
-        }
+        this.saveOutboxMessage(QUEUE_EMAIL, routingKey, message);
     }
 
     public void publishElasticsearch(String routingKey, Object message) {
-        if (rabbitmqProperties.getQueues().get(QUEUE_ELASTICSEARCH).getEnabled()) {
-            rabbitTemplate.convertAndSend(rabbitmqProperties.getExchangeName(), routingKey, message);
-        } else {
-            log.info("Can not publish message. {} queue is disabled.", QUEUE_ELASTICSEARCH);
+        this.saveOutboxMessage(QUEUE_ELASTICSEARCH, routingKey, message);
+    }
+
+    /**
+     * 브로커에 바로 보내지 않고 outbox 에 쌓는다. OutboxRelay 가 보낸다.
+     * 꺼진 큐의 메시지는 쌓지 않는다. 쌓아 두면 나중에 큐를 켰을 때 지난 메일이 한꺼번에 나간다.
+     */
+    private void saveOutboxMessage(String queue, String routingKey, Object message) {
+
+        if (! Boolean.TRUE.equals(rabbitmqProperties.getQueues().get(queue).getEnabled())) {
+            log.info("Can not publish message. {} queue is disabled.", queue);
+            return;
         }
+
+        Message amqpMessage = rabbitTemplate.getMessageConverter().toMessage(message, new MessageProperties());
+
+        OutboxMessage outboxMessage = new OutboxMessage();
+        outboxMessage.setQueue(queue);
+        outboxMessage.setRoutingKey(routingKey);
+        outboxMessage.setBody(new String(amqpMessage.getBody(), StandardCharsets.UTF_8));
+        outboxMessage.setContentType(amqpMessage.getMessageProperties().getContentType());
+        outboxMessage.setHeaders(amqpMessage.getMessageProperties().getHeaders());
+        outboxMessage.setStatus(Constants.OUTBOX_STATUS_TYPE.PENDING);
+        outboxMessage.setAttempts(0);
+        outboxMessage.setCreatedAt(LocalDateTime.now());
+
+        outboxMessageRepository.save(outboxMessage);
+
+        outboxRelay.wakeUp();
     }
 
 }
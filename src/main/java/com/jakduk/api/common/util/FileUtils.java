@@ -4,18 +4,23 @@ import com.jakduk.api.common.Constants;
 import com.jakduk.api.exception.ServiceError;
 import com.jakduk.api.exception.ServiceException;
 import net.coobird.thumbnailator.Thumbnails;
+import net.coobird.thumbnailator.geometry.Position;
 import net.coobird.thumbnailator.geometry.Positions;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 
+import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.*;
+import java.math.BigInteger;
 import java.net.URL;
 import java.net.URLConnection;
-import java.nio.file.Files;
-import java.nio.file.LinkOption;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDate;
+import java.util.Objects;
 
 /**
  * Created by pyohwanjang on 2017. 2. 22..
@@ -23,6 +28,79 @@ import java.time.LocalDate;
 
 public class FileUtils {
 
+    /**
+     * 업로드 된 내용을 임시 파일에 저장하면서 MD5 hash 를 구한다. 내용 전체를 메모리에 올리지 않는다.
+     *
+     * @param inputStream   업로드 된 내용
+     * @param tempFilePath  저장할 임시 파일
+     * @return              MD5 hash (hex)
+     * @throws IOException  예외 처리 필요함
+     */
+    public static String writeTempFileWithHash(InputStream inputStream, Path tempFilePath) throws IOException {
+
+        MessageDigest messageDigest;
+
+        try {
+            messageDigest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        try (DigestInputStream digestInputStream = new DigestInputStream(inputStream, messageDigest)) {
+            Files.copy(digestInputStream, tempFilePath, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        return String.format("%032x", new BigInteger(1, messageDigest.digest()));
+    }
+
+    /**
+     * 파일의 MD5 hash 를 구한다. writeTempFileWithHash 와 같은 형식이다.
+     *
+     * @param filePath      파일 경로
+     * @return              MD5 hash (hex)
+     * @throws IOException  예외 처리 필요함
+     */
+    public static String computeHash(Path filePath) throws IOException {
+
+        MessageDigest messageDigest;
+
+        try {
+            messageDigest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        try (DigestInputStream digestInputStream = new DigestInputStream(Files.newInputStream(filePath), messageDigest)) {
+            byte[] buffer = new byte[8192];
+
+            while (digestInputStream.read(buffer) != -1) {
+                // hash 만 구한다.
+            }
+        }
+
+        return String.format("%032x", new BigInteger(1, messageDigest.digest()));
+    }
+
+    /**
+     * 업로드 처리에 쓸 임시 파일을 만든다.
+     */
+    public static Path createTempFile() throws IOException {
+        return Files.createTempFile("jakduk-upload-", ".tmp");
+    }
+
+    /**
+     * 임시 파일 지움. 실패해도 예외를 던지지 않는다.
+     */
+    public static void deleteTempFile(Path tempFilePath) {
+        if (Objects.isNull(tempFilePath))
+            return;
+
+        try {
+            Files.deleteIfExists(tempFilePath);
+        } catch (IOException ignored) {
+        }
+    }
+
     /**
      * 이미지 파일 저장
      *
@@ -30,11 +108,12 @@ public class FileUtils {
      * @param localDate     파일 작성일 (년/월/일 로 폴더 나뉘어짐)
      * @param fileName      파일 제목 (확장자 제외)
      * @param contentType   콘텐츠 타입
-     * @param size          콘텐츠 크기
-     * @param bytes         콘텐츠
+     * @param sourcePath    콘텐츠가 저장된 (임시) 파일
+     * @return              저장된 파일 경로
      * @throws IOException  예외 처리 필요함
      */
-    public static void writeImageFile(String imagePath, LocalDate localDate, String fileName, String contentType, long size, byte[] bytes) throws IOException {
+    public static Path writeImageFile(String imagePath, LocalDate localDate, String fileName, String contentType,
+                                      Path sourcePath) throws IOException {
 
         // 사진 포맷.
         String formatName = StringUtils.split(contentType, "/")[1];
@@ -49,21 +128,56 @@ public class FileUtils {
         Path imageFilePath = imageDirPath.resolve(fileName + "." + formatName);
 
         // 사진 저장.
-        if (Files.notExists(imageFilePath, LinkOption.NOFOLLOW_LINKS)) {
-            if ("gif".equals(formatName)) {
-                Files.write(imageFilePath, bytes);
-            } else {
+        if (Files.notExists(imageFilePath, LinkOption.NOFOLLOW_LINKS))
+            writeImage(sourcePath, imageFilePath, formatName);
 
-                double scale = Constants.GALLERY_MAXIMUM_CAPACITY < size ?
-                        Constants.GALLERY_MAXIMUM_CAPACITY / (double) size : 1;
+        return imageFilePath;
+    }
 
-                InputStream inputStream = new ByteArrayInputStream(bytes);
+    /**
+     * 이미지를 최적화해서 저장한다. EXIF 방향 정보를 반영하고 메타데이터는 버린다.
+     * 긴 쪽이 Constants.GALLERY_MAXIMUM_LONG_SIDE 보다 길면 줄이고, 포맷별 최적화는 ImageUtils.optimize 를 따른다.
+     *
+     * @param sourcePath    콘텐츠가 저장된 (임시) 파일
+     * @param targetPath    저장할 파일
+     * @param formatName    사진 포맷
+     * @return              저장된 파일 크기
+     * @throws IOException  예외 처리 필요함
+     */
+    public static long writeImage(Path sourcePath, Path targetPath, String formatName) throws IOException {
 
-                Thumbnails.of(inputStream)
-                        .scale(scale)
-                        .toFile(imageFilePath.toFile());
-            }
+        if ("gif".equals(formatName)) {
+            Files.copy(sourcePath, targetPath, StandardCopyOption.REPLACE_EXISTING);
+            return Files.size(targetPath);
         }
+
+        // 긴 쪽 길이를 기준으로 줄인다. (EXIF 방향에 따라 가로, 세로가 바뀔 수 있음)
+        int targetLongSide = getStoredLongSide(ImageUtils.readImageDimension(sourcePath), formatName);
+
+        BufferedImage image = ImageUtils.readImage(sourcePath, targetLongSide);
+        int longSide = Math.max(image.getWidth(), image.getHeight());
+
+        if (longSide > targetLongSide)
+            image = Thumbnails.of(image)
+                    .scale(targetLongSide / (double) longSide)
+                    .asBufferedImage();
+
+        byte[] optimized = ImageUtils.optimize(image, formatName);
+        Files.write(targetPath, optimized);
+
+        return optimized.length;
+    }
+
+    /**
+     * writeImage 로 저장했을 때의 긴 쪽 길이. GIF 는 줄이지 않는다.
+     *
+     * @param dimension     원본 사진의 가로, 세로 길이
+     * @param formatName    사진 포맷
+     */
+    public static int getStoredLongSide(Dimension dimension, String formatName) {
+        int longSide = Math.max(dimension.width, dimension.height);
+
+        return "gif".equals(formatName) ? longSide : Math.min(longSide, Constants.GALLERY_MAXIMUM_LONG_SIDE);
     }
 
     /**
@@ -75,11 +189,30 @@ public class FileUtils {
      * @param contentType   콘텐츠 타입
      * @param width         줄일 가로 길이
      * @param height        줄일 세로 길이
-     * @param bytes         콘텐츠
+     * @param sourcePath    콘텐츠가 저장된 (임시) 파일
      * @throws IOException  예외 처리 필요함
      */
     public static void writeSmallImageFile(String imagePath, LocalDate localDate, String fileName, String contentType,
-                                           Integer width, Integer height, byte[] bytes) throws IOException {
+                                           Integer width, Integer height, Path sourcePath) throws IOException {
+
+        writeSmallImageFile(imagePath, localDate, fileName, contentType, width, height, Positions.CENTER, sourcePath);
+    }
+
+    /**
+     * 작은 이미지 파일 저장
+     *
+     * @param imagePath     파일 최상위 경로
+     * @param localDate     파일 작성일 (년/월/일 로 폴더 나뉘어짐)
+     * @param fileName      파일 제목 (확장자 제외)
+     * @param contentType   콘텐츠 타입
+     * @param width         줄일 가로 길이
+     * @param height        줄일 세로 길이
+     * @param position      잘라낼 위치
+     * @param sourcePath    콘텐츠가 저장된 (임시) 파일
+     * @throws IOException  예외 처리 필요함
+     */
+    public static void writeSmallImageFile(String imagePath, LocalDate localDate, String fileName, String contentType,
+                                           Integer width, Integer height, Position position, Path sourcePath) throws IOException {
 
         // 사진 포맷.
         String formatName = StringUtils.split(contentType, "/")[1];
@@ -94,33 +227,86 @@ public class FileUtils {
         Path imageFilePath = imageDirPath.resolve(fileName + "." + formatName);
 
         // 사진 저장.
-        if (Files.notExists(imageFilePath, LinkOption.NOFOLLOW_LINKS)) {
+        if (Files.notExists(imageFilePath, LinkOption.NOFOLLOW_LINKS))
+            writeSmallImage(sourcePath, imageFilePath, formatName, width, height, position);
+    }
 
-            InputStream inputStream = new ByteArrayInputStream(bytes);
+    /**
+     * 작은 이미지를 저장한다. 가로, 세로 길이에 맞게 줄인 후 잘라낸다.
+     * Thumbnailator 의 toFile 은 파일 이름이 포맷의 확장자로 끝나지 않으면 확장자를 붙이므로, 바이트로 만들어서 targetPath 에 그대로 쓴다.
+     *
+     * @param sourcePath    콘텐츠가 저장된 (임시) 파일
+     * @param targetPath    저장할 파일
+     * @param formatName    사진 포맷
+     * @param width         줄일 가로 길이
+     * @param height        줄일 세로 길이
+     * @param position      잘라낼 위치
+     * @throws IOException  예외 처리 필요함
+     */
+    public static void writeSmallImage(Path sourcePath, Path targetPath, String formatName, Integer width, Integer height,
+                                       Position position) throws IOException {
 
-            Thumbnails.of(inputStream)
-                    .size(width, height)
-                    .crop(Positions.CENTER)
-                    .toFile(imageFilePath.toFile());
-        }
+        BufferedImage image = ImageUtils.readImage(sourcePath, Math.max(width, height));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        Thumbnails.of(image)
+                .size(width, height)
+                .crop(position)
+                .outputFormat(formatName)
+                .toOutputStream(outputStream);
+
+        Files.write(targetPath, outputStream.toByteArray());
     }
 
     /**
-     * 파일 스트림 읽기
+     * 이미지 파일 경로
      *
      * @param imagePath     파일 최상위 경로
      * @param localDate     파일 작성일 (년/월/일 로 폴더 나뉘어짐)
      * @param fileName      파일 제목 (확장자 제외)
      * @param contentType   콘텐츠 타입
-     * @throws IOException  예외 처리 필요함
      */
-    public static ByteArrayOutputStream readImageFile(String imagePath, LocalDate localDate, String fileName, String contentType) throws IOException {
+    public static Path getImageFilePath(String imagePath, LocalDate localDate, String fileName, String contentType) {
 
         // 사진 포맷.
         String formatName = StringUtils.split(contentType, "/")[1];
 
-        Path filePath = Paths.get(imagePath, String.valueOf(localDate.getYear()), String.valueOf(localDate.getMonthValue()),
+        return Paths.get(imagePath, String.valueOf(localDate.getYear()), String.valueOf(localDate.getMonthValue()),
                 String.valueOf(localDate.getDayOfMonth()), fileName + "." + formatName);
+    }
+
+    /**
+     * 내용 주소(content hash) 기반 미디어 파일 경로
+     * {mediaPath}/{파생 타입}/{hash 앞 2자리}/{hash}.{포맷} 형태이다.
+     *
+     * @param mediaPath         미디어 최상위 경로
+     * @param derivativeType    파생 타입
+     * @param hash              콘텐츠 hash
+     * @param contentType       콘텐츠 타입
+     */
+    public static Path getMediaFilePath(String mediaPath, Constants.MEDIA_DERIVATIVE_TYPE derivativeType, String hash,
+                                        String contentType) {
+
+        // 사진 포맷.
+        String formatName = StringUtils.split(contentType, "/")[1];
+
+        return Paths.get(mediaPath, StringUtils.lowerCase(derivativeType.name()), StringUtils.substring(hash, 0, 2),
+                hash + "." + formatName);
+    }
+
+    /**
+     * 파일 스트림 읽기
+     *
+     * @param imagePath     파일 최상위 경로
+     * @param localDate     파일 작성일 (년/월/일 로 폴더 나뉘어짐)
+     * @param fileName      파일 제목 (확장자 제외)
+     * @param contentType   콘텐츠 타입
+     * @throws IOException  예외 처리 필요함
+     */
+    public static ByteArrayOutputStream readImageFile(String imagePath, LocalDate localDate, String fileName, String contentType) throws IOException {
+
+        Path filePath = getImageFilePath(imagePath, localDate, fileName, contentType);
 
         if (Files.exists(filePath, LinkOption.NOFOLLOW_LINKS)) {
             BufferedInputStream in = new BufferedInputStream(new FileInputStream(filePath.toString()));
@@ -194,15 +380,19 @@ public class FileUtils {
      * @param imagePath     파일 최상위 경로
      * @param localDate     파일 작성일 (년/월/일 로 폴더 나뉘어짐)
      * @param fileName      파일 제목 (확장자 제외)
+     * @return 지운 파일 크기
      */
-    public static void removeImageFile(String imagePath, LocalDate localDate, String fileName) {
+    public static long removeImageFile(String imagePath, LocalDate localDate, String fileName) {
 
         Path imageFilePath = Paths.get(imagePath, String.valueOf(localDate.getYear()), String.valueOf(localDate.getMonthValue()),
                 String.valueOf(localDate.getDayOfMonth()), fileName);
 
         if (Files.exists(imageFilePath, LinkOption.NOFOLLOW_LINKS)) {
             try {
+                long size = Files.size(imageFilePath);
                 Files.delete(imageFilePath);
+
+                return size;
             } catch (IOException e) {
                 throw new ServiceException(ServiceError.GALLERY_IO_ERROR);
             }
@@ -0,0 +1,143 @@
+package com.jakduk.api.common.util;
+
+import java.util.*;
+
+/**
+ * 64bit 지각 해시(perceptual hash)를 해밍 거리로 찾기 위한 BK-tree
+ *
+ * 자식 노드를 부모와의 거리로 나눠 두므로, 삼각 부등식에 의해 |d - 거리| <= maxDistance 인 가지만 따라가면 된다.
+ * 같은 해시를 가진 아이템들은 한 노드에 모인다. 여러 쓰레드에서 읽고 쓸 수 있다.
+ */
+
+public class HammingBKTree {
+
+    private Node root;
+    private int size;
+
+    /**
+     * 두 해시의 해밍 거리
+     */
+    public static int distance(long hash1, long hash2) {
+        return Long.bitCount(hash1 ^ hash2);
+    }
+
+    public synchronized void add(long hash, String id) {
+
+        size++;
+
+        if (Objects.isNull(root)) {
+            root = new Node(hash);
+            root.ids.add(id);
+            return;
+        }
+
+        Node node = root;
+
+        while (true) {
+            int distance = distance(node.hash, hash);
+
+            if (distance == 0) {
+                if (! node.ids.add(id))
+                    size--;
+
+                return;
+            }
+
+            Node child = node.children.get(distance);
+
+            if (Objects.isNull(child)) {
+                child = new Node(hash);
+                child.ids.add(id);
+                node.children.put(distance, child);
+                return;
+            }
+
+            node = child;
+        }
+    }
+
+    /**
+     * 아이템을 뺀다. 노드는 다른 노드들의 길이 되므로 남겨둔다.
+     */
+    public synchronized void remove(long hash, String id) {
+
+        Node node = root;
+
+        while (Objects.nonNull(node)) {
+            int distance = distance(node.hash, hash);
+
+            if (distance == 0) {
+                if (node.ids.remove(id))
+                    size--;
+
+                return;
+            }
+
+            node = node.children.get(distance);
+        }
+    }
+
+    /**
+     * maxDistance 이내의 아이템들을 가까운 순으로 찾는다.
+     */
+    public synchronized List<Match> search(long hash, int maxDistance) {
+
+        List<Match> matches = new ArrayList<>();
+
+        if (Objects.isNull(root))
+            return matches;
+
+        Deque<Node> candidates = new ArrayDeque<>();
+        candidates.push(root);
+
+        while (! candidates.isEmpty()) {
+            Node node = candidates.pop();
+            int distance = distance(node.hash, hash);
+
+            if (distance <= maxDistance)
+                node.ids.forEach(id -> matches.add(new Match(id, distance)));
+
+            node.children.forEach((childDistance, child) -> {
+                if (Math.abs(childDistance - distance) <= maxDistance)
+                    candidates.push(child);
+            });
+        }
+
+        matches.sort(Comparator.comparingInt(Match::getDistance));
+
+        return matches;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private static class Node {
+        private final long hash;
+        private final Set<String> ids = new LinkedHashSet<>();
+        private final Map<Integer, Node> children = new HashMap<>();
+
+        private Node(long hash) {
+            this.hash = hash;
+        }
+    }
+
+    public static class Match {
+        private final String id;
+        private final int distance;
+
+        public Match(String id, int distance) {
+            this.id = id;
+            this.distance = distance;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public int getDistance() {
+            return distance;
+        }
+    }
+
+}
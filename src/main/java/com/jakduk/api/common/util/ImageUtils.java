@@ -0,0 +1,635 @@
+package com.jakduk.api.common.util;
+
+import com.jakduk.api.common.Constants;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 이미지 파일을 메모리를 아껴가며 읽기 위한 도구
+ */
+
+public class ImageUtils {
+
+    private static final int EXIF_TAG_ORIENTATION = 0x0112;
+
+    // 메타데이터를 뺄 때 남기는 PNG 부가 청크. 투명도와 색 표현에 쓰인다.
+    private static final List<String> PNG_RENDERING_CHUNKS = Arrays.asList("tRNS", "gAMA", "cHRM", "sRGB", "iCCP", "sBIT");
+
+    /**
+     * 이미지 전체를 읽지 않고 헤더에서 가로, 세로 길이만 읽는다.
+     *
+     * @param imagePath 이미지 파일 경로
+     * @throws IOException 읽을 수 없는 포맷이면 발생
+     */
+    public static Dimension readImageDimension(Path imagePath) throws IOException {
+        try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(imagePath.toFile())) {
+            ImageReader reader = getImageReader(imageInputStream);
+
+            try {
+                reader.setInput(imageInputStream, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * 파일 내용으로 이미지 포맷 이름을 알아낸다. (예: jpeg, png, gif)
+     *
+     * @param imagePath 이미지 파일 경로
+     * @throws IOException 읽을 수 없는 포맷이면 발생
+     */
+    public static String readFormatName(Path imagePath) throws IOException {
+        try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(imagePath.toFile())) {
+            ImageReader reader = getImageReader(imageInputStream);
+
+            try {
+                return reader.getFormatName().toLowerCase(Locale.ROOT);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * 이미지를 읽는다. 원본이 크면 ImageIO subsampling 으로 필요한 만큼만 읽어서 메모리 사용량을 제한한다.
+     * EXIF 방향 정보가 있으면 반영한다.
+     *
+     * @param imagePath 이미지 파일 경로
+     * @param minSize   읽은 이미지의 가로, 세로가 적어도 이 길이는 되도록 한다. (원본이 더 작으면 원본 크기)
+     * @throws IOException 읽을 수 없는 포맷이면 발생
+     */
+    public static BufferedImage readImage(Path imagePath, int minSize) throws IOException {
+
+        BufferedImage image;
+
+        try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(imagePath.toFile())) {
+            ImageReader reader = getImageReader(imageInputStream);
+
+            try {
+                reader.setInput(imageInputStream, true, true);
+
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+
+                // subsampling 은 픽셀을 건너뛰기만 하므로, 품질을 위해 목표 길이의 2배까지만 줄이고 나머지는 리사이즈에 맡긴다.
+                int subsampling = Math.max(1, Math.min(width, height) / Math.max(1, minSize * 2));
+
+                while ((long) (width / subsampling) * (height / subsampling) > Constants.GALLERY_MAXIMUM_DECODE_PIXELS)
+                    subsampling++;
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+
+                image = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        return applyOrientation(image, readExifOrientation(imagePath));
+    }
+
+    /**
+     * JPEG 의 EXIF 방향 정보(1~8)를 읽는다. 헤더만 읽으며 없으면 1.
+     *
+     * @param imagePath 이미지 파일 경로
+     */
+    public static int readExifOrientation(Path imagePath) {
+
+        try (InputStream inputStream = Files.newInputStream(imagePath);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream))) {
+
+            if (in.readUnsignedShort() != 0xFFD8) // JPEG 아님
+                return 1;
+
+            while (true) {
+                int marker = in.readUnsignedShort();
+
+                // SOS 이후는 이미지 데이터
+                if ((marker & 0xFF00) != 0xFF00 || marker == 0xFFDA)
+                    return 1;
+
+                int length = in.readUnsignedShort() - 2;
+
+                if (marker != 0xFFE1) {
+                    in.skipBytes(length);
+                    continue;
+                }
+
+                byte[] segment = new byte[length];
+                in.readFully(segment);
+
+                if (length < 14 || segment[0] != 'E' || segment[1] != 'x' || segment[2] != 'i' || segment[3] != 'f')
+                    continue;
+
+                // TIFF 헤더는 "Exif\0\0" 다음부터
+                int tiff = 6;
+                boolean littleEndian = segment[tiff] == 'I';
+                int ifdOffset = readInt(segment, tiff + 4, littleEndian);
+                int entryOffset = tiff + ifdOffset;
+
+                if (entryOffset + 2 > length)
+                    return 1;
+
+                int entries = readShort(segment, entryOffset, littleEndian);
+
+                for (int i = 0; i < entries; i++) {
+                    int entry = entryOffset + 2 + i * 12;
+
+                    if (entry + 12 > length)
+                        return 1;
+
+                    if (readShort(segment, entry, littleEndian) == EXIF_TAG_ORIENTATION) {
+                        int orientation = readShort(segment, entry + 8, littleEndian);
+                        return orientation >= 1 && orientation <= 8 ? orientation : 1;
+                    }
+                }
+
+                return 1;
+            }
+
+        } catch (EOFException e) {
+            return 1;
+        } catch (IOException e) {
+            return 1;
+        }
+    }
+
+    /**
+     * EXIF 방향 정보대로 이미지를 돌리거나 뒤집는다.
+     *
+     * @param image       이미지
+     * @param orientation EXIF 방향 정보 (1~8)
+     */
+    public static BufferedImage applyOrientation(BufferedImage image, int orientation) {
+
+        if (orientation <= 1 || orientation > 8)
+            return image;
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean swap = orientation >= 5;
+
+        AffineTransform transform = new AffineTransform();
+
+        switch (orientation) {
+            case 2:
+                transform.scale(-1.0, 1.0);
+                transform.translate(-width, 0);
+                break;
+            case 3:
+                transform.translate(width, height);
+                transform.rotate(Math.PI);
+                break;
+            case 4:
+                transform.scale(1.0, -1.0);
+                transform.translate(0, -height);
+                break;
+            case 5:
+                transform.rotate(-Math.PI / 2);
+                transform.scale(-1.0, 1.0);
+                break;
+            case 6:
+                transform.translate(height, 0);
+                transform.rotate(Math.PI / 2);
+                break;
+            case 7:
+                transform.scale(-1.0, 1.0);
+                transform.translate(-height, 0);
+                transform.translate(0, width);
+                transform.rotate(3 * Math.PI / 2);
+                break;
+            case 8:
+                transform.translate(0, width);
+                transform.rotate(3 * Math.PI / 2);
+                break;
+        }
+
+        int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage oriented = new BufferedImage(swap ? height : width, swap ? width : height, type);
+
+        Graphics2D graphics = oriented.createGraphics();
+
+        try {
+            graphics.drawImage(image, transform, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        return oriented;
+    }
+
+    /**
+     * 사진이 로딩되기 전에 보여줄 아주 작은 미리보기를 data URI 로 만든다.
+     * 긴 쪽이 Constants.GALLERY_PLACEHOLDER_SIZE 가 되도록 줄인 JPEG 이다.
+     *
+     * @param imagePath 이미지 파일 경로
+     * @throws IOException 읽을 수 없는 포맷이면 발생
+     */
+    public static String createPlaceholder(Path imagePath) throws IOException {
+
+        BufferedImage image = readImage(imagePath, Constants.GALLERY_PLACEHOLDER_SIZE);
+
+        double scale = Constants.GALLERY_PLACEHOLDER_SIZE / (double) Math.max(image.getWidth(), image.getHeight());
+        int width = Math.max(1, (int) Math.round(image.getWidth() * Math.min(1D, scale)));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * Math.min(1D, scale)));
+
+        // JPEG 는 투명도가 없으므로 흰 바탕에 그린다.
+        BufferedImage placeholder = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = placeholder.createGraphics();
+
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageIO.write(placeholder, "jpg", outputStream);
+
+        return "data:image/jpeg;base64," + Base64.getEncoder().encodeToString(outputStream.toByteArray());
+    }
+
+    /**
+     * 사진의 difference hash(dHash) 를 구한다.
+     * Constants.GALLERY_DHASH_DECODE_SIZE 이상으로 읽고 9x8 흑백으로 줄인 다음, 가로로 이웃한 픽셀의 밝기를 비교해서 64bit 를 만든다.
+     * 다시 저장하거나 압축률을 바꾼 사진은 해밍 거리가 작게 나온다.
+     *
+     * @param imagePath 이미지 파일 경로
+     * @throws IOException 읽을 수 없는 포맷이면 발생
+     */
+    public static long computeDifferenceHash(Path imagePath) throws IOException {
+
+        // subsampling 은 픽셀을 건너뛰므로 9x8 가까이 읽으면 평균을 낼 픽셀이 없다. 충분히 크게 읽는다.
+        BufferedImage image = readImage(imagePath, Constants.GALLERY_DHASH_DECODE_SIZE);
+
+        // 픽셀을 건너뛰지 않고 평균을 내서 줄여야 압축 잡음에 덜 흔들린다.
+        Image scaled = image.getScaledInstance(9, 8, Image.SCALE_AREA_AVERAGING);
+        BufferedImage gray = new BufferedImage(9, 8, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D graphics = gray.createGraphics();
+
+        try {
+            graphics.drawImage(scaled, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        long hash = 0L;
+
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 8; x++) {
+                hash <<= 1;
+
+                if (gray.getRaster().getSample(x, y, 0) > gray.getRaster().getSample(x + 1, y, 0))
+                    hash |= 1L;
+            }
+        }
+
+        return hash;
+    }
+
+    /**
+     * 저장할 사진을 포맷에 맞게 최적화해서 인코딩한다. 메타데이터(EXIF 등)는 남지 않는다.
+     * JPEG 는 목표 용량 이하가 되는 가장 높은 품질의 progressive JPEG 로, PNG 는 색이 256개 이하면 팔레트 PNG 로 만든다.
+     *
+     * @param image      이미지. EXIF 방향 정보는 이미 반영되어 있어야 한다.
+     * @param formatName 사진 포맷
+     * @throws IOException 쓸 수 없는 포맷이면 발생
+     */
+    public static byte[] optimize(BufferedImage image, String formatName) throws IOException {
+
+        switch (formatName.toLowerCase()) {
+            case "jpeg":
+            case "jpg":
+                return encodeJpegWithinSize(toRgb(image), Constants.GALLERY_MAXIMUM_CAPACITY,
+                        Constants.GALLERY_JPEG_MIN_QUALITY, Constants.GALLERY_JPEG_MAX_QUALITY);
+            case "png":
+                BufferedImage palette = reduceToPalette(image);
+                return encode(Objects.nonNull(palette) ? palette : image, formatName);
+            default:
+                return encode(image, formatName);
+        }
+    }
+
+    /**
+     * 목표 용량 이하가 되는 가장 높은 품질로 progressive JPEG 인코딩 한다.
+     * 품질은 이분 탐색으로 찾고, 최소 품질로도 넘으면 최소 품질로 인코딩 한 것을 준다.
+     *
+     * @param image      RGB 이미지
+     * @param targetSize 목표 용량 (Byte)
+     * @param minQuality 최소 품질 (0~1)
+     * @param maxQuality 최대 품질 (0~1)
+     */
+    public static byte[] encodeJpegWithinSize(BufferedImage image, long targetSize, float minQuality, float maxQuality) throws IOException {
+
+        byte[] best = encodeJpeg(image, maxQuality);
+
+        if (best.length <= targetSize)
+            return best;
+
+        best = encodeJpeg(image, minQuality);
+
+        if (best.length > targetSize)
+            return best;
+
+        float low = minQuality;
+        float high = maxQuality;
+
+        // 품질 차이가 0.02 아래로 좁혀질 때까지만 찾는다.
+        while (high - low > 0.02f) {
+            float quality = (low + high) / 2;
+            byte[] encoded = encodeJpeg(image, quality);
+
+            if (encoded.length <= targetSize) {
+                best = encoded;
+                low = quality;
+            } else {
+                high = quality;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * 메타데이터 없이 progressive JPEG 로 인코딩 한다.
+     *
+     * @param image   RGB 이미지
+     * @param quality 품질 (0~1)
+     */
+    public static byte[] encodeJpeg(BufferedImage image, float quality) throws IOException {
+
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+
+        if (! writers.hasNext())
+            throw new IOException("jpeg writer not found");
+
+        ImageWriter writer = writers.next();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        try (ImageOutputStream imageOutputStream = ImageIO.createImageOutputStream(outputStream)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+
+            writer.setOutput(imageOutputStream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * 스크린샷처럼 색이 256개 이하인 이미지를 팔레트(indexed color) 이미지로 바꾼다. 색을 버리지 않는다.
+     *
+     * @param image 이미지
+     * @return 팔레트 이미지. 색이 256개보다 많으면 null
+     */
+    public static BufferedImage reduceToPalette(BufferedImage image) {
+
+        if (image.getType() == BufferedImage.TYPE_BYTE_INDEXED || image.getType() == BufferedImage.TYPE_BYTE_BINARY)
+            return null;
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] row = new int[width];
+
+        // 색(ARGB) -> 팔레트 번호
+        Map<Integer, Integer> palette = new LinkedHashMap<>();
+
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+
+            for (int argb : row) {
+                if (! palette.containsKey(argb)) {
+                    if (palette.size() == 256)
+                        return null;
+
+                    palette.put(argb, palette.size());
+                }
+            }
+        }
+
+        int size = palette.size();
+        byte[] reds = new byte[size];
+        byte[] greens = new byte[size];
+        byte[] blues = new byte[size];
+        byte[] alphas = new byte[size];
+
+        palette.forEach((color, index) -> {
+            int argb = color;
+            alphas[index] = (byte) (argb >>> 24);
+            reds[index] = (byte) (argb >> 16);
+            greens[index] = (byte) (argb >> 8);
+            blues[index] = (byte) argb;
+        });
+
+        IndexColorModel colorModel = new IndexColorModel(8, size, reds, greens, blues, alphas);
+        BufferedImage indexed = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, colorModel);
+        WritableRaster raster = indexed.getRaster();
+
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+
+            for (int x = 0; x < width; x++)
+                raster.setSample(x, y, 0, palette.get(row[x]));
+        }
+
+        return indexed;
+    }
+
+    /**
+     * 인코딩은 그대로 두고 메타데이터만 뺀다. 화면에 보이는 모습은 바뀌지 않는다.
+     * JPEG 는 JFIF(APP0), ICC 프로파일(APP2), Adobe(APP14) 를 뺀 APPn 과 주석(COM) 세그먼트를,
+     * PNG 는 색 표현에 필요한 것을 뺀 부가(ancillary) 청크를 뺀다.
+     * EXIF 방향 정보도 빠지므로, 방향 정보가 있는 사진은 applyOrientation 으로 돌려서 다시 인코딩해야 한다.
+     *
+     * @param bytes      이미지 파일 내용
+     * @param formatName 사진 포맷
+     * @return 메타데이터를 뺀 내용. JPEG, PNG 가 아니면 null
+     * @throws IOException 형식이 깨진 파일이면 발생
+     */
+    public static byte[] stripMetadata(byte[] bytes, String formatName) throws IOException {
+
+        switch (formatName.toLowerCase()) {
+            case "jpeg":
+            case "jpg":
+                return stripJpegMetadata(bytes);
+            case "png":
+                return stripPngMetadata(bytes);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 기본 설정으로 인코딩 한다. ImageIO 는 BufferedImage 에 없는 메타데이터를 쓰지 않는다.
+     */
+    public static byte[] encode(BufferedImage image, String formatName) throws IOException {
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        if (! ImageIO.write(image, formatName, outputStream))
+            throw new IOException("unsupported image format : " + formatName);
+
+        return outputStream.toByteArray();
+    }
+
+    // JPEG 는 투명도가 없으므로 흰 바탕에 그린다.
+    private static BufferedImage toRgb(BufferedImage image) {
+
+        if (image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_3BYTE_BGR)
+            return image;
+
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = rgb.createGraphics();
+
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+            graphics.drawImage(image, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        return rgb;
+    }
+
+    private static byte[] stripJpegMetadata(byte[] bytes) throws IOException {
+
+        if (bytes.length < 4 || readShort(bytes, 0, false) != 0xFFD8)
+            throw new IOException("not a jpeg");
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(bytes.length);
+        outputStream.write(bytes, 0, 2);
+
+        int offset = 2;
+
+        while (true) {
+            if (offset + 4 > bytes.length || (bytes[offset] & 0xFF) != 0xFF)
+                throw new IOException("broken jpeg segment");
+
+            // 마커 앞의 채움(fill) 바이트
+            if ((bytes[offset + 1] & 0xFF) == 0xFF) {
+                offset++;
+                continue;
+            }
+
+            int marker = readShort(bytes, offset, false);
+
+            // SOS 이후는 이미지 데이터이므로 그대로 쓴다.
+            if (marker == 0xFFDA) {
+                outputStream.write(bytes, offset, bytes.length - offset);
+                return outputStream.toByteArray();
+            }
+
+            int length = readShort(bytes, offset + 2, false) + 2;
+
+            if (offset + length > bytes.length)
+                throw new IOException("broken jpeg segment");
+
+            boolean metadata = (marker >= 0xFFE1 && marker <= 0xFFEF && marker != 0xFFE2 && marker != 0xFFEE) || marker == 0xFFFE;
+
+            if (! metadata)
+                outputStream.write(bytes, offset, length);
+
+            offset += length;
+        }
+    }
+
+    private static byte[] stripPngMetadata(byte[] bytes) throws IOException {
+
+        if (bytes.length < 8 || bytes[1] != 'P' || bytes[2] != 'N' || bytes[3] != 'G')
+            throw new IOException("not a png");
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(bytes.length);
+        outputStream.write(bytes, 0, 8);
+
+        int offset = 8;
+
+        while (offset < bytes.length) {
+            if (offset + 12 > bytes.length)
+                throw new IOException("broken png chunk");
+
+            // 길이(4) + 타입(4) + 데이터 + CRC(4)
+            long length = readInt(bytes, offset, false) & 0xFFFFFFFFL;
+
+            if (offset + 12 + length > bytes.length)
+                throw new IOException("broken png chunk");
+
+            String type = new String(bytes, offset + 4, 4, StandardCharsets.US_ASCII);
+
+            // 첫 글자가 대문자면 필수(critical) 청크
+            if (Character.isUpperCase(type.charAt(0)) || PNG_RENDERING_CHUNKS.contains(type))
+                outputStream.write(bytes, offset, (int) (12 + length));
+
+            offset += (int) (12 + length);
+        }
+
+        return outputStream.toByteArray();
+    }
+
+    private static ImageReader getImageReader(ImageInputStream imageInputStream) throws IOException {
+        if (imageInputStream == null)
+            throw new IOException("can not open image");
+
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInputStream);
+
+        if (! readers.hasNext())
+            throw new IOException("unsupported image format");
+
+        return readers.next();
+    }
+
+    private static int readShort(byte[] bytes, int offset, boolean littleEndian) {
+        int b0 = bytes[offset] & 0xFF;
+        int b1 = bytes[offset + 1] & 0xFF;
+
+        return littleEndian ? (b1 << 8) | b0 : (b0 << 8) | b1;
+    }
+
+    private static int readInt(byte[] bytes, int offset, boolean littleEndian) {
+        int high = readShort(bytes, offset, littleEndian);
+        int low = readShort(bytes, offset + 2, littleEndian);
+
+        return littleEndian ? (low << 16) | high : (high << 16) | low;
+    }
+
+}
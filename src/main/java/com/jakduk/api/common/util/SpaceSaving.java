@@ -0,0 +1,102 @@
+package com.jakduk.api.common.util;
+
+import java.util.*;
+
+/**
+ * 스트림에서 자주 나오는 아이템을 정해진 개수의 카운터로 세는 Space-Saving 알고리즘
+ *
+ * 카운터가 다 차면 가장 작은 카운터를 새 아이템에 넘겨주고 그 값에서부터 센다. 넘겨받은 값은 error 로 남는다.
+ * 실제 횟수는 count - error 와 count 사이에 있고, capacity 보다 많이 나온 아이템은 빠지지 않는다.
+ * 여러 쓰레드에서 읽고 쓸 수 있다.
+ */
+
+public class SpaceSaving {
+
+    private final int capacity;
+    private final Map<String, Counter> counters = new HashMap<>();
+    private final TreeSet<Counter> orderedCounters = new TreeSet<>(
+            Comparator.comparingLong((Counter counter) -> counter.count).thenComparing(counter -> counter.item));
+
+    public SpaceSaving(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public void offer(String item) {
+        this.offer(item, 1L);
+    }
+
+    public synchronized void offer(String item, long increment) {
+
+        Counter counter = counters.get(item);
+
+        if (Objects.nonNull(counter)) {
+            orderedCounters.remove(counter);
+            counter.count += increment;
+            orderedCounters.add(counter);
+            return;
+        }
+
+        if (counters.size() < capacity) {
+            counter = new Counter(item, increment, 0L);
+        } else {
+            Counter minimum = orderedCounters.pollFirst();
+            counters.remove(minimum.item);
+            counter = new Counter(item, minimum.count + increment, minimum.count);
+        }
+
+        counters.put(item, counter);
+        orderedCounters.add(counter);
+    }
+
+    /**
+     * 다른 요약의 카운터들을 더한다.
+     */
+    public void merge(Collection<Counter> others) {
+        others.forEach(other -> this.offer(other.item, other.count));
+    }
+
+    /**
+     * 많이 나온 순으로 k 개
+     */
+    public synchronized List<Counter> top(int k) {
+
+        List<Counter> top = new ArrayList<>(Math.min(k, orderedCounters.size()));
+        Iterator<Counter> iterator = orderedCounters.descendingIterator();
+
+        while (top.size() < k && iterator.hasNext()) {
+            Counter counter = iterator.next();
+            top.add(new Counter(counter.item, counter.count, counter.error));
+        }
+
+        return top;
+    }
+
+    public synchronized int size() {
+        return counters.size();
+    }
+
+    public static class Counter {
+        private final String item;
+        private long count;
+        private final long error;
+
+        public Counter(String item, long count, long error) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+        }
+
+        public String getItem() {
+            return item;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getError() {
+            return error;
+        }
+    }
+
+}
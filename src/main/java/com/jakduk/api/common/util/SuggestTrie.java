@@ -0,0 +1,222 @@
+package com.jakduk.api.common.util;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 앞글자로 찾는 자동 완성용 트라이
+ *
+ * 자식이 하나뿐인 마디는 합쳐서(radix tree) 마디 수를 줄인다. 마디마다 그 아래에서 weight 가 큰 항목 maxSuggestions 개를 들고 있어서,
+ * 찾을 때는 앞글자를 따라 내려가서 그 마디의 목록을 읽기만 한다. 항목의 weight 는 커지기만 하므로 목록은 넣을 때 고쳐진다.
+ * 여러 쓰레드에서 읽고 쓸 수 있다.
+ */
+
+public class SuggestTrie {
+
+    private final int maxSuggestions;
+    private final Node root = new Node("");
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public SuggestTrie(int maxSuggestions) {
+        this.maxSuggestions = maxSuggestions;
+    }
+
+    /**
+     * key 로 찾을 수 있게 text 를 넣는다. 이미 있는 key 면 weight 만 큰 값으로 바꾼다.
+     */
+    public void put(String key, String text, String type, long weight) {
+
+        lock.writeLock().lock();
+
+        try {
+            Entry entry = entries.get(key);
+
+            if (Objects.nonNull(entry)) {
+                if (weight <= entry.weight)
+                    return;
+
+                entry.weight = weight;
+            } else {
+                entry = new Entry(key, text, type, weight);
+                entries.put(key, entry);
+            }
+
+            for (Node node : this.insert(key))
+                this.offer(node, entry);
+
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * prefix 로 시작하는 항목. weight 가 큰 순으로 size 개까지.
+     */
+    public List<Entry> suggest(String prefix, int size) {
+
+        lock.readLock().lock();
+
+        try {
+            Node node = root;
+            int i = 0;
+
+            while (i < prefix.length()) {
+                Node child = node.children.get(prefix.charAt(i));
+
+                if (Objects.isNull(child))
+                    return Collections.emptyList();
+
+                int common = this.commonPrefixLength(child.label, prefix, i);
+
+                if (i + common == prefix.length()) {
+                    node = child;
+                    break;
+                }
+
+                if (common < child.label.length())
+                    return Collections.emptyList();
+
+                node = child;
+                i += common;
+            }
+
+            List<Entry> suggestions = new ArrayList<>(Math.min(size, node.top.size()));
+
+            for (Entry entry : node.top) {
+                if (suggestions.size() >= size)
+                    break;
+
+                suggestions.add(new Entry(entry.key, entry.text, entry.type, entry.weight));
+            }
+
+            return suggestions;
+
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * key 의 마디들을 만들고, 뿌리부터 key 가 끝나는 마디까지 돌려준다.
+     */
+    private List<Node> insert(String key) {
+
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        int i = 0;
+
+        path.add(root);
+
+        while (i < key.length()) {
+            char c = key.charAt(i);
+            Node child = node.children.get(c);
+
+            if (Objects.isNull(child)) {
+                child = new Node(key.substring(i));
+                node.children.put(c, child);
+                path.add(child);
+                return path;
+            }
+
+            int common = this.commonPrefixLength(child.label, key, i);
+
+            // 마디의 label 중간에서 갈라지면 마디를 둘로 나눈다. 나눈 위쪽 마디도 아래쪽 항목을 모두 가진다.
+            if (common < child.label.length()) {
+                Node middle = new Node(child.label.substring(0, common));
+                middle.top.addAll(child.top);
+
+                child.label = child.label.substring(common);
+                middle.children.put(child.label.charAt(0), child);
+                node.children.put(c, middle);
+
+                child = middle;
+            }
+
+            path.add(child);
+            node = child;
+            i += common;
+        }
+
+        return path;
+    }
+
+    private void offer(Node node, Entry entry) {
+
+        if (! node.top.contains(entry)) {
+            if (node.top.size() < maxSuggestions) {
+                node.top.add(entry);
+            } else if (ENTRY_ORDER.compare(entry, node.top.get(node.top.size() - 1)) < 0) {
+                node.top.set(node.top.size() - 1, entry);
+            } else {
+                return;
+            }
+        }
+
+        node.top.sort(ENTRY_ORDER);
+    }
+
+    private int commonPrefixLength(String label, String key, int offset) {
+        int length = Math.min(label.length(), key.length() - offset);
+        int i = 0;
+
+        while (i < length && label.charAt(i) == key.charAt(offset + i))
+            i++;
+
+        return i;
+    }
+
+    private static final Comparator<Entry> ENTRY_ORDER = Comparator.comparingLong((Entry entry) -> entry.weight).reversed()
+            .thenComparing(entry -> entry.key);
+
+    private static class Node {
+        private String label;
+        private final Map<Character, Node> children = new HashMap<>(4);
+        private final List<Entry> top = new ArrayList<>(2);
+
+        private Node(String label) {
+            this.label = label;
+        }
+    }
+
+    public static class Entry {
+        private final String key;
+        private final String text;
+        private final String type;
+        private long weight;
+
+        public Entry(String key, String text, String type, long weight) {
+            this.key = key;
+            this.text = text;
+            this.type = type;
+            this.weight = weight;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public long getWeight() {
+            return weight;
+        }
+    }
+
+}
@@ -168,6 +168,8 @@ public class JakdukProperties {
         private String exchangeName;
         private Map<String, RabbitMQ> queues = new HashMap<>();
         private Map<String, String> routingKeys = new HashMap<>();
+        private Integer outboxBatchSize;
+        private Long outboxPollIntervalMs;
 
         public String getExchangeName() {
             return exchangeName;
@@ -192,6 +194,22 @@ public class JakdukProperties {
         public void setRoutingKeys(Map<String, String> routingKeys) {
             this.routingKeys = routingKeys;
         }
+
+        public Integer getOutboxBatchSize() {
+            return outboxBatchSize;
+        }
+
+        public void setOutboxBatchSize(Integer outboxBatchSize) {
+            this.outboxBatchSize = outboxBatchSize;
+        }
+
+        public Long getOutboxPollIntervalMs() {
+            return outboxPollIntervalMs;
+        }
+
+        public void setOutboxPollIntervalMs(Long outboxPollIntervalMs) {
+            this.outboxPollIntervalMs = outboxPollIntervalMs;
+        }
     }
 
     @Configuration
@@ -199,12 +217,16 @@ public class JakdukProperties {
     public class Elasticsearch {
         private Boolean enable;
         private String indexBoard;
+        private String indexComment;
         private String indexGallery;
         private String indexSearchWord;
-        private Integer bulkActions;
-        private Integer bulkConcurrentRequests;
-        private Integer bulkFlushIntervalSeconds;
-        private Integer bulkSizeMb;
+        private Integer listenerBatchSize;
+        private Long listenerPollIntervalMs;
+        private Integer listenerPartitions;
+        private Integer searchWordRetentionDays;
+        private Integer searchWordRollupRetentionMonths;
+        private String backend;
+        private String lucenePath;
 
         public Boolean getEnable() {
             return enable;
@@ -222,6 +244,14 @@ public class JakdukProperties {
             this.indexBoard = indexBoard;
         }
 
+        public String getIndexComment() {
+            return indexComment;
+        }
+
+        public void setIndexComment(String indexComment) {
+            this.indexComment = indexComment;
+        }
+
         public String getIndexGallery() {
             return indexGallery;
         }
@@ -238,36 +268,60 @@ public class JakdukProperties {
             this.indexSearchWord = indexSearchWord;
         }
 
-        public Integer getBulkActions() {
-            return bulkActions;
+        public Integer getListenerPartitions() {
+            return listenerPartitions;
+        }
+
+        public void setListenerPartitions(Integer listenerPartitions) {
+            this.listenerPartitions = listenerPartitions;
+        }
+
+        public Integer getListenerBatchSize() {
+            return listenerBatchSize;
+        }
+
+        public void setListenerBatchSize(Integer listenerBatchSize) {
+            this.listenerBatchSize = listenerBatchSize;
+        }
+
+        public Long getListenerPollIntervalMs() {
+            return listenerPollIntervalMs;
+        }
+
+        public void setListenerPollIntervalMs(Long listenerPollIntervalMs) {
+            this.listenerPollIntervalMs = listenerPollIntervalMs;
         }
 
-        public void setBulkActions(Integer bulkActions) {
-            this.bulkActions = bulkActions;
+        public Integer getSearchWordRetentionDays() {
+            return searchWordRetentionDays;
         }
 
-        public Integer getBulkConcurrentRequests() {
-            return bulkConcurrentRequests;
+        public void setSearchWordRetentionDays(Integer searchWordRetentionDays) {
+            this.searchWordRetentionDays = searchWordRetentionDays;
         }
 
-        public void setBulkConcurrentRequests(Integer bulkConcurrentRequests) {
-            this.bulkConcurrentRequests = bulkConcurrentRequests;
+        public Integer getSearchWordRollupRetentionMonths() {
+            return searchWordRollupRetentionMonths;
         }
 
-        public Integer getBulkFlushIntervalSeconds() {
-            return bulkFlushIntervalSeconds;
+        public void setSearchWordRollupRetentionMonths(Integer searchWordRollupRetentionMonths) {
+            this.searchWordRollupRetentionMonths = searchWordRollupRetentionMonths;
         }
 
-        public void setBulkFlushIntervalSeconds(Integer bulkFlushIntervalSeconds) {
-            this.bulkFlushIntervalSeconds = bulkFlushIntervalSeconds;
+        public String getBackend() {
+            return backend;
         }
 
-        public Integer getBulkSizeMb() {
-            return bulkSizeMb;
+        public void setBackend(String backend) {
+            this.backend = backend;
         }
 
-        public void setBulkSizeMb(Integer bulkSizeMb) {
-            this.bulkSizeMb = bulkSizeMb;
+        public String getLucenePath() {
+            return lucenePath;
+        }
+
+        public void setLucenePath(String lucenePath) {
+            this.lucenePath = lucenePath;
         }
     }
 
@@ -278,6 +332,17 @@ public class JakdukProperties {
         private String thumbnailPath;
         private String userPictureLargePath;
         private String userPictureSmallPath;
+        private String variantPath;
+        private Integer variantCacheMaxSizeMb;
+        private String mediaPath;
+        private String uploadPath;
+        private Boolean tempCleanupEnabled;
+        private Long tempCleanupIntervalMs;
+        private Integer tempExpirationHours;
+        private Integer tempCleanupBatchSize;
+        private Integer tempCleanupMaxPerRun;
+        private Long tempCleanupBatchIntervalMs;
+        private Integer tempCleanupThreads;
 
         public String getImagePath() {
             return imagePath;
@@ -310,6 +375,94 @@ public class JakdukProperties {
         public void setUserPictureSmallPath(String userPictureSmallPath) {
             this.userPictureSmallPath = userPictureSmallPath;
         }
+
+        public String getVariantPath() {
+            return variantPath;
+        }
+
+        public void setVariantPath(String variantPath) {
+            this.variantPath = variantPath;
+        }
+
+        public Integer getVariantCacheMaxSizeMb() {
+            return variantCacheMaxSizeMb;
+        }
+
+        public void setVariantCacheMaxSizeMb(Integer variantCacheMaxSizeMb) {
+            this.variantCacheMaxSizeMb = variantCacheMaxSizeMb;
+        }
+
+        public String getMediaPath() {
+            return mediaPath;
+        }
+
+        public void setMediaPath(String mediaPath) {
+            this.mediaPath = mediaPath;
+        }
+
+        public String getUploadPath() {
+            return uploadPath;
+        }
+
+        public void setUploadPath(String uploadPath) {
+            this.uploadPath = uploadPath;
+        }
+
+        public Boolean getTempCleanupEnabled() {
+            return tempCleanupEnabled;
+        }
+
+        public void setTempCleanupEnabled(Boolean tempCleanupEnabled) {
+            this.tempCleanupEnabled = tempCleanupEnabled;
+        }
+
+        public Long getTempCleanupIntervalMs() {
+            return tempCleanupIntervalMs;
+        }
+
+        public void setTempCleanupIntervalMs(Long tempCleanupIntervalMs) {
+            this.tempCleanupIntervalMs = tempCleanupIntervalMs;
+        }
+
+        public Integer getTempExpirationHours() {
+            return tempExpirationHours;
+        }
+
+        public void setTempExpirationHours(Integer tempExpirationHours) {
+            this.tempExpirationHours = tempExpirationHours;
+        }
+
+        public Integer getTempCleanupBatchSize() {
+            return tempCleanupBatchSize;
+        }
+
+        public void setTempCleanupBatchSize(Integer tempCleanupBatchSize) {
+            this.tempCleanupBatchSize = tempCleanupBatchSize;
+        }
+
+        public Integer getTempCleanupMaxPerRun() {
+            return tempCleanupMaxPerRun;
+        }
+
+        public void setTempCleanupMaxPerRun(Integer tempCleanupMaxPerRun) {
+            this.tempCleanupMaxPerRun = tempCleanupMaxPerRun;
+        }
+
+        public Long getTempCleanupBatchIntervalMs() {
+            return tempCleanupBatchIntervalMs;
+        }
+
+        public void setTempCleanupBatchIntervalMs(Long tempCleanupBatchIntervalMs) {
+            this.tempCleanupBatchIntervalMs = tempCleanupBatchIntervalMs;
+        }
+
+        public Integer getTempCleanupThreads() {
+            return tempCleanupThreads;
+        }
+
+        public void setTempCleanupThreads(Integer tempCleanupThreads) {
+            this.tempCleanupThreads = tempCleanupThreads;
+        }
     }
 
 }
@@ -0,0 +1,13 @@
+package com.jakduk.api.configuration;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * 주기적으로 도는 작업(@Scheduled) 설정
+ */
+
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -89,7 +89,8 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
                 .regexMatchers(
                         HttpMethod.GET,
                         "/api/auth/user", // 세션에 있는 나의 프로필 정보
-                        "/api/user/profile/me" // 내 프로필 정보 보기
+                        "/api/user/profile/me", // 내 프로필 정보 보기
+                        "/api/gallery/uploads/[\\da-z]+" // 나눠 올리는 중인 사진의 받은 위치
                 ).hasAnyAuthority(
                 JakdukAuthority.ROLE_USER_01.name(), JakdukAuthority.ROLE_USER_02.name(), JakdukAuthority.ROLE_USER_03.name())
                 .regexMatchers(
@@ -99,6 +100,8 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
                         "/api/board/[a-z]+/\\d+/(?:like|dislike)", // 글 감정 표현
                         "/api/board/[a-z]+/comment/[\\da-z]+/(?:like|dislike)", // 댓글 감정 표현
                         "/api/gallery", // 사진 올리기
+                        "/api/gallery/uploads", // 사진 나눠 올리기 시작
+                        "/api/gallery/uploads/[\\da-z]+/complete", // 사진 나눠 올리기 끝
                         "/api/jakdu/myJakdu" // 작두 타기
                 ).hasAnyAuthority(
                 JakdukAuthority.ROLE_USER_01.name(), JakdukAuthority.ROLE_USER_02.name(), JakdukAuthority.ROLE_USER_03.name())
@@ -107,6 +110,7 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
                         "/api/board/[a-z]+/comment/[\\da-z]+", // 댓글 고치기
                         "/api/user/profile/me", // 내 프로필 정보 고치기
                         "/api/user/password", // 비밀번호 바꾸기
+                        "/api/gallery/uploads/[\\da-z]+", // 사진 조각 올리기
                         "/api/board/[a-z]+/\\d+" // 게시판 글 고치기
                 ).hasAnyAuthority(
                 JakdukAuthority.ROLE_USER_01.name(), JakdukAuthority.ROLE_USER_02.name(), JakdukAuthority.ROLE_USER_03.name())
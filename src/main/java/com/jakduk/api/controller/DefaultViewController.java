@@ -2,7 +2,6 @@ package com.jakduk.api.controller;
 
 import com.jakduk.api.common.Constants;
 import com.jakduk.api.common.util.DateUtils;
-import com.jakduk.api.common.util.FileUtils;
 import com.jakduk.api.common.util.UrlGenerationUtils;
 import com.jakduk.api.configuration.JakdukProperties;
 import com.jakduk.api.exception.ServiceError;
@@ -12,6 +11,7 @@ import com.jakduk.api.model.db.UserPicture;
 import com.jakduk.api.model.simple.ArticleOnSitemap;
 import com.jakduk.api.service.ArticleService;
 import com.jakduk.api.service.GalleryService;
+import com.jakduk.api.service.GalleryVariantService;
 import com.jakduk.api.service.UserPictureService;
 import com.redfin.sitemapgenerator.ChangeFreq;
 import com.redfin.sitemapgenerator.W3CDateFormat;
@@ -22,21 +22,24 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
 import org.springframework.util.CollectionUtils;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 
 import javax.annotation.Resource;
 import javax.servlet.http.HttpServletResponse;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.nio.charset.StandardCharsets;
-import java.time.LocalDate;
-import java.time.ZoneId;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * @author <a href="mailto:phjang1983@daum.net">Jang,Pyohwan</a>
@@ -49,10 +52,10 @@ import java.util.List;
 public class DefaultViewController {
 
 	@Resource private JakdukProperties jakdukProperties;
-	@Resource private JakdukProperties.Storage storageProperties;
 
 	@Autowired private UrlGenerationUtils urlGenerationUtils;
 	@Autowired private GalleryService galleryService;
+	@Autowired private GalleryVariantService galleryVariantService;
 	@Autowired private UserPictureService userPictureService;
 	@Autowired private ArticleService articleService;
 
@@ -119,16 +122,27 @@ public class DefaultViewController {
 	// 사진 가져오기.
 	@GetMapping("/${jakduk.api-url-path.gallery-image}/{id}")
 	public void getGallery(@PathVariable String id,
+						   @RequestParam(required = false) Integer w, // 가로 길이. 160, 360, 720, 1080
 						   HttpServletResponse response) {
 
 		Gallery gallery = galleryService.findOneById(id);
 
-		ByteArrayOutputStream byteStream = galleryService.getGalleryOutStream(gallery.getId(), gallery.getContentType(),
-				Constants.IMAGE_TYPE.FULL);
+		if (Objects.nonNull(w)) {
+			try (InputStream variantStream = galleryVariantService.openVariant(gallery, w)) {
+				response.setContentType(gallery.getContentType());
+				StreamUtils.copy(variantStream, response.getOutputStream());
+			} catch (IOException e) {
+				throw new ServiceException(ServiceError.NOT_FOUND_GALLERY, e);
+			}
+
+			return;
+		}
+
+		Path filePath = galleryService.getGalleryFilePath(gallery, Constants.IMAGE_TYPE.FULL);
 		response.setContentType(gallery.getContentType());
 
 		try {
-			byteStream.writeTo(response.getOutputStream());
+			Files.copy(filePath, response.getOutputStream());
 		} catch (IOException e) {
 			throw new ServiceException(ServiceError.NOT_FOUND_GALLERY, e);
 		}
@@ -141,12 +155,11 @@ public class DefaultViewController {
 
 		Gallery gallery = galleryService.findOneById(id);
 
-		ByteArrayOutputStream byteStream = galleryService.getGalleryOutStream(gallery.getId(), gallery.getContentType(),
-				Constants.IMAGE_TYPE.THUMBNAIL);
+		Path filePath = galleryService.getGalleryFilePath(gallery, Constants.IMAGE_TYPE.THUMBNAIL);
 		response.setContentType(gallery.getContentType());
 
 		try {
-			byteStream.writeTo(response.getOutputStream());
+			Files.copy(filePath, response.getOutputStream());
 		} catch (IOException e) {
 			throw new ServiceException(ServiceError.NOT_FOUND_GALLERY, e);
 		}
@@ -159,14 +172,12 @@ public class DefaultViewController {
 
 		UserPicture userPicture = userPictureService.findOneById(id);
 
-		ObjectId objectId = new ObjectId(userPicture.getId());
-		LocalDate localDate = objectId.getDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+		Path filePath = userPictureService.getUserPictureFilePath(userPicture, Constants.IMAGE_SIZE_TYPE.LARGE);
 
 		try {
-			ByteArrayOutputStream byteStream = FileUtils.readImageFile(storageProperties.getUserPictureLargePath(), localDate, userPicture.getId(), userPicture.getContentType());
 			response.setContentType(userPicture.getContentType());
 
-			byteStream.writeTo(response.getOutputStream());
+			Files.copy(filePath, response.getOutputStream());
 		} catch (IOException e) {
 			throw new ServiceException(ServiceError.IO_EXCEPTION, e);
 		}
@@ -179,14 +190,12 @@ public class DefaultViewController {
 
 		UserPicture userPicture = userPictureService.findOneById(id);
 
-		ObjectId objectId = new ObjectId(userPicture.getId());
-		LocalDate localDate = objectId.getDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+		Path filePath = userPictureService.getUserPictureFilePath(userPicture, Constants.IMAGE_SIZE_TYPE.SMALL);
 
 		try {
-			ByteArrayOutputStream byteStream = FileUtils.readImageFile(storageProperties.getUserPictureSmallPath(), localDate, userPicture.getId(), userPicture.getContentType());
 			response.setContentType(userPicture.getContentType());
 
-			byteStream.writeTo(response.getOutputStream());
+			Files.copy(filePath, response.getOutputStream());
 		} catch (IOException e) {
 			throw new ServiceException(ServiceError.IO_EXCEPTION, e);
 		}
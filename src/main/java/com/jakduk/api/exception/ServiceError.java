@@ -45,6 +45,7 @@ public enum ServiceError {
     NOT_FOUND_FOOTBALL_CLUB(HttpStatus.SC_NOT_FOUND, "exception.not.found.football.club"),
     NOT_FOUND_GALLERY(HttpStatus.SC_NOT_FOUND, "exception.not.found.gallery"),
     NOT_FOUND_GALLERY_FILE(HttpStatus.SC_NOT_FOUND, "exception.not.found.gallery.file"),
+    NOT_FOUND_GALLERY_UPLOAD(HttpStatus.SC_NOT_FOUND, "exception.not.found.gallery.upload"),
     NOT_FOUND_COMPETITION(HttpStatus.SC_NOT_FOUND, "exception.not.found.competition"),
     NOT_FOUND_ATTENDANCE_LEAGUE(HttpStatus.SC_NOT_FOUND, "exception.not.found.attendance.league"),
     NOT_FOUND_ATTENDANCE_CLUB(HttpStatus.SC_NOT_FOUND, "exception.not.found.attendance.club"),
@@ -58,8 +59,14 @@ public enum ServiceError {
 
     SEND_EMAIL_FAILED(HttpStatus.SC_INTERNAL_SERVER_ERROR, "exception.send.email.failed"),
     GALLERY_IO_ERROR(HttpStatus.SC_INTERNAL_SERVER_ERROR, "exception.gallery.io"),
+    GALLERY_ZIP_TOO_LARGE(HttpStatus.SC_REQUEST_TOO_LONG, "exception.gallery.zip.too.large"),
+    GALLERY_UPLOAD_OFFSET_MISMATCH(HttpStatus.SC_CONFLICT, "exception.gallery.upload.offset.mismatch"),
+    GALLERY_UPLOAD_CHECKSUM_MISMATCH(HttpStatus.SC_BAD_REQUEST, "exception.gallery.upload.checksum.mismatch"),
+    GALLERY_UPLOAD_INCOMPLETE(HttpStatus.SC_BAD_REQUEST, "exception.gallery.upload.incomplete"),
+    JOB_ALREADY_RUNNING(HttpStatus.SC_CONFLICT, "exception.job.already.running"),
     ELASTICSEARCH_NOT_FOUND_INDEX(HttpStatus.SC_INTERNAL_SERVER_ERROR, "exception.elasticsearch.not.found.index"),
-    ELASTICSEARCH_INDEX_FAILED(HttpStatus.SC_INTERNAL_SERVER_ERROR, "exception.elasticsearch.index.failed");
+    ELASTICSEARCH_INDEX_FAILED(HttpStatus.SC_INTERNAL_SERVER_ERROR, "exception.elasticsearch.index.failed"),
+    ELASTICSEARCH_SEARCH_FAILED(HttpStatus.SC_INTERNAL_SERVER_ERROR, "exception.elasticsearch.search.failed");
 
     private final Integer httpStatus;
     private final String code;
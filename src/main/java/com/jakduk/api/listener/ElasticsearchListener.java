@@ -1,30 +1,43 @@
 package com.jakduk.api.listener;
 
+import com.jakduk.api.common.Constants;
 import com.jakduk.api.common.rabbitmq.ElasticsearchRoutingKey;
 import com.jakduk.api.common.util.ObjectMapperUtils;
 import com.jakduk.api.configuration.JakdukProperties;
-import com.jakduk.api.exception.ServiceError;
-import com.jakduk.api.exception.ServiceException;
 import com.jakduk.api.model.elasticsearch.EsArticle;
 import com.jakduk.api.model.elasticsearch.EsComment;
 import com.jakduk.api.model.elasticsearch.EsGallery;
 import com.jakduk.api.model.elasticsearch.EsSearchWord;
+import com.jakduk.api.service.RelatedArticleService;
 import com.jakduk.api.service.SearchService;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Delivery;
+import com.rabbitmq.client.Envelope;
+import org.elasticsearch.action.DocWriteRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.amqp.core.Message;
-import org.springframework.amqp.rabbit.annotation.RabbitListener;
-import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import java.io.IOException;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
 
 /**
  * Created by pyohwanjang on 2017. 6. 20..
+ *
+ * elasticsearch 큐를 구독(basicConsume)하고, 확인(ack)하지 않은 메시지를 jakduk.elasticsearch.listener-batch-size 개까지 받는다(prefetch).
+ * 받아둔 메시지를 한번에 꺼내서, 같은 문서에 대한 요청은 마지막 색인/삭제만 남기고 문서 ID 로 나눈 묶음(partition)별로 bulk 를 보낸다.
+ * 같은 문서는 항상 같은 묶음에 들어가므로 순서가 지켜진다.
+ * bulk 가 끝나면 반영하지 못한 문서를 담은 메시지만 큐로 되돌리고 나머지는 확인(ack)한다. 되돌린 메시지가 있으면 잠시 쉬고 다시 받는다.
+ * 색인한 글이 있으면 그 글의 댓글 문서들도 고치고, 비슷한 글을 다시 찾아 둔다.
  */
 
 @Component
@@ -32,57 +45,314 @@ public class ElasticsearchListener {
 
     private final Logger log = LoggerFactory.getLogger(this.getClass());
 
+    private static final String QUEUE_ELASTICSEARCH = "elasticsearch";
+    // ES 나 RabbitMQ 에 연결이 안 되거나, 반영하지 못한 메시지를 되돌렸을 때 다시 받기 전에 쉬는 시간
+    private static final long ERROR_BACKOFF_MS = 5000;
+
     @Resource private JakdukProperties.Rabbitmq rabbitmqProperties;
+    @Resource private JakdukProperties.Elasticsearch elasticsearchProperties;
 
+    @Autowired private RabbitTemplate rabbitTemplate;
     @Autowired private SearchService searchService;
+    @Autowired private RelatedArticleService relatedArticleService;
+
+    // 실제 routing key -> ElasticsearchRoutingKey
+    private Map<String, ElasticsearchRoutingKey> routingKeys;
+
+    private String queueName;
+    private int batchSize;
+    private long pollIntervalMs;
+    private int partitions;
+
+    // 구독한 채널과, 그 채널로 받아서 아직 꺼내지 않은 메시지
+    private Channel channel;
+    private final BlockingQueue<Delivery> deliveries = new LinkedBlockingQueue<>();
+
+    private ExecutorService consumerExecutor;
+    private ExecutorService partitionExecutor;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void init() {
+
+        routingKeys = Arrays.stream(ElasticsearchRoutingKey.values())
+                .filter(routingKey -> rabbitmqProperties.getRoutingKeys().containsKey(routingKey.getRoutingKey()))
+                .collect(Collectors.toMap(routingKey -> rabbitmqProperties.getRoutingKeys().get(routingKey.getRoutingKey()),
+                        routingKey -> routingKey));
+
+        queueName = rabbitmqProperties.getQueues().get(QUEUE_ELASTICSEARCH).getBindingQueueName();
+        batchSize = Objects.nonNull(elasticsearchProperties.getListenerBatchSize()) ? elasticsearchProperties.getListenerBatchSize() : 500;
+        pollIntervalMs = Objects.nonNull(elasticsearchProperties.getListenerPollIntervalMs()) ? elasticsearchProperties.getListenerPollIntervalMs() : 500L;
+        partitions = Objects.nonNull(elasticsearchProperties.getListenerPartitions()) ?
+                Math.max(1, elasticsearchProperties.getListenerPartitions()) : 1;
+
+        consumerExecutor = Executors.newSingleThreadExecutor();
+        partitionExecutor = Executors.newFixedThreadPool(partitions);
+
+        running = true;
+        consumerExecutor.submit(this::consume);
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        running = false;
+        consumerExecutor.shutdown();
+        consumerExecutor.awaitTermination(30, TimeUnit.SECONDS);
+        partitionExecutor.shutdown();
+    }
+
+    private void consume() {
+
+        while (running) {
+            try {
+                if (Objects.isNull(channel) || ! channel.isOpen())
+                    this.subscribe();
+
+                List<Delivery> received = this.receive();
+
+                if (! received.isEmpty() && this.process(received) > 0)
+                    Thread.sleep(ERROR_BACKOFF_MS);
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (IOException | RuntimeException e) {
+                log.warn("failed to consume elasticsearch messages. retry after {}ms", ERROR_BACKOFF_MS, e);
+
+                // 확인하지 않은 메시지는 채널을 닫으면 큐로 돌아간다.
+                this.closeChannel();
+
+                try {
+                    Thread.sleep(ERROR_BACKOFF_MS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+
+        this.closeChannel();
+    }
 
-    @RabbitListener(queues = "${jakduk.rabbitmq.queues.elasticsearch.binding-queue-name}")
-    public void receive(Message message, @Header(AmqpHeaders.RECEIVED_ROUTING_KEY) String routingKey) throws IOException {
+    /**
+     * 큐를 구독한다. 확인하지 않은 메시지는 batchSize 개까지만 받는다.
+     */
+    private void subscribe() throws IOException {
+
+        this.closeChannel();
+
+        channel = rabbitTemplate.getConnectionFactory().createConnection().createChannel(false);
+        channel.basicQos(batchSize);
+        channel.basicConsume(queueName, false, new DefaultConsumer(channel) {
+            @Override
+            public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body) {
+                deliveries.add(new Delivery(envelope, properties, body));
+            }
+        });
+    }
 
-        String findKey = rabbitmqProperties.getRoutingKeys().entrySet().stream()
-                .filter(entity -> entity.getValue().equals(routingKey))
-                .findFirst()
-                .map(Map.Entry::getKey)
-                .orElseThrow(() -> new ServiceException(ServiceError.ILLEGAL_ARGUMENT));
+    private void closeChannel() {
+
+        if (Objects.nonNull(channel)) {
+            try {
+                if (channel.isOpen())
+                    channel.close();
+            } catch (IOException | TimeoutException | RuntimeException e) {
+                log.debug("failed to close elasticsearch listener channel.", e);
+            }
+
+            channel = null;
+        }
+
+        // 닫은 채널로 받은 메시지는 확인할 수 없고, 큐로 돌아가서 다시 온다.
+        deliveries.clear();
+    }
+
+    /**
+     * 받아둔 메시지를 batchSize 개까지 꺼낸다. 없으면 pollIntervalMs 동안 기다린다.
+     */
+    private List<Delivery> receive() throws InterruptedException {
+
+        Delivery delivery = deliveries.poll(pollIntervalMs, TimeUnit.MILLISECONDS);
+
+        if (Objects.isNull(delivery))
+            return Collections.emptyList();
+
+        List<Delivery> received = new ArrayList<>();
+        received.add(delivery);
+        deliveries.drainTo(received, batchSize - 1);
+
+        return received;
+    }
+
+    /**
+     * 메시지들을 검색 백엔드에 반영하고, 반영하지 못한 문서가 있는 메시지만 큐로 되돌린다.
+     *
+     * @return 되돌린 메시지 개수
+     */
+    private int process(List<Delivery> received) throws IOException {
+
+        Set<Long> failedDeliveryTags = this.write(received);
+
+        if (failedDeliveryTags.isEmpty()) {
+            channel.basicAck(received.get(received.size() - 1).getEnvelope().getDeliveryTag(), true);
+            return 0;
+        }
 
-        ElasticsearchRoutingKey elasticsearchRoutingKey = ElasticsearchRoutingKey.find(findKey);
+        for (Delivery delivery : received) {
+            long deliveryTag = delivery.getEnvelope().getDeliveryTag();
+
+            if (failedDeliveryTags.contains(deliveryTag))
+                channel.basicNack(deliveryTag, false, true);
+            else
+                channel.basicAck(deliveryTag, false);
+        }
+
+        log.warn("elasticsearch messages requeued. requeued={}, received={}", failedDeliveryTags.size(), received.size());
+
+        return failedDeliveryTags.size();
+    }
+
+    /**
+     * @return 반영하지 못한 문서를 담은 메시지의 delivery tag
+     */
+    private Set<Long> write(List<Delivery> received) {
+
+        // 문서별로 마지막 요청만 남긴다. ID 가 없는 검색어는 모두 남긴다.
+        Map<String, DocWriteRequest<?>> requests = new LinkedHashMap<>();
+        // 문서별로 그 문서에 대한 요청을 담은 메시지. 문서를 반영하지 못하면 모두 되돌린다.
+        Map<String, Set<Long>> deliveryTags = new HashMap<>();
+        // 색인한 글. 댓글 문서에 넣어둔 글의 정보를 고친다.
+        Map<String, EsArticle> articles = new LinkedHashMap<>();
+
+        for (Delivery delivery : received) {
+            String routingKey = delivery.getEnvelope().getRoutingKey();
+            long deliveryTag = delivery.getEnvelope().getDeliveryTag();
+            ElasticsearchRoutingKey elasticsearchRoutingKey = routingKeys.get(routingKey);
+
+            if (Objects.isNull(elasticsearchRoutingKey)) {
+                log.warn("unknown elasticsearch routing key. routingKey={}", routingKey);
+                continue;
+            }
+
+            try {
+                for (DocWriteRequest<?> request : this.toRequests(elasticsearchRoutingKey, delivery.getBody(), articles)) {
+                    String documentKey = this.getDocumentKey(request, deliveryTag);
+
+                    requests.remove(documentKey);
+                    requests.put(documentKey, request);
+                    deliveryTags.computeIfAbsent(documentKey, key -> new HashSet<>()).add(deliveryTag);
+                }
+            } catch (IOException | RuntimeException e) {
+                log.error("failed to read elasticsearch message. so skip it! routingKey={}", routingKey, e);
+            }
+        }
+
+        Map<Integer, List<DocWriteRequest<?>>> requestsByPartition = new HashMap<>();
+
+        requests.forEach((documentKey, request) ->
+                requestsByPartition.computeIfAbsent(Math.floorMod(documentKey.hashCode(), partitions), partition -> new ArrayList<>())
+                        .add(request));
+
+        log.debug("elasticsearch messages received. messages={}, documents={}", received.size(), requests.size());
+
+        // 같은 문서의 요청은 하나만 남겼으므로, 돌려받은 요청은 남긴 요청과 같은 객체이다.
+        Set<DocWriteRequest<?>> failedRequests = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        if (requestsByPartition.size() <= 1) {
+            requestsByPartition.values().forEach(partition -> failedRequests.addAll(this.execute(partition)));
+        } else {
+            List<CompletableFuture<List<DocWriteRequest<?>>>> futures = requestsByPartition.values().stream()
+                    .map(partition -> CompletableFuture.supplyAsync(() -> this.execute(partition), partitionExecutor))
+                    .collect(Collectors.toList());
+
+            futures.forEach(future -> failedRequests.addAll(future.join()));
+        }
+
+        Set<Long> failedDeliveryTags = new HashSet<>();
+
+        requests.forEach((documentKey, request) -> {
+            if (failedRequests.contains(request))
+                failedDeliveryTags.addAll(deliveryTags.get(documentKey));
+        });
+
+        failedRequests.stream()
+                .filter(request -> Constants.ES_TYPE_ARTICLE.equals(request.type()))
+                .forEach(request -> articles.remove(request.id()));
+
+        searchService.updateCommentArticles(articles.values());
+
+        List<String> deletedArticleIds = requests.values().stream()
+                .filter(request -> request.opType() == DocWriteRequest.OpType.DELETE && Constants.ES_TYPE_ARTICLE.equals(request.type()))
+                .filter(request -> ! failedRequests.contains(request))
+                .map(DocWriteRequest::id)
+                .collect(Collectors.toList());
+
+        relatedArticleService.scheduleRefresh(articles.keySet());
+        relatedArticleService.remove(deletedArticleIds);
+
+        return failedDeliveryTags;
+    }
+
+    /**
+     * 요청을 보내고 반영하지 못한 요청들을 돌려준다. bulk 전체가 실패하면 모든 요청을 돌려준다.
+     */
+    private List<DocWriteRequest<?>> execute(List<DocWriteRequest<?>> partition) {
+        try {
+            return searchService.execute(partition);
+        } catch (RuntimeException e) {
+            log.error("failed to write search documents. documents={}", partition.size(), e);
+            return partition;
+        }
+    }
+
+    private String getDocumentKey(DocWriteRequest<?> request, long deliveryTag) {
+        return Objects.nonNull(request.id()) ?
+                String.join("/", request.index(), request.type(), request.id()) : "#" + deliveryTag;
+    }
+
+    private List<DocWriteRequest<?>> toRequests(ElasticsearchRoutingKey elasticsearchRoutingKey, byte[] body,
+                                                Map<String, EsArticle> articles) throws IOException {
 
         switch (elasticsearchRoutingKey) {
             case ELASTICSEARCH_INDEX_DOCUMENT_ARTICLE:
-                EsArticle esArticle = ObjectMapperUtils.readValue(message.getBody(), EsArticle.class);
-                searchService.indexDocumentArticle(esArticle);
-                break;
+                EsArticle esArticle = ObjectMapperUtils.readValue(body, EsArticle.class);
+                articles.put(esArticle.getId(), esArticle);
+                return Collections.singletonList(searchService.getArticleIndexRequest(esArticle));
 
-                case ELASTICSEARCH_DELETE_DOCUMENT_ARTICLE:
-                String boardId = ObjectMapperUtils.readValue(message.getBody(), String.class);
-                    searchService.deleteDocumentBoard(boardId);
-                break;
+            case ELASTICSEARCH_DELETE_DOCUMENT_ARTICLE:
+                String boardId = ObjectMapperUtils.readValue(body, String.class);
+                articles.remove(boardId);
+                return Collections.singletonList(searchService.getArticleDeleteRequest(boardId));
 
             case ELASTICSEARCH_INDEX_DOCUMENT_ARTICLE_COMMENT:
-                EsComment esComment = ObjectMapperUtils.readValue(message.getBody(), EsComment.class);
-                searchService.indexDocumentBoardComment(esComment);
-                break;
+                EsComment esComment = ObjectMapperUtils.readValue(body, EsComment.class);
+                return Collections.singletonList(searchService.getCommentIndexRequest(esComment));
 
             case ELASTICSEARCH_DELETE_DOCUMENT_ARTICLE_COMMENT:
-                String commentId = ObjectMapperUtils.readValue(message.getBody(), String.class);
-                searchService.deleteDocumentBoardComment(commentId);
-                break;
+                String commentId = ObjectMapperUtils.readValue(body, String.class);
+                return Collections.singletonList(searchService.getCommentDeleteRequest(commentId));
 
             case ELASTICSEARCH_INDEX_DOCUMENT_GALLERY:
-                EsGallery esGallery = ObjectMapperUtils.readValue(message.getBody(), EsGallery.class);
-                searchService.indexDocumentGallery(esGallery);
-                break;
+                EsGallery esGallery = ObjectMapperUtils.readValue(body, EsGallery.class);
+                return Collections.singletonList(searchService.getGalleryIndexRequest(esGallery));
+
+            case ELASTICSEARCH_INDEX_DOCUMENT_GALLERIES:
+                EsGallery[] esGalleries = ObjectMapperUtils.readValue(body, EsGallery[].class);
+                return Arrays.stream(esGalleries)
+                        .map(searchService::getGalleryIndexRequest)
+                        .collect(Collectors.toList());
 
             case ELASTICSEARCH_DELETE_DOCUMENT_GALLERY:
-                String galleryId = ObjectMapperUtils.readValue(message.getBody(), String.class);
-                searchService.deleteDocumentGallery(galleryId);
-                break;
+                String galleryId = ObjectMapperUtils.readValue(body, String.class);
+                return Collections.singletonList(searchService.getGalleryDeleteRequest(galleryId));
 
             case ELASTICSEARCH_INDEX_DOCUMENT_SEARCH_WORD:
-                EsSearchWord esSearchWord = ObjectMapperUtils.readValue(message.getBody(), EsSearchWord.class);
-                searchService.indexDocumentSearchWord(esSearchWord);
-                break;
+                EsSearchWord esSearchWord = ObjectMapperUtils.readValue(body, EsSearchWord.class);
+                return Collections.singletonList(searchService.getSearchWordIndexRequest(esSearchWord));
 
+            default:
+                return Collections.emptyList();
         }
     }
 
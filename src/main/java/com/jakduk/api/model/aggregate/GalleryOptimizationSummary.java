@@ -0,0 +1,28 @@
+package com.jakduk.api.model.aggregate;
+
+/**
+ * 최적화한 사진들의 용량 합계
+ */
+
+public class GalleryOptimizationSummary {
+	private Long count = 0L; // 사진 수
+	private Long fileSize = 0L; // 올린 용량의 합
+	private Long size = 0L; // 저장된 용량의 합
+	private Long savedSize = 0L; // 사진별로 줄어든 용량의 합
+
+	public Long getCount() {
+		return count;
+	}
+
+	public Long getFileSize() {
+		return fileSize;
+	}
+
+	public Long getSize() {
+		return size;
+	}
+
+	public Long getSavedSize() {
+		return savedSize;
+	}
+}
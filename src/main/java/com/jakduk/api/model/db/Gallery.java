@@ -27,7 +27,14 @@ public class Gallery {
 	private String fileName;
 	private Long size;
 	private Long fileSize;
+	private Integer width; // 가로 길이
+	private Integer height; // 세로 길이
+	private String placeholder; // 로딩 전에 보여줄 작은 미리보기 (data URI)
 	private String hash;
+	private String mediaId; // 내용 주소 저장소(Media) ID. 없으면 예전 날짜별 경로에 저장된 사진
+	private Long perceptualHash; // 비슷한 사진을 찾기 위한 dHash
+	private Boolean optimized; // 메타데이터 제거, 포맷별 재압축을 거친 사진인지
+	private Long savedSize; // 최적화로 줄어든 용량. 올릴 때는 올린 용량과 저장된 용량의 차이, backfill 때는 바꾸기 전과 후의 차이
 	private List<LinkedItem> linkedItems;
 	private List<String> batch;
 
@@ -103,6 +110,14 @@ public class Gallery {
 		this.hash = hash;
 	}
 
+	public String getMediaId() {
+		return mediaId;
+	}
+
+	public void setMediaId(String mediaId) {
+		this.mediaId = mediaId;
+	}
+
 	public List<LinkedItem> getLinkedItems() {
 		return linkedItems;
 	}
@@ -118,4 +133,52 @@ public class Gallery {
 	public void setBatch(List<String> batch) {
 		this.batch = batch;
 	}
+
+	public Integer getWidth() {
+		return width;
+	}
+
+	public void setWidth(Integer width) {
+		this.width = width;
+	}
+
+	public Integer getHeight() {
+		return height;
+	}
+
+	public void setHeight(Integer height) {
+		this.height = height;
+	}
+
+	public String getPlaceholder() {
+		return placeholder;
+	}
+
+	public void setPlaceholder(String placeholder) {
+		this.placeholder = placeholder;
+	}
+
+	public Long getPerceptualHash() {
+		return perceptualHash;
+	}
+
+	public void setPerceptualHash(Long perceptualHash) {
+		this.perceptualHash = perceptualHash;
+	}
+
+	public Boolean getOptimized() {
+		return optimized;
+	}
+
+	public void setOptimized(Boolean optimized) {
+		this.optimized = optimized;
+	}
+
+	public Long getSavedSize() {
+		return savedSize;
+	}
+
+	public void setSavedSize(Long savedSize) {
+		this.savedSize = savedSize;
+	}
 }
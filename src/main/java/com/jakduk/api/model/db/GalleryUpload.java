@@ -0,0 +1,89 @@
+package com.jakduk.api.model.db;
+
+import com.jakduk.api.model.embedded.CommonWriter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * 조각(chunk)으로 나눠 올리는 중인 사진. 받은 내용은 jakduk.storage.upload-path 의 {id} 파일에 이어 쓴다.
+ */
+
+@Document
+public class GalleryUpload {
+
+	@Id
+	private String id;
+	private CommonWriter writer;
+	private String fileName;
+	private String contentType;
+	private Long size; // 전체 크기
+	private Long offset; // 지금까지 받은 크기. 다음 조각은 여기서부터 받는다.
+	private LocalDateTime createdAt;
+	private LocalDateTime updatedAt;
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public CommonWriter getWriter() {
+		return writer;
+	}
+
+	public void setWriter(CommonWriter writer) {
+		this.writer = writer;
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	public void setFileName(String fileName) {
+		this.fileName = fileName;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	public void setContentType(String contentType) {
+		this.contentType = contentType;
+	}
+
+	public Long getSize() {
+		return size;
+	}
+
+	public void setSize(Long size) {
+		this.size = size;
+	}
+
+	public Long getOffset() {
+		return offset;
+	}
+
+	public void setOffset(Long offset) {
+		this.offset = offset;
+	}
+
+	public LocalDateTime getCreatedAt() {
+		return createdAt;
+	}
+
+	public void setCreatedAt(LocalDateTime createdAt) {
+		this.createdAt = createdAt;
+	}
+
+	public LocalDateTime getUpdatedAt() {
+		return updatedAt;
+	}
+
+	public void setUpdatedAt(LocalDateTime updatedAt) {
+		this.updatedAt = updatedAt;
+	}
+}
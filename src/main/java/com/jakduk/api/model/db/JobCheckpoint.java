@@ -0,0 +1,107 @@
+package com.jakduk.api.model.db;
+
+import com.jakduk.api.common.Constants;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * 오래 걸리는 배치 작업의 진행 상태. 서버가 재시작되어도 이어서 할 수 있도록 저장한다.
+ */
+
+@Document
+public class JobCheckpoint {
+
+	@Id
+	private String id; // 작업 이름
+	private Constants.JOB_STATUS_TYPE status;
+	private String lastId; // 마지막으로 처리한 ID. 여기서부터 이어서 한다.
+	private Integer width;
+	private Integer height;
+	private Long total;
+	private Long processed;
+	private Long failed;
+	private LocalDateTime startedAt;
+	private LocalDateTime updatedAt;
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public Constants.JOB_STATUS_TYPE getStatus() {
+		return status;
+	}
+
+	public void setStatus(Constants.JOB_STATUS_TYPE status) {
+		this.status = status;
+	}
+
+	public String getLastId() {
+		return lastId;
+	}
+
+	public void setLastId(String lastId) {
+		this.lastId = lastId;
+	}
+
+	public Integer getWidth() {
+		return width;
+	}
+
+	public void setWidth(Integer width) {
+		this.width = width;
+	}
+
+	public Integer getHeight() {
+		return height;
+	}
+
+	public void setHeight(Integer height) {
+		this.height = height;
+	}
+
+	public Long getTotal() {
+		return total;
+	}
+
+	public void setTotal(Long total) {
+		this.total = total;
+	}
+
+	public Long getProcessed() {
+		return processed;
+	}
+
+	public void setProcessed(Long processed) {
+		this.processed = processed;
+	}
+
+	public Long getFailed() {
+		return failed;
+	}
+
+	public void setFailed(Long failed) {
+		this.failed = failed;
+	}
+
+	public LocalDateTime getStartedAt() {
+		return startedAt;
+	}
+
+	public void setStartedAt(LocalDateTime startedAt) {
+		this.startedAt = startedAt;
+	}
+
+	public LocalDateTime getUpdatedAt() {
+		return updatedAt;
+	}
+
+	public void setUpdatedAt(LocalDateTime updatedAt) {
+		this.updatedAt = updatedAt;
+	}
+}
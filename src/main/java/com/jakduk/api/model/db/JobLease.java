@@ -0,0 +1,43 @@
+package com.jakduk.api.model.db;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * 여러 서버에서 같이 도는 예약 작업을 한 서버만 하도록 잡는 권한
+ */
+
+@Document
+public class JobLease {
+
+	@Id
+	private String id; // 작업 이름
+	private String owner; // 서버 이름
+	private LocalDateTime leaseUntil; // 이 시각이 지나면 다른 서버가 가져간다.
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getOwner() {
+		return owner;
+	}
+
+	public void setOwner(String owner) {
+		this.owner = owner;
+	}
+
+	public LocalDateTime getLeaseUntil() {
+		return leaseUntil;
+	}
+
+	public void setLeaseUntil(LocalDateTime leaseUntil) {
+		this.leaseUntil = leaseUntil;
+	}
+}
@@ -0,0 +1,84 @@
+package com.jakduk.api.model.db;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 내용 주소(content hash) 기반 미디어 저장소의 원본 정보
+ * 같은 내용의 사진은 하나의 Media 를 공유하고, referenceCount 로 몇 개의 Gallery, UserPicture 가 가리키는지 센다.
+ */
+
+@Document
+public class Media {
+
+    @Id
+    private String id; // 콘텐츠 hash (MD5)
+    private String contentType;
+    private List<String> contentTypes; // 파생 이미지를 만든 콘텐츠 타입들. 같은 내용이 다른 타입으로 올라오면 그 타입으로도 만든다.
+    private Long size; // 업로드 된 원본 크기
+    private Integer referenceCount;
+    private LocalDateTime deletingAt; // 참조 수가 0 이 되어 파일을 지우기 시작한 시각. 지우는 동안에는 참조할 수 없다.
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public List<String> getContentTypes() {
+        return contentTypes;
+    }
+
+    public void setContentTypes(List<String> contentTypes) {
+        this.contentTypes = contentTypes;
+    }
+
+    public Long getSize() {
+        return size;
+    }
+
+    public void setSize(Long size) {
+        this.size = size;
+    }
+
+    public Integer getReferenceCount() {
+        return referenceCount;
+    }
+
+    public void setReferenceCount(Integer referenceCount) {
+        this.referenceCount = referenceCount;
+    }
+
+    public LocalDateTime getDeletingAt() {
+        return deletingAt;
+    }
+
+    public void setDeletingAt(LocalDateTime deletingAt) {
+        this.deletingAt = deletingAt;
+    }
+
+    @Override
+    public String toString() {
+        return "Media{" +
+                "id='" + id + '\'' +
+                ", contentType='" + contentType + '\'' +
+                ", contentTypes=" + contentTypes +
+                ", size=" + size +
+                ", referenceCount=" + referenceCount +
+                ", deletingAt=" + deletingAt +
+                '}';
+    }
+}
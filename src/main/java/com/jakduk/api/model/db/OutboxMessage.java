@@ -0,0 +1,122 @@
+package com.jakduk.api.model.db;
+
+import com.jakduk.api.common.Constants;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * RabbitMQ 로 보낼 메시지. 글, 댓글 등을 저장할 때 함께 저장하고 OutboxRelay 가 순서대로 보낸다.
+ * body, contentType, headers 는 RabbitTemplate 의 MessageConverter 가 만든 그대로이다.
+ */
+
+@Document
+@CompoundIndex(name = "status_id", def = "{'status': 1, '_id': 1}")
+public class OutboxMessage {
+
+	@Id
+	private String id; // ObjectId. 만든 순서대로 보낸다.
+	private String queue; // email, elasticsearch
+	private String routingKey;
+	private String body;
+	private String contentType;
+	private Map<String, Object> headers;
+	private Constants.OUTBOX_STATUS_TYPE status;
+	private Integer attempts; // 보내다 실패한 횟수
+	private String lastError;
+	private LocalDateTime createdAt;
+	@Indexed(expireAfterSeconds = Constants.OUTBOX_SENT_RETENTION_SECONDS)
+	private LocalDateTime sentAt;
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getQueue() {
+		return queue;
+	}
+
+	public void setQueue(String queue) {
+		this.queue = queue;
+	}
+
+	public String getRoutingKey() {
+		return routingKey;
+	}
+
+	public void setRoutingKey(String routingKey) {
+		this.routingKey = routingKey;
+	}
+
+	public String getBody() {
+		return body;
+	}
+
+	public void setBody(String body) {
+		this.body = body;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	public void setContentType(String contentType) {
+		this.contentType = contentType;
+	}
+
+	public Map<String, Object> getHeaders() {
+		return headers;
+	}
+
+	public void setHeaders(Map<String, Object> headers) {
+		this.headers = headers;
+	}
+
+	public Constants.OUTBOX_STATUS_TYPE getStatus() {
+		return status;
+	}
+
+	public void setStatus(Constants.OUTBOX_STATUS_TYPE status) {
+		this.status = status;
+	}
+
+	public Integer getAttempts() {
+		return attempts;
+	}
+
+	public void setAttempts(Integer attempts) {
+		this.attempts = attempts;
+	}
+
+	public String getLastError() {
+		return lastError;
+	}
+
+	public void setLastError(String lastError) {
+		this.lastError = lastError;
+	}
+
+	public LocalDateTime getCreatedAt() {
+		return createdAt;
+	}
+
+	public void setCreatedAt(LocalDateTime createdAt) {
+		this.createdAt = createdAt;
+	}
+
+	public LocalDateTime getSentAt() {
+		return sentAt;
+	}
+
+	public void setSentAt(LocalDateTime sentAt) {
+		this.sentAt = sentAt;
+	}
+}
@@ -0,0 +1,43 @@
+package com.jakduk.api.model.db;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * outbox 를 보내는 서버. 메시지 순서를 지키기 위해 한 서버만 보낸다.
+ */
+
+@Document
+public class OutboxRelayLease {
+
+	@Id
+	private String id;
+	private String owner; // 서버 이름
+	private LocalDateTime leaseUntil; // 이 시각까지 갱신하지 않으면 다른 서버가 가져간다.
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getOwner() {
+		return owner;
+	}
+
+	public void setOwner(String owner) {
+		this.owner = owner;
+	}
+
+	public LocalDateTime getLeaseUntil() {
+		return leaseUntil;
+	}
+
+	public void setLeaseUntil(LocalDateTime leaseUntil) {
+		this.leaseUntil = leaseUntil;
+	}
+}
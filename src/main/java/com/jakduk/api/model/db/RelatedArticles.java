@@ -0,0 +1,49 @@
+package com.jakduk.api.model.db;
+
+import com.jakduk.api.model.embedded.RelatedArticle;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 글마다 미리 찾아 둔 비슷한 글. id 는 글ID 이다.
+ */
+
+@Document
+@CompoundIndex(name = "articles_id", def = "{'articles._id': 1}")
+public class RelatedArticles {
+
+	@Id
+	private String id;
+	private List<RelatedArticle> articles;
+	@Indexed
+	private LocalDateTime updatedAt;
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public List<RelatedArticle> getArticles() {
+		return articles;
+	}
+
+	public void setArticles(List<RelatedArticle> articles) {
+		this.articles = articles;
+	}
+
+	public LocalDateTime getUpdatedAt() {
+		return updatedAt;
+	}
+
+	public void setUpdatedAt(LocalDateTime updatedAt) {
+		this.updatedAt = updatedAt;
+	}
+}
@@ -0,0 +1,43 @@
+package com.jakduk.api.model.db;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * 다시 색인하는 중인 alias. 모든 서버가 이것을 읽고, 이 alias 로 보내는 문서 ID 를 SearchReindexWrite 에 남긴다.
+ */
+
+@Document
+public class SearchReindexCapture {
+
+	@Id
+	private String id; // alias
+	private String index; // 만들고 있는 새 인덱스
+	private LocalDateTime startedAt;
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getIndex() {
+		return index;
+	}
+
+	public void setIndex(String index) {
+		this.index = index;
+	}
+
+	public LocalDateTime getStartedAt() {
+		return startedAt;
+	}
+
+	public void setStartedAt(LocalDateTime startedAt) {
+		this.startedAt = startedAt;
+	}
+}
@@ -0,0 +1,57 @@
+package com.jakduk.api.model.db;
+
+import com.jakduk.api.common.Constants;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * 다시 색인하는 동안 어느 서버에서든 색인/삭제 요청을 보낸 문서.
+ * 요청 내용은 남기지 않고, 새 인덱스에 반영할 때 Mongo 에서 문서를 다시 읽는다.
+ */
+
+@Document
+public class SearchReindexWrite {
+
+	@Id
+	private String id;
+	@Indexed
+	private String alias;
+	private String documentId;
+	@Indexed(expireAfterSeconds = Constants.ES_REINDEX_CAPTURE_RETENTION_SECONDS)
+	private LocalDateTime createdAt;
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getAlias() {
+		return alias;
+	}
+
+	public void setAlias(String alias) {
+		this.alias = alias;
+	}
+
+	public String getDocumentId() {
+		return documentId;
+	}
+
+	public void setDocumentId(String documentId) {
+		this.documentId = documentId;
+	}
+
+	public LocalDateTime getCreatedAt() {
+		return createdAt;
+	}
+
+	public void setCreatedAt(LocalDateTime createdAt) {
+		this.createdAt = createdAt;
+	}
+}
@@ -0,0 +1,63 @@
+package com.jakduk.api.model.db;
+
+import com.jakduk.api.model.embedded.SearchWordCount;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 서버(node)별 하루 동안의 인기 검색어 요약. 서버들이 각자 저장하고, 서로의 것을 합쳐서 인기 검색어를 만든다.
+ */
+
+@Document
+public class SearchWordSnapshot {
+
+	@Id
+	private String id;
+	private String node;
+	private String date; // yyyy-MM-dd
+	private List<SearchWordCount> words;
+	private LocalDateTime updatedAt;
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getNode() {
+		return node;
+	}
+
+	public void setNode(String node) {
+		this.node = node;
+	}
+
+	public String getDate() {
+		return date;
+	}
+
+	public void setDate(String date) {
+		this.date = date;
+	}
+
+	public List<SearchWordCount> getWords() {
+		return words;
+	}
+
+	public void setWords(List<SearchWordCount> words) {
+		this.words = words;
+	}
+
+	public LocalDateTime getUpdatedAt() {
+		return updatedAt;
+	}
+
+	public void setUpdatedAt(LocalDateTime updatedAt) {
+		this.updatedAt = updatedAt;
+	}
+}
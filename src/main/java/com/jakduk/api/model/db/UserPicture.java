@@ -16,6 +16,7 @@ public class UserPicture {
     private String id;
     private Constants.GALLERY_STATUS_TYPE status;
     private String contentType;
+    private String mediaId; // 내용 주소 저장소(Media) ID. 없으면 예전 날짜별 경로에 저장된 사진
 
     public String getId() {
         return id;
@@ -40,4 +41,12 @@ public class UserPicture {
     public void setContentType(String contentType) {
         this.contentType = contentType;
     }
+
+    public String getMediaId() {
+        return mediaId;
+    }
+
+    public void setMediaId(String mediaId) {
+        this.mediaId = mediaId;
+    }
 }
@@ -0,0 +1,63 @@
+package com.jakduk.api.model.embedded;
+
+/**
+ * 비슷한 글
+ */
+
+public class RelatedArticle {
+
+	private String id; // 글ID
+	private Integer seq; // 글번호
+	private String board; // 게시판
+	private CommonWriter writer; // 글쓴이
+	private String subject; // 글제목
+	private Float score; // more like this 점수
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public Integer getSeq() {
+		return seq;
+	}
+
+	public void setSeq(Integer seq) {
+		this.seq = seq;
+	}
+
+	public String getBoard() {
+		return board;
+	}
+
+	public void setBoard(String board) {
+		this.board = board;
+	}
+
+	public CommonWriter getWriter() {
+		return writer;
+	}
+
+	public void setWriter(CommonWriter writer) {
+		this.writer = writer;
+	}
+
+	public String getSubject() {
+		return subject;
+	}
+
+	public void setSubject(String subject) {
+		this.subject = subject;
+	}
+
+	public Float getScore() {
+		return score;
+	}
+
+	public void setScore(Float score) {
+		this.score = score;
+	}
+}
@@ -0,0 +1,45 @@
+package com.jakduk.api.model.embedded;
+
+/**
+ * 검색어와 검색 수. error 는 Space-Saving 에서 넘겨받은 값으로, 실제 검색 수는 count - error 이상이다.
+ */
+
+public class SearchWordCount {
+
+	private String word;
+	private Long count;
+	private Long error;
+
+	public SearchWordCount() {
+	}
+
+	public SearchWordCount(String word, Long count, Long error) {
+		this.word = word;
+		this.count = count;
+		this.error = error;
+	}
+
+	public String getWord() {
+		return word;
+	}
+
+	public void setWord(String word) {
+		this.word = word;
+	}
+
+	public Long getCount() {
+		return count;
+	}
+
+	public void setCount(Long count) {
+		this.count = count;
+	}
+
+	public Long getError() {
+		return error;
+	}
+
+	public void setError(Long error) {
+		this.error = error;
+	}
+}
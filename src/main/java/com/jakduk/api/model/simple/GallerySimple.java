@@ -19,6 +19,9 @@ public class GallerySimple {
 	private String id;
 	private String name;
 	private CommonWriter writer;
+	private Integer width; // 가로 길이
+	private Integer height; // 세로 길이
+	private String placeholder; // 로딩 전에 보여줄 작은 미리보기 (data URI)
 
 	public String getId() {
 		return id;
@@ -31,4 +34,16 @@ public class GallerySimple {
 	public CommonWriter getWriter() {
 		return writer;
 	}
+
+	public Integer getWidth() {
+		return width;
+	}
+
+	public Integer getHeight() {
+		return height;
+	}
+
+	public String getPlaceholder() {
+		return placeholder;
+	}
 }
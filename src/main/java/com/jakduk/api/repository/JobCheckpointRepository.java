@@ -0,0 +1,12 @@
+package com.jakduk.api.repository;
+
+import com.jakduk.api.model.db.JobCheckpoint;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.Optional;
+
+public interface JobCheckpointRepository extends MongoRepository<JobCheckpoint, String> {
+
+	Optional<JobCheckpoint> findOneById(String id);
+
+}
@@ -0,0 +1,7 @@
+package com.jakduk.api.repository;
+
+import com.jakduk.api.model.db.JobLease;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface JobLeaseRepository extends MongoRepository<JobLease, String>, JobLeaseRepositoryCustom {
+}
@@ -0,0 +1,12 @@
+package com.jakduk.api.repository;
+
+import java.time.LocalDateTime;
+
+public interface JobLeaseRepositoryCustom {
+
+    /**
+     * 작업 권한을 가져오거나 연장한다. 다른 서버가 가지고 있으면 false.
+     */
+    Boolean acquireLease(String id, String owner, LocalDateTime now, LocalDateTime leaseUntil);
+
+}
@@ -0,0 +1,44 @@
+package com.jakduk.api.repository;
+
+import com.jakduk.api.model.db.JobLease;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+@Repository
+public class JobLeaseRepositoryImpl implements JobLeaseRepositoryCustom {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    /**
+     * 내가 가지고 있거나 기한이 지난 lease 만 가져온다. 다른 서버가 가지고 있으면 upsert 가 같은 _id 로 insert 하다 실패한다.
+     */
+    @Override
+    public Boolean acquireLease(String id, String owner, LocalDateTime now, LocalDateTime leaseUntil) {
+        Query query = new Query(Criteria.where("_id").is(id)
+                .orOperator(Criteria.where("owner").is(owner), Criteria.where("leaseUntil").lt(now)));
+
+        Update update = new Update()
+                .set("owner", owner)
+                .set("leaseUntil", leaseUntil);
+
+        try {
+            JobLease lease = mongoTemplate.findAndModify(query, update,
+                    FindAndModifyOptions.options().upsert(true).returnNew(true), JobLease.class);
+
+            return Objects.nonNull(lease);
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,7 @@
+package com.jakduk.api.repository;
+
+import com.jakduk.api.model.db.SearchReindexCapture;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface SearchReindexCaptureRepository extends MongoRepository<SearchReindexCapture, String> {
+}
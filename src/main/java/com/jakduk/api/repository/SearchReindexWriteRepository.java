@@ -0,0 +1,18 @@
+package com.jakduk.api.repository;
+
+import com.jakduk.api.model.db.SearchReindexWrite;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface SearchReindexWriteRepository extends MongoRepository<SearchReindexWrite, String> {
+
+	List<SearchReindexWrite> findByAlias(String alias, Pageable pageable);
+
+	Long deleteByIdIn(Collection<String> ids);
+
+	Long deleteByAlias(String alias);
+
+}
@@ -0,0 +1,19 @@
+package com.jakduk.api.repository;
+
+import com.jakduk.api.model.db.SearchWordSnapshot;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface SearchWordSnapshotRepository extends MongoRepository<SearchWordSnapshot, String> {
+
+	Optional<SearchWordSnapshot> findOneByNodeAndDate(String node, String date);
+
+	List<SearchWordSnapshot> findByDateGreaterThanEqual(String date);
+
+	List<SearchWordSnapshot> findByNodeAndDateGreaterThanEqual(String node, String date);
+
+	Long deleteByDateLessThan(String date);
+
+}
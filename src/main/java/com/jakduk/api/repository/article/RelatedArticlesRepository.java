@@ -0,0 +1,12 @@
+package com.jakduk.api.repository.article;
+
+import com.jakduk.api.model.db.RelatedArticles;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.Collection;
+
+public interface RelatedArticlesRepository extends MongoRepository<RelatedArticles, String>, RelatedArticlesRepositoryCustom {
+
+	Long deleteByIdIn(Collection<String> ids);
+
+}
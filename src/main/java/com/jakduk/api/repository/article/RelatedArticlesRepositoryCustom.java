@@ -0,0 +1,19 @@
+package com.jakduk.api.repository.article;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface RelatedArticlesRepositoryCustom {
+
+    /**
+     * 비슷한 글 목록에서 지운 글들을 빼고, 목록이 바뀐 글ID 를 돌려준다.
+     */
+    List<String> pullRelatedArticles(Collection<String> articleIds);
+
+    /**
+     * updatedAt 이전에 찾은 글ID 를 오래된 순으로 가져온다.
+     */
+    List<String> findIdsUpdatedBefore(LocalDateTime updatedAt, Integer limit);
+
+}
@@ -0,0 +1,72 @@
+package com.jakduk.api.repository.article;
+
+import com.jakduk.api.model.db.RelatedArticles;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Repository
+public class RelatedArticlesRepositoryImpl implements RelatedArticlesRepositoryCustom {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    /**
+     * 비슷한 글 목록에서 지운 글들을 빼고, 목록이 바뀐 글ID 를 돌려준다.
+     */
+    @Override
+    public List<String> pullRelatedArticles(Collection<String> articleIds) {
+
+        if (articleIds.isEmpty())
+            return Collections.emptyList();
+
+        List<ObjectId> objectIds = articleIds.stream()
+                .map(ObjectId::new)
+                .collect(Collectors.toList());
+
+        Query query = new Query(Criteria.where("articles._id").in(objectIds));
+        query.fields().include("_id");
+
+        List<String> ids = mongoTemplate.find(query, RelatedArticles.class).stream()
+                .map(RelatedArticles::getId)
+                .collect(Collectors.toList());
+
+        if (ids.isEmpty())
+            return ids;
+
+        Update update = new Update().pull("articles", new Document("_id", new Document("$in", objectIds)));
+
+        mongoTemplate.updateMulti(new Query(Criteria.where("articles._id").in(objectIds)), update, RelatedArticles.class);
+
+        return ids;
+    }
+
+    /**
+     * updatedAt 이전에 찾은 글ID 를 오래된 순으로 가져온다.
+     */
+    @Override
+    public List<String> findIdsUpdatedBefore(LocalDateTime updatedAt, Integer limit) {
+        Query query = new Query(Criteria.where("updatedAt").lt(updatedAt));
+        query.fields().include("_id");
+        query.limit(limit);
+
+        query.with(new Sort(Sort.Direction.ASC, "updatedAt"));
+
+        return mongoTemplate.find(query, RelatedArticles.class).stream()
+                .map(RelatedArticles::getId)
+                .collect(Collectors.toList());
+    }
+
+}
@@ -1,6 +1,7 @@
 package com.jakduk.api.repository.gallery;
 
 import com.jakduk.api.common.Constants;
+import com.jakduk.api.model.aggregate.GalleryOptimizationSummary;
 import com.jakduk.api.model.db.Gallery;
 import com.jakduk.api.model.simple.GallerySimple;
 import org.bson.types.ObjectId;
@@ -27,4 +28,57 @@ public interface GalleryRepositoryCustom {
      */
     List<GallerySimple> findSimpleById(ObjectId id, Integer limit);
 
+    /**
+     * 여러 Gallery 의 연결된 아이템, 이름, 상태를 한번의 bulk write 로 저장한다.
+     */
+    void updateLinkedItemsInBulk(List<Gallery> galleries);
+
+    /**
+     * ID 다음부터 상태와 상관없이 Gallery 목록을 ID 순으로 가져온다. ID 가 없으면 처음부터.
+     */
+    List<Gallery> findGalleriesAfter(ObjectId id, Integer limit);
+
+    /**
+     * ID 보다 오래된 TEMP 상태의 Gallery 목록을 오래된 순으로 가져온다.
+     */
+    List<Gallery> findTempGalleriesBefore(ObjectId id, Integer limit);
+
+    /**
+     * TEMP 상태인 Gallery 만 지운다.
+     *
+     * @return 지운 Gallery. 이미 지워졌거나 TEMP 가 아니면 null
+     */
+    Gallery findAndRemoveTempGallery(String id);
+
+    /**
+     * ID 다음부터 dHash 가 있는 ENABLE 상태의 Gallery 의 ID 와 dHash 만 ID 순으로 가져온다. ID 가 없으면 처음부터.
+     */
+    List<Gallery> findPerceptualHashesAfter(ObjectId id, Integer limit);
+
+    /**
+     * ID 다음부터 ENABLE 상태의 Gallery 의 이름, 올린이만 ID 순으로 가져온다. ID 가 없으면 처음부터.
+     */
+    List<Gallery> findEnableGalleriesAfter(ObjectId id, Integer limit);
+
+    /**
+     * 여러 Item 에 연결된 ENABLE 상태의 Gallery 의 연결된 아이템만 가져온다.
+     */
+    List<Gallery> findLinkedItemsByItemIdsAndFromType(List<ObjectId> itemIds, Constants.GALLERY_FROM_TYPE fromType);
+
+    /**
+     * ID 다음부터 아직 최적화하지 않은 Gallery 목록을 ID 순으로 가져온다. ID 가 없으면 처음부터.
+     */
+    List<Gallery> findUnoptimizedGalleriesAfter(ObjectId id, Integer limit);
+
+    /**
+     * 최적화한 사진의 크기, 줄어든 용량, 가로, 세로 길이를 저장한다.
+     * 내용 주소 저장소(Media)에 있는 사진이면 같은 Media 를 쓰는 Gallery 들을 모두 바꾼다.
+     */
+    void updateOptimizedImage(Gallery gallery);
+
+    /**
+     * 최적화한 사진들의 올린 용량, 저장된 용량, 줄어든 용량의 합
+     */
+    GalleryOptimizationSummary getOptimizationSummary();
+
 }
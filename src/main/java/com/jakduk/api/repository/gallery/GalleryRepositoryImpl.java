@@ -1,14 +1,21 @@
 package com.jakduk.api.repository.gallery;
 
 import com.jakduk.api.common.Constants;
+import com.jakduk.api.model.aggregate.GalleryOptimizationSummary;
 import com.jakduk.api.model.db.Gallery;
 import com.jakduk.api.model.simple.GallerySimple;
+import org.apache.commons.lang3.StringUtils;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -80,4 +87,183 @@ public class GalleryRepositoryImpl implements GalleryRepositoryCustom {
 
         return mongoTemplate.find(query, GallerySimple.class);
     }
+
+    /**
+     * 여러 Gallery 의 연결된 아이템, 이름, 상태를 한번의 bulk write 로 저장한다.
+     */
+    @Override
+    public void updateLinkedItemsInBulk(List<Gallery> galleries) {
+
+        if (galleries.isEmpty())
+            return;
+
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Gallery.class);
+
+        galleries.forEach(gallery -> {
+            Query query = new Query(Criteria.where("_id").is(new ObjectId(gallery.getId())));
+
+            Update update = new Update()
+                    .set("linkedItems", gallery.getLinkedItems())
+                    .set("name", gallery.getName())
+                    .set("status", gallery.getStatus());
+
+            bulkOperations.updateOne(query, update);
+        });
+
+        bulkOperations.execute();
+    }
+
+    /**
+     * ID 다음부터 상태와 상관없이 Gallery 목록을 ID 순으로 가져온다. ID 가 없으면 처음부터.
+     */
+    @Override
+    public List<Gallery> findGalleriesAfter(ObjectId id, Integer limit) {
+        Query query = new Query();
+        query.limit(limit);
+
+        if (Objects.nonNull(id))
+            query.addCriteria(Criteria.where("_id").gt(id));
+
+        query.with(new Sort(Sort.Direction.ASC, "_id"));
+
+        return mongoTemplate.find(query, Gallery.class);
+    }
+
+    /**
+     * ID 보다 오래된 TEMP 상태의 Gallery 목록을 오래된 순으로 가져온다.
+     */
+    @Override
+    public List<Gallery> findTempGalleriesBefore(ObjectId id, Integer limit) {
+        Query query = new Query();
+        query.addCriteria(Criteria.where("status.status").is(Constants.GALLERY_STATUS_TYPE.TEMP.name()));
+        query.addCriteria(Criteria.where("_id").lt(id));
+        query.limit(limit);
+
+        query.with(new Sort(Sort.Direction.ASC, "_id"));
+
+        return mongoTemplate.find(query, Gallery.class);
+    }
+
+    /**
+     * TEMP 상태인 Gallery 만 지운다.
+     */
+    @Override
+    public Gallery findAndRemoveTempGallery(String id) {
+        Query query = new Query();
+        query.addCriteria(Criteria.where("_id").is(new ObjectId(id)));
+        query.addCriteria(Criteria.where("status.status").is(Constants.GALLERY_STATUS_TYPE.TEMP.name()));
+
+        return mongoTemplate.findAndRemove(query, Gallery.class);
+    }
+
+    /**
+     * ID 다음부터 dHash 가 있는 ENABLE 상태의 Gallery 의 ID 와 dHash 만 ID 순으로 가져온다. ID 가 없으면 처음부터.
+     */
+    @Override
+    public List<Gallery> findPerceptualHashesAfter(ObjectId id, Integer limit) {
+        Query query = new Query();
+        query.addCriteria(Criteria.where("status.status").is(Constants.GALLERY_STATUS_TYPE.ENABLE.name()));
+        query.addCriteria(Criteria.where("perceptualHash").exists(true));
+        query.fields().include("perceptualHash");
+        query.limit(limit);
+
+        if (Objects.nonNull(id))
+            query.addCriteria(Criteria.where("_id").gt(id));
+
+        query.with(new Sort(Sort.Direction.ASC, "_id"));
+
+        return mongoTemplate.find(query, Gallery.class);
+    }
+
+    /**
+     * ID 다음부터 ENABLE 상태의 Gallery 의 이름, 올린이만 ID 순으로 가져온다. ID 가 없으면 처음부터.
+     */
+    @Override
+    public List<Gallery> findEnableGalleriesAfter(ObjectId id, Integer limit) {
+        Query query = new Query();
+        query.addCriteria(Criteria.where("status.status").is(Constants.GALLERY_STATUS_TYPE.ENABLE.name()));
+        query.fields().include("name").include("writer");
+        query.limit(limit);
+
+        if (Objects.nonNull(id))
+            query.addCriteria(Criteria.where("_id").gt(id));
+
+        query.with(new Sort(Sort.Direction.ASC, "_id"));
+
+        return mongoTemplate.find(query, Gallery.class);
+    }
+
+    /**
+     * 여러 Item 에 연결된 ENABLE 상태의 Gallery 의 연결된 아이템만 가져온다.
+     */
+    @Override
+    public List<Gallery> findLinkedItemsByItemIdsAndFromType(List<ObjectId> itemIds, Constants.GALLERY_FROM_TYPE fromType) {
+        Query query = new Query();
+        query.addCriteria(Criteria.where("status.status").is(Constants.GALLERY_STATUS_TYPE.ENABLE.name()));
+        query.addCriteria(Criteria.where("linkedItems._id").in(itemIds));
+        query.addCriteria(Criteria.where("linkedItems.from").is(fromType));
+        query.fields().include("linkedItems");
+
+        query.with(new Sort(Sort.Direction.ASC, "_id"));
+
+        return mongoTemplate.find(query, Gallery.class);
+    }
+
+    /**
+     * ID 다음부터 아직 최적화하지 않은 Gallery 목록을 ID 순으로 가져온다. ID 가 없으면 처음부터.
+     */
+    @Override
+    public List<Gallery> findUnoptimizedGalleriesAfter(ObjectId id, Integer limit) {
+        Query query = new Query();
+        query.addCriteria(Criteria.where("optimized").ne(true));
+        query.limit(limit);
+
+        if (Objects.nonNull(id))
+            query.addCriteria(Criteria.where("_id").gt(id));
+
+        query.with(new Sort(Sort.Direction.ASC, "_id"));
+
+        return mongoTemplate.find(query, Gallery.class);
+    }
+
+    /**
+     * 최적화한 사진의 크기, 가로, 세로 길이를 저장한다.
+     * 내용 주소 저장소(Media)에 있는 사진이면 같은 Media 를 쓰는 Gallery 들을 모두 바꾼다.
+     */
+    @Override
+    public void updateOptimizedImage(Gallery gallery) {
+        Query query = StringUtils.isNotBlank(gallery.getMediaId()) ?
+                new Query(Criteria.where("mediaId").is(gallery.getMediaId())) :
+                new Query(Criteria.where("_id").is(new ObjectId(gallery.getId())));
+
+        Update update = new Update()
+                .set("optimized", true)
+                .set("size", gallery.getSize())
+                .set("savedSize", gallery.getSavedSize())
+                .set("width", gallery.getWidth())
+                .set("height", gallery.getHeight());
+
+        mongoTemplate.updateMulti(query, update, Gallery.class);
+    }
+
+    /**
+     * 최적화한 사진들의 올린 용량, 저장된 용량, 줄어든 용량의 합
+     */
+    @Override
+    public GalleryOptimizationSummary getOptimizationSummary() {
+        AggregationOperation match = Aggregation.match(Criteria.where("optimized").is(true));
+        AggregationOperation group = Aggregation.group()
+                .count().as("count")
+                .sum("fileSize").as("fileSize")
+                .sum("size").as("size")
+                .sum("savedSize").as("savedSize");
+
+        Aggregation aggregation = Aggregation.newAggregation(match, group);
+        AggregationResults<GalleryOptimizationSummary> results = mongoTemplate.aggregate(aggregation, Gallery.class,
+                GalleryOptimizationSummary.class);
+
+        GalleryOptimizationSummary summary = results.getUniqueMappedResult();
+
+        return Objects.nonNull(summary) ? summary : new GalleryOptimizationSummary();
+    }
 }
@@ -0,0 +1,16 @@
+package com.jakduk.api.repository.gallery;
+
+import com.jakduk.api.model.db.GalleryUpload;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface GalleryUploadRepository extends MongoRepository<GalleryUpload, String> {
+
+	Optional<GalleryUpload> findOneById(String id);
+
+	List<GalleryUpload> findByUpdatedAtBefore(LocalDateTime updatedAt);
+
+}
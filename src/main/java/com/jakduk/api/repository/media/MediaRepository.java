@@ -0,0 +1,12 @@
+package com.jakduk.api.repository.media;
+
+import com.jakduk.api.model.db.Media;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.Optional;
+
+public interface MediaRepository extends MongoRepository<Media, String>, MediaRepositoryCustom {
+
+    Optional<Media> findOneById(String id);
+
+}
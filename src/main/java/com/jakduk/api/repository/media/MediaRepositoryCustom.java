@@ -0,0 +1,38 @@
+package com.jakduk.api.repository.media;
+
+import com.jakduk.api.model.db.Media;
+
+import java.time.LocalDateTime;
+
+public interface MediaRepositoryCustom {
+
+    /**
+     * 참조 수를 1 늘리고 콘텐츠 타입을 contentTypes 에 더한다. Media 가 없으면 참조 수 1 로 만든다.
+     * 파일을 지우는 중이면 늘리지 않는다. 단 staleBefore 전에 지우기 시작했으면 지우기를 멈춘 것으로 보고 늘린다.
+     *
+     * @return 늘어난 후의 Media. 파일을 지우는 중이면 null
+     */
+    Media increaseReferenceCount(String id, String contentType, Long size, LocalDateTime staleBefore);
+
+    /**
+     * 참조 수가 0 보다 크면 1 줄인다.
+     *
+     * @return 줄어든 후의 Media. 없거나 이미 0 이면 null
+     */
+    Media decreaseReferenceCount(String id);
+
+    /**
+     * 참조 수가 0 이하이고 아무도 지우고 있지 않으면, 지우기 시작한 것으로 표시한다.
+     *
+     * @return 표시한 후의 Media. 그 사이 다시 참조되었거나 다른 곳에서 지우는 중이면 null
+     */
+    Media startDeletion(String id, LocalDateTime now);
+
+    /**
+     * startDeletion 으로 표시한 그대로인 경우에만 지운다.
+     *
+     * @return 지웠으면 true
+     */
+    Boolean finishDeletion(String id, LocalDateTime deletingAt);
+
+}
@@ -0,0 +1,76 @@
+package com.jakduk.api.repository.media;
+
+import com.jakduk.api.model.db.Media;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public class MediaRepositoryImpl implements MediaRepositoryCustom {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    /**
+     * 참조 수를 1 늘리고 콘텐츠 타입을 contentTypes 에 더한다. Media 가 없으면 참조 수 1 로 만든다.
+     * 파일을 지우는 중이면 upsert 가 같은 _id 로 insert 하다 실패한다.
+     */
+    @Override
+    public Media increaseReferenceCount(String id, String contentType, Long size, LocalDateTime staleBefore) {
+        Query query = new Query(Criteria.where("_id").is(id)
+                .orOperator(Criteria.where("deletingAt").is(null), Criteria.where("deletingAt").lt(staleBefore)));
+
+        Update update = new Update()
+                .inc("referenceCount", 1)
+                .addToSet("contentTypes", contentType)
+                .unset("deletingAt")
+                .setOnInsert("contentType", contentType)
+                .setOnInsert("size", size);
+
+        try {
+            return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().upsert(true).returnNew(true), Media.class);
+        } catch (DuplicateKeyException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 참조 수가 0 보다 크면 1 줄인다.
+     */
+    @Override
+    public Media decreaseReferenceCount(String id) {
+        Query query = new Query(Criteria.where("_id").is(id).and("referenceCount").gt(0));
+        Update update = new Update().inc("referenceCount", -1);
+
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), Media.class);
+    }
+
+    /**
+     * 참조 수가 0 이하이고 아무도 지우고 있지 않으면, 지우기 시작한 것으로 표시한다.
+     */
+    @Override
+    public Media startDeletion(String id, LocalDateTime now) {
+        Query query = new Query(Criteria.where("_id").is(id).and("referenceCount").lte(0).and("deletingAt").is(null));
+        Update update = new Update().set("deletingAt", now);
+
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), Media.class);
+    }
+
+    /**
+     * startDeletion 으로 표시한 그대로인 경우에만 지운다.
+     */
+    @Override
+    public Boolean finishDeletion(String id, LocalDateTime deletingAt) {
+        Query query = new Query(Criteria.where("_id").is(id).and("referenceCount").lte(0).and("deletingAt").is(deletingAt));
+
+        return mongoTemplate.remove(query, Media.class).getDeletedCount() > 0;
+    }
+
+}
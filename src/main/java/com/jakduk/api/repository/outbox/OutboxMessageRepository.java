@@ -0,0 +1,7 @@
+package com.jakduk.api.repository.outbox;
+
+import com.jakduk.api.model.db.OutboxMessage;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface OutboxMessageRepository extends MongoRepository<OutboxMessage, String>, OutboxMessageRepositoryCustom {
+}
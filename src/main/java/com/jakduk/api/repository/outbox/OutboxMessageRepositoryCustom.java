@@ -0,0 +1,30 @@
+package com.jakduk.api.repository.outbox;
+
+import com.jakduk.api.model.db.OutboxMessage;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface OutboxMessageRepositoryCustom {
+
+    /**
+     * 보내지 않은 메시지를 오래된 순으로 가져온다.
+     */
+    List<OutboxMessage> findPendingMessages(Integer limit);
+
+    void markSent(Collection<String> ids, LocalDateTime sentAt);
+
+    void markFailed(Collection<String> ids, String error);
+
+    /**
+     * 더 보내지 않도록 PARKED 로 바꾼다.
+     */
+    void markParked(String id, String error);
+
+    /**
+     * outbox 를 보낼 권한을 가져오거나 연장한다. 다른 서버가 가지고 있으면 false.
+     */
+    Boolean acquireRelayLease(String owner, LocalDateTime now, LocalDateTime leaseUntil);
+
+}
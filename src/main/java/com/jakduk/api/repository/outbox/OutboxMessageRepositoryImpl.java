@@ -0,0 +1,92 @@
+package com.jakduk.api.repository.outbox;
+
+import com.jakduk.api.common.Constants;
+import com.jakduk.api.model.db.OutboxMessage;
+import com.jakduk.api.model.db.OutboxRelayLease;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+@Repository
+public class OutboxMessageRepositoryImpl implements OutboxMessageRepositoryCustom {
+
+    private static final String RELAY_LEASE_ID = "outbox";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Override
+    public List<OutboxMessage> findPendingMessages(Integer limit) {
+        Query query = new Query(Criteria.where("status").is(Constants.OUTBOX_STATUS_TYPE.PENDING))
+                .with(new Sort(Sort.Direction.ASC, "_id"))
+                .limit(limit);
+
+        return mongoTemplate.find(query, OutboxMessage.class);
+    }
+
+    @Override
+    public void markSent(Collection<String> ids, LocalDateTime sentAt) {
+        Query query = new Query(Criteria.where("_id").in(ids));
+        Update update = new Update()
+                .set("status", Constants.OUTBOX_STATUS_TYPE.SENT)
+                .set("sentAt", sentAt)
+                .unset("lastError");
+
+        mongoTemplate.updateMulti(query, update, OutboxMessage.class);
+    }
+
+    @Override
+    public void markFailed(Collection<String> ids, String error) {
+        Query query = new Query(Criteria.where("_id").in(ids));
+        Update update = new Update()
+                .inc("attempts", 1)
+                .set("lastError", error);
+
+        mongoTemplate.updateMulti(query, update, OutboxMessage.class);
+    }
+
+    @Override
+    public void markParked(String id, String error) {
+        Query query = new Query(Criteria.where("_id").is(id));
+        Update update = new Update()
+                .set("status", Constants.OUTBOX_STATUS_TYPE.PARKED)
+                .inc("attempts", 1)
+                .set("lastError", error);
+
+        mongoTemplate.updateFirst(query, update, OutboxMessage.class);
+    }
+
+    /**
+     * 내가 가지고 있거나 기한이 지난 lease 만 가져온다. 다른 서버가 가지고 있으면 upsert 가 같은 _id 로 insert 하다 실패한다.
+     */
+    @Override
+    public Boolean acquireRelayLease(String owner, LocalDateTime now, LocalDateTime leaseUntil) {
+        Query query = new Query(Criteria.where("_id").is(RELAY_LEASE_ID)
+                .orOperator(Criteria.where("owner").is(owner), Criteria.where("leaseUntil").lt(now)));
+
+        Update update = new Update()
+                .set("owner", owner)
+                .set("leaseUntil", leaseUntil);
+
+        try {
+            OutboxRelayLease lease = mongoTemplate.findAndModify(query, update,
+                    FindAndModifyOptions.options().upsert(true).returnNew(true), OutboxRelayLease.class);
+
+            return Objects.nonNull(lease);
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+}
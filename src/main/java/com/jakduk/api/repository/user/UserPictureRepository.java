@@ -3,12 +3,15 @@ package com.jakduk.api.repository.user;
 import com.jakduk.api.model.db.UserPicture;
 import org.springframework.data.mongodb.repository.MongoRepository;
 
+import java.util.List;
 import java.util.Optional;
 
 /**
  * Created by pyohwan on 17. 2. 16.
  */
-public interface UserPictureRepository extends MongoRepository<UserPicture, String> {
+public interface UserPictureRepository extends MongoRepository<UserPicture, String>, UserPictureRepositoryCustom {
 
     Optional<UserPicture> findOneById(String id);
+
+    List<UserPicture> findByIdIn(List<String> ids);
 }
@@ -0,0 +1,21 @@
+package com.jakduk.api.repository.user;
+
+import com.jakduk.api.model.db.UserPicture;
+import org.bson.types.ObjectId;
+
+import java.util.List;
+
+public interface UserPictureRepositoryCustom {
+
+    /**
+     * ID 보다 오래된 TEMP 상태의 UserPicture 목록을 오래된 순으로 가져온다.
+     */
+    List<UserPicture> findTempUserPicturesBefore(ObjectId id, Integer limit);
+
+    /**
+     * TEMP 상태인 UserPicture 만 지운다.
+     *
+     * @return 지운 UserPicture. 이미 지워졌거나 TEMP 가 아니면 null
+     */
+    UserPicture findAndRemoveTempUserPicture(String id);
+}
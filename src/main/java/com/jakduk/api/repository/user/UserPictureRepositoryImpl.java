@@ -0,0 +1,47 @@
+package com.jakduk.api.repository.user;
+
+import com.jakduk.api.common.Constants;
+import com.jakduk.api.model.db.UserPicture;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public class UserPictureRepositoryImpl implements UserPictureRepositoryCustom {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    /**
+     * ID 보다 오래된 TEMP 상태의 UserPicture 목록을 오래된 순으로 가져온다.
+     */
+    @Override
+    public List<UserPicture> findTempUserPicturesBefore(ObjectId id, Integer limit) {
+        Query query = new Query();
+        query.addCriteria(Criteria.where("status").is(Constants.GALLERY_STATUS_TYPE.TEMP.name()));
+        query.addCriteria(Criteria.where("_id").lt(id));
+        query.limit(limit);
+
+        query.with(new Sort(Sort.Direction.ASC, "_id"));
+
+        return mongoTemplate.find(query, UserPicture.class);
+    }
+
+    /**
+     * TEMP 상태인 UserPicture 만 지운다.
+     */
+    @Override
+    public UserPicture findAndRemoveTempUserPicture(String id) {
+        Query query = new Query();
+        query.addCriteria(Criteria.where("_id").is(new ObjectId(id)));
+        query.addCriteria(Criteria.where("status").is(Constants.GALLERY_STATUS_TYPE.TEMP.name()));
+
+        return mongoTemplate.findAndRemove(query, UserPicture.class);
+    }
+}
@@ -9,7 +9,12 @@ import com.jakduk.api.restcontroller.vo.admin.*;
 import com.jakduk.api.service.AdminService;
 import com.jakduk.api.service.CommonService;
 import com.jakduk.api.service.CompetitionService;
+import com.jakduk.api.service.ElasticsearchBulkService;
+import com.jakduk.api.service.ImageOptimizationService;
+import com.jakduk.api.service.SearchReindexService;
 import com.jakduk.api.service.StatsService;
+import com.jakduk.api.service.TempGalleryCleanupService;
+import com.jakduk.api.service.ThumbnailRegenerationService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeanUtils;
@@ -46,6 +51,21 @@ public class AdminRestController {
 	@Autowired
 	private CompetitionService competitionService;
 
+	@Autowired
+	private TempGalleryCleanupService tempGalleryCleanupService;
+
+	@Autowired
+	private ThumbnailRegenerationService thumbnailRegenerationService;
+
+	@Autowired
+	private ImageOptimizationService imageOptimizationService;
+
+	@Autowired
+	private ElasticsearchBulkService elasticsearchBulkService;
+
+	@Autowired
+	private SearchReindexService searchReindexService;
+
 	// 알림판 목록
 	@RequestMapping(value = "/home/descriptions", method = RequestMethod.GET)
 	public Map<String, Object> getHomeDescriptions() {
@@ -538,10 +558,76 @@ public class AdminRestController {
 		return data;
 	}
 
-	// 썸네일 크기 지정
+	// 썸네일 크기 지정. 사진 ID 가 없으면 전체 썸네일을 다시 만드는 작업을 시작한다.
 	@RequestMapping(value = "/thumbnail/size", method = RequestMethod.POST)
-	public EmptyJsonResponse thumbnailSizeWrite(@RequestBody ThumbnailSizeWrite thumbnailSizeWrite) {
-		adminService.thumbnailSizeWrite(thumbnailSizeWrite);
+	public EmptyJsonResponse thumbnailSizeWrite(@Valid @RequestBody ThumbnailSizeWrite thumbnailSizeWrite) {
+		thumbnailRegenerationService.regenerate(thumbnailSizeWrite.getWidth(), thumbnailSizeWrite.getHeight(),
+				thumbnailSizeWrite.getGalleryId());
+		return EmptyJsonResponse.newInstance();
+	}
+
+	// 썸네일 다시 만들기 진행 상태
+	@RequestMapping(value = "/thumbnail/regeneration", method = RequestMethod.GET)
+	public Map<String, Object> getThumbnailRegeneration() {
+		return thumbnailRegenerationService.getProgress();
+	}
+
+	// 썸네일 다시 만들기 중단. 다시 시작하면 이어서 한다.
+	@RequestMapping(value = "/thumbnail/regeneration", method = RequestMethod.DELETE)
+	public EmptyJsonResponse stopThumbnailRegeneration() {
+		thumbnailRegenerationService.stop();
+		return EmptyJsonResponse.newInstance();
+	}
+
+	// TEMP 사진 청소 통계
+	@RequestMapping(value = "/storage/temp/cleanup", method = RequestMethod.GET)
+	public Map<String, Object> getTempCleanupStatistics() {
+		return tempGalleryCleanupService.getStatistics();
+	}
+
+	// 사진 최적화로 줄어든 용량
+	@RequestMapping(value = "/storage/optimization", method = RequestMethod.GET)
+	public Map<String, Object> getImageOptimizationReport() {
+		return imageOptimizationService.getReport();
+	}
+
+	// 이미 저장된 사진 최적화 시작. 다시 시작하면 남은 사진만 한다.
+	@RequestMapping(value = "/storage/optimization/backfill", method = RequestMethod.POST)
+	public EmptyJsonResponse startImageOptimizationBackfill() {
+		imageOptimizationService.backfill();
+		return EmptyJsonResponse.newInstance();
+	}
+
+	// 사진 최적화 중단
+	@RequestMapping(value = "/storage/optimization/backfill", method = RequestMethod.DELETE)
+	public EmptyJsonResponse stopImageOptimizationBackfill() {
+		imageOptimizationService.stop();
+		return EmptyJsonResponse.newInstance();
+	}
+
+	// Elasticsearch bulk 색인 통계
+	@RequestMapping(value = "/search/bulk", method = RequestMethod.GET)
+	public Map<String, Object> getSearchBulkStatistics() {
+		return elasticsearchBulkService.getStatistics();
+	}
+
+	// 게시판, 사진 인덱스 다시 만들기 진행 상태
+	@RequestMapping(value = "/search/reindex", method = RequestMethod.GET)
+	public Map<String, Object> getSearchReindexProgress() {
+		return searchReindexService.getProgress();
+	}
+
+	// 게시판, 사진 인덱스 다시 만들기 시작. 인덱스별("board", "gallery") settings, mappings 를 받을 수 있다.
+	@RequestMapping(value = "/search/reindex", method = RequestMethod.POST)
+	public EmptyJsonResponse startSearchReindex(@RequestBody(required = false) Map<String, Object> indexSources) {
+		searchReindexService.reindex(indexSources);
+		return EmptyJsonResponse.newInstance();
+	}
+
+	// 게시판, 사진 인덱스 다시 만들기 중단. 만들던 인덱스는 지운다.
+	@RequestMapping(value = "/search/reindex", method = RequestMethod.DELETE)
+	public EmptyJsonResponse stopSearchReindex() {
+		searchReindexService.stop();
 		return EmptyJsonResponse.newInstance();
 	}
 
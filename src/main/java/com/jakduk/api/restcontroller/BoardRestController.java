@@ -25,6 +25,7 @@ import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.CollectionUtils;
 import org.springframework.web.bind.WebDataBinder;
@@ -34,6 +35,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import java.beans.PropertyEditorSupport;
+import java.io.IOException;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -97,6 +99,28 @@ public class BoardRestController {
         return articleService.getArticleDetail(commonWriter, board, seq, isAddCookie);
     }
 
+    // 글에 엮인 사진들을 ZIP 으로 내려받기
+    @GetMapping("/{board}/{seq}/galleries.zip")
+    public void getArticleGalleriesZip(
+            @PathVariable Constants.BOARD_TYPE board, // 게시판
+            @PathVariable Integer seq, // 글 seq
+            HttpServletResponse response) {
+
+        Article article = articleService.findOneBySeq(board, seq);
+
+        List<Gallery> galleries = galleryService.getGalleriesForZip(article.getId(), Constants.GALLERY_FROM_TYPE.ARTICLE);
+
+        response.setContentType("application/zip");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                String.format("attachment; filename=\"%s-%d-galleries.zip\"", board.name().toLowerCase(), seq));
+
+        try {
+            galleryService.writeGalleriesZip(galleries, response.getOutputStream());
+        } catch (IOException e) {
+            throw new ServiceException(ServiceError.GALLERY_IO_ERROR, e);
+        }
+    }
+
     // 게시판 말머리 목록
     @GetMapping("/{board}/categories")
     public GetBoardCategoriesResponse getBoardCategories(
@@ -7,11 +7,14 @@ import com.jakduk.api.common.util.UrlGenerationUtils;
 import com.jakduk.api.exception.ServiceError;
 import com.jakduk.api.exception.ServiceException;
 import com.jakduk.api.model.db.Gallery;
+import com.jakduk.api.model.db.GalleryUpload;
 import com.jakduk.api.model.embedded.CommonWriter;
 import com.jakduk.api.restcontroller.vo.EmptyJsonResponse;
 import com.jakduk.api.restcontroller.vo.gallery.*;
 import com.jakduk.api.restcontroller.vo.user.SessionUser;
 import com.jakduk.api.service.GalleryService;
+import com.jakduk.api.service.GallerySimilarityService;
+import com.jakduk.api.service.GalleryUploadService;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -19,7 +22,9 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.validation.Valid;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Objects;
 
@@ -36,6 +41,8 @@ public class GalleryRestController {
 
     @Autowired private UrlGenerationUtils urlGenerationUtils;
     @Autowired private GalleryService galleryService;
+    @Autowired private GallerySimilarityService gallerySimilarityService;
+    @Autowired private GalleryUploadService galleryUploadService;
 
     // 사진 목록
     @GetMapping("/galleries")
@@ -65,16 +72,67 @@ public class GalleryRestController {
 
         CommonWriter commonWriter = AuthUtils.getCommonWriterFromSession();
 
-        Gallery gallery = galleryService.uploadImage(commonWriter, file.getOriginalFilename(), file.getSize(),
-                contentType, file.getBytes());
+        Gallery gallery;
 
-        GalleryUploadResponse response = new GalleryUploadResponse();
+        try (InputStream inputStream = file.getInputStream()) {
+            gallery = galleryService.uploadImage(commonWriter, file.getOriginalFilename(), file.getSize(), contentType, inputStream);
+        }
 
-        BeanUtils.copyProperties(gallery, response);
-        response.setImageUrl(urlGenerationUtils.generateGalleryUrl(Constants.IMAGE_SIZE_TYPE.LARGE, gallery.getId()));
-        response.setThumbnailUrl(urlGenerationUtils.generateGalleryUrl(Constants.IMAGE_SIZE_TYPE.SMALL, gallery.getId()));
+        return this.toGalleryUploadResponse(gallery);
+    }
 
-        return response;
+    // 조각으로 나눠 올리기 시작
+    @PostMapping("/gallery/uploads")
+    public GalleryUploadStatusResponse initiateUpload(@Valid @RequestBody GalleryUploadForm form) {
+
+        CommonWriter commonWriter = AuthUtils.getCommonWriterFromSession();
+
+        GalleryUpload galleryUpload = galleryUploadService.initiate(commonWriter, form.getFileName(), form.getContentType(),
+                form.getSize());
+
+        return this.toGalleryUploadStatusResponse(galleryUpload);
+    }
+
+    // 조각으로 나눠 올리는 중인 사진의 받은 위치. 연결이 끊긴 후 이어서 올릴 때 쓴다.
+    @GetMapping("/gallery/uploads/{id}")
+    public GalleryUploadStatusResponse getUpload(@PathVariable String id) {
+
+        SessionUser sessionUser = this.getSessionUser();
+
+        return this.toGalleryUploadStatusResponse(galleryUploadService.getUpload(id, sessionUser.getId()));
+    }
+
+    // 조각 올리기
+    @PutMapping("/gallery/uploads/{id}")
+    public GalleryUploadStatusResponse uploadChunk(
+            @PathVariable String id, // 올리기 ID
+            @RequestParam Long offset, // 조각의 시작 위치
+            @RequestHeader(value = "Content-MD5", required = false) String checksum, // 조각의 MD5 (base64)
+            HttpServletRequest request) throws IOException {
+
+        SessionUser sessionUser = this.getSessionUser();
+
+        GalleryUpload galleryUpload;
+
+        try (InputStream inputStream = request.getInputStream()) {
+            galleryUpload = galleryUploadService.appendChunk(id, sessionUser.getId(), offset, checksum, inputStream);
+        }
+
+        return this.toGalleryUploadStatusResponse(galleryUpload);
+    }
+
+    // 조각으로 나눠 올리기 끝. 일반 사진 올리기와 같은 응답을 준다.
+    @PostMapping("/gallery/uploads/{id}/complete")
+    public GalleryUploadResponse completeUpload(
+            @PathVariable String id, // 올리기 ID
+            @RequestParam(required = false) String md5 // 전체 내용의 MD5 (hex)
+    ) {
+
+        SessionUser sessionUser = this.getSessionUser();
+
+        Gallery gallery = galleryUploadService.complete(id, sessionUser.getId(), md5);
+
+        return this.toGalleryUploadResponse(gallery);
     }
 
     // 사진 지움
@@ -107,4 +165,42 @@ public class GalleryRestController {
         return galleryService.getGalleryDetail(id);
     }
 
+    // 비슷한 사진 목록
+    @GetMapping("/gallery/{id}/similar")
+    public SimilarGalleriesResponse getSimilarGalleries(
+            @PathVariable String id, // 사진 ID
+            @RequestParam(required = false, defaultValue = "10") Integer size // 최대 개수
+    ) {
+
+        if (size < 1 || size > Constants.GALLERY_SIMILAR_MAX_SIZE) size = Constants.GALLERY_SIMILAR_MAX_SIZE;
+
+        List<SimilarGallery> galleries = gallerySimilarityService.getSimilarGalleries(id, size);
+
+        return new SimilarGalleriesResponse(galleries);
+    }
+
+    private SessionUser getSessionUser() {
+
+        if (! AuthUtils.isSessionUserRole())
+            throw new ServiceException(ServiceError.UNAUTHORIZED_ACCESS);
+
+        return AuthUtils.getSessionProfile();
+    }
+
+    private GalleryUploadResponse toGalleryUploadResponse(Gallery gallery) {
+
+        GalleryUploadResponse response = new GalleryUploadResponse();
+
+        BeanUtils.copyProperties(gallery, response);
+        response.setImageUrl(urlGenerationUtils.generateGalleryUrl(Constants.IMAGE_SIZE_TYPE.LARGE, gallery.getId()));
+        response.setThumbnailUrl(urlGenerationUtils.generateGalleryUrl(Constants.IMAGE_SIZE_TYPE.SMALL, gallery.getId()));
+
+        return response;
+    }
+
+    private GalleryUploadStatusResponse toGalleryUploadStatusResponse(GalleryUpload galleryUpload) {
+        return new GalleryUploadStatusResponse(galleryUpload.getId(), galleryUpload.getSize(), galleryUpload.getOffset(),
+                Constants.GALLERY_UPLOAD_CHUNK_SIZE);
+    }
+
 }
@@ -3,6 +3,7 @@ package com.jakduk.api.restcontroller;
 import com.jakduk.api.common.rabbitmq.RabbitMQPublisher;
 import com.jakduk.api.common.util.AuthUtils;
 import com.jakduk.api.restcontroller.vo.search.PopularSearchWordResult;
+import com.jakduk.api.restcontroller.vo.search.SearchSuggestResult;
 import com.jakduk.api.restcontroller.vo.search.SearchUnifiedResponse;
 import com.jakduk.api.service.SearchService;
 import org.apache.commons.lang3.StringUtils;
@@ -16,7 +17,10 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.validation.constraints.NotEmpty;
-import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 찾기 API
@@ -37,18 +41,21 @@ public class SearchRestController {
 	@Autowired private RabbitMQPublisher rabbitMQPublisher;
 	@Autowired private SearchService searchService;
 
-	// 통합 찾기
+	// 통합 찾기. 검색이 끝나면 비동기로 응답한다.
 	@GetMapping("")
-	public SearchUnifiedResponse searchUnified(
+	public CompletableFuture<SearchUnifiedResponse> searchUnified(
 			@NotEmpty @RequestParam String q, // 검색어
 			@NotEmpty @RequestParam(defaultValue = "ARTICLE;COMMENT;GALLERY") String w, // ARTICLE;COMMENT;GALLERY
 			@RequestParam(required = false, defaultValue = "0") Integer from, // 페이지 시작 위치
 			@RequestParam(required = false, defaultValue = "10") Integer size, // 페이지 크기
 			@RequestParam(required = false) String tag, // 하이라이트의 태그
-			@RequestParam(required = false) String styleClass // 하이라이트의 태그 클래스
+			@RequestParam(required = false) String styleClass, // 하이라이트의 태그 클래스
+			@RequestParam(required = false, defaultValue = "false") Boolean cursor, // from 대신 cursor 로 페이지를 넘김
+			@RequestParam(required = false) List<String> after // 앞 페이지 결과들의 nextCursor
 	) {
 
-		log.debug("unified search request q={}, w={}, from={}, size={}, tag={}, styleClass={}", q, w, from, size, tag, styleClass);
+		log.debug("unified search request q={}, w={}, from={}, size={}, tag={}, styleClass={}, cursor={}, after={}", q, w, from,
+				size, tag, styleClass, cursor, after);
 
 		if (size <= 0) size = 10;
 
@@ -65,7 +72,14 @@ public class SearchRestController {
 			postTags = String.format("</%s>", tag);
 		}
 
-		SearchUnifiedResponse searchUnifiedResponse = searchService.searchUnified(q, w, from, size, preTags, postTags);
+		CompletableFuture<SearchUnifiedResponse> searchUnifiedResponse;
+
+		if (cursor) {
+			List<String> cursors = Objects.nonNull(after) ? after : Collections.emptyList();
+			searchUnifiedResponse = searchService.searchUnified(q, w, 0, size, preTags, postTags, cursors);
+		} else {
+			searchUnifiedResponse = searchService.searchUnified(q, w, from, size, preTags, postTags);
+		}
 
 		rabbitMQPublisher.indexDocumentSearchWord(StringUtils.lowerCase(q), AuthUtils.getCommonWriterFromSession());
 
@@ -78,10 +92,17 @@ public class SearchRestController {
 			@RequestParam(required = false, defaultValue = "5") Integer size // 크기
 	) {
 
-		// 3 주전
-		LocalDate threeWeeksAgo = LocalDate.now().minusWeeks(3);
+		return searchService.getPopularSearchWords(size);
+	}
+
+	// 검색어 자동 완성. 서버 메모리에서 찾는다.
+	@GetMapping("/suggest")
+	public SearchSuggestResult searchSuggest(
+			@NotEmpty @RequestParam String q, // 입력 중인 검색어
+			@RequestParam(required = false, defaultValue = "5") Integer size // 크기
+	) {
 
-		return searchService.aggregateSearchWord(threeWeeksAgo, size);
+		return searchService.getSuggestions(q, size);
 	}
 
 }
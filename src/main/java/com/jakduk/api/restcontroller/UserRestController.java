@@ -35,6 +35,7 @@ import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import javax.validation.Valid;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Objects;
 
 /**
@@ -177,8 +178,8 @@ public class UserRestController {
         if (! StringUtils.startsWithIgnoreCase(contentType, "image/"))
             throw new ServiceException(ServiceError.FILE_ONLY_IMAGE_TYPE_CAN_BE_UPLOADED);
 
-        try {
-            return userService.uploadUserPicture(contentType, file.getSize(), file.getBytes());
+        try (InputStream inputStream = file.getInputStream()) {
+            return userService.uploadUserPicture(contentType, file.getSize(), inputStream);
 
         } catch (IOException e) {
             throw new ServiceException(ServiceError.IO_EXCEPTION, e);
@@ -1,5 +1,6 @@
 package com.jakduk.api.restcontroller.vo.board;
 
+import com.jakduk.api.model.embedded.RelatedArticle;
 import com.jakduk.api.model.simple.ArticleSimple;
 
 import java.util.List;
@@ -15,6 +16,7 @@ public class GetArticleDetailResponse {
     private ArticleSimple prevArticle; // 앞 글
     private ArticleSimple nextArticle; // 뒷 글
     private List<LatestArticle> latestArticlesByWriter; // 작성자의 최근 글
+    private List<RelatedArticle> relatedArticles; // 비슷한 글
 
     public ArticleDetail getArticle() {
         return article;
@@ -47,4 +49,12 @@ public class GetArticleDetailResponse {
     public void setLatestArticlesByWriter(List<LatestArticle> latestArticlesByWriter) {
         this.latestArticlesByWriter = latestArticlesByWriter;
     }
+
+    public List<RelatedArticle> getRelatedArticles() {
+        return relatedArticles;
+    }
+
+    public void setRelatedArticles(List<RelatedArticle> relatedArticles) {
+        this.relatedArticles = relatedArticles;
+    }
 }
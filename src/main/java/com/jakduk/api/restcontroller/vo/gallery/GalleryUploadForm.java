@@ -0,0 +1,34 @@
+package com.jakduk.api.restcontroller.vo.gallery;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+
+/**
+ * 조각으로 나눠 올리기 시작 폼
+ */
+
+public class GalleryUploadForm {
+
+    @NotEmpty
+    private String fileName; // 파일 이름
+
+    @NotEmpty
+    private String contentType; // 콘텐츠 타입
+
+    @NotNull
+    @Min(1)
+    private Long size; // 전체 크기
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public Long getSize() {
+        return size;
+    }
+}
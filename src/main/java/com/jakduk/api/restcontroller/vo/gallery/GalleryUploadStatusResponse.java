@@ -0,0 +1,39 @@
+package com.jakduk.api.restcontroller.vo.gallery;
+
+/**
+ * 조각으로 나눠 올리는 중인 사진의 상태 응답 객체
+ */
+
+public class GalleryUploadStatusResponse {
+
+    private String id; // 올리기 ID
+    private Long size; // 전체 크기
+    private Long offset; // 지금까지 받은 크기. 다음 조각은 여기서부터 보낸다.
+    private Integer chunkSize; // 권장 조각 크기
+
+    public GalleryUploadStatusResponse() {
+    }
+
+    public GalleryUploadStatusResponse(String id, Long size, Long offset, Integer chunkSize) {
+        this.id = id;
+        this.size = size;
+        this.offset = offset;
+        this.chunkSize = chunkSize;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Long getSize() {
+        return size;
+    }
+
+    public Long getOffset() {
+        return offset;
+    }
+
+    public Integer getChunkSize() {
+        return chunkSize;
+    }
+}
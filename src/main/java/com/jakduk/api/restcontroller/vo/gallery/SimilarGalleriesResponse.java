@@ -0,0 +1,22 @@
+package com.jakduk.api.restcontroller.vo.gallery;
+
+import java.util.List;
+
+/**
+ * 비슷한 사진 목록 응답 객체
+ */
+
+public class SimilarGalleriesResponse {
+    private List<SimilarGallery> galleries; // 비슷한 순으로 정렬된 사진 목록
+
+    public SimilarGalleriesResponse() {
+    }
+
+    public SimilarGalleriesResponse(List<SimilarGallery> galleries) {
+        this.galleries = galleries;
+    }
+
+    public List<SimilarGallery> getGalleries() {
+        return galleries;
+    }
+}
@@ -0,0 +1,92 @@
+package com.jakduk.api.restcontroller.vo.gallery;
+
+import com.jakduk.api.model.embedded.CommonWriter;
+
+/**
+ * 비슷한 사진
+ */
+
+public class SimilarGallery {
+
+    private String id; // 사진 ID
+    private String name; // 사진 이름
+    private CommonWriter writer; // 올린이
+    private String imageUrl; // 사진 풀 URL
+    private String thumbnailUrl; // 사진 썸네일 URL
+    private Integer width; // 가로 길이
+    private Integer height; // 세로 길이
+    private String placeholder; // 로딩 전에 보여줄 작은 미리보기 (data URI)
+    private Integer distance; // dHash 해밍 거리. 작을수록 비슷하다.
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public CommonWriter getWriter() {
+        return writer;
+    }
+
+    public void setWriter(CommonWriter writer) {
+        this.writer = writer;
+    }
+
+    public String getImageUrl() {
+        return imageUrl;
+    }
+
+    public void setImageUrl(String imageUrl) {
+        this.imageUrl = imageUrl;
+    }
+
+    public String getThumbnailUrl() {
+        return thumbnailUrl;
+    }
+
+    public void setThumbnailUrl(String thumbnailUrl) {
+        this.thumbnailUrl = thumbnailUrl;
+    }
+
+    public Integer getWidth() {
+        return width;
+    }
+
+    public void setWidth(Integer width) {
+        this.width = width;
+    }
+
+    public Integer getHeight() {
+        return height;
+    }
+
+    public void setHeight(Integer height) {
+        this.height = height;
+    }
+
+    public String getPlaceholder() {
+        return placeholder;
+    }
+
+    public void setPlaceholder(String placeholder) {
+        this.placeholder = placeholder;
+    }
+
+    public Integer getDistance() {
+        return distance;
+    }
+
+    public void setDistance(Integer distance) {
+        this.distance = distance;
+    }
+}
@@ -9,6 +9,9 @@ public class SurroundingsGallery {
     private String name; // 사진 이름
     private String imageUrl; // 사진 풀 URL
     private String thumbnailUrl; // 사진 썸네일 URL
+    private Integer width; // 가로 길이
+    private Integer height; // 세로 길이
+    private String placeholder; // 로딩 전에 보여줄 작은 미리보기 (data URI)
 
     public String getId() {
         return id;
@@ -41,4 +44,28 @@ public class SurroundingsGallery {
     public void setThumbnailUrl(String thumbnailUrl) {
         this.thumbnailUrl = thumbnailUrl;
     }
+
+    public Integer getWidth() {
+        return width;
+    }
+
+    public void setWidth(Integer width) {
+        this.width = width;
+    }
+
+    public Integer getHeight() {
+        return height;
+    }
+
+    public void setHeight(Integer height) {
+        this.height = height;
+    }
+
+    public String getPlaceholder() {
+        return placeholder;
+    }
+
+    public void setPlaceholder(String placeholder) {
+        this.placeholder = placeholder;
+    }
 }
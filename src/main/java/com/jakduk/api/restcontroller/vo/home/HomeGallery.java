@@ -16,6 +16,9 @@ public class HomeGallery {
     private CommonWriter writer; // 올린이
     private String imageUrl; // 사진 URL
     private String thumbnailUrl; // 썸네일 URL
+    private Integer width; // 가로 길이
+    private Integer height; // 세로 길이
+    private String placeholder; // 로딩 전에 보여줄 작은 미리보기 (data URI)
 
     public HomeGallery() {
     }
@@ -24,6 +27,9 @@ public class HomeGallery {
         this.id = gallery.getId();
         this.name = gallery.getName();
         this.writer = gallery.getWriter();
+        this.width = gallery.getWidth();
+        this.height = gallery.getHeight();
+        this.placeholder = gallery.getPlaceholder();
     }
 
     public String getId() {
@@ -65,4 +71,28 @@ public class HomeGallery {
     public void setThumbnailUrl(String thumbnailUrl) {
         this.thumbnailUrl = thumbnailUrl;
     }
+
+    public Integer getWidth() {
+        return width;
+    }
+
+    public void setWidth(Integer width) {
+        this.width = width;
+    }
+
+    public Integer getHeight() {
+        return height;
+    }
+
+    public void setHeight(Integer height) {
+        this.height = height;
+    }
+
+    public String getPlaceholder() {
+        return placeholder;
+    }
+
+    public void setPlaceholder(String placeholder) {
+        this.placeholder = placeholder;
+    }
 }
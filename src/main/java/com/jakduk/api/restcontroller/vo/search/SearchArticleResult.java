@@ -12,6 +12,8 @@ public class SearchArticleResult {
 	private Long took; // 찾기에 걸린 시간(ms)
 	private Long totalCount; // 매칭되는 아이템 수
 	private List<ArticleSource> articles; // 매칭되는 게시물 목록
+	private String nextCursor; // 다음 페이지의 cursor. cursor 방식으로 찾을 때만 있다.
+	private Boolean timedOut; // 시간이 지나 일부 또는 전부를 찾지 못했는지
 
 	public Long getTook() {
 		return took;
@@ -36,4 +38,20 @@ public class SearchArticleResult {
 	public void setArticles(List<ArticleSource> articles) {
 		this.articles = articles;
 	}
+
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	public void setNextCursor(String nextCursor) {
+		this.nextCursor = nextCursor;
+	}
+
+	public Boolean getTimedOut() {
+		return timedOut;
+	}
+
+	public void setTimedOut(Boolean timedOut) {
+		this.timedOut = timedOut;
+	}
 }
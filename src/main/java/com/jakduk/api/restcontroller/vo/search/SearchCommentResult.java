@@ -14,6 +14,8 @@ public class SearchCommentResult {
 	private Long took;
 	private Long totalCount;
 	private List<EsCommentSource> comments;
+	private String nextCursor;
+	private Boolean timedOut;
 
 	public Long getTook() {
 		return took;
@@ -38,4 +40,20 @@ public class SearchCommentResult {
 	public void setComments(List<EsCommentSource> comments) {
 		this.comments = comments;
 	}
+
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	public void setNextCursor(String nextCursor) {
+		this.nextCursor = nextCursor;
+	}
+
+	public Boolean getTimedOut() {
+		return timedOut;
+	}
+
+	public void setTimedOut(Boolean timedOut) {
+		this.timedOut = timedOut;
+	}
 }
@@ -13,6 +13,8 @@ public class SearchGalleryResult {
     private Long took;
     private Long totalCount;
     private List<EsGallerySource> galleries;
+    private String nextCursor;
+    private Boolean timedOut;
 
     public Long getTook() {
         return took;
@@ -37,4 +39,20 @@ public class SearchGalleryResult {
     public void setGalleries(List<EsGallerySource> galleries) {
         this.galleries = galleries;
     }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    public Boolean getTimedOut() {
+        return timedOut;
+    }
+
+    public void setTimedOut(Boolean timedOut) {
+        this.timedOut = timedOut;
+    }
 }
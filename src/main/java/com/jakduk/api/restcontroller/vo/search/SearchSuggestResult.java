@@ -0,0 +1,19 @@
+package com.jakduk.api.restcontroller.vo.search;
+
+import java.util.List;
+
+/**
+ * 자동 완성 결과
+ */
+
+public class SearchSuggestResult {
+	private List<SearchSuggestion> suggestions;
+
+	public List<SearchSuggestion> getSuggestions() {
+		return suggestions;
+	}
+
+	public void setSuggestions(List<SearchSuggestion> suggestions) {
+		this.suggestions = suggestions;
+	}
+}
@@ -0,0 +1,34 @@
+package com.jakduk.api.restcontroller.vo.search;
+
+/**
+ * 자동 완성 항목
+ */
+
+public class SearchSuggestion {
+	private String text;
+	private String type;	// Constants.SEARCH_SUGGEST_TYPE
+
+	public SearchSuggestion() {
+	}
+
+	public SearchSuggestion(String text, String type) {
+		this.text = text;
+		this.type = type;
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	public void setText(String text) {
+		this.text = text;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public void setType(String type) {
+		this.type = type;
+	}
+}
@@ -2,7 +2,6 @@ package com.jakduk.api.service;
 
 
 import com.jakduk.api.common.Constants;
-import com.jakduk.api.configuration.JakdukProperties;
 import com.jakduk.api.dao.JakdukDAO;
 import com.jakduk.api.exception.ServiceError;
 import com.jakduk.api.exception.ServiceException;
@@ -15,37 +14,19 @@ import com.jakduk.api.repository.EncyclopediaRepository;
 import com.jakduk.api.repository.HomeDescriptionRepository;
 import com.jakduk.api.repository.footballclub.FootballClubOriginRepository;
 import com.jakduk.api.repository.footballclub.FootballClubRepository;
-import com.jakduk.api.repository.gallery.GalleryRepository;
 import com.jakduk.api.repository.jakdu.JakduScheduleGroupRepository;
 import com.jakduk.api.repository.jakdu.JakduScheduleRepository;
 import com.jakduk.api.restcontroller.vo.admin.CompetitionWrite;
 import com.jakduk.api.restcontroller.vo.admin.JakduScheduleGroupWrite;
 import com.jakduk.api.restcontroller.vo.admin.JakduScheduleWrite;
-import com.jakduk.api.restcontroller.vo.admin.ThumbnailSizeWrite;
 import org.apache.commons.lang3.StringUtils;
-import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
-import javax.annotation.Resource;
-import javax.imageio.ImageIO;
-import java.awt.*;
-import java.awt.image.BufferedImage;
-import java.io.BufferedInputStream;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.LinkOption;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
 import java.util.*;
-import java.util.List;
 
 /**
  * @author <a href="mailto:phjang1983@daum.net">Jang,Pyohwan</a>
@@ -56,14 +37,11 @@ public class AdminService {
 
 	private final Logger log = LoggerFactory.getLogger(this.getClass());
 
-	@Resource private JakdukProperties.Storage storageProperties;
-
 	@Autowired private JakdukDAO jakdukDAO;
 	@Autowired private CommonService commonService;
 	@Autowired private EncyclopediaRepository encyclopediaRepository;
 	@Autowired private FootballClubRepository footballClubRepository;
 	@Autowired private FootballClubOriginRepository footballClubOriginRepository;
-	@Autowired private GalleryRepository galleryRepository;
 	@Autowired private HomeDescriptionRepository homeDescriptionReposotiry;
 	@Autowired private AttendanceClubRepository attendanceClubRepository;
 	@Autowired private JakduScheduleRepository jakduScheduleRepository;
@@ -154,68 +132,6 @@ public class AdminService {
 		return attendanceClubs;
 	}
 	
-	public void thumbnailSizeWrite(ThumbnailSizeWrite thumbnailSizeWrite) {
-		
-		List<Gallery> galleries;
-		
-		if (thumbnailSizeWrite.getGalleryId() != null && !thumbnailSizeWrite.getGalleryId().isEmpty()) {
-			galleries = new ArrayList<>();
-			galleries.add(galleryRepository.findById(thumbnailSizeWrite.getGalleryId()).orElseThrow(() -> new ServiceException(ServiceError.NOT_FOUND_GALLERY)));
-		} else {
-			galleries = galleryRepository.findAll();
-		}
-		
-		for (Gallery gallery : galleries) {
-			ObjectId objId = new ObjectId(gallery.getId());
-			Instant instant = Instant.ofEpochMilli(objId.getDate().getTime());
-			LocalDateTime timePoint = LocalDateTime.ofInstant(instant, ZoneId.systemDefault());
-			
-			Path imageDirPath = Paths.get(storageProperties.getImagePath(), String.valueOf(timePoint.getYear()),
-					String.valueOf(timePoint.getMonthValue()), String.valueOf(timePoint.getDayOfMonth()));
-			
-			Path thumbDirPath = Paths.get(storageProperties.getThumbnailPath(), String.valueOf(timePoint.getYear()),
-					String.valueOf(timePoint.getMonthValue()), String.valueOf(timePoint.getDayOfMonth()));
-			
-			// 사진 경로.
-			Path imageFilePath = imageDirPath.resolve(gallery.getId());
-			Path thumbFilePath = thumbDirPath.resolve(gallery.getId());
-			
-			// 사진 포맷.
-			String formatName = "jpg";
-			
-			String splitContentType[] = gallery.getContentType().split("/");
-			if (!splitContentType[1].equals("octet-stream")) {
-				formatName = splitContentType[1];
-			}
-			
-			if (Files.exists(imageFilePath, LinkOption.NOFOLLOW_LINKS)) {
-				
-				try {
-					
-					if (Files.exists(thumbFilePath, LinkOption.NOFOLLOW_LINKS)) {
-						Files.delete(thumbFilePath);
-					}
-
-					log.debug("gallery=" + gallery);
-					
-					BufferedInputStream in = new BufferedInputStream(new FileInputStream(imageFilePath.toString()));
-					
-					BufferedImage bi = ImageIO.read(in);
-					BufferedImage bufferIm = new BufferedImage(thumbnailSizeWrite.getWidth(), thumbnailSizeWrite.getHeight(), BufferedImage.TYPE_INT_RGB);
-					Image tempImg = bi.getScaledInstance(thumbnailSizeWrite.getWidth(), thumbnailSizeWrite.getHeight(), Image.SCALE_AREA_AVERAGING);
-					Graphics2D g2 = bufferIm.createGraphics();
-					g2.drawImage(tempImg, 0, 0, thumbnailSizeWrite.getWidth(), thumbnailSizeWrite.getHeight(), null);
-					
-					ImageIO.write(bufferIm, formatName, thumbFilePath.toFile());				
-					
-					in.close();					
-				} catch (IOException e) {
-					log.warn(e.getMessage(), e);
-				}
-			}				
-		}
-	}
-
 	public void saveAttendanceClub(String id, String origin, String league, Integer season, Integer games, Integer total, Integer average) {
 
 		FootballClubOrigin footballClubOrigin = footballClubOriginRepository.findOneById(origin)
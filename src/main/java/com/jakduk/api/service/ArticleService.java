@@ -64,6 +64,8 @@ public class ArticleService {
 	@Autowired private CommonService commonService;
 	@Autowired private CommonGalleryService commonGalleryService;
 	@Autowired private RabbitMQPublisher rabbitMQPublisher;
+	@Autowired private SearchSuggestService searchSuggestService;
+	@Autowired private RelatedArticleService relatedArticleService;
 
 	public Article findOneBySeq(Constants.BOARD_TYPE board, Integer seq) {
         return articleRepository.findOneByBoardAndSeq(board.name(), seq)
@@ -104,6 +106,7 @@ public class ArticleService {
 		article.setLinkedGallery(linkedGallery);
 
 		articleRepository.save(article);
+		searchSuggestService.addArticle(article.getSubject());
 
 		log.info("new post created. post seq={}, subject={}", article.getSeq(), article.getSubject());
 
@@ -156,6 +159,7 @@ public class ArticleService {
 		article.setLastUpdated(LocalDateTime.ofInstant(logId.getDate().toInstant(), ZoneId.systemDefault()));
 
 		articleRepository.save(article);
+		searchSuggestService.addArticle(article.getSubject());
 
 		log.info("post was edited. post seq={}, subject={}", article.getSeq(), article.getSubject());
 
@@ -467,8 +471,8 @@ public class ArticleService {
 		articleCommentRepository.save(articleComment);
 
 		// 엘라스틱서치 색인 요청
-		rabbitMQPublisher.indexDocumentComment(articleComment.getId(), articleComment.getArticle(), articleComment.getWriter(),
-				articleComment.getContent(), galleryIds);
+		rabbitMQPublisher.indexDocumentComment(articleComment.getId(), articleComment.getArticle(), article.getCategory(),
+				article.getSubject(), articleComment.getWriter(), articleComment.getContent(), galleryIds);
 
 		return articleComment;
 	}
@@ -485,6 +489,9 @@ public class ArticleService {
 		if (! articleComment.getWriter().getUserId().equals(writer.getUserId()))
 			throw new ServiceException(ServiceError.FORBIDDEN);
 
+		Article article = articleRepository.findOneById(articleComment.getArticle().getId())
+				.orElseThrow(() -> new ServiceException(ServiceError.NOT_FOUND_ARTICLE));
+
 		articleComment.setWriter(writer);
 		articleComment.setContent(StringUtils.trim(content));
 		articleComment.setLinkedGallery(! galleryIds.isEmpty());
@@ -499,8 +506,8 @@ public class ArticleService {
 		articleCommentRepository.save(articleComment);
 
 		// 엘라스틱서치 색인 요청
-		rabbitMQPublisher.indexDocumentComment(articleComment.getId(), articleComment.getArticle(), articleComment.getWriter(),
-				articleComment.getContent(), galleryIds);
+		rabbitMQPublisher.indexDocumentComment(articleComment.getId(), articleComment.getArticle(), article.getCategory(),
+				article.getSubject(), articleComment.getWriter(), articleComment.getContent(), galleryIds);
 
 		return articleComment;
 	}
@@ -748,6 +755,9 @@ public class ArticleService {
                         	setName(StringUtils.isNoneBlank(gallery.getName()) ? gallery.getName() : gallery.getFileName());
                         	setImageUrl(urlGenerationUtils.generateGalleryUrl(Constants.IMAGE_SIZE_TYPE.LARGE, gallery.getId()));
                         	setThumbnailUrl(urlGenerationUtils.generateGalleryUrl(Constants.IMAGE_SIZE_TYPE.SMALL, gallery.getId()));
+                        	setWidth(gallery.getWidth());
+                        	setHeight(gallery.getHeight());
+                        	setPlaceholder(gallery.getPlaceholder());
 						}})
                         .collect(Collectors.toList());
 
@@ -765,8 +775,9 @@ public class ArticleService {
 		ArticleSimple nextPost = articleRepository.findByIdAndCategoryWithOperator(new ObjectId(articleDetail.getId()),
 				Objects.nonNull(boardCategory) ? boardCategory.getCode() : null, Constants.CRITERIA_OPERATOR.LT);
 
-        // 글쓴이의 최근 글
+        // 글쓴이의 최근 글, 비슷한 글
 		List<LatestArticle> latestArticles = null;
+		List<RelatedArticle> relatedArticles = null;
 
 		if (Objects.isNull(articleDetail.getStatus()) || BooleanUtils.isNotTrue(articleDetail.getStatus().getDelete())) {
 
@@ -798,6 +809,8 @@ public class ArticleService {
 						return latestArticle;
 					})
 					.collect(Collectors.toList());
+
+			relatedArticles = relatedArticleService.getRelatedArticles(articleDetail.getId());
 		}
 
 		GetArticleDetailResponse response = new GetArticleDetailResponse();
@@ -805,6 +818,7 @@ public class ArticleService {
 		response.setPrevArticle(prevPost);
 		response.setNextArticle(nextPost);
 		response.setLatestArticlesByWriter(CollectionUtils.isEmpty(latestArticles) ? null : latestArticles);
+		response.setRelatedArticles(CollectionUtils.isEmpty(relatedArticles) ? null : relatedArticles);
 
 		return ResponseEntity.ok()
 				.body(response);
@@ -13,6 +13,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.List;
@@ -27,14 +28,59 @@ public class CommonGalleryService {
     @Resource private JakdukProperties.Storage storageProperties;
     @Autowired private GalleryRepository galleryRepository;
     @Autowired private RabbitMQPublisher rabbitMQPublisher;
+    @Autowired private GalleryVariantService galleryVariantService;
+    @Autowired private MediaStoreService mediaStoreService;
+    @Autowired private GallerySimilarityService gallerySimilarityService;
+
+    /**
+     * 사진 파일 경로.
+     * 내용 주소 저장소(Media)에 있으면 그 경로를, 아니면 예전 날짜별 경로를 준다. 파일이 있는지는 확인하지 않는다.
+     *
+     * @param gallery Gallery
+     * @param imageType 전체 크기 또는 썸네일
+     */
+    public Path getGalleryFilePath(Gallery gallery, Constants.IMAGE_TYPE imageType) {
+
+        if (StringUtils.isNotBlank(gallery.getMediaId())) {
+            Constants.MEDIA_DERIVATIVE_TYPE derivativeType = imageType == Constants.IMAGE_TYPE.FULL ?
+                    Constants.MEDIA_DERIVATIVE_TYPE.IMAGE : Constants.MEDIA_DERIVATIVE_TYPE.GALLERY_THUMBNAIL;
+
+            return mediaStoreService.getDerivativePath(gallery.getMediaId(), gallery.getContentType(), derivativeType);
+        }
+
+        LocalDate localDate = new ObjectId(gallery.getId()).getDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+        String imagePath = imageType == Constants.IMAGE_TYPE.FULL ?
+                storageProperties.getImagePath() : storageProperties.getThumbnailPath();
+
+        return FileUtils.getImageFilePath(imagePath, localDate, gallery.getId(), gallery.getContentType());
+    }
 
     /**
      * Gallery와 사진 파일 지움
      *
-     * @param id Gallery ID
-     * @param contentType contentType
+     * @param gallery Gallery
      */
-    public void deleteGallery(String id, String contentType) {
+    public void deleteGallery(Gallery gallery) {
+        this.removeGalleryFiles(gallery);
+        gallerySimilarityService.remove(gallery);
+
+        galleryRepository.deleteById(gallery.getId());
+    }
+
+    /**
+     * Gallery의 사진 파일을 지운다.
+     * 내용 주소 저장소(Media)에 있는 사진은 참조만 끊는다. 참조하는 곳이 없어야 파일이 지워진다.
+     *
+     * @param gallery Gallery
+     * @return 지운 파일 크기의 합
+     */
+    public long removeGalleryFiles(Gallery gallery) {
+        String id = gallery.getId();
+        String contentType = gallery.getContentType();
+
+        if (StringUtils.isNotBlank(gallery.getMediaId()))
+            return mediaStoreService.release(gallery.getMediaId());
+
         ObjectId objectId = new ObjectId(id);
         LocalDate localDate = objectId.getDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
 
@@ -42,10 +88,11 @@ public class CommonGalleryService {
         String formatName = StringUtils.split(contentType, "/")[1];
         String fileName = id + "." + formatName;
 
-        FileUtils.removeImageFile(storageProperties.getImagePath(), localDate, fileName);
-        FileUtils.removeImageFile(storageProperties.getThumbnailPath(), localDate, fileName);
+        long reclaimedBytes = FileUtils.removeImageFile(storageProperties.getImagePath(), localDate, fileName);
+        reclaimedBytes += FileUtils.removeImageFile(storageProperties.getThumbnailPath(), localDate, fileName);
+        galleryVariantService.removeVariants(id, contentType);
 
-        galleryRepository.deleteById(id);
+        return reclaimedBytes;
     }
 
     /**
@@ -66,7 +113,7 @@ public class CommonGalleryService {
                 gallery.setLinkedItems(linkedItems);
                 galleryRepository.save(gallery);
             } else if (removed && linkedItems.size() < 1) {
-                this.deleteGallery(gallery.getId(), gallery.getContentType());
+                this.deleteGallery(gallery);
                 rabbitMQPublisher.deleteDocumentGallery(gallery.getId());
             }
         });
@@ -0,0 +1,244 @@
+package com.jakduk.api.service;
+
+import com.jakduk.api.common.Constants;
+import com.jakduk.api.model.db.SearchReindexCapture;
+import com.jakduk.api.model.db.SearchReindexWrite;
+import com.jakduk.api.repository.SearchReindexCaptureRepository;
+import com.jakduk.api.repository.SearchReindexWriteRepository;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.bulk.*;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.rest.RestStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Elasticsearch 색인/삭제 요청들을 하나의 bulk 로 보내고 응답을 기다린다.
+ *
+ * ES 가 바빠서 거절(rejected)한 요청은 간격을 늘려가며 다시 보낸다. 통계는 함께 센다.
+ *
+ * 다시 색인하는 중인 alias(SearchReindexCapture)로 보내는 요청은 보내기 전에 문서 ID 를 SearchReindexWrite 에 남긴다.
+ * 어느 서버에서 보낸 요청이든 Mongo 에 남으므로, 다시 색인하는 서버가 그 문서들을 새 인덱스에 반영할 수 있다.
+ */
+
+@Service
+public class ElasticsearchBulkService {
+
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	@Autowired private Client client;
+	@Autowired private SearchReindexCaptureRepository searchReindexCaptureRepository;
+	@Autowired private SearchReindexWriteRepository searchReindexWriteRepository;
+
+	// 다시 색인하는 중인 alias. ES_REINDEX_CAPTURE_REFRESH_MS 마다 Mongo 에서 다시 읽는다.
+	private volatile Set<String> capturingAliases = Collections.emptySet();
+
+	// 통계
+	private final AtomicLong requestedActions = new AtomicLong();
+	private final AtomicLong bulks = new AtomicLong();
+	private final AtomicLong succeededActions = new AtomicLong();
+	private final AtomicLong notFoundActions = new AtomicLong();
+	private final AtomicLong failedActions = new AtomicLong();
+	private final AtomicLong failedBulks = new AtomicLong();
+	private final AtomicLong inFlightActions = new AtomicLong();
+	private final AtomicLong tookMillis = new AtomicLong();
+	// 검색어를 뺀 문서가 색인/삭제된 횟수. 검색 결과 캐시가 이 값이 바뀌면 버려진다.
+	private final AtomicLong documentChanges = new AtomicLong();
+	private volatile LocalDateTime lastFailedAt;
+
+	/**
+	 * 요청들을 하나의 bulk 로 보내고 응답을 기다린다. 받은 메시지를 확인(ack)하기 전에 색인을 끝내야 할 때 쓴다.
+	 * 거절(rejected)된 요청만 간격을 늘려가며 다시 보낸다. 그 밖의 실패한 요청은 로그와 통계로 남긴다.
+	 *
+	 * @return 끝내 실패한 요청 개수. 지울 문서가 없는 경우는 실패로 세지 않는다.
+	 * @throws org.elasticsearch.ElasticsearchException 연결이 안 되는 등으로 bulk 전체가 실패한 경우
+	 */
+	public int execute(List<DocWriteRequest<?>> requests) {
+		return this.executeAndGetFailed(requests).size();
+	}
+
+	/**
+	 * execute 와 같고, 끝내 실패한 요청들을 돌려준다. 요청별로 메시지를 확인(ack)할 때 쓴다.
+	 */
+	public List<DocWriteRequest<?>> executeAndGetFailed(List<DocWriteRequest<?>> requests) {
+
+		if (requests.isEmpty())
+			return Collections.emptyList();
+
+		requestedActions.addAndGet(requests.size());
+		this.capture(requests);
+
+		BulkRequest bulkRequest = new BulkRequest();
+		requests.forEach(bulkRequest::add);
+
+		Iterator<TimeValue> backoff = BackoffPolicy.exponentialBackoff(
+				TimeValue.timeValueMillis(Constants.ES_BULK_BACKOFF_INITIAL_DELAY_MS), Constants.ES_BULK_BACKOFF_MAX_RETRIES).iterator();
+
+		List<DocWriteRequest<?>> failed = new ArrayList<>();
+
+		while (true) {
+			int numberOfActions = bulkRequest.numberOfActions();
+			BulkResponse response;
+
+			inFlightActions.addAndGet(numberOfActions);
+
+			try {
+				response = client.bulk(bulkRequest).actionGet();
+			} catch (RuntimeException e) {
+				bulks.incrementAndGet();
+				failedBulks.incrementAndGet();
+				failedActions.addAndGet(numberOfActions);
+				lastFailedAt = LocalDateTime.now();
+				throw e;
+			} finally {
+				inFlightActions.addAndGet(-numberOfActions);
+			}
+
+			bulks.incrementAndGet();
+			tookMillis.addAndGet(response.getTook().getMillis());
+
+			boolean canRetry = backoff.hasNext();
+			BulkRequest retryRequest = new BulkRequest();
+
+			for (BulkItemResponse item : response.getItems()) {
+				if (canRetry && item.isFailed() && item.getFailure().getStatus() == RestStatus.TOO_MANY_REQUESTS) {
+					retryRequest.add(bulkRequest.requests().get(item.getItemId()));
+				} else {
+					this.recordItem(item);
+
+					if (item.isFailed())
+						failed.add(bulkRequest.requests().get(item.getItemId()));
+				}
+			}
+
+			if (retryRequest.numberOfActions() == 0)
+				return failed;
+
+			try {
+				Thread.sleep(backoff.next().millis());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failedActions.addAndGet(retryRequest.numberOfActions());
+				failed.addAll(retryRequest.requests());
+				return failed;
+			}
+
+			bulkRequest = retryRequest;
+		}
+	}
+
+	/**
+	 * alias 로 보내는 요청의 문서 ID 를 모으기 시작한다. 다른 서버는 ES_REINDEX_CAPTURE_REFRESH_MS 안에 알게 된다.
+	 */
+	public void startCapture(String alias, String index) {
+		SearchReindexCapture capture = new SearchReindexCapture();
+		capture.setId(alias);
+		capture.setIndex(index);
+		capture.setStartedAt(LocalDateTime.now());
+
+		searchReindexCaptureRepository.save(capture);
+		this.refreshCaptures();
+	}
+
+	/**
+	 * 모으기를 멈추고 모아둔 문서 ID 를 지운다. 다른 서버가 늦게 남긴 것은 ES_REINDEX_CAPTURE_RETENTION_SECONDS 뒤에 지워진다.
+	 */
+	public void stopCapture(String alias) {
+		searchReindexCaptureRepository.deleteById(alias);
+		searchReindexWriteRepository.deleteByAlias(alias);
+		this.refreshCaptures();
+	}
+
+	@Scheduled(fixedDelay = Constants.ES_REINDEX_CAPTURE_REFRESH_MS)
+	public void refreshCaptures() {
+		try {
+			capturingAliases = searchReindexCaptureRepository.findAll().stream()
+					.map(SearchReindexCapture::getId)
+					.collect(Collectors.toSet());
+		} catch (RuntimeException e) {
+			log.warn("failed to refresh elasticsearch reindex captures.", e);
+		}
+	}
+
+	public long getDocumentChanges() {
+		return documentChanges.get();
+	}
+
+	public Map<String, Object> getStatistics() {
+
+		long bulkCount = bulks.get();
+
+		Map<String, Object> statistics = new LinkedHashMap<>();
+		statistics.put("requestedActions", requestedActions.get());
+		statistics.put("inFlightActions", inFlightActions.get());
+		statistics.put("bulks", bulkCount);
+		statistics.put("succeededActions", succeededActions.get());
+		statistics.put("notFoundActions", notFoundActions.get());
+		statistics.put("failedActions", failedActions.get());
+		statistics.put("failedBulks", failedBulks.get());
+		statistics.put("averageTookMillis", bulkCount > 0 ? tookMillis.get() / bulkCount : 0);
+		statistics.put("lastFailedAt", lastFailedAt);
+
+		return statistics;
+	}
+
+	/**
+	 * 다시 색인하는 중인 alias 로 보내는 요청의 문서 ID 를 남긴다. 남기지 못하면 요청을 보내지 않는다.
+	 */
+	private void capture(List<DocWriteRequest<?>> requests) {
+		Set<String> aliases = capturingAliases;
+
+		if (aliases.isEmpty())
+			return;
+
+		LocalDateTime now = LocalDateTime.now();
+
+		List<SearchReindexWrite> writes = requests.stream()
+				.filter(request -> aliases.contains(request.index()))
+				.map(request -> {
+					SearchReindexWrite write = new SearchReindexWrite();
+					write.setAlias(request.index());
+					write.setDocumentId(request.id());
+					write.setCreatedAt(now);
+					return write;
+				})
+				.collect(Collectors.toList());
+
+		if (! writes.isEmpty())
+			searchReindexWriteRepository.saveAll(writes);
+	}
+
+	private void recordItem(BulkItemResponse item) {
+		if (item.isFailed()) {
+			failedActions.incrementAndGet();
+			lastFailedAt = LocalDateTime.now();
+			log.error("elasticsearch bulk item failed. index={}, type={}, id={}, opType={}, message={}",
+					item.getIndex(), item.getType(), item.getId(), item.getOpType(), item.getFailureMessage());
+		} else if (item.getResponse().getResult() == DocWriteResponse.Result.NOT_FOUND) {
+			notFoundActions.incrementAndGet();
+			log.info("{} id {} is not found. so can't delete it!", item.getType(), item.getId());
+		} else {
+			succeededActions.incrementAndGet();
+
+			if (! Constants.ES_TYPE_SEARCH_WORD.equals(item.getType()) && ! Constants.ES_TYPE_SEARCH_WORD_ROLLUP.equals(item.getType()))
+				documentChanges.incrementAndGet();
+		}
+	}
+
+}
@@ -2,12 +2,14 @@ package com.jakduk.api.service;
 
 import com.jakduk.api.common.Constants;
 import com.jakduk.api.common.rabbitmq.RabbitMQPublisher;
+import com.jakduk.api.common.util.FileUtils;
+import com.jakduk.api.common.util.ImageUtils;
 import com.jakduk.api.common.util.UrlGenerationUtils;
-import com.jakduk.api.configuration.JakdukProperties;
 import com.jakduk.api.exception.ServiceError;
 import com.jakduk.api.exception.ServiceException;
 import com.jakduk.api.model.db.Article;
 import com.jakduk.api.model.db.Gallery;
+import com.jakduk.api.model.elasticsearch.EsGallery;
 import com.jakduk.api.model.embedded.CommonWriter;
 import com.jakduk.api.model.embedded.GalleryStatus;
 import com.jakduk.api.model.embedded.LinkedItem;
@@ -20,8 +22,6 @@ import com.jakduk.api.restcontroller.vo.gallery.GalleryOnList;
 import com.jakduk.api.restcontroller.vo.gallery.GalleryResponse;
 import com.jakduk.api.restcontroller.vo.gallery.SurroundingsGallery;
 import com.jakduk.api.restcontroller.vo.home.HomeGallery;
-import net.coobird.thumbnailator.Thumbnails;
-import net.coobird.thumbnailator.geometry.Positions;
 import org.apache.commons.lang3.StringUtils;
 import org.bson.types.ObjectId;
 import org.slf4j.Logger;
@@ -30,25 +30,21 @@ import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
-import org.springframework.util.DigestUtils;
 import org.springframework.util.ObjectUtils;
 
-import javax.annotation.Resource;
+import java.awt.Dimension;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.attribute.BasicFileAttributes;
-import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
-import java.util.Optional;
+import java.util.*;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 /**
  * @author <a href="mailto:phjang1983@daum.net">Jang,Pyohwan</a>
@@ -62,12 +58,13 @@ public class GalleryService {
 
 	private final Logger log = LoggerFactory.getLogger(this.getClass());
 
-	@Resource private JakdukProperties.Storage storageProperties;
-
 	@Autowired private UrlGenerationUtils urlGenerationUtils;
 	@Autowired private GalleryRepository galleryRepository;
 	@Autowired private ArticleRepository articleRepository;
 	@Autowired private CommonGalleryService commonGalleryService;
+	@Autowired private GalleryVariantService galleryVariantService;
+	@Autowired private MediaStoreService mediaStoreService;
+	@Autowired private GallerySimilarityService gallerySimilarityService;
 	@Autowired private RabbitMQPublisher rabbitMQPublisher;
 
 	public Gallery findOneById(String id) {
@@ -214,139 +211,223 @@ public class GalleryService {
 
 	/**
 	 * 사진 올리기
+	 * 업로드 내용은 임시 파일로 받아서 처리하므로 사진 크기와 상관없이 메모리 사용량이 일정하다.
      */
-	public Gallery uploadImage(CommonWriter writer, String fileName, long size, String contentType, byte[] bytes) {
+	public Gallery uploadImage(CommonWriter writer, String fileName, long size, String contentType, InputStream inputStream) {
+
+		Path tempFilePath = null;
+
+		try {
+			// 임시 파일로 받으면서 hash를 뽑는다.
+			tempFilePath = FileUtils.createTempFile();
+			String hash = FileUtils.writeTempFileWithHash(inputStream, tempFilePath);
+
+			return this.saveGallery(writer, fileName, size, contentType, tempFilePath, hash);
 
-		// hash를 뽑아 DB에 같은게 있는지 찾아보고, 있으면 찾은걸 응답.
-		String hash = DigestUtils.md5DigestAsHex(bytes);
+		} catch (IOException e) {
+			throw new ServiceException(ServiceError.GALLERY_IO_ERROR, e);
+		} finally {
+			FileUtils.deleteTempFile(tempFilePath);
+		}
+	}
+
+	/**
+	 * 이미 받은 파일로 사진을 올린다. 조각으로 나눠 받은 사진을 처리할 때 쓴다. 파일은 지우지 않는다.
+	 *
+	 * @param sourcePath 받은 파일
+	 * @param hash 받은 파일의 MD5 hash
+	 */
+	public Gallery uploadImage(CommonWriter writer, String fileName, long size, String contentType, Path sourcePath, String hash) {
+		try {
+			return this.saveGallery(writer, fileName, size, contentType, sourcePath, hash);
+		} catch (IOException e) {
+			throw new ServiceException(ServiceError.GALLERY_IO_ERROR, e);
+		}
+	}
+
+	private Gallery saveGallery(CommonWriter writer, String fileName, long size, String contentType, Path sourcePath,
+								String hash) throws IOException {
+
+		// DB에 같은게 있는지 찾아보고, 있으면 찾은걸 응답.
 		Optional<Gallery> oGallery = galleryRepository.findOneByHashAndStatusStatus(hash, Constants.GALLERY_STATUS_TYPE.ENABLE);
 
 		if (oGallery.isPresent())
 			return oGallery.get();
 
-		Gallery gallery = new Gallery();
-		gallery.setContentType(contentType);
-		gallery.setWriter(writer);
-		gallery.setStatus(new GalleryStatus(Constants.GALLERY_STATUS_TYPE.TEMP));
-		gallery.setFileName(fileName);
-		gallery.setSize(size);
-		gallery.setFileSize(size);
-		gallery.setHash(DigestUtils.md5DigestAsHex(bytes));
+		// 다시 저장했거나 압축률만 바꾼 사진이면, 원래 사진이 더 작지 않은 한 그걸 응답.
+		// 저장된 사진은 긴 쪽이 줄어 있으므로, 올린 사진도 저장할 때처럼 줄인 긴 쪽 길이로 비교한다.
+		long perceptualHash = ImageUtils.computeDifferenceHash(sourcePath);
+		int uploadedLongSide = FileUtils.getStoredLongSide(ImageUtils.readImageDimension(sourcePath),
+				StringUtils.split(contentType, "/")[1]);
 
-		galleryRepository.save(gallery);
+		Optional<Gallery> oNearDuplicate = gallerySimilarityService.findNearDuplicate(perceptualHash)
+				.filter(nearDuplicate -> Objects.nonNull(nearDuplicate.getWidth()) && Objects.nonNull(nearDuplicate.getHeight()))
+				.filter(nearDuplicate -> Math.max(nearDuplicate.getWidth(), nearDuplicate.getHeight()) >= uploadedLongSide);
 
-		// 사진 포맷.
-		String splitContentType[] = StringUtils.split(contentType, "/");
-		String formatName = splitContentType[1];
+		if (oNearDuplicate.isPresent()) {
+			log.debug("near duplicate gallery found. id={}, hash={}", oNearDuplicate.get().getId(), perceptualHash);
+			return oNearDuplicate.get();
+		}
+
+		// 같은 내용의 사진 파일이 이미 있으면 다시 만들지 않고 참조 수만 늘린다.
+		mediaStoreService.acquire(hash, contentType, size, sourcePath,
+				Constants.MEDIA_DERIVATIVE_TYPE.IMAGE, Constants.MEDIA_DERIVATIVE_TYPE.GALLERY_THUMBNAIL);
+
+		// 참조를 늘린 다음 저장하지 못하면 참조를 끊는다.
+		Gallery gallery = new Gallery();
 
 		try {
-			// 폴더 생성.
-			ObjectId objId = new ObjectId(gallery.getId());
-			Instant instant = Instant.ofEpochMilli(objId.getDate().getTime());
-			LocalDateTime timePoint = LocalDateTime.ofInstant(instant, ZoneId.systemDefault());
+			Path imageFilePath = mediaStoreService.getDerivativePath(hash, contentType, Constants.MEDIA_DERIVATIVE_TYPE.IMAGE);
+
+			// 클라이언트가 사진을 받기 전에 자리를 잡고 미리보기를 보여줄 수 있도록 한다.
+			Dimension dimension = ImageUtils.readImageDimension(imageFilePath);
+
+			gallery.setContentType(contentType);
+			gallery.setWriter(writer);
+			gallery.setStatus(new GalleryStatus(Constants.GALLERY_STATUS_TYPE.TEMP));
+			gallery.setFileName(fileName);
+			gallery.setSize(Files.size(imageFilePath));
+			gallery.setFileSize(size);
+			gallery.setWidth(dimension.width);
+			gallery.setHeight(dimension.height);
+			gallery.setPlaceholder(ImageUtils.createPlaceholder(imageFilePath));
+			gallery.setHash(hash);
+			gallery.setMediaId(hash);
+			gallery.setPerceptualHash(perceptualHash);
+			gallery.setOptimized(true);
+			gallery.setSavedSize(size - gallery.getSize());
 
-			Path imageDirPath = Paths.get(storageProperties.getImagePath(), String.valueOf(timePoint.getYear()),
-					String.valueOf(timePoint.getMonthValue()), String.valueOf(timePoint.getDayOfMonth()));
+			galleryRepository.save(gallery);
+		} catch (IOException | RuntimeException e) {
+			mediaStoreService.release(hash);
+			throw e;
+		}
 
-			Path thumbDirPath = Paths.get(storageProperties.getThumbnailPath(), String.valueOf(timePoint.getYear()),
-					String.valueOf(timePoint.getMonthValue()), String.valueOf(timePoint.getDayOfMonth()));
+		// 가로 길이별 사진을 미리 만들어 둔다.
+		galleryVariantService.generateVariants(gallery);
 
-			if (Files.notExists(imageDirPath, LinkOption.NOFOLLOW_LINKS))
-				Files.createDirectories(imageDirPath);
+		log.debug("gallery=\n{}", gallery);
 
-			if (Files.notExists(thumbDirPath, LinkOption.NOFOLLOW_LINKS))
-				Files.createDirectories(thumbDirPath);
+		return gallery;
+	}
 
-			// 사진 경로.
-			Path imageFilePath = imageDirPath.resolve(gallery.getId() + "." + formatName);
-			Path thumbFilePath = thumbDirPath.resolve(gallery.getId() + "." + formatName);
+	/**
+	 * 사진 파일 경로를 가져온다.
+	 * 내용 주소 저장소(Media)에 있으면 그 경로를, 아니면 예전 날짜별 경로를 준다.
+	 */
+	public Path getGalleryFilePath(Gallery gallery, Constants.IMAGE_TYPE imageType) {
 
-			// 사진 저장.
-			if (Files.notExists(imageFilePath, LinkOption.NOFOLLOW_LINKS)) {
-				if ("gif".equals(formatName)) {
-					Files.write(imageFilePath, bytes);
-				} else {
+		Path filePath = commonGalleryService.getGalleryFilePath(gallery, imageType);
 
-					double scale = Constants.GALLERY_MAXIMUM_CAPACITY < size ?
-							Constants.GALLERY_MAXIMUM_CAPACITY / (double) size : 1;
+		if (Files.notExists(filePath, LinkOption.NOFOLLOW_LINKS))
+			throw new ServiceException(ServiceError.NOT_FOUND_GALLERY);
 
-                    InputStream originalInputStream = new ByteArrayInputStream(bytes);
+		return filePath;
+	}
 
-					Thumbnails.of(originalInputStream)
-							.scale(scale)
-							.toFile(imageFilePath.toFile());
+	/**
+	 * ZIP 으로 내려받을 글/댓글의 사진 목록. 올린 순서대로 정렬된다.
+	 * 파일 크기의 합이 Constants.GALLERY_ZIP_MAXIMUM_SIZE 를 넘으면 내려받을 수 없다.
+	 *
+	 * @param itemId 아이템 ID
+	 * @param fromType 아이템 타입
+	 */
+	public List<Gallery> getGalleriesForZip(String itemId, Constants.GALLERY_FROM_TYPE fromType) {
 
-					BasicFileAttributes attr = Files.readAttributes(imageFilePath, BasicFileAttributes.class);
+		List<Gallery> galleries = new ArrayList<>(
+				galleryRepository.findByItemIdAndFromType(new ObjectId(itemId), fromType, Constants.GALLERY_ZIP_MAXIMUM_ITEMS));
 
-					gallery.setSize(attr.size());
+		if (galleries.isEmpty())
+			throw new ServiceException(ServiceError.NOT_FOUND_GALLERY);
 
-					galleryRepository.save(gallery);
-				}
-			}
+		Collections.reverse(galleries);
 
-			// 썸네일 만들기.
-			if (Files.notExists(thumbFilePath, LinkOption.NOFOLLOW_LINKS)) {
-				InputStream thumbInputStream = new ByteArrayInputStream(bytes);
+		long totalSize = 0L;
 
-				Thumbnails.of(thumbInputStream)
-						.size(Constants.GALLERY_THUMBNAIL_SIZE_WIDTH, Constants.GALLERY_THUMBNAIL_SIZE_HEIGHT)
-                        .crop(Positions.TOP_CENTER)
-						.toFile(thumbFilePath.toFile());
+		for (Gallery gallery : galleries) {
+			try {
+				totalSize += Files.size(commonGalleryService.getGalleryFilePath(gallery, Constants.IMAGE_TYPE.FULL));
+			} catch (IOException e) {
+				log.warn("gallery file not found. galleryId={}", gallery.getId());
 			}
-
-		} catch (IOException e) {
-			throw new ServiceException(ServiceError.GALLERY_IO_ERROR, e);
 		}
 
-		log.debug("gallery=\n{}", gallery);
-
-		return gallery;
+		if (totalSize > Constants.GALLERY_ZIP_MAXIMUM_SIZE)
+			throw new ServiceException(ServiceError.GALLERY_ZIP_TOO_LARGE);
 
+		return galleries;
 	}
 
-	// 이미지 가져오기.
-	public ByteArrayOutputStream getGalleryOutStream(String id, String contentType, Constants.IMAGE_TYPE imageType) {
-
-		ObjectId objId = new ObjectId(id);
-		Instant instant = Instant.ofEpochMilli(objId.getDate().getTime());
-		LocalDateTime timePoint = LocalDateTime.ofInstant(instant, ZoneId.systemDefault());
+	/**
+	 * 사진들을 ZIP 으로 묶어 바로 내보낸다. 파일을 메모리나 임시 파일에 모으지 않는다.
+	 * 이미 압축된 포맷(JPEG, PNG, GIF)은 다시 압축해도 줄지 않으므로 STORED 로 담는다.
+	 *
+	 * @param galleries 사진 목록
+	 * @param outputStream 내보낼 곳. 닫지 않는다.
+	 */
+	public void writeGalleriesZip(List<Gallery> galleries, OutputStream outputStream) throws IOException {
 
-		String imagePath = null;
+		ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream);
+		Set<String> entryNames = new HashSet<>();
 
-		switch (imageType) {
-			case FULL:
-				imagePath = storageProperties.getImagePath();
-				break;
-			case THUMBNAIL:
-				imagePath = storageProperties.getThumbnailPath();
-				break;
-		}
+		for (Gallery gallery : galleries) {
+			Path filePath = commonGalleryService.getGalleryFilePath(gallery, Constants.IMAGE_TYPE.FULL);
 
-		String formatName = StringUtils.split(contentType, "/")[1];
+			if (Files.notExists(filePath, LinkOption.NOFOLLOW_LINKS)) {
+				log.warn("gallery file not found. galleryId={}, path={}", gallery.getId(), filePath);
+				continue;
+			}
 
-		Path filePath = Paths.get(imagePath, String.valueOf(timePoint.getYear()), String.valueOf(timePoint.getMonthValue()),
-				String.valueOf(timePoint.getDayOfMonth()), id + "." + formatName);
+			ZipEntry zipEntry = new ZipEntry(this.getZipEntryName(gallery, entryNames));
+			String formatName = StringUtils.split(gallery.getContentType(), "/")[1];
 
-		if (Files.exists(filePath, LinkOption.NOFOLLOW_LINKS)) {
-			try {
-				BufferedInputStream in = new BufferedInputStream(new FileInputStream(filePath.toString()));
-				ByteArrayOutputStream byteStream = new ByteArrayOutputStream(512);
+			// STORED 는 내용보다 먼저 크기와 CRC 를 써야 하므로 파일을 한번 더 읽는다.
+			if (Constants.GALLERY_ZIP_STORED_FORMATS.contains(formatName)) {
+				long size = Files.size(filePath);
+				CRC32 crc = new CRC32();
 
-				int imageByte;
+				try (CheckedInputStream checkedInputStream = new CheckedInputStream(Files.newInputStream(filePath), crc)) {
+					byte[] buffer = new byte[8192];
 
-				while ((imageByte = in.read()) != -1){
-					byteStream.write(imageByte);
+					while (checkedInputStream.read(buffer) != -1) {
+						// CRC 만 구한다.
+					}
 				}
 
-				in.close();
-				return byteStream;
-
-			} catch (IOException e) {
-				throw new ServiceException(ServiceError.GALLERY_IO_ERROR, e);
+				zipEntry.setMethod(ZipEntry.STORED);
+				zipEntry.setSize(size);
+				zipEntry.setCompressedSize(size);
+				zipEntry.setCrc(crc.getValue());
 			}
-		} else {
-			throw new ServiceException(ServiceError.NOT_FOUND_GALLERY);
+
+			zipOutputStream.putNextEntry(zipEntry);
+			Files.copy(filePath, zipOutputStream);
+			zipOutputStream.closeEntry();
 		}
+
+		zipOutputStream.finish();
+		zipOutputStream.flush();
+	}
+
+	// ZIP 안의 파일 이름. 같은 이름이 있으면 ZipOutputStream 이 실패하므로 순번을 붙인다.
+	private String getZipEntryName(Gallery gallery, Set<String> entryNames) {
+
+		String formatName = StringUtils.split(gallery.getContentType(), "/")[1];
+		String name = StringUtils.isNotBlank(gallery.getName()) ? gallery.getName() : gallery.getFileName();
+		name = StringUtils.defaultIfBlank(name, gallery.getId()).replaceAll("[\\\\/:*?\"<>|]", "_");
+
+		String extension = StringUtils.substringAfterLast(name, ".");
+		boolean jpeg = StringUtils.equalsAnyIgnoreCase(formatName, "jpg", "jpeg");
+
+		if (! StringUtils.equalsIgnoreCase(extension, formatName) && ! (jpeg && StringUtils.equalsAnyIgnoreCase(extension, "jpg", "jpeg")))
+			name = name + "." + formatName;
+
+		String entryName = name;
+
+		for (int i = 1; ! entryNames.add(entryName); i++)
+			entryName = StringUtils.substringBeforeLast(name, ".") + " (" + i + ")." + StringUtils.substringAfterLast(name, ".");
+
+		return entryName;
 	}
 
 	/**
@@ -365,7 +446,7 @@ public class GalleryService {
 			if (! userId.equals(gallery.getWriter().getUserId()))
 				throw new ServiceException(ServiceError.FORBIDDEN);
 
-			commonGalleryService.deleteGallery(id, gallery.getContentType());
+			commonGalleryService.deleteGallery(gallery);
 		}
 	}
 
@@ -384,6 +465,17 @@ public class GalleryService {
 
 		LinkedItem linkedItem = new LinkedItem(itemId, fromType);
 
+		// 연결/해제로 바뀐 Gallery 들은 모아서 한번에 저장하고, 색인 요청도 한번에 보낸다.
+		List<Gallery> galleriesForUpdate = new ArrayList<>();
+		List<EsGallery> esGalleries = new ArrayList<>();
+
+		// 사용자가 입력한 사진 이름. (key : Gallery ID)
+		Map<String, GalleryOnBoard> galleriesOnBoard = CollectionUtils.isEmpty(galleriesForInsertion) ? Collections.emptyMap() :
+				galleriesForInsertion.stream()
+						.collect(Collectors.toMap(GalleryOnBoard::getId, Function.identity(), (first, second) -> first));
+
+		Set<String> linkedGalleryIds = new HashSet<>();
+
 		// Galleries 와 해당 Item을 연결 한다.
 		galleries.forEach(gallery -> {
 			List<LinkedItem> willBeLinkedItems = gallery.getLinkedItems();
@@ -398,34 +490,39 @@ public class GalleryService {
 			}
 
 			// 사용자가 입력한 이름이 있다면 그걸 입력. 그림 글쓴이만 이름을 고칠 수 있다.
-			if (userId.equals(gallery.getWriter().getUserId())) {
-				galleriesForInsertion.stream()
-						.filter(galleryOnBoard -> galleryOnBoard.getId().equals(gallery.getId()))
-						.findFirst()
-						.ifPresent(galleryOnBoard -> {
-							gallery.setName(galleryOnBoard.getName());
-						});
-			}
+			if (userId.equals(gallery.getWriter().getUserId()) && galleriesOnBoard.containsKey(gallery.getId()))
+				gallery.setName(galleriesOnBoard.get(gallery.getId()).getName());
 
 			GalleryStatus status = gallery.getStatus();
 
 			if (status.getStatus().equals(Constants.GALLERY_STATUS_TYPE.TEMP)) {
 				status.setStatus(Constants.GALLERY_STATUS_TYPE.ENABLE);
 				gallery.setStatus(status);
+
+				// 이제부터 비슷한 사진 찾기에 나온다.
+				gallerySimilarityService.index(gallery);
 			}
 
-			galleryRepository.save(gallery);
+			galleriesForUpdate.add(gallery);
+
+			EsGallery esGallery = new EsGallery();
+			esGallery.setId(gallery.getId());
+			esGallery.setWriter(gallery.getWriter());
+			esGallery.setName(gallery.getName());
 
-			// 엘라스틱서치 색인 요청
-			rabbitMQPublisher.indexDocumentGallery(gallery.getId(), gallery.getWriter(), gallery.getName());
+			esGalleries.add(esGallery);
 
-			if (! CollectionUtils.isEmpty(galleryIdsForRemoval) && galleryIdsForRemoval.contains(gallery.getId()))
-				galleryIdsForRemoval.remove(gallery.getId());
+			linkedGalleryIds.add(gallery.getId());
 		});
 
 		// Galleries 와 해당 Item을 연결 해제한다. Gallery 가 지워질 수도 있음.
 		if (! CollectionUtils.isEmpty(galleryIdsForRemoval)) {
-			List<Gallery> galleriesForRemoval = galleryRepository.findByIdIn(galleryIdsForRemoval);
+			List<String> idsForRemoval = galleryIdsForRemoval.stream()
+					.filter(id -> ! linkedGalleryIds.contains(id))
+					.collect(Collectors.toList());
+
+			List<Gallery> galleriesForRemoval = idsForRemoval.isEmpty() ? Collections.emptyList() :
+					galleryRepository.findByIdIn(idsForRemoval);
 
 			galleriesForRemoval.forEach(gallery -> {
 				List<LinkedItem> linkedItems = gallery.getLinkedItems();
@@ -440,18 +537,23 @@ public class GalleryService {
 
 					// 모두 지움.
 					if (linkedItems.size() < 1) {
-						commonGalleryService.deleteGallery(gallery.getId(), gallery.getContentType());
+						commonGalleryService.deleteGallery(gallery);
 						// 엘라스틱 서치 document 삭제.
 						rabbitMQPublisher.deleteDocumentGallery(gallery.getId());
 					}
 					// 업데이트 처리
 					else {
 						gallery.setLinkedItems(linkedItems);
-						galleryRepository.save(gallery);
+						galleriesForUpdate.add(gallery);
 					}
 				}
 			});
 		}
+
+		galleryRepository.updateLinkedItemsInBulk(galleriesForUpdate);
+
+		// 엘라스틱서치 색인 요청
+		rabbitMQPublisher.indexDocumentGalleries(esGalleries);
 	}
 
 }
@@ -0,0 +1,165 @@
+package com.jakduk.api.service;
+
+import com.jakduk.api.common.Constants;
+import com.jakduk.api.common.util.HammingBKTree;
+import com.jakduk.api.common.util.UrlGenerationUtils;
+import com.jakduk.api.exception.ServiceError;
+import com.jakduk.api.exception.ServiceException;
+import com.jakduk.api.model.db.Gallery;
+import com.jakduk.api.repository.gallery.GalleryRepository;
+import com.jakduk.api.restcontroller.vo.gallery.SimilarGallery;
+import org.apache.commons.lang3.StringUtils;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * dHash 로 비슷한 사진 찾기
+ *
+ * ENABLE 상태 사진들의 dHash 를 메모리의 BK-tree 에 올려두고 해밍 거리로 찾는다.
+ * 서버 시작시 DB 에서 읽어 들이고, 이 서버에서 사진이 글/댓글과 엮이거나 지워질 때 함께 반영한다.
+ * 다른 서버에서 엮이거나 지워진 사진은 Constants.GALLERY_SIMILARITY_REFRESH_MS 마다 DB 에서 새로 만든 tree 로 바꿔서 반영한다.
+ */
+
+@Service
+public class GallerySimilarityService {
+
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	private static final Integer LOAD_PAGE_SIZE = 1000;
+
+	@Autowired private UrlGenerationUtils urlGenerationUtils;
+	@Autowired private GalleryRepository galleryRepository;
+
+	private volatile HammingBKTree hashTree = new HammingBKTree();
+
+	@PostConstruct
+	public void loadHashes() {
+
+		HammingBKTree newHashTree = new HammingBKTree();
+		ObjectId lastId = null;
+
+		while (true) {
+			List<Gallery> galleries = galleryRepository.findPerceptualHashesAfter(lastId, LOAD_PAGE_SIZE);
+
+			galleries.stream()
+					.filter(gallery -> Objects.nonNull(gallery.getPerceptualHash()))
+					.forEach(gallery -> newHashTree.add(gallery.getPerceptualHash(), gallery.getId()));
+
+			if (galleries.size() < LOAD_PAGE_SIZE)
+				break;
+
+			lastId = new ObjectId(galleries.get(galleries.size() - 1).getId());
+		}
+
+		// 새로 만드는 동안 이 서버에서 반영한 사진은 다음에 다시 만들 때 들어간다.
+		hashTree = newHashTree;
+
+		log.info("gallery perceptual hashes loaded. size={}", newHashTree.size());
+	}
+
+	@Scheduled(initialDelay = Constants.GALLERY_SIMILARITY_REFRESH_MS, fixedDelay = Constants.GALLERY_SIMILARITY_REFRESH_MS)
+	public void refreshHashes() {
+		try {
+			this.loadHashes();
+		} catch (RuntimeException e) {
+			log.warn("failed to refresh gallery perceptual hashes.", e);
+		}
+	}
+
+	/**
+	 * 같은 사진을 다시 저장했거나 압축률만 바꾼 사진을 찾는다.
+	 * Constants.GALLERY_NEAR_DUPLICATE_DISTANCE 이내에서 가장 가까운 ENABLE 상태 사진.
+	 *
+	 * @param perceptualHash dHash
+	 */
+	public Optional<Gallery> findNearDuplicate(long perceptualHash) {
+
+		List<HammingBKTree.Match> matches = hashTree.search(perceptualHash, Constants.GALLERY_NEAR_DUPLICATE_DISTANCE);
+
+		if (matches.isEmpty())
+			return Optional.empty();
+
+		return this.findEnableGalleries(matches).stream().findFirst();
+	}
+
+	/**
+	 * 비슷한 사진 목록. 비슷한 순으로 정렬된다.
+	 *
+	 * @param id 사진 ID
+	 * @param size 최대 개수
+	 */
+	public List<SimilarGallery> getSimilarGalleries(String id, Integer size) {
+
+		Gallery gallery = galleryRepository.findOneById(id)
+				.orElseThrow(() -> new ServiceException(ServiceError.NOT_FOUND_GALLERY));
+
+		if (Objects.isNull(gallery.getPerceptualHash()))
+			return Collections.emptyList();
+
+		List<HammingBKTree.Match> matches = hashTree.search(gallery.getPerceptualHash(), Constants.GALLERY_SIMILAR_DISTANCE).stream()
+				.filter(match -> ! match.getId().equals(id))
+				.limit(size)
+				.collect(Collectors.toList());
+
+		Map<String, Integer> distances = matches.stream()
+				.collect(Collectors.toMap(HammingBKTree.Match::getId, HammingBKTree.Match::getDistance));
+
+		return this.findEnableGalleries(matches).stream()
+				.map(similar -> {
+					SimilarGallery similarGallery = new SimilarGallery();
+					BeanUtils.copyProperties(similar, similarGallery);
+
+					similarGallery.setName(StringUtils.isNotBlank(similar.getName()) ? similar.getName() : similar.getFileName());
+					similarGallery.setImageUrl(urlGenerationUtils.generateGalleryUrl(Constants.IMAGE_SIZE_TYPE.LARGE, similar.getId()));
+					similarGallery.setThumbnailUrl(urlGenerationUtils.generateGalleryUrl(Constants.IMAGE_SIZE_TYPE.SMALL, similar.getId()));
+					similarGallery.setDistance(distances.get(similar.getId()));
+
+					return similarGallery;
+				})
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * 사진을 찾을 수 있도록 등록한다. dHash 가 없는 예전 사진은 등록되지 않는다.
+	 */
+	public void index(Gallery gallery) {
+		if (Objects.nonNull(gallery.getPerceptualHash()))
+			hashTree.add(gallery.getPerceptualHash(), gallery.getId());
+	}
+
+	/**
+	 * 지워진 사진을 뺀다.
+	 */
+	public void remove(Gallery gallery) {
+		if (Objects.nonNull(gallery.getPerceptualHash()))
+			hashTree.remove(gallery.getPerceptualHash(), gallery.getId());
+	}
+
+	// 찾은 순서를 유지하며 실제로 ENABLE 상태인 사진만 가져온다.
+	private List<Gallery> findEnableGalleries(List<HammingBKTree.Match> matches) {
+
+		if (matches.isEmpty())
+			return Collections.emptyList();
+
+		Map<String, Gallery> galleries = galleryRepository.findByIdIn(matches.stream().map(HammingBKTree.Match::getId).collect(Collectors.toList()))
+				.stream()
+				.filter(gallery -> gallery.getStatus().getStatus().equals(Constants.GALLERY_STATUS_TYPE.ENABLE))
+				.collect(Collectors.toMap(Gallery::getId, Function.identity()));
+
+		return matches.stream()
+				.map(match -> galleries.get(match.getId()))
+				.filter(Objects::nonNull)
+				.collect(Collectors.toList());
+	}
+
+}
@@ -0,0 +1,256 @@
+package com.jakduk.api.service;
+
+import com.jakduk.api.common.Constants;
+import com.jakduk.api.common.util.FileUtils;
+import com.jakduk.api.configuration.JakdukProperties;
+import com.jakduk.api.exception.ServiceError;
+import com.jakduk.api.exception.ServiceException;
+import com.jakduk.api.model.db.Gallery;
+import com.jakduk.api.model.db.GalleryUpload;
+import com.jakduk.api.model.embedded.CommonWriter;
+import com.jakduk.api.repository.gallery.GalleryUploadRepository;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 사진을 조각(chunk)으로 나눠 올리기
+ *
+ * 시작하면 GalleryUpload 와 빈 파일을 만들고, 조각은 받은 위치(offset)에 이어 쓴다.
+ * 연결이 끊기면 받은 위치를 물어보고 거기서부터 다시 보내면 된다. 다 받으면 일반 사진 올리기와 같은 처리를 한다.
+ */
+
+@Service
+public class GalleryUploadService {
+
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	// 같은 올리기에 대한 조각 쓰기가 겹치지 않도록 한다.
+	private final Object[] locks = new Object[64];
+
+	@Resource private JakdukProperties.Storage storageProperties;
+
+	@Autowired private GalleryUploadRepository galleryUploadRepository;
+	@Autowired private GalleryService galleryService;
+
+	public GalleryUploadService() {
+		for (int i = 0; i < locks.length; i++)
+			locks[i] = new Object();
+	}
+
+	/**
+	 * 조각으로 나눠 올리기를 시작한다.
+	 *
+	 * @param writer 올린이
+	 * @param fileName 파일 이름
+	 * @param contentType 콘텐츠 타입
+	 * @param size 전체 크기
+	 */
+	public GalleryUpload initiate(CommonWriter writer, String fileName, String contentType, Long size) {
+
+		if (! StringUtils.startsWithIgnoreCase(contentType, "image/"))
+			throw new ServiceException(ServiceError.FILE_ONLY_IMAGE_TYPE_CAN_BE_UPLOADED);
+
+		if (size > Constants.GALLERY_UPLOAD_MAXIMUM_SIZE)
+			throw new ServiceException(ServiceError.INVALID_PARAMETER);
+
+		GalleryUpload galleryUpload = new GalleryUpload();
+		galleryUpload.setWriter(writer);
+		galleryUpload.setFileName(fileName);
+		galleryUpload.setContentType(contentType);
+		galleryUpload.setSize(size);
+		galleryUpload.setOffset(0L);
+		galleryUpload.setCreatedAt(LocalDateTime.now());
+		galleryUpload.setUpdatedAt(galleryUpload.getCreatedAt());
+
+		galleryUploadRepository.save(galleryUpload);
+
+		try {
+			Path uploadFilePath = this.getUploadFilePath(galleryUpload.getId());
+			Files.createDirectories(uploadFilePath.getParent());
+			Files.createFile(uploadFilePath);
+		} catch (IOException e) {
+			galleryUploadRepository.deleteById(galleryUpload.getId());
+			throw new ServiceException(ServiceError.GALLERY_IO_ERROR, e);
+		}
+
+		return galleryUpload;
+	}
+
+	/**
+	 * 올리는 중인 사진. 올린이만 볼 수 있다.
+	 */
+	public GalleryUpload getUpload(String id, String userId) {
+
+		GalleryUpload galleryUpload = galleryUploadRepository.findOneById(id)
+				.orElseThrow(() -> new ServiceException(ServiceError.NOT_FOUND_GALLERY_UPLOAD));
+
+		if (! userId.equals(galleryUpload.getWriter().getUserId()))
+			throw new ServiceException(ServiceError.FORBIDDEN);
+
+		return galleryUpload;
+	}
+
+	/**
+	 * 조각을 받은 위치에 이어 쓴다.
+	 * 지난번에 쓰다가 끊긴 내용이 있으면 받은 위치 뒤로는 버리고 쓴다.
+	 *
+	 * @param id 올리기 ID
+	 * @param userId 올린이 ID
+	 * @param offset 조각의 시작 위치. 지금까지 받은 크기와 같아야 한다.
+	 * @param checksum 조각의 MD5 (Content-MD5, base64). 없으면 확인하지 않는다.
+	 * @param inputStream 조각 내용
+	 */
+	public GalleryUpload appendChunk(String id, String userId, Long offset, String checksum, InputStream inputStream) {
+
+		synchronized (this.getLock(id)) {
+			GalleryUpload galleryUpload = this.getUpload(id, userId);
+
+			if (! galleryUpload.getOffset().equals(offset))
+				throw new ServiceException(ServiceError.GALLERY_UPLOAD_OFFSET_MISMATCH);
+
+			long maximumLength = Math.min(Constants.GALLERY_UPLOAD_MAXIMUM_CHUNK_SIZE, galleryUpload.getSize() - offset);
+
+			MessageDigest messageDigest;
+
+			try {
+				messageDigest = MessageDigest.getInstance("MD5");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+
+			long written = 0L;
+
+			try (FileChannel channel = FileChannel.open(this.getUploadFilePath(id), StandardOpenOption.WRITE)) {
+				channel.truncate(offset);
+				channel.position(offset);
+
+				byte[] buffer = new byte[64 * 1024];
+				int read;
+
+				while ((read = inputStream.read(buffer)) != -1) {
+					written += read;
+
+					if (written > maximumLength) {
+						channel.truncate(offset);
+						throw new ServiceException(ServiceError.INVALID_PARAMETER);
+					}
+
+					messageDigest.update(buffer, 0, read);
+
+					ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, read);
+
+					while (byteBuffer.hasRemaining())
+						channel.write(byteBuffer);
+				}
+
+				if (StringUtils.isNotBlank(checksum) &&
+						! checksum.equals(Base64.getEncoder().encodeToString(messageDigest.digest()))) {
+					channel.truncate(offset);
+					throw new ServiceException(ServiceError.GALLERY_UPLOAD_CHECKSUM_MISMATCH);
+				}
+
+			} catch (IOException e) {
+				throw new ServiceException(ServiceError.GALLERY_IO_ERROR, e);
+			}
+
+			galleryUpload.setOffset(offset + written);
+			galleryUpload.setUpdatedAt(LocalDateTime.now());
+
+			return galleryUploadRepository.save(galleryUpload);
+		}
+	}
+
+	/**
+	 * 다 받은 사진을 일반 사진 올리기와 같이 처리하고, 올리기를 끝낸다.
+	 *
+	 * @param id 올리기 ID
+	 * @param userId 올린이 ID
+	 * @param md5 전체 내용의 MD5 (hex). 없으면 확인하지 않는다.
+	 */
+	public Gallery complete(String id, String userId, String md5) {
+
+		synchronized (this.getLock(id)) {
+			GalleryUpload galleryUpload = this.getUpload(id, userId);
+
+			if (galleryUpload.getOffset() < galleryUpload.getSize())
+				throw new ServiceException(ServiceError.GALLERY_UPLOAD_INCOMPLETE);
+
+			Path uploadFilePath = this.getUploadFilePath(id);
+			String hash;
+
+			try {
+				hash = FileUtils.computeHash(uploadFilePath);
+			} catch (IOException e) {
+				throw new ServiceException(ServiceError.GALLERY_IO_ERROR, e);
+			}
+
+			// 전체 내용이 다르면 어느 조각이 틀렸는지 알 수 없으므로 처음부터 다시 올려야 한다.
+			if (StringUtils.isNotBlank(md5) && ! md5.equalsIgnoreCase(hash)) {
+				this.removeUpload(galleryUpload);
+				throw new ServiceException(ServiceError.GALLERY_UPLOAD_CHECKSUM_MISMATCH);
+			}
+
+			Gallery gallery = galleryService.uploadImage(galleryUpload.getWriter(), galleryUpload.getFileName(),
+					galleryUpload.getSize(), galleryUpload.getContentType(), uploadFilePath, hash);
+
+			this.removeUpload(galleryUpload);
+
+			return gallery;
+		}
+	}
+
+	/**
+	 * 오래 이어지지 않은 올리기를 지운다. TEMP 사진과 같은 기준(jakduk.storage.temp-expiration-hours)을 쓴다.
+	 */
+	@Scheduled(initialDelayString = "${jakduk.storage.temp-cleanup-interval-ms:3600000}",
+			fixedDelayString = "${jakduk.storage.temp-cleanup-interval-ms:3600000}")
+	public void removeExpiredUploads() {
+
+		int expirationHours = Objects.nonNull(storageProperties.getTempExpirationHours()) ? storageProperties.getTempExpirationHours() : 24;
+
+		List<GalleryUpload> expiredUploads = galleryUploadRepository.findByUpdatedAtBefore(LocalDateTime.now().minusHours(expirationHours));
+
+		expiredUploads.forEach(galleryUpload -> {
+			synchronized (this.getLock(galleryUpload.getId())) {
+				this.removeUpload(galleryUpload);
+			}
+		});
+
+		if (! expiredUploads.isEmpty())
+			log.info("expired gallery uploads removed. count={}", expiredUploads.size());
+	}
+
+	private void removeUpload(GalleryUpload galleryUpload) {
+		FileUtils.deleteTempFile(this.getUploadFilePath(galleryUpload.getId()));
+		galleryUploadRepository.deleteById(galleryUpload.getId());
+	}
+
+	private Path getUploadFilePath(String id) {
+		return Paths.get(storageProperties.getUploadPath(), id);
+	}
+
+	private Object getLock(String id) {
+		return locks[Math.floorMod(id.hashCode(), locks.length)];
+	}
+
+}
@@ -0,0 +1,319 @@
+package com.jakduk.api.service;
+
+import com.jakduk.api.common.Constants;
+import com.jakduk.api.common.util.FileUtils;
+import com.jakduk.api.common.util.ImageUtils;
+import com.jakduk.api.configuration.JakdukProperties;
+import com.jakduk.api.exception.ServiceError;
+import com.jakduk.api.exception.ServiceException;
+import com.jakduk.api.model.db.Gallery;
+import net.coobird.thumbnailator.Thumbnails;
+import org.apache.commons.lang3.StringUtils;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 가로 길이별 사진(variant) 생성과 디스크 LRU 캐시
+ *
+ * variant 는 원본 사진으로부터 처음 요청될 때 만들어지고, jakduk.storage.variant-path 아래에 저장된다.
+ * 전체 용량이 jakduk.storage.variant-cache-max-size-mb 를 넘으면 가장 오래 사용하지 않은 variant 부터 지운다.
+ * 파일은 cacheEntries 를 잠근 채로 열고 지우므로, openVariant 로 연 파일은 보내는 도중에 지워지지 않는다.
+ */
+
+@Service
+public class GalleryVariantService {
+
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+	@Resource private JakdukProperties.Storage storageProperties;
+
+	// 사용 순서대로 정렬된 variant 파일 목록. (key : 파일 경로, value : 파일 크기)
+	private final LinkedHashMap<Path, Long> cacheEntries = new LinkedHashMap<>(256, 0.75f, true);
+	private long cacheSize = 0L;
+
+	// 같은 variant 를 동시에 요청하면 하나만 만들고 나머지는 그 결과를 기다린다.
+	private final ConcurrentHashMap<Path, CompletableFuture<Path>> variantsInProgress = new ConcurrentHashMap<>();
+
+	/**
+	 * 서버 시작시 디스크에 남아 있는 variant 들을 수정일 순서로 캐시에 등록한다.
+	 */
+	@PostConstruct
+	public void loadCacheEntries() {
+
+		if (StringUtils.isBlank(storageProperties.getVariantPath()))
+			return;
+
+		Path variantRootPath = Paths.get(storageProperties.getVariantPath());
+
+		if (Files.notExists(variantRootPath, LinkOption.NOFOLLOW_LINKS))
+			return;
+
+		try (Stream<Path> paths = Files.walk(variantRootPath)) {
+			Map<Boolean, List<Path>> files = paths
+					.filter(path -> Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS))
+					.collect(Collectors.partitioningBy(this::isTempFile));
+
+			// 만들다 만 파일은 캐시에 넣지 않고 지운다.
+			files.get(true).forEach(this::deleteVariantFile);
+
+			List<Path> variantFiles = files.get(false).stream()
+					.sorted(Comparator.comparing(path -> path.toFile().lastModified()))
+					.collect(Collectors.toList());
+
+			synchronized (cacheEntries) {
+				for (Path variantFile : variantFiles) {
+					long size = Files.readAttributes(variantFile, BasicFileAttributes.class).size();
+					cacheEntries.put(variantFile, size);
+					cacheSize += size;
+				}
+			}
+
+			this.evictOverflow();
+
+			log.info("gallery variant cache loaded. entries={}, size={}", variantFiles.size(), cacheSize);
+
+		} catch (IOException e) {
+			log.warn(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * 요청한 가로 길이의 사진 경로를 가져온다. 없으면 원본으로부터 만든다.
+	 * GIF 이거나 원본이 요청한 길이보다 작으면 원본 경로를 돌려준다.
+	 *
+	 * @param gallery 사진
+	 * @param width 가로 길이. Constants.GALLERY_VARIANT_WIDTHS 중 하나
+	 */
+	public Path getVariant(Gallery gallery, Integer width) {
+
+		if (! Constants.GALLERY_VARIANT_WIDTHS.contains(width))
+			throw new ServiceException(ServiceError.INVALID_PARAMETER);
+
+		Path originalPath = this.getOriginalPath(gallery);
+
+		if (Files.notExists(originalPath, LinkOption.NOFOLLOW_LINKS))
+			throw new ServiceException(ServiceError.NOT_FOUND_GALLERY_FILE);
+
+		String formatName = StringUtils.split(gallery.getContentType(), "/")[1];
+
+		if ("gif".equals(formatName))
+			return originalPath;
+
+		Path variantPath = this.getVariantPath(this.getVariantKey(gallery), formatName, width);
+
+		synchronized (cacheEntries) {
+			// get 으로 읽어야 사용 순서가 갱신된다.
+			if (Objects.nonNull(cacheEntries.get(variantPath)) && Files.exists(variantPath, LinkOption.NOFOLLOW_LINKS))
+				return variantPath;
+		}
+
+		CompletableFuture<Path> newVariant = new CompletableFuture<>();
+		CompletableFuture<Path> variantInProgress = variantsInProgress.putIfAbsent(variantPath, newVariant);
+
+		if (Objects.isNull(variantInProgress)) {
+			try {
+				newVariant.complete(this.createVariant(originalPath, variantPath, formatName, width));
+			} catch (IOException | RuntimeException e) {
+				newVariant.completeExceptionally(e);
+			} finally {
+				variantsInProgress.remove(variantPath);
+			}
+
+			variantInProgress = newVariant;
+		}
+
+		try {
+			return variantInProgress.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ServiceException(ServiceError.GALLERY_IO_ERROR, e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof ServiceException)
+				throw (ServiceException) e.getCause();
+
+			throw new ServiceException(ServiceError.GALLERY_IO_ERROR, e.getCause());
+		}
+	}
+
+	/**
+	 * 요청한 가로 길이의 사진을 연다. 경로를 받은 뒤 열기 전에 지워졌으면 다시 만들어서 연다.
+	 * 이미 연 파일은 지워져도 끝까지 읽을 수 있다.
+	 *
+	 * @param gallery 사진
+	 * @param width 가로 길이. Constants.GALLERY_VARIANT_WIDTHS 중 하나
+	 */
+	public InputStream openVariant(Gallery gallery, Integer width) {
+
+		NoSuchFileException lastException = null;
+
+		for (int attempt = 0; attempt < 2; attempt++) {
+			Path variantPath = this.getVariant(gallery, width);
+
+			try {
+				synchronized (cacheEntries) {
+					cacheEntries.get(variantPath);
+					return Files.newInputStream(variantPath);
+				}
+			} catch (NoSuchFileException e) {
+				lastException = e;
+			} catch (IOException e) {
+				throw new ServiceException(ServiceError.GALLERY_IO_ERROR, e);
+			}
+		}
+
+		throw new ServiceException(ServiceError.NOT_FOUND_GALLERY_FILE, lastException);
+	}
+
+	/**
+	 * 새로 올라온 사진의 variant 들을 미리 만들어 둔다.
+	 */
+	@Async
+	public void generateVariants(Gallery gallery) {
+		for (Integer width : Constants.GALLERY_VARIANT_WIDTHS) {
+			try {
+				this.getVariant(gallery, width);
+			} catch (ServiceException e) {
+				log.warn("failed to generate variant. galleryId={}, width={}", gallery.getId(), width, e);
+			}
+		}
+	}
+
+	/**
+	 * 사진의 모든 variant 를 지운다.
+	 *
+	 * @param id Gallery ID. 내용 주소 저장소(Media)에 있는 사진이면 Media ID
+	 * @param contentType contentType
+	 */
+	public void removeVariants(String id, String contentType) {
+
+		if (StringUtils.isBlank(storageProperties.getVariantPath()))
+			return;
+
+		String formatName = StringUtils.split(contentType, "/")[1];
+
+		for (Integer width : Constants.GALLERY_VARIANT_WIDTHS) {
+			Path variantPath = this.getVariantPath(id, formatName, width);
+
+			synchronized (cacheEntries) {
+				Long size = cacheEntries.remove(variantPath);
+
+				if (Objects.nonNull(size))
+					cacheSize -= size;
+
+				this.deleteVariantFile(variantPath);
+			}
+		}
+	}
+
+	private Path createVariant(Path originalPath, Path variantPath, String formatName, Integer width) throws IOException {
+
+		// 원본이 더 작으면 늘리지 않고 원본을 쓴다.
+		if (ImageUtils.readImageDimension(originalPath).width <= width)
+			return originalPath;
+
+		Files.createDirectories(variantPath.getParent());
+
+		// 다 만든 다음에 옮겨서, 만드는 중인 파일을 읽지 않도록 한다.
+		// Thumbnailator 의 toFile 은 포맷의 확장자를 덧붙이므로, 바이트로 만들어서 임시 파일에 그대로 쓴다.
+		Path tempPath = variantPath.resolveSibling(variantPath.getFileName() + TEMP_FILE_SUFFIX);
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+		Thumbnails.of(ImageUtils.readImage(originalPath, width))
+				.width(width)
+				.outputFormat(formatName)
+				.toOutputStream(outputStream);
+
+		Files.write(tempPath, outputStream.toByteArray());
+
+		Files.move(tempPath, variantPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		long size = Files.readAttributes(variantPath, BasicFileAttributes.class).size();
+
+		synchronized (cacheEntries) {
+			Long oldSize = cacheEntries.put(variantPath, size);
+			cacheSize += size - (Objects.nonNull(oldSize) ? oldSize : 0L);
+		}
+
+		this.evictOverflow();
+
+		return variantPath;
+	}
+
+	/**
+	 * 최대 용량을 넘은 만큼 가장 오래 사용하지 않은 variant 를 지운다.
+	 */
+	private void evictOverflow() {
+
+		long maxSize = Objects.nonNull(storageProperties.getVariantCacheMaxSizeMb()) ?
+				storageProperties.getVariantCacheMaxSizeMb() * 1024L * 1024L : Long.MAX_VALUE;
+
+		// 지우는 중에 같은 파일을 열지 않도록, 목록에서 빼고 지우는 것까지 잠근 채로 한다.
+		synchronized (cacheEntries) {
+			Iterator<Map.Entry<Path, Long>> iterator = cacheEntries.entrySet().iterator();
+
+			while (cacheSize > maxSize && iterator.hasNext()) {
+				Map.Entry<Path, Long> eldest = iterator.next();
+				cacheSize -= eldest.getValue();
+				iterator.remove();
+
+				this.deleteVariantFile(eldest.getKey());
+			}
+		}
+	}
+
+	// 예전에는 Thumbnailator 가 확장자를 덧붙여서 {id}.{포맷}.tmp.{포맷} 로 남았다.
+	private boolean isTempFile(Path path) {
+		String fileName = path.getFileName().toString();
+
+		return fileName.endsWith(TEMP_FILE_SUFFIX) || fileName.contains(TEMP_FILE_SUFFIX + ".");
+	}
+
+	private void deleteVariantFile(Path variantPath) {
+		try {
+			Files.deleteIfExists(variantPath);
+		} catch (IOException e) {
+			log.warn(e.getMessage(), e);
+		}
+	}
+
+	private Path getOriginalPath(Gallery gallery) {
+		if (StringUtils.isNotBlank(gallery.getMediaId()))
+			return FileUtils.getMediaFilePath(storageProperties.getMediaPath(), Constants.MEDIA_DERIVATIVE_TYPE.IMAGE,
+					gallery.getMediaId(), gallery.getContentType());
+
+		LocalDate localDate = new ObjectId(gallery.getId()).getDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+
+		return FileUtils.getImageFilePath(storageProperties.getImagePath(), localDate, gallery.getId(), gallery.getContentType());
+	}
+
+	// 같은 Media 를 쓰는 사진들은 variant 도 함께 쓴다.
+	private String getVariantKey(Gallery gallery) {
+		return StringUtils.isNotBlank(gallery.getMediaId()) ? gallery.getMediaId() : gallery.getId();
+	}
+
+	private Path getVariantPath(String id, String formatName, Integer width) {
+		return Paths.get(storageProperties.getVariantPath(), String.valueOf(width), id + "." + formatName);
+	}
+
+}
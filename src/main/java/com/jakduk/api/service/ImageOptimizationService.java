@@ -0,0 +1,256 @@
+package com.jakduk.api.service;
+
+import com.jakduk.api.common.Constants;
+import com.jakduk.api.common.util.FileUtils;
+import com.jakduk.api.common.util.ImageUtils;
+import com.jakduk.api.exception.ServiceError;
+import com.jakduk.api.exception.ServiceException;
+import com.jakduk.api.model.aggregate.GalleryOptimizationSummary;
+import com.jakduk.api.model.db.Gallery;
+import com.jakduk.api.repository.gallery.GalleryRepository;
+import org.apache.commons.lang3.StringUtils;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.awt.Dimension;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 이미 저장된 사진 최적화(backfill)와 줄어든 용량 보고
+ *
+ * 새로 올라오는 사진은 FileUtils.writeImage 에서 최적화된다. 그 전에 저장된 사진들을 _id 순으로 묶음 단위로 읽어서
+ * 같은 방법으로 다시 만들고, Constants.GALLERY_OPTIMIZATION_MIN_SAVING_RATIO 이상 줄어든 경우에만 다시 만든 것으로 바꾼다.
+ * 그렇지 않으면 원래 인코딩에서 메타데이터만 빼서 바꾼다. GIF 는 다시 만들면 움직임을 잃으므로 그대로 둔다.
+ * 처리한 사진은 Gallery.optimized 로 표시하므로, 중단되어도 다시 시작하면 남은 사진만 처리한다.
+ */
+
+@Service
+public class ImageOptimizationService {
+
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	private static final Integer PAGE_SIZE = 200;
+
+	@Autowired private GalleryRepository galleryRepository;
+	@Autowired private CommonGalleryService commonGalleryService;
+
+	// 요청 처리와 CPU 를 나눠 쓰도록 코어의 절반만 쓴다.
+	private final ForkJoinPool imagePool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+	private final ExecutorService jobExecutor = Executors.newSingleThreadExecutor();
+
+	private final AtomicBoolean running = new AtomicBoolean(false);
+	private volatile boolean stopRequested = false;
+
+	// backfill 통계
+	private final AtomicLong processedFiles = new AtomicLong();
+	private final AtomicLong optimizedFiles = new AtomicLong();
+	private final AtomicLong strippedFiles = new AtomicLong();
+	private final AtomicLong skippedFiles = new AtomicLong();
+	private final AtomicLong failedFiles = new AtomicLong();
+	private final AtomicLong savedBytes = new AtomicLong();
+	private volatile LocalDateTime startedAt;
+	private volatile LocalDateTime finishedAt;
+
+	@PreDestroy
+	public void destroy() {
+		stopRequested = true;
+		jobExecutor.shutdown();
+		imagePool.shutdown();
+	}
+
+	/**
+	 * 아직 최적화하지 않은 사진들에 대한 backfill 을 시작한다.
+	 */
+	public void backfill() {
+
+		if (! running.compareAndSet(false, true))
+			throw new ServiceException(ServiceError.JOB_ALREADY_RUNNING);
+
+		stopRequested = false;
+		startedAt = LocalDateTime.now();
+		finishedAt = null;
+
+		log.info("image optimization backfill started.");
+
+		try {
+			jobExecutor.submit(this::run);
+		} catch (RuntimeException e) {
+			running.set(false);
+			throw e;
+		}
+	}
+
+	/**
+	 * 진행 중인 backfill 을 멈춘다. 지금 하고 있는 묶음까지만 하고 멈춘다.
+	 */
+	public void stop() {
+		stopRequested = true;
+	}
+
+	/**
+	 * 줄어든 용량 보고
+	 * 사진별로 줄어든 용량은 Gallery.savedSize 에 남는다. 이 값이 없는 예전 사진은 줄어든 용량에 들어가지 않는다.
+	 */
+	public Map<String, Object> getReport() {
+
+		GalleryOptimizationSummary summary = galleryRepository.getOptimizationSummary();
+
+		Map<String, Object> backfill = new LinkedHashMap<>();
+		backfill.put("running", running.get());
+		backfill.put("processedFiles", processedFiles.get());
+		backfill.put("optimizedFiles", optimizedFiles.get());
+		backfill.put("strippedFiles", strippedFiles.get());
+		backfill.put("skippedFiles", skippedFiles.get());
+		backfill.put("failedFiles", failedFiles.get());
+		backfill.put("savedBytes", savedBytes.get());
+		backfill.put("startedAt", startedAt);
+		backfill.put("finishedAt", finishedAt);
+
+		Map<String, Object> report = new LinkedHashMap<>();
+		report.put("galleries", summary.getCount());
+		report.put("uploadedBytes", summary.getFileSize());
+		report.put("storedBytes", summary.getSize());
+		report.put("savedBytes", summary.getSavedSize());
+		report.put("backfill", backfill);
+
+		return report;
+	}
+
+	private void run() {
+
+		try {
+			ObjectId lastId = null;
+
+			while (! stopRequested) {
+				List<Gallery> galleries = galleryRepository.findUnoptimizedGalleriesAfter(lastId, PAGE_SIZE);
+
+				if (galleries.isEmpty())
+					break;
+
+				// 같은 Media 를 쓰는 사진들은 파일도 같으므로 한번만 만든다.
+				Map<Path, Gallery> galleriesByPath = galleries.stream()
+						.collect(Collectors.toMap(gallery -> commonGalleryService.getGalleryFilePath(gallery, Constants.IMAGE_TYPE.FULL),
+								gallery -> gallery, (first, second) -> first, LinkedHashMap::new));
+
+				imagePool.submit(() -> galleriesByPath.entrySet().parallelStream()
+						.forEach(entry -> this.optimizeGallery(entry.getValue(), entry.getKey()))
+				).get();
+
+				lastId = new ObjectId(galleries.get(galleries.size() - 1).getId());
+			}
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException | RuntimeException e) {
+			log.error("image optimization backfill stopped.", e);
+		} finally {
+			finishedAt = LocalDateTime.now();
+			running.set(false);
+
+			log.info("image optimization backfill finished. processed={}, optimized={}, stripped={}, savedBytes={}", processedFiles.get(),
+					optimizedFiles.get(), strippedFiles.get(), savedBytes.get());
+		}
+	}
+
+	/**
+	 * 사진 파일을 최적화하고 Gallery 에 반영한다.
+	 */
+	private void optimizeGallery(Gallery gallery, Path imagePath) {
+
+		if (Files.notExists(imagePath, LinkOption.NOFOLLOW_LINKS)) {
+			failedFiles.incrementAndGet();
+			log.warn("image file not found. galleryId={}, path={}", gallery.getId(), imagePath);
+			return;
+		}
+
+		String formatName = StringUtils.split(gallery.getContentType(), "/")[1];
+
+		// 다 만든 다음에 옮겨서, 만드는 중인 파일을 읽지 않도록 한다.
+		Path tempPath = imagePath.resolveSibling(imagePath.getFileName() + ".optimizing");
+
+		try {
+			long originalSize = Files.size(imagePath);
+
+			if ("gif".equals(formatName)) {
+				skippedFiles.incrementAndGet();
+			} else {
+				long recompressedSize = FileUtils.writeImage(imagePath, tempPath, formatName);
+
+				// 이미 손실 압축된 사진을 다시 압축하므로, 충분히 줄어들지 않으면 원래 인코딩에서 메타데이터만 뺀다.
+				byte[] stripped = recompressedSize > originalSize * (1 - Constants.GALLERY_OPTIMIZATION_MIN_SAVING_RATIO) ?
+						this.stripMetadata(imagePath, formatName) : null;
+
+				if (Objects.nonNull(stripped)) {
+					Files.write(tempPath, stripped);
+					strippedFiles.incrementAndGet();
+				} else {
+					optimizedFiles.incrementAndGet();
+				}
+
+				long optimizedSize = Files.size(tempPath);
+
+				Files.move(tempPath, imagePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+				savedBytes.addAndGet(originalSize - optimizedSize);
+
+				log.debug("image optimized. galleryId={}, stripped={}, {} -> {} bytes", gallery.getId(), Objects.nonNull(stripped),
+						originalSize, optimizedSize);
+			}
+
+			Dimension dimension = ImageUtils.readImageDimension(imagePath);
+			long size = Files.size(imagePath);
+
+			gallery.setSavedSize(originalSize - size);
+			gallery.setSize(size);
+			gallery.setWidth(dimension.width);
+			gallery.setHeight(dimension.height);
+
+			galleryRepository.updateOptimizedImage(gallery);
+
+		} catch (IOException | RuntimeException e) {
+			failedFiles.incrementAndGet();
+			log.warn("failed to optimize image. galleryId={}", gallery.getId(), e);
+		} finally {
+			processedFiles.incrementAndGet();
+			FileUtils.deleteTempFile(tempPath);
+		}
+	}
+
+	/**
+	 * 원래 인코딩에서 메타데이터만 뺀다.
+	 * 방향 정보를 반영해야 하거나 긴 쪽을 줄여야 하는 사진, JPEG/PNG 가 아닌 사진은 다시 만들어야 하므로 null.
+	 */
+	private byte[] stripMetadata(Path imagePath, String formatName) throws IOException {
+
+		if (ImageUtils.readExifOrientation(imagePath) != 1)
+			return null;
+
+		Dimension dimension = ImageUtils.readImageDimension(imagePath);
+
+		if (Math.max(dimension.width, dimension.height) > Constants.GALLERY_MAXIMUM_LONG_SIDE)
+			return null;
+
+		return ImageUtils.stripMetadata(Files.readAllBytes(imagePath), formatName);
+	}
+
+}
@@ -0,0 +1,196 @@
+package com.jakduk.api.service;
+
+import com.jakduk.api.common.Constants;
+import com.jakduk.api.common.util.FileUtils;
+import com.jakduk.api.configuration.JakdukProperties;
+import com.jakduk.api.model.db.Media;
+import com.jakduk.api.repository.media.MediaRepository;
+import net.coobird.thumbnailator.geometry.Positions;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 내용 주소(content hash) 기반 미디어 저장소
+ *
+ * 같은 내용의 사진은 한번만 줄이고 저장한다. Gallery, UserPicture 는 mediaId 로 저장소를 가리키고,
+ * 참조 수가 0 이 되면 파일을 지운다.
+ *
+ * 여러 서버가 같은 저장소를 쓰므로, 참조 수와 지우기 여부는 Media 문서 하나를 조건부로 고쳐서(findAndModify) 정한다.
+ * 참조를 먼저 늘린 다음 파일을 만들고, 참조 수가 0 인 Media 에 지우기 시작을 표시한 서버만 파일을 지운다.
+ * 지우는 동안에는 참조를 늘릴 수 없으므로, 만든 파일이 지워지거나 지운 파일을 참조하는 일이 없다.
+ */
+
+@Service
+public class MediaStoreService {
+
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	@Resource private JakdukProperties.Storage storageProperties;
+
+	@Autowired private MediaRepository mediaRepository;
+	@Autowired private GalleryVariantService galleryVariantService;
+
+	/**
+	 * 미디어를 참조한다. 저장소에 없는 파생 이미지만 새로 만든다.
+	 * 참조한 뒤 저장에 실패하면 release 로 참조를 끊어야 한다.
+	 *
+	 * @param hash 콘텐츠 hash
+	 * @param contentType 콘텐츠 타입
+	 * @param size 업로드 된 원본 크기
+	 * @param sourcePath 업로드 된 원본 (임시) 파일
+	 * @param derivativeTypes 필요한 파생 이미지 타입들
+	 */
+	public Media acquire(String hash, String contentType, long size, Path sourcePath,
+						 Constants.MEDIA_DERIVATIVE_TYPE... derivativeTypes) throws IOException {
+
+		// 참조 수가 0 보다 크면 다른 서버가 지우지 않으므로, 참조를 먼저 늘린 다음 파일을 만든다.
+		Media media = this.increaseReferenceCount(hash, contentType, size);
+
+		try {
+			for (Constants.MEDIA_DERIVATIVE_TYPE derivativeType : derivativeTypes) {
+				Path derivativePath = this.getDerivativePath(hash, contentType, derivativeType);
+
+				if (Files.exists(derivativePath, LinkOption.NOFOLLOW_LINKS))
+					continue;
+
+				this.writeDerivative(sourcePath, derivativePath, contentType, derivativeType);
+			}
+		} catch (IOException | RuntimeException e) {
+			this.release(hash);
+			throw e;
+		}
+
+		log.debug("media acquired. {}", media);
+
+		return media;
+	}
+
+	/**
+	 * 미디어 참조를 끊는다. 더이상 참조하는 곳이 없으면 만들었던 모든 콘텐츠 타입의 파생 이미지를 지운다.
+	 *
+	 * @param hash 콘텐츠 hash
+	 * @return 지운 파일 크기의 합
+	 */
+	public long release(String hash) {
+
+		Media media = mediaRepository.decreaseReferenceCount(hash);
+
+		if (Objects.isNull(media) || media.getReferenceCount() > 0)
+			return 0L;
+
+		// 그 사이 다시 참조되었거나 다른 서버가 지우는 중이면 지우지 않는다.
+		media = mediaRepository.startDeletion(hash, LocalDateTime.now());
+
+		if (Objects.isNull(media))
+			return 0L;
+
+		// contentTypes 가 없는 예전 Media 는 처음 올린 타입으로만 만들었다.
+		Set<String> contentTypes = new LinkedHashSet<>();
+		contentTypes.add(media.getContentType());
+
+		if (Objects.nonNull(media.getContentTypes()))
+			contentTypes.addAll(media.getContentTypes());
+
+		long reclaimedBytes = 0L;
+
+		for (String contentType : contentTypes) {
+			for (Constants.MEDIA_DERIVATIVE_TYPE derivativeType : Constants.MEDIA_DERIVATIVE_TYPE.values()) {
+				Path derivativePath = this.getDerivativePath(hash, contentType, derivativeType);
+
+				try {
+					if (Files.exists(derivativePath, LinkOption.NOFOLLOW_LINKS)) {
+						long size = Files.size(derivativePath);
+						Files.delete(derivativePath);
+						reclaimedBytes += size;
+					}
+				} catch (IOException e) {
+					log.warn(e.getMessage(), e);
+				}
+			}
+
+			galleryVariantService.removeVariants(hash, contentType);
+		}
+
+		// 지우는 데 너무 오래 걸려 다른 서버가 다시 참조했으면 Media 는 남긴다. 지운 파일은 그 서버가 다시 만든다.
+		if (! mediaRepository.finishDeletion(hash, media.getDeletingAt()))
+			log.warn("media was acquired again while removing files. {}", hash);
+
+		log.debug("media released and removed. {}", hash);
+
+		return reclaimedBytes;
+	}
+
+	/**
+	 * 파생 이미지 경로
+	 */
+	public Path getDerivativePath(String hash, String contentType, Constants.MEDIA_DERIVATIVE_TYPE derivativeType) {
+		return FileUtils.getMediaFilePath(storageProperties.getMediaPath(), derivativeType, hash, contentType);
+	}
+
+	// 다른 서버가 파일을 지우는 중이면 끝날 때까지 기다린다. 지우던 서버가 죽었으면 MEDIA_DELETION_STALE_MS 뒤에 참조한다.
+	private Media increaseReferenceCount(String hash, String contentType, long size) throws IOException {
+
+		while (true) {
+			LocalDateTime staleBefore = LocalDateTime.now().minus(Constants.MEDIA_DELETION_STALE_MS, ChronoUnit.MILLIS);
+			Media media = mediaRepository.increaseReferenceCount(hash, contentType, size, staleBefore);
+
+			if (Objects.nonNull(media))
+				return media;
+
+			try {
+				Thread.sleep(Constants.MEDIA_DELETION_WAIT_MS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted while waiting for media deletion. " + hash);
+			}
+		}
+	}
+
+	private void writeDerivative(Path sourcePath, Path derivativePath, String contentType,
+								 Constants.MEDIA_DERIVATIVE_TYPE derivativeType) throws IOException {
+
+		String formatName = StringUtils.split(contentType, "/")[1];
+
+		Files.createDirectories(derivativePath.getParent());
+
+		// 다 만든 다음에 옮겨서, 만드는 중인 파일을 읽지 않도록 한다. 다른 서버가 같은 파일을 만들 수 있으므로 임시 파일 이름은 겹치지 않게 한다.
+		Path tempPath = Files.createTempFile(derivativePath.getParent(), derivativePath.getFileName().toString(), ".tmp");
+
+		try {
+			switch (derivativeType) {
+				case IMAGE:
+					FileUtils.writeImage(sourcePath, tempPath, formatName);
+					break;
+				case GALLERY_THUMBNAIL:
+					FileUtils.writeSmallImage(sourcePath, tempPath, formatName, Constants.GALLERY_THUMBNAIL_SIZE_WIDTH,
+							Constants.GALLERY_THUMBNAIL_SIZE_HEIGHT, Positions.TOP_CENTER);
+					break;
+				case USER_PICTURE_SMALL:
+					FileUtils.writeSmallImage(sourcePath, tempPath, formatName, Constants.USER_SMALL_PICTURE_SIZE_WIDTH,
+							Constants.USER_SMALL_PICTURE_SIZE_HEIGHT, Positions.CENTER);
+					break;
+			}
+
+			Files.move(tempPath, derivativePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tempPath);
+		}
+	}
+
+}
@@ -0,0 +1,171 @@
+package com.jakduk.api.service;
+
+import com.jakduk.api.common.Constants;
+import com.jakduk.api.common.util.SpaceSaving;
+import com.jakduk.api.model.db.SearchWordSnapshot;
+import com.jakduk.api.model.elasticsearch.EsTermsBucket;
+import com.jakduk.api.model.embedded.SearchWordCount;
+import com.jakduk.api.repository.SearchWordSnapshotRepository;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * 인기 검색어
+ *
+ * 검색할 때마다 ES 에 쌓인 검색어를 terms aggregation 으로 세지 않고, 서버 메모리에서 날짜별 Space-Saving 요약으로 센다.
+ * 요약은 주기적으로 Mongo(SearchWordSnapshot)에 서버별로 저장하고, 다른 서버들의 요약과 합쳐서
+ * 최근 Constants.SEARCH_POPULAR_WORD_WINDOW_DAYS 일의 인기 검색어를 미리 만들어 둔다. 읽을 때는 만들어 둔 목록에서 자르기만 한다.
+ */
+
+@Service
+public class PopularSearchWordService {
+
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	@Autowired private SearchWordSnapshotRepository searchWordSnapshotRepository;
+
+	// 이 서버의 날짜별 요약
+	private final Map<LocalDate, SpaceSaving> dailySummaries = new ConcurrentHashMap<>();
+	// 저장하지 않은 검색어가 있는 날짜
+	private final Set<LocalDate> dirtyDates = ConcurrentHashMap.newKeySet();
+
+	private volatile List<EsTermsBucket> popularWords = Collections.emptyList();
+	private volatile LocalDateTime refreshedAt;
+
+	private String node;
+
+	@PostConstruct
+	public void init() {
+
+		try {
+			node = InetAddress.getLocalHost().getHostName();
+		} catch (UnknownHostException e) {
+			node = "localhost";
+		}
+
+		// 재시작해도 이 서버가 세던 값을 이어서 센다.
+		searchWordSnapshotRepository.findByNodeAndDateGreaterThanEqual(node, this.getWindowStartDate().toString())
+				.forEach(snapshot -> this.getDailySummary(LocalDate.parse(snapshot.getDate())).merge(this.toCounters(snapshot)));
+
+		this.refresh();
+	}
+
+	/**
+	 * 검색어를 센다.
+	 */
+	public void record(String word) {
+
+		if (StringUtils.isBlank(word))
+			return;
+
+		LocalDate today = LocalDate.now();
+
+		this.getDailySummary(today).offer(word);
+		dirtyDates.add(today);
+	}
+
+	/**
+	 * 최근 인기 검색어. 많이 검색된 순.
+	 *
+	 * @param size 최대 개수. Constants.SEARCH_POPULAR_WORD_MAX_SIZE 까지.
+	 */
+	public List<EsTermsBucket> getPopularWords(Integer size) {
+		List<EsTermsBucket> words = popularWords;
+		return words.subList(0, Math.min(Math.max(size, 0), words.size()));
+	}
+
+	public LocalDateTime getRefreshedAt() {
+		return refreshedAt;
+	}
+
+	/**
+	 * 이 서버의 요약을 저장하고, 모든 서버의 요약을 합쳐서 인기 검색어를 다시 만든다.
+	 */
+	@Scheduled(initialDelayString = "${jakduk.search.popular-word-refresh-interval-ms:60000}",
+			fixedDelayString = "${jakduk.search.popular-word-refresh-interval-ms:60000}")
+	public void refresh() {
+
+		LocalDate windowStartDate = this.getWindowStartDate();
+
+		try {
+			this.persist();
+
+			dailySummaries.keySet().removeIf(date -> date.isBefore(windowStartDate));
+			searchWordSnapshotRepository.deleteByDateLessThan(windowStartDate.toString());
+
+			SpaceSaving merged = new SpaceSaving(Constants.SEARCH_POPULAR_WORD_CAPACITY);
+
+			dailySummaries.values().forEach(summary -> merged.merge(summary.top(Constants.SEARCH_POPULAR_WORD_CAPACITY)));
+
+			searchWordSnapshotRepository.findByDateGreaterThanEqual(windowStartDate.toString()).stream()
+					.filter(snapshot -> ! node.equals(snapshot.getNode()))
+					.forEach(snapshot -> merged.merge(this.toCounters(snapshot)));
+
+			popularWords = merged.top(Constants.SEARCH_POPULAR_WORD_MAX_SIZE).stream()
+					.map(counter -> new EsTermsBucket(counter.getItem(), counter.getCount()))
+					.collect(Collectors.toList());
+
+			refreshedAt = LocalDateTime.now();
+
+		} catch (RuntimeException e) {
+			log.warn("failed to refresh popular search words.", e);
+		}
+	}
+
+	private void persist() {
+
+		for (LocalDate date : new ArrayList<>(dirtyDates)) {
+			dirtyDates.remove(date);
+
+			SpaceSaving summary = dailySummaries.get(date);
+
+			if (Objects.isNull(summary))
+				continue;
+
+			SearchWordSnapshot snapshot = searchWordSnapshotRepository.findOneByNodeAndDate(node, date.toString())
+					.orElseGet(SearchWordSnapshot::new);
+
+			snapshot.setNode(node);
+			snapshot.setDate(date.toString());
+			snapshot.setWords(summary.top(Constants.SEARCH_POPULAR_WORD_CAPACITY).stream()
+					.map(counter -> new SearchWordCount(counter.getItem(), counter.getCount(), counter.getError()))
+					.collect(Collectors.toList()));
+			snapshot.setUpdatedAt(LocalDateTime.now());
+
+			searchWordSnapshotRepository.save(snapshot);
+		}
+	}
+
+	private SpaceSaving getDailySummary(LocalDate date) {
+		return dailySummaries.computeIfAbsent(date, key -> new SpaceSaving(Constants.SEARCH_POPULAR_WORD_CAPACITY));
+	}
+
+	private List<SpaceSaving.Counter> toCounters(SearchWordSnapshot snapshot) {
+
+		if (Objects.isNull(snapshot.getWords()))
+			return Collections.emptyList();
+
+		return snapshot.getWords().stream()
+				.map(word -> new SpaceSaving.Counter(word.getWord(), word.getCount(),
+						Objects.nonNull(word.getError()) ? word.getError() : 0L))
+				.collect(Collectors.toList());
+	}
+
+	private LocalDate getWindowStartDate() {
+		return LocalDate.now().minusDays(Constants.SEARCH_POPULAR_WORD_WINDOW_DAYS - 1);
+	}
+
+}
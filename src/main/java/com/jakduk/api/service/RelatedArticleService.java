@@ -0,0 +1,212 @@
+package com.jakduk.api.service;
+
+import com.jakduk.api.common.Constants;
+import com.jakduk.api.model.db.RelatedArticles;
+import com.jakduk.api.model.elasticsearch.EsArticleSource;
+import com.jakduk.api.model.embedded.RelatedArticle;
+import com.jakduk.api.repository.article.RelatedArticlesRepository;
+import com.jakduk.api.service.search.SearchBackend;
+import com.jakduk.api.service.search.SearchDocuments;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * 글 상세의 비슷한 글
+ *
+ * 글 상세를 읽을 때 찾지 않는다. 글이 색인되고 Constants.RELATED_ARTICLE_REFRESH_DELAY_MS 뒤에 검색 백엔드의 more like this 로 찾아서
+ * Mongo(RelatedArticles)에 글마다 저장해 두고, 읽을 때는 서버 메모리의 캐시에서 꺼낸다.
+ * 캐시는 Constants.RELATED_ARTICLE_CACHE_TTL_MS 가 지나면 다시 읽으므로, 다른 서버에서 새로 찾은 결과도 그 안에 반영된다.
+ * 글을 지우면 그 글을 비슷한 글로 가진 목록에서 바로 빼고 다시 찾는다. 새 글이 예전 글의 목록에 들어가도록,
+ * 찾은 지 Constants.RELATED_ARTICLE_MAX_AGE_HOURS 가 지난 목록도 조금씩 다시 찾는다.
+ */
+
+@Service
+public class RelatedArticleService {
+
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	@Autowired private SearchBackend searchBackend;
+	@Autowired private RelatedArticlesRepository relatedArticlesRepository;
+
+	private final ScheduledExecutorService refreshScheduler = Executors.newSingleThreadScheduledExecutor();
+
+	// 다시 찾을 글. 짧은 시간에 여러 번 고쳐도 한 번만 찾는다.
+	private final Set<String> pendingArticleIds = ConcurrentHashMap.newKeySet();
+	private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+
+	// 글ID -> 비슷한 글. 접근 순서로 정렬해서 오래 안 읽은 것부터 버린다.
+	private final LinkedHashMap<String, CachedRelatedArticles> cache = new LinkedHashMap<>(256, 0.75f, true);
+
+	@PreDestroy
+	public void destroy() {
+		refreshScheduler.shutdownNow();
+	}
+
+	/**
+	 * 비슷한 글. 아직 찾지 않은 글이면 빈 목록을 돌려주고 뒤에서 찾아 둔다.
+	 */
+	public List<RelatedArticle> getRelatedArticles(String articleId) {
+
+		synchronized (cache) {
+			CachedRelatedArticles cached = cache.get(articleId);
+
+			if (Objects.nonNull(cached) && cached.expiresAt > System.currentTimeMillis())
+				return cached.articles;
+		}
+
+		Optional<RelatedArticles> relatedArticles = relatedArticlesRepository.findById(articleId);
+
+		// 이 기능 전에 쓴 글
+		if (! relatedArticles.isPresent())
+			this.scheduleRefresh(Collections.singleton(articleId));
+
+		List<RelatedArticle> articles = relatedArticles
+				.map(RelatedArticles::getArticles)
+				.orElse(Collections.emptyList());
+
+		this.putCache(articleId, articles);
+
+		return articles;
+	}
+
+	/**
+	 * 색인한 글들의 비슷한 글을 잠시 뒤에 다시 찾는다. 색인한 글이 검색되기를 기다린다.
+	 */
+	public void scheduleRefresh(Collection<String> articleIds) {
+
+		if (articleIds.isEmpty())
+			return;
+
+		pendingArticleIds.addAll(articleIds);
+
+		if (refreshScheduled.compareAndSet(false, true))
+			refreshScheduler.schedule(this::refreshPending, Constants.RELATED_ARTICLE_REFRESH_DELAY_MS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 지운 글의 비슷한 글을 지우고, 지운 글을 다른 글의 비슷한 글 목록에서도 뺀다. 뺀 글들은 빈 자리를 채우도록 다시 찾는다.
+	 */
+	public void remove(Collection<String> articleIds) {
+
+		if (articleIds.isEmpty())
+			return;
+
+		pendingArticleIds.removeAll(articleIds);
+		relatedArticlesRepository.deleteByIdIn(articleIds);
+
+		List<String> changedArticleIds = relatedArticlesRepository.pullRelatedArticles(articleIds);
+
+		synchronized (cache) {
+			articleIds.forEach(cache::remove);
+			changedArticleIds.forEach(cache::remove);
+		}
+
+		this.scheduleRefresh(changedArticleIds);
+	}
+
+	/**
+	 * 찾은 지 오래된 비슷한 글을 오래된 순으로 다시 찾는다. 그 뒤에 쓴 글도 목록에 들어갈 수 있다.
+	 */
+	@Scheduled(initialDelay = Constants.RELATED_ARTICLE_RECOMPUTE_INTERVAL_MS, fixedDelay = Constants.RELATED_ARTICLE_RECOMPUTE_INTERVAL_MS)
+	public void refreshOutdated() {
+
+		List<String> articleIds = relatedArticlesRepository.findIdsUpdatedBefore(
+				LocalDateTime.now().minusHours(Constants.RELATED_ARTICLE_MAX_AGE_HOURS), Constants.RELATED_ARTICLE_RECOMPUTE_BATCH_SIZE);
+
+		this.scheduleRefresh(articleIds);
+
+		log.debug("outdated related articles scheduled. articles={}", articleIds.size());
+	}
+
+	private void refreshPending() {
+
+		refreshScheduled.set(false);
+
+		List<String> articleIds = new ArrayList<>(pendingArticleIds);
+		pendingArticleIds.removeAll(articleIds);
+
+		for (String articleId : articleIds) {
+			try {
+				this.refresh(articleId);
+			} catch (RuntimeException e) {
+				log.warn("failed to refresh related articles. articleId={}", articleId, e);
+			}
+		}
+
+		log.debug("related articles refreshed. articles={}", articleIds.size());
+	}
+
+	private void refresh(String articleId) {
+
+		SearchDocuments<EsArticleSource> searchDocuments;
+
+		try {
+			searchDocuments = searchBackend.searchRelatedArticles(articleId, Constants.RELATED_ARTICLE_SIZE)
+					.get(Constants.RELATED_ARTICLE_TIMEOUT_MS + Constants.SEARCH_TIMEOUT_GRACE_MS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		} catch (ExecutionException | TimeoutException e) {
+			log.warn("failed to search related articles. articleId={}", articleId, e);
+			return;
+		}
+
+		List<RelatedArticle> articles = searchDocuments.getDocuments().stream()
+				.map(esArticleSource -> {
+					RelatedArticle relatedArticle = new RelatedArticle();
+					relatedArticle.setId(esArticleSource.getId());
+					relatedArticle.setSeq(esArticleSource.getSeq());
+					relatedArticle.setBoard(esArticleSource.getBoard());
+					relatedArticle.setWriter(esArticleSource.getWriter());
+					relatedArticle.setSubject(esArticleSource.getSubject());
+					relatedArticle.setScore(esArticleSource.getScore());
+
+					return relatedArticle;
+				})
+				.collect(Collectors.toList());
+
+		RelatedArticles relatedArticles = new RelatedArticles();
+		relatedArticles.setId(articleId);
+		relatedArticles.setArticles(articles);
+		relatedArticles.setUpdatedAt(LocalDateTime.now());
+
+		relatedArticlesRepository.save(relatedArticles);
+
+		this.putCache(articleId, articles);
+	}
+
+	private void putCache(String articleId, List<RelatedArticle> articles) {
+
+		synchronized (cache) {
+			cache.put(articleId, new CachedRelatedArticles(articles, System.currentTimeMillis() + Constants.RELATED_ARTICLE_CACHE_TTL_MS));
+
+			Iterator<String> iterator = cache.keySet().iterator();
+
+			while (cache.size() > Constants.RELATED_ARTICLE_CACHE_MAX_SIZE && iterator.hasNext()) {
+				iterator.next();
+				iterator.remove();
+			}
+		}
+	}
+
+	private static class CachedRelatedArticles {
+		private final List<RelatedArticle> articles;
+		private final long expiresAt;
+
+		private CachedRelatedArticles(List<RelatedArticle> articles, long expiresAt) {
+			this.articles = articles;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+}
@@ -0,0 +1,788 @@
+package com.jakduk.api.service;
+
+import com.jakduk.api.common.Constants;
+import com.jakduk.api.common.util.JakdukUtils;
+import com.jakduk.api.common.util.ObjectMapperUtils;
+import com.jakduk.api.configuration.JakdukProperties;
+import com.jakduk.api.exception.ServiceError;
+import com.jakduk.api.exception.ServiceException;
+import com.jakduk.api.model.db.Article;
+import com.jakduk.api.model.db.ArticleComment;
+import com.jakduk.api.model.db.Gallery;
+import com.jakduk.api.model.db.SearchReindexWrite;
+import com.jakduk.api.model.elasticsearch.EsArticle;
+import com.jakduk.api.model.elasticsearch.EsComment;
+import com.jakduk.api.model.elasticsearch.EsGallery;
+import com.jakduk.api.model.elasticsearch.EsParentArticle;
+import com.jakduk.api.repository.article.ArticleCommentRepository;
+import com.jakduk.api.repository.article.ArticleRepository;
+import com.jakduk.api.repository.SearchReindexWriteRepository;
+import com.jakduk.api.repository.gallery.GalleryRepository;
+import org.bson.types.ObjectId;
+import org.elasticsearch.ResourceAlreadyExistsException;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.admin.indices.alias.Alias;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequestBuilder;
+import org.elasticsearch.action.admin.indices.create.CreateIndexRequestBuilder;
+import org.elasticsearch.action.admin.indices.mapping.get.GetMappingsResponse;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.metadata.AliasMetaData;
+import org.elasticsearch.cluster.metadata.MappingMetaData;
+import org.elasticsearch.common.collect.ImmutableOpenMap;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * Mongo 에서 글, 댓글, 사진 인덱스를 서비스 중단 없이 다시 만든다.
+ *
+ * 설정의 인덱스 이름(jakduk.elasticsearch.index-board, index-comment, index-gallery)을 alias 로 쓰고, 실제 인덱스는 "이름_v시각" 으로 만든다.
+ * 1. 새 인덱스를 만든다. 설정과 mapping 을 받지 않으면 지금 인덱스의 것을 복사한다. 만드는 동안은 refresh 와 replica 를 끈다.
+ *    글 인덱스에 아직 comment mapping 이 있으면(댓글을 글 인덱스에 자식 문서로 넣던 때) 댓글 인덱스는 그 mapping 에서 _parent 를 빼고 복사한다.
+ * 2. 그 동안 어느 서버에서든 alias 로 보내는 요청의 문서 ID 는 ElasticsearchBulkService 가 Mongo 에 모은다.
+ *    모든 서버가 알 때까지 기다린 뒤에 Mongo 를 읽기 시작한다.
+ * 3. 글, 댓글, 사진을 _id 순으로 읽어서 동시에 bulk 로 넣는다.
+ * 4. 실패한 요청이 없고 새 인덱스의 문서 개수가 Mongo 에서 읽은 개수와 같은지 확인한다. 아니면 멈추고 새 인덱스를 지운다.
+ * 5. 모아둔 문서를 Mongo 에서 다시 읽어 새 인덱스에 반영한 뒤, alias 를 한번에 새 인덱스로 옮긴다.
+ * 6. alias 를 옮기기 전에 예전 인덱스로 보내진 요청이 없도록, 모든 서버가 알 때까지 기다렸다가 한번 더 반영하고 모으기를 멈춘다.
+ *    모두 끝나면 예전 인덱스를 지운다.
+ */
+
+@Service
+public class SearchReindexService {
+
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	private static final String INDEX_BOARD = "board";
+	private static final String INDEX_COMMENT = "comment";
+	private static final String INDEX_GALLERY = "gallery";
+
+	private static final DateTimeFormatter INDEX_VERSION_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+	// 시작할 때 만드는 첫 댓글 인덱스의 버전. 여러 서버가 함께 시작해도 한 인덱스만 만들어진다.
+	private static final String INITIAL_INDEX_VERSION = "0";
+
+	// 인덱스를 복사할 때 빼야 하는, ES 가 정하는 설정
+	private static final List<String> PRIVATE_INDEX_SETTINGS = Arrays.asList("index.uuid", "index.creation_date",
+			"index.provided_name", "index.version.created", "index.version.upgraded");
+
+	@Resource private JakdukProperties.Elasticsearch elasticsearchProperties;
+
+	@Autowired private Client client;
+	@Autowired private ElasticsearchBulkService elasticsearchBulkService;
+	@Autowired private SearchService searchService;
+	@Autowired private ArticleRepository articleRepository;
+	@Autowired private ArticleCommentRepository articleCommentRepository;
+	@Autowired private GalleryRepository galleryRepository;
+	@Autowired private SearchReindexWriteRepository searchReindexWriteRepository;
+
+	private final ExecutorService jobExecutor = Executors.newSingleThreadExecutor();
+	private final ExecutorService sourceExecutor = Executors.newFixedThreadPool(3);
+
+	private final AtomicBoolean running = new AtomicBoolean(false);
+	private volatile boolean stopRequested = false;
+
+	// 진행 상태
+	private volatile String phase;
+	private volatile String error;
+	private volatile LocalDateTime startedAt;
+	private volatile LocalDateTime finishedAt;
+	private final Map<String, String> newIndices = new LinkedHashMap<>();
+	private final Map<String, Long> replayedWrites = new LinkedHashMap<>();
+	private final Map<String, AtomicLong> indexedDocuments = new LinkedHashMap<>();
+	private final Map<String, AtomicLong> failedDocuments = new LinkedHashMap<>();
+	private final Map<String, Long> totalDocuments = new LinkedHashMap<>();
+
+	/**
+	 * 댓글 인덱스가 없으면 글 인덱스의 설정과 comment mapping 으로 만든다.
+	 * 먼저 색인된 댓글 때문에 dynamic mapping 으로 인덱스가 저절로 만들어지지 않도록, 다시 색인하기 전에도 만들어 둔다.
+	 */
+	@PostConstruct
+	public void init() {
+
+		if (Constants.SEARCH_BACKEND_LUCENE.equals(elasticsearchProperties.getBackend()))
+			return;
+
+		String alias = elasticsearchProperties.getIndexComment();
+
+		try {
+			if (client.admin().indices().prepareExists(alias).get().isExists())
+				return;
+
+			CreateIndexRequestBuilder createIndexRequestBuilder = client.admin().indices()
+					.prepareCreate(alias + "_v" + INITIAL_INDEX_VERSION)
+					.addAlias(new Alias(alias));
+
+			this.copyIndexSource(createIndexRequestBuilder, alias, Constants.ES_TYPE_COMMENT);
+			createIndexRequestBuilder.get();
+
+			log.info("elasticsearch comment index created. alias={}", alias);
+
+		} catch (ResourceAlreadyExistsException e) {
+			log.info("elasticsearch comment index already created by another server. alias={}", alias);
+		} catch (RuntimeException e) {
+			log.warn("failed to create elasticsearch comment index. alias={}", alias, e);
+		}
+	}
+
+	@PreDestroy
+	public void destroy() {
+		stopRequested = true;
+		jobExecutor.shutdown();
+		sourceExecutor.shutdown();
+	}
+
+	/**
+	 * 다시 색인을 시작한다.
+	 *
+	 * @param indexSources 인덱스별("board", "comment", "gallery") 새 인덱스의 settings, mappings. 없는 인덱스는 지금 인덱스의 것을 복사한다.
+	 */
+	public void reindex(Map<String, Object> indexSources) {
+
+		if (! running.compareAndSet(false, true))
+			throw new ServiceException(ServiceError.JOB_ALREADY_RUNNING);
+
+		stopRequested = false;
+		startedAt = LocalDateTime.now();
+		finishedAt = null;
+		error = null;
+
+		synchronized (this) {
+			newIndices.clear();
+			replayedWrites.clear();
+			indexedDocuments.clear();
+			failedDocuments.clear();
+			totalDocuments.clear();
+		}
+
+		log.info("elasticsearch reindex started.");
+
+		try {
+			jobExecutor.submit(() -> this.run(Objects.nonNull(indexSources) ? indexSources : Collections.emptyMap()));
+		} catch (RuntimeException e) {
+			running.set(false);
+			throw e;
+		}
+	}
+
+	/**
+	 * 진행 중인 다시 색인을 멈춘다. 만들던 인덱스는 지우고 alias 는 그대로 둔다.
+	 */
+	public void stop() {
+		stopRequested = true;
+	}
+
+	public synchronized Map<String, Object> getProgress() {
+
+		LocalDateTime endedAt = Objects.nonNull(finishedAt) ? finishedAt : LocalDateTime.now();
+		long elapsedMillis = Objects.nonNull(startedAt) ? Math.max(1, Duration.between(startedAt, endedAt).toMillis()) : 0;
+
+		Map<String, Object> sources = new LinkedHashMap<>();
+
+		indexedDocuments.forEach((source, indexed) -> {
+			Map<String, Object> progress = new LinkedHashMap<>();
+			progress.put("indexed", indexed.get());
+			progress.put("failed", failedDocuments.get(source).get());
+			progress.put("total", totalDocuments.get(source));
+			progress.put("documentsPerSecond", elapsedMillis > 0 ? indexed.get() * 1000 / elapsedMillis : 0);
+			sources.put(source, progress);
+		});
+
+		Map<String, Object> progress = new LinkedHashMap<>();
+		progress.put("running", running.get());
+		progress.put("phase", phase);
+		progress.put("newIndices", new LinkedHashMap<>(newIndices));
+		progress.put("sources", sources);
+		progress.put("replayedWrites", new LinkedHashMap<>(replayedWrites));
+		progress.put("error", error);
+		progress.put("startedAt", startedAt);
+		progress.put("finishedAt", finishedAt);
+
+		return progress;
+	}
+
+	private void run(Map<String, Object> indexSources) {
+
+		Map<String, String> aliases = new LinkedHashMap<>();
+		aliases.put(INDEX_BOARD, elasticsearchProperties.getIndexBoard());
+		aliases.put(INDEX_COMMENT, elasticsearchProperties.getIndexComment());
+		aliases.put(INDEX_GALLERY, elasticsearchProperties.getIndexGallery());
+
+		Map<String, String> types = new HashMap<>();
+		types.put(INDEX_BOARD, Constants.ES_TYPE_ARTICLE);
+		types.put(INDEX_COMMENT, Constants.ES_TYPE_COMMENT);
+		types.put(INDEX_GALLERY, Constants.ES_TYPE_GALLERY);
+
+		String version = LocalDateTime.now().format(INDEX_VERSION_FORMATTER);
+		Map<String, Settings> restoreSettings = new HashMap<>();
+		Set<String> swappedAliases = new HashSet<>();
+		List<String> oldIndices = new ArrayList<>();
+
+		try {
+			phase = "CREATE_INDEX";
+
+			for (Map.Entry<String, String> alias : aliases.entrySet()) {
+				String newIndex = alias.getValue() + "_v" + version;
+
+				synchronized (this) {
+					newIndices.put(alias.getKey(), newIndex);
+				}
+
+				restoreSettings.put(alias.getKey(),
+						this.createIndex(alias.getValue(), newIndex, types.get(alias.getKey()), indexSources.get(alias.getKey())));
+
+				elasticsearchBulkService.startCapture(alias.getValue(), newIndex);
+			}
+
+			// 다른 서버가 모으기 시작한 뒤에 Mongo 를 읽어야, 읽은 뒤에 바뀐 문서가 빠지지 않는다.
+			this.waitForPropagation();
+
+			phase = "BULK_INDEX";
+
+			CompletableFuture.allOf(
+					CompletableFuture.runAsync(() -> this.indexArticles(newIndices.get(INDEX_BOARD)), sourceExecutor),
+					CompletableFuture.runAsync(() -> this.indexComments(newIndices.get(INDEX_COMMENT)), sourceExecutor),
+					CompletableFuture.runAsync(() -> this.indexGalleries(newIndices.get(INDEX_GALLERY)), sourceExecutor)
+			).join();
+
+			if (stopRequested)
+				throw new IllegalStateException("reindex stopped.");
+
+			phase = "VERIFY";
+
+			for (Map.Entry<String, String> alias : aliases.entrySet())
+				this.verifyIndex(newIndices.get(alias.getKey()), types.get(alias.getKey()));
+
+			phase = "CATCH_UP";
+
+			for (Map.Entry<String, String> alias : aliases.entrySet())
+				this.replayWrites(alias.getKey(), alias.getValue());
+
+			phase = "SWAP_ALIAS";
+
+			for (Map.Entry<String, String> alias : aliases.entrySet()) {
+				String newIndex = newIndices.get(alias.getKey());
+
+				client.admin().indices().prepareUpdateSettings(newIndex).setSettings(restoreSettings.get(alias.getKey())).get();
+				client.admin().indices().prepareRefresh(newIndex).get();
+
+				oldIndices.addAll(this.swapAlias(alias.getValue(), newIndex));
+				swappedAliases.add(alias.getKey());
+			}
+
+			phase = "FINAL_CATCH_UP";
+
+			// alias 를 옮기기 전에 다른 서버가 보내던 요청은 예전 인덱스에 들어갔을 수 있다.
+			this.waitForPropagation();
+
+			for (Map.Entry<String, String> alias : aliases.entrySet()) {
+				this.replayWrites(alias.getKey(), alias.getValue());
+				elasticsearchBulkService.stopCapture(alias.getValue());
+			}
+
+			phase = "COMPLETED";
+
+			this.deleteIndices(oldIndices);
+
+		} catch (RuntimeException e) {
+			phase = stopRequested ? "STOPPED" : "FAILED";
+			error = e.getMessage();
+			log.error("elasticsearch reindex failed.", e);
+
+			for (String alias : aliases.values()) {
+				try {
+					elasticsearchBulkService.stopCapture(alias);
+				} catch (RuntimeException stopException) {
+					log.warn("failed to stop elasticsearch reindex capture. alias={}", alias, stopException);
+				}
+			}
+
+			// 이미 alias 를 옮긴 인덱스는 서비스 중이므로 지우지 않는다. 예전 인덱스도 그대로 둔다.
+			if (! swappedAliases.isEmpty())
+				log.warn("elasticsearch reindex failed after some aliases were swapped. swapped={}, oldIndices={}", swappedAliases, oldIndices);
+
+			this.deleteNewIndices(aliases.keySet().stream()
+					.filter(source -> ! swappedAliases.contains(source))
+					.collect(Collectors.toList()));
+
+		} finally {
+			finishedAt = LocalDateTime.now();
+			running.set(false);
+
+			log.info("elasticsearch reindex finished. phase={}, indexed={}", phase, indexedDocuments);
+		}
+	}
+
+	/**
+	 * 새 인덱스를 만들고, 다 만든 뒤에 되돌릴 refresh_interval, number_of_replicas 설정을 돌려준다.
+	 * 복사할 때는 type 의 mapping 만 가져온다.
+	 */
+	private Settings createIndex(String alias, String newIndex, String type, Object indexSource) {
+
+		CreateIndexRequestBuilder createIndexRequestBuilder = client.admin().indices().prepareCreate(newIndex);
+
+		if (Objects.nonNull(indexSource)) {
+			try {
+				createIndexRequestBuilder.setSource(ObjectMapperUtils.writeValueAsString(indexSource), XContentType.JSON);
+			} catch (IOException e) {
+				throw new ServiceException(ServiceError.INVALID_PARAMETER, e);
+			}
+		} else {
+			this.copyIndexSource(createIndexRequestBuilder, alias, type);
+		}
+
+		createIndexRequestBuilder.get();
+
+		Settings createdSettings = client.admin().indices().prepareGetSettings(newIndex).get().getIndexToSettings().get(newIndex);
+
+		Settings restoreSettings = Settings.builder()
+				.put("index.refresh_interval", createdSettings.get("index.refresh_interval", "1s"))
+				.put("index.number_of_replicas", createdSettings.get("index.number_of_replicas", "1"))
+				.build();
+
+		client.admin().indices().prepareUpdateSettings(newIndex)
+				.setSettings(Settings.builder()
+						.put("index.refresh_interval", "-1")
+						.put("index.number_of_replicas", "0"))
+				.get();
+
+		log.info("elasticsearch index created. alias={}, index={}", alias, newIndex);
+
+		return restoreSettings;
+	}
+
+	/**
+	 * 지금 인덱스의 설정과 type 의 mapping 을 복사한다.
+	 * 댓글은 글 인덱스에 comment mapping 이 남아 있으면 그것을 쓴다. 댓글 인덱스가 dynamic mapping 으로 만들어졌더라도 바로잡기 위함이다.
+	 */
+	private void copyIndexSource(CreateIndexRequestBuilder createIndexRequestBuilder, String alias, String type) {
+
+		String sourceAlias = alias;
+
+		if (Constants.ES_TYPE_COMMENT.equals(type) && this.hasMapping(elasticsearchProperties.getIndexBoard(), type))
+			sourceAlias = elasticsearchProperties.getIndexBoard();
+
+		if (! client.admin().indices().prepareExists(sourceAlias).get().isExists())
+			throw new ServiceException(ServiceError.ELASTICSEARCH_NOT_FOUND_INDEX);
+
+		GetSettingsResponse settingsResponse = client.admin().indices().prepareGetSettings(sourceAlias).get();
+		GetMappingsResponse mappingsResponse = client.admin().indices().prepareGetMappings(sourceAlias).get();
+
+		String currentIndex = settingsResponse.getIndexToSettings().keysIt().next();
+
+		createIndexRequestBuilder.setSettings(settingsResponse.getIndexToSettings().get(currentIndex)
+				.filter(key -> ! PRIVATE_INDEX_SETTINGS.contains(key)));
+
+		ImmutableOpenMap<String, MappingMetaData> mappings = mappingsResponse.getMappings().get(currentIndex);
+
+		MappingMetaData mapping = mappings.get(type);
+
+		if (Objects.nonNull(mapping)) {
+			Map<String, Object> mappingSource = new HashMap<>(mapping.sourceAsMap());
+			mappingSource.remove("_parent");
+			createIndexRequestBuilder.addMapping(type, mappingSource);
+		}
+	}
+
+	private boolean hasMapping(String alias, String type) {
+
+		if (! client.admin().indices().prepareExists(alias).get().isExists())
+			return false;
+
+		GetMappingsResponse mappingsResponse = client.admin().indices().prepareGetMappings(alias).setTypes(type).get();
+
+		return StreamSupport.stream(mappingsResponse.getMappings().values().spliterator(), false)
+				.anyMatch(mappings -> mappings.value.containsKey(type));
+	}
+
+	/**
+	 * 새 인덱스에 실패한 요청이 없고, 문서 개수가 Mongo 에서 읽어 색인한 개수와 같은지 확인한다.
+	 * 다시 색인하는 동안 바뀐 문서는 아직 ID 만 모아 두었으므로 새 인덱스에는 읽어서 넣은 문서만 있다.
+	 */
+	private void verifyIndex(String newIndex, String type) {
+
+		long indexed;
+		long failed;
+
+		synchronized (this) {
+			indexed = indexedDocuments.get(type).get();
+			failed = failedDocuments.get(type).get();
+		}
+
+		if (failed > 0)
+			throw new IllegalStateException(String.format("failed to index %d %s documents.", failed, type));
+
+		client.admin().indices().prepareRefresh(newIndex).get();
+
+		long count = client.prepareSearch(newIndex)
+				.setTypes(type)
+				.setSize(0)
+				.get()
+				.getHits()
+				.getTotalHits();
+
+		if (count != indexed)
+			throw new IllegalStateException(String.format("%s documents count mismatch. index=%s, expected=%d, actual=%d",
+					type, newIndex, indexed, count));
+
+		log.info("elasticsearch index verified. index={}, type={}, documents={}", newIndex, type, count);
+	}
+
+	/**
+	 * alias 를 새 인덱스로 한번에 옮기고, 예전 인덱스 이름들을 돌려준다. 예전 인덱스는 모든 alias 를 옮긴 뒤에 지운다.
+	 * 예전에 alias 없이 설정의 이름으로 만든 인덱스라면, 그 인덱스를 지우는 것도 같은 요청에서 한다.
+	 */
+	private List<String> swapAlias(String alias, String newIndex) {
+
+		List<String> oldIndices = StreamSupport.stream(client.admin().indices().prepareGetAliases(alias).get().getAliases().spliterator(), false)
+				.filter(entry -> entry.value.stream().map(AliasMetaData::alias).anyMatch(alias::equals))
+				.map(entry -> entry.key)
+				.collect(Collectors.toList());
+
+		IndicesAliasesRequestBuilder aliasesRequestBuilder = client.admin().indices().prepareAliases();
+
+		if (oldIndices.isEmpty() && client.admin().indices().prepareExists(alias).get().isExists())
+			aliasesRequestBuilder.addAliasAction(IndicesAliasesRequest.AliasActions.removeIndex().index(alias));
+
+		oldIndices.forEach(oldIndex -> aliasesRequestBuilder.removeAlias(oldIndex, alias));
+		aliasesRequestBuilder.addAlias(newIndex, alias);
+		aliasesRequestBuilder.get();
+
+		log.info("elasticsearch alias swapped. alias={}, index={}, oldIndices={}", alias, newIndex, oldIndices);
+
+		return oldIndices;
+	}
+
+	private void deleteNewIndices(Collection<String> sources) {
+
+		List<String> indices;
+
+		synchronized (this) {
+			indices = sources.stream()
+					.map(newIndices::get)
+					.filter(Objects::nonNull)
+					.collect(Collectors.toList());
+		}
+
+		this.deleteIndices(indices);
+	}
+
+	private void deleteIndices(List<String> indices) {
+
+		for (String index : indices) {
+			try {
+				client.admin().indices().prepareDelete(index).get();
+			} catch (RuntimeException e) {
+				log.warn("failed to delete elasticsearch index. index={}", index, e);
+			}
+		}
+	}
+
+	private void indexArticles(String index) {
+
+		AtomicLong indexed = this.initSource(Constants.ES_TYPE_ARTICLE, articleRepository.count());
+		AtomicLong failed = this.getFailedDocuments(Constants.ES_TYPE_ARTICLE);
+		ObjectId lastId = null;
+
+		while (! stopRequested) {
+			List<Article> articles = articleRepository.findPostsGreaterThanId(lastId, Constants.ES_REINDEX_PAGE_SIZE);
+
+			if (articles.isEmpty())
+				break;
+
+			List<DocWriteRequest<?>> requests = this.getArticleIndexRequests(articles, index);
+
+			int failedRequests = elasticsearchBulkService.execute(requests);
+			indexed.addAndGet(requests.size() - failedRequests);
+			failed.addAndGet(failedRequests);
+
+			lastId = new ObjectId(articles.get(articles.size() - 1).getId());
+		}
+	}
+
+	private void indexComments(String index) {
+
+		AtomicLong indexed = this.initSource(Constants.ES_TYPE_COMMENT, articleCommentRepository.count());
+		AtomicLong failed = this.getFailedDocuments(Constants.ES_TYPE_COMMENT);
+		ObjectId lastId = null;
+
+		while (! stopRequested) {
+			List<ArticleComment> comments = articleCommentRepository.findCommentsGreaterThanId(lastId, Constants.ES_REINDEX_PAGE_SIZE);
+
+			if (comments.isEmpty())
+				break;
+
+			List<DocWriteRequest<?>> requests = this.getCommentIndexRequests(comments, index);
+
+			int failedRequests = elasticsearchBulkService.execute(requests);
+			indexed.addAndGet(requests.size() - failedRequests);
+			failed.addAndGet(failedRequests);
+
+			lastId = new ObjectId(comments.get(comments.size() - 1).getId());
+		}
+	}
+
+	private void indexGalleries(String index) {
+
+		AtomicLong indexed = this.initSource(Constants.ES_TYPE_GALLERY, galleryRepository.count());
+		AtomicLong failed = this.getFailedDocuments(Constants.ES_TYPE_GALLERY);
+		ObjectId lastId = null;
+
+		while (! stopRequested) {
+			List<Gallery> galleries = galleryRepository.findEnableGalleriesAfter(lastId, Constants.ES_REINDEX_PAGE_SIZE);
+
+			if (galleries.isEmpty())
+				break;
+
+			List<DocWriteRequest<?>> requests = this.getGalleryIndexRequests(galleries, index);
+
+			int failedRequests = elasticsearchBulkService.execute(requests);
+			indexed.addAndGet(requests.size() - failedRequests);
+			failed.addAndGet(failedRequests);
+
+			lastId = new ObjectId(galleries.get(galleries.size() - 1).getId());
+		}
+	}
+
+	/**
+	 * 다시 색인하는 동안 alias 로 요청을 보낸 문서들을 Mongo 에서 다시 읽어 새 인덱스에 반영한다.
+	 * 요청 순서와 상관없이 지금 Mongo 의 상태를 넣으므로, 없어졌거나 검색에서 빠진 문서는 새 인덱스에서 지운다.
+	 * 꽉 찬 페이지를 읽는 동안은 계속 반영하고, 그 뒤에 들어온 것은 다음 반영(FINAL_CATCH_UP)에서 한다.
+	 *
+	 * @throws IllegalStateException 새 인덱스에 반영하지 못한 문서가 있는 경우
+	 */
+	private void replayWrites(String source, String alias) {
+
+		String index = newIndices.get(source);
+		List<SearchReindexWrite> writes;
+
+		do {
+			writes = searchReindexWriteRepository.findByAlias(alias, PageRequest.of(0, Constants.ES_REINDEX_PAGE_SIZE));
+
+			if (writes.isEmpty())
+				break;
+
+			Set<String> documentIds = writes.stream()
+					.map(SearchReindexWrite::getDocumentId)
+					.filter(Objects::nonNull)
+					.collect(Collectors.toSet());
+
+			List<DocWriteRequest<?>> requests;
+
+			switch (source) {
+				case INDEX_BOARD:
+					requests = this.getArticleReplayRequests(documentIds, index);
+					break;
+				case INDEX_COMMENT:
+					requests = this.getCommentReplayRequests(documentIds, index);
+					break;
+				default:
+					requests = this.getGalleryReplayRequests(documentIds, index);
+					break;
+			}
+
+			int failed = elasticsearchBulkService.execute(requests);
+
+			if (failed > 0)
+				throw new IllegalStateException(String.format("failed to replay %d documents. alias=%s", failed, alias));
+
+			searchReindexWriteRepository.deleteByIdIn(writes.stream().map(SearchReindexWrite::getId).collect(Collectors.toList()));
+
+			synchronized (this) {
+				replayedWrites.merge(source, (long) documentIds.size(), Long::sum);
+			}
+		} while (writes.size() >= Constants.ES_REINDEX_PAGE_SIZE);
+	}
+
+	/**
+	 * 모든 서버가 SearchReindexCapture 를 다시 읽고, 그 전에 만든 bulk 요청을 보낼 때까지 기다린다.
+	 */
+	private void waitForPropagation() {
+		try {
+			Thread.sleep(Constants.ES_REINDEX_CAPTURE_PROPAGATION_MS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("reindex interrupted.", e);
+		}
+	}
+
+	private List<DocWriteRequest<?>> getArticleReplayRequests(Set<String> ids, String index) {
+
+		List<Article> articles = StreamSupport.stream(articleRepository.findAllById(ids).spliterator(), false)
+				.filter(article -> Objects.isNull(article.getStatus()) || ! Boolean.TRUE.equals(article.getStatus().getDelete()))
+				.collect(Collectors.toList());
+
+		return this.withDeleteRequests(this.getArticleIndexRequests(articles, index), ids,
+				articles.stream().map(Article::getId).collect(Collectors.toSet()),
+				id -> searchService.getArticleDeleteRequest(id).index(index));
+	}
+
+	private List<DocWriteRequest<?>> getCommentReplayRequests(Set<String> ids, String index) {
+
+		List<ArticleComment> comments = StreamSupport.stream(articleCommentRepository.findAllById(ids).spliterator(), false)
+				.collect(Collectors.toList());
+
+		return this.withDeleteRequests(this.getCommentIndexRequests(comments, index), ids,
+				comments.stream().map(ArticleComment::getId).collect(Collectors.toSet()),
+				id -> searchService.getCommentDeleteRequest(id).index(index));
+	}
+
+	private List<DocWriteRequest<?>> getGalleryReplayRequests(Set<String> ids, String index) {
+
+		List<Gallery> galleries = StreamSupport.stream(galleryRepository.findAllById(ids).spliterator(), false)
+				.filter(gallery -> Objects.nonNull(gallery.getStatus())
+						&& gallery.getStatus().getStatus() == Constants.GALLERY_STATUS_TYPE.ENABLE)
+				.collect(Collectors.toList());
+
+		return this.withDeleteRequests(this.getGalleryIndexRequests(galleries, index), ids,
+				galleries.stream().map(Gallery::getId).collect(Collectors.toSet()),
+				id -> searchService.getGalleryDeleteRequest(id).index(index));
+	}
+
+	/**
+	 * 색인할 문서가 아닌 ID 는 지우는 요청을 붙인다.
+	 */
+	private List<DocWriteRequest<?>> withDeleteRequests(List<DocWriteRequest<?>> indexRequests, Set<String> ids, Set<String> indexedIds,
+														 Function<String, DocWriteRequest<?>> deleteRequest) {
+
+		List<DocWriteRequest<?>> requests = new ArrayList<>(indexRequests);
+
+		ids.stream()
+				.filter(id -> ! indexedIds.contains(id))
+				.map(deleteRequest)
+				.forEach(requests::add);
+
+		return requests;
+	}
+
+	private List<DocWriteRequest<?>> getArticleIndexRequests(List<Article> articles, String index) {
+
+		Map<String, List<String>> galleryIds = this.findGalleryIds(articles.stream()
+				.filter(article -> Boolean.TRUE.equals(article.getLinkedGallery()))
+				.map(Article::getId)
+				.collect(Collectors.toList()), Constants.GALLERY_FROM_TYPE.ARTICLE);
+
+		return articles.stream()
+				.<DocWriteRequest<?>>map(article -> {
+					EsArticle esArticle = new EsArticle();
+					esArticle.setId(article.getId());
+					esArticle.setSeq(article.getSeq());
+					esArticle.setBoard(article.getBoard());
+					esArticle.setCategory(article.getCategory());
+					esArticle.setWriter(article.getWriter());
+					esArticle.setSubject(JakdukUtils.stripHtmlTag(article.getSubject()));
+					esArticle.setContent(JakdukUtils.stripHtmlTag(article.getContent()));
+					esArticle.setGalleries(galleryIds.get(article.getId()));
+
+					return searchService.getArticleIndexRequest(esArticle).index(index);
+				})
+				.collect(Collectors.toList());
+	}
+
+	private List<DocWriteRequest<?>> getCommentIndexRequests(List<ArticleComment> comments, String index) {
+
+		if (comments.isEmpty())
+			return new ArrayList<>();
+
+		Map<String, List<String>> galleryIds = this.findGalleryIds(comments.stream()
+				.filter(comment -> Boolean.TRUE.equals(comment.getLinkedGallery()))
+				.map(ArticleComment::getId)
+				.collect(Collectors.toList()), Constants.GALLERY_FROM_TYPE.ARTICLE_COMMENT);
+
+		Map<String, Article> articles = StreamSupport.stream(articleRepository.findAllById(comments.stream()
+				.map(comment -> comment.getArticle().getId())
+				.collect(Collectors.toSet())).spliterator(), false)
+				.collect(Collectors.toMap(Article::getId, article -> article));
+
+		return comments.stream()
+				.<DocWriteRequest<?>>map(comment -> {
+					EsParentArticle esParentArticle = new EsParentArticle();
+					esParentArticle.setId(comment.getArticle().getId());
+					esParentArticle.setSeq(comment.getArticle().getSeq());
+					esParentArticle.setBoard(comment.getArticle().getBoard());
+
+					Article article = articles.get(comment.getArticle().getId());
+
+					if (Objects.nonNull(article)) {
+						esParentArticle.setCategory(article.getCategory());
+						esParentArticle.setSubject(JakdukUtils.stripHtmlTag(article.getSubject()));
+					}
+
+					EsComment esComment = new EsComment();
+					esComment.setId(comment.getId());
+					esComment.setArticle(esParentArticle);
+					esComment.setWriter(comment.getWriter());
+					esComment.setContent(JakdukUtils.stripHtmlTag(comment.getContent()));
+					esComment.setGalleries(galleryIds.get(comment.getId()));
+
+					return searchService.getCommentIndexRequest(esComment).index(index);
+				})
+				.collect(Collectors.toList());
+	}
+
+	private List<DocWriteRequest<?>> getGalleryIndexRequests(List<Gallery> galleries, String index) {
+
+		return galleries.stream()
+				.<DocWriteRequest<?>>map(gallery -> {
+					EsGallery esGallery = new EsGallery();
+					esGallery.setId(gallery.getId());
+					esGallery.setWriter(gallery.getWriter());
+					esGallery.setName(gallery.getName());
+
+					return searchService.getGalleryIndexRequest(esGallery).index(index);
+				})
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * 글/댓글별로 연결된 사진 ID 목록. (key : 글/댓글 ID)
+	 */
+	private Map<String, List<String>> findGalleryIds(List<String> itemIds, Constants.GALLERY_FROM_TYPE fromType) {
+
+		if (itemIds.isEmpty())
+			return Collections.emptyMap();
+
+		Set<String> itemIdSet = new HashSet<>(itemIds);
+		Map<String, List<String>> galleryIds = new HashMap<>();
+
+		galleryRepository.findLinkedItemsByItemIdsAndFromType(itemIds.stream().map(ObjectId::new).collect(Collectors.toList()), fromType)
+				.forEach(gallery -> gallery.getLinkedItems().stream()
+						.filter(linkedItem -> linkedItem.getFrom().equals(fromType) && itemIdSet.contains(linkedItem.getId()))
+						.forEach(linkedItem -> galleryIds.computeIfAbsent(linkedItem.getId(), id -> new ArrayList<>()).add(gallery.getId())));
+
+		return galleryIds;
+	}
+
+	private synchronized AtomicLong initSource(String source, long total) {
+		totalDocuments.put(source, total);
+		failedDocuments.computeIfAbsent(source, key -> new AtomicLong());
+		return indexedDocuments.computeIfAbsent(source, key -> new AtomicLong());
+	}
+
+	private synchronized AtomicLong getFailedDocuments(String source) {
+		return failedDocuments.get(source);
+	}
+
+}
@@ -9,38 +9,27 @@ import com.jakduk.api.exception.ServiceException;
 import com.jakduk.api.model.elasticsearch.*;
 import com.jakduk.api.restcontroller.vo.board.BoardGallerySimple;
 import com.jakduk.api.restcontroller.vo.search.*;
+import com.jakduk.api.service.search.SearchBackend;
+import com.jakduk.api.service.search.SearchCondition;
+import com.jakduk.api.service.search.SearchDocuments;
 import org.apache.commons.lang3.StringUtils;
-import org.elasticsearch.action.delete.DeleteResponse;
-import org.elasticsearch.action.index.IndexRequestBuilder;
-import org.elasticsearch.action.index.IndexResponse;
-import org.elasticsearch.action.search.MultiSearchRequestBuilder;
-import org.elasticsearch.action.search.MultiSearchResponse;
-import org.elasticsearch.action.search.SearchRequestBuilder;
-import org.elasticsearch.action.search.SearchResponse;
-import org.elasticsearch.client.Client;
-import org.elasticsearch.common.text.Text;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.common.xcontent.XContentType;
-import org.elasticsearch.index.query.InnerHitBuilder;
-import org.elasticsearch.index.query.QueryBuilders;
-import org.elasticsearch.join.query.JoinQueryBuilders;
-import org.elasticsearch.rest.RestStatus;
-import org.elasticsearch.search.SearchHit;
-import org.elasticsearch.search.SearchHits;
-import org.elasticsearch.search.aggregations.AggregationBuilders;
-import org.elasticsearch.search.aggregations.bucket.terms.Terms;
-import org.elasticsearch.search.fetch.subphase.highlight.HighlightBuilder;
-import org.elasticsearch.search.fetch.subphase.highlight.HighlightField;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.util.ObjectUtils;
 
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
 /**
@@ -55,264 +44,425 @@ public class SearchService {
 	@Resource private JakdukProperties.Elasticsearch elasticsearchProperties;
 
 	@Autowired private UrlGenerationUtils urlGenerationUtils;
-	@Autowired private Client client;
+	@Autowired private SearchBackend searchBackend;
+	@Autowired private PopularSearchWordService popularSearchWordService;
+	@Autowired private SearchSuggestService searchSuggestService;
+	@Autowired private SearchWordIndexService searchWordIndexService;
+
+	// 통합 검색 결과 캐시. (key : 정규화한 검색 조건)
+	private final LinkedHashMap<String, CachedSearchResult> searchCache = new LinkedHashMap<>(256, 0.75f, true);
+
+	// 같은 검색을 동시에 요청하면 하나만 검색 백엔드에 보내고 나머지는 그 결과를 기다린다.
+	private final ConcurrentHashMap<String, CompletableFuture<SearchUnifiedResponse>> searchesInProgress = new ConcurrentHashMap<>();
+
+	// 검색 응답을 기다리는 시간을 재는 타이머
+	private final ScheduledExecutorService searchTimeoutScheduler = Executors.newSingleThreadScheduledExecutor();
+
+	@PreDestroy
+	public void destroy() {
+		searchTimeoutScheduler.shutdown();
+	}
 
 	/**
 	 * 통합 검색
 	 *
+	 * 검색어의 대소문자와 공백을 정규화한 검색 조건으로 결과를 Constants.SEARCH_CACHE_TTL_MS 동안 캐시한다.
+	 * 게시판이나 사진 인덱스에 문서가 색인/삭제되면 그 전에 캐시한 결과는 쓰지 않는다.
+	 *
+	 * 글, 댓글, 사진 검색은 따로 비동기로 보내고, 기다리는 쓰레드 없이 모두 끝나면 결과를 완료한다.
+	 * 종류마다 정한 시간(Constants.SEARCH_*_TIMEOUT_MS)이 지나면 그 종류는 timedOut 으로 표시하고 끝난 결과만 돌려준다.
+	 *
 	 * @param query	검색어
 	 * @param from	페이지 시작 위치
 	 * @param size	페이지 크기
 	 * @return	검색 결과
 	 */
-	public SearchUnifiedResponse searchUnified(String query, String include, Integer from, Integer size, String preTags,
-											   String postTags) {
+	public CompletableFuture<SearchUnifiedResponse> searchUnified(String query, String include, Integer from, Integer size,
+																  String preTags, String postTags) {
+		return this.searchUnified(query, include, from, size, preTags, postTags, null);
+	}
 
-		SearchUnifiedResponse searchUnifiedResponse = new SearchUnifiedResponse();
-		Queue<Constants.SEARCH_INCLUDE_TYPE> searchOrder = new LinkedList<>();
-		MultiSearchRequestBuilder multiSearchRequestBuilder = client.prepareMultiSearch();
+	/**
+	 * 통합 검색. cursors 가 있으면 from 대신 search_after 로 페이지를 넘긴다.
+	 * 점수와 문서 ID 순으로 정렬하고, 결과마다 마지막 문서의 정렬 값을 다음 페이지의 cursor 로 준다.
+	 * 페이지가 깊어져도 샤드마다 size 개만 모으면 되고, max_result_window 에 걸리지 않는다.
+	 * 두번째 페이지부터는 cursor 가 없는 종류는 앞 페이지에서 끝난 것이므로 찾지 않고 결과에서 뺀다.
+	 *
+	 * @param cursors	앞 페이지에서 받은 cursor 목록. 첫 페이지는 빈 목록. null 이면 from 으로 페이지를 넘긴다.
+	 */
+	public CompletableFuture<SearchUnifiedResponse> searchUnified(String query, String include, Integer from, Integer size,
+																  String preTags, String postTags, List<String> cursors) {
 
-		if (StringUtils.contains(include, Constants.SEARCH_INCLUDE_TYPE.ARTICLE.name())) {
-			SearchRequestBuilder searchRequestBuilder = getArticleSearchRequestBuilder(query, from, size, preTags, postTags);
-			multiSearchRequestBuilder.add(searchRequestBuilder);
-			searchOrder.offer(Constants.SEARCH_INCLUDE_TYPE.ARTICLE);
-		}
+		String normalizedQuery = StringUtils.lowerCase(StringUtils.normalizeSpace(query), Locale.ROOT);
+		String normalizedInclude = Arrays.stream(Constants.SEARCH_INCLUDE_TYPE.values())
+				.map(Enum::name)
+				.filter(type -> StringUtils.contains(include, type))
+				.collect(Collectors.joining(";"));
+
+		Map<Constants.SEARCH_INCLUDE_TYPE, Object[]> searchAfters = Objects.nonNull(cursors) ? this.decodeCursors(cursors) : null;
+
+		String cacheKey = String.join("\u0000", normalizedQuery, normalizedInclude, String.valueOf(from), String.valueOf(size),
+				StringUtils.defaultString(preTags), StringUtils.defaultString(postTags),
+				Objects.nonNull(cursors) ? String.join(",", cursors) : "-");
+
+		// 캐시된 검색도 인기 검색어로 센다.
+		popularSearchWordService.record(normalizedQuery);
+
+		// 검색 전의 값을 쓴다. 검색하는 동안 색인된 문서가 있으면 이 결과는 다음 요청에서 버려진다.
+		long documentChanges = searchBackend.getDocumentChanges();
+
+		synchronized (searchCache) {
+			CachedSearchResult cached = searchCache.get(cacheKey);
+
+			if (Objects.nonNull(cached)) {
+				if (cached.documentChanges == documentChanges && cached.expiresAt > System.currentTimeMillis())
+					return CompletableFuture.completedFuture(cached.response);
 
-		if (StringUtils.contains(include, Constants.SEARCH_INCLUDE_TYPE.COMMENT.name())) {
-			SearchRequestBuilder searchRequestBuilder = getCommentSearchRequestBuilder(query, from, size, preTags, postTags);
-			multiSearchRequestBuilder.add(searchRequestBuilder);
-			searchOrder.offer(Constants.SEARCH_INCLUDE_TYPE.COMMENT);
+				searchCache.remove(cacheKey);
+			}
 		}
 
-		if (StringUtils.contains(include, Constants.SEARCH_INCLUDE_TYPE.GALLERY.name())) {
-			SearchRequestBuilder searchRequestBuilder = getGallerySearchRequestBuilder(query, from, size < 10 ? 4 : size, preTags, postTags);
-			multiSearchRequestBuilder.add(searchRequestBuilder);
-			searchOrder.offer(Constants.SEARCH_INCLUDE_TYPE.GALLERY);
+		CompletableFuture<SearchUnifiedResponse> newSearch = new CompletableFuture<>();
+		CompletableFuture<SearchUnifiedResponse> searchInProgress = searchesInProgress.putIfAbsent(cacheKey, newSearch);
+
+		if (Objects.nonNull(searchInProgress))
+			return searchInProgress;
+
+		CompletableFuture<SearchUnifiedResponse> search;
+		Set<Constants.SEARCH_INCLUDE_TYPE> failedTypes = ConcurrentHashMap.newKeySet();
+
+		try {
+			search = this.searchUnifiedFromBackend(normalizedQuery, normalizedInclude, from, size, preTags, postTags,
+					searchAfters, failedTypes);
+		} catch (RuntimeException e) {
+			searchesInProgress.remove(cacheKey, newSearch);
+			throw e;
 		}
 
-		MultiSearchResponse multiSearchResponse = multiSearchRequestBuilder.execute().actionGet();
+		search.whenComplete((searchUnifiedResponse, e) -> {
+			// 시간이 지나거나 실패해서 빠진 결과가 있으면 캐시하지 않는다.
+			if (Objects.isNull(e) && ! this.isTimedOut(searchUnifiedResponse) && failedTypes.isEmpty()) {
+				synchronized (searchCache) {
+					searchCache.put(cacheKey, new CachedSearchResult(searchUnifiedResponse, documentChanges,
+							System.currentTimeMillis() + Constants.SEARCH_CACHE_TTL_MS));
 
-		for (MultiSearchResponse.Item item : multiSearchResponse.getResponses()) {
-			SearchResponse searchResponse = item.getResponse();
-			Constants.SEARCH_INCLUDE_TYPE order = searchOrder.poll();
+					Iterator<String> iterator = searchCache.keySet().iterator();
 
-			if (item.isFailure())
-				continue;
+					while (searchCache.size() > Constants.SEARCH_CACHE_MAX_SIZE && iterator.hasNext()) {
+						iterator.next();
+						iterator.remove();
+					}
+				}
+			}
+
+			searchesInProgress.remove(cacheKey, newSearch);
+
+			if (Objects.nonNull(e))
+				newSearch.completeExceptionally(e);
+			else
+				newSearch.complete(searchUnifiedResponse);
+		});
+
+		return newSearch;
+	}
+
+	/**
+	 * 종류별로 동시에 찾는다. 시간이 지나지 않았는데 실패한 종류는 결과에서 빼고 failedTypes 에 넣는다.
+	 * 찾은 종류가 모두 실패했으면 빈 결과 대신 ServiceException 으로 끝낸다.
+	 */
+	private CompletableFuture<SearchUnifiedResponse> searchUnifiedFromBackend(String query, String include, Integer from,
+																			Integer size, String preTags, String postTags,
+																			Map<Constants.SEARCH_INCLUDE_TYPE, Object[]> searchAfters,
+																			Set<Constants.SEARCH_INCLUDE_TYPE> failedTypes) {
+
+		SearchUnifiedResponse searchUnifiedResponse = new SearchUnifiedResponse();
+		List<CompletableFuture<Void>> searches = new ArrayList<>();
+
+		if (this.hasNextPage(include, searchAfters, Constants.SEARCH_INCLUDE_TYPE.ARTICLE)) {
+			SearchCondition searchCondition = this.getSearchCondition(query, from, size, preTags, postTags, searchAfters,
+					Constants.SEARCH_INCLUDE_TYPE.ARTICLE, Constants.SEARCH_ARTICLE_TIMEOUT_MS);
+
+			searches.add(this.withTimeout(searchBackend.searchArticles(searchCondition), Constants.SEARCH_ARTICLE_TIMEOUT_MS)
+					.handleAsync((searchDocuments, e) -> {
+						SearchArticleResult searchArticleResult;
+
+						if (Objects.nonNull(searchDocuments)) {
+							searchArticleResult = getArticleSearchResult(searchDocuments);
+							searchArticleResult.setNextCursor(this.getNextCursor(searchAfters, Constants.SEARCH_INCLUDE_TYPE.ARTICLE,
+									searchDocuments, size));
+						} else if (this.isSearchTimeout(e, Constants.SEARCH_INCLUDE_TYPE.ARTICLE)) {
+							searchArticleResult = new SearchArticleResult();
+							searchArticleResult.setTook(Constants.SEARCH_ARTICLE_TIMEOUT_MS);
+							searchArticleResult.setTotalCount(0L);
+							searchArticleResult.setArticles(Collections.emptyList());
+							searchArticleResult.setTimedOut(true);
+						} else {
+							failedTypes.add(Constants.SEARCH_INCLUDE_TYPE.ARTICLE);
+							return null;
+						}
 
-			if (! ObjectUtils.isEmpty(order)) {
-				switch (order) {
-					case ARTICLE:
-						SearchArticleResult searchArticleResult = getArticleSearchResponse(searchResponse);
 						searchUnifiedResponse.setArticleResult(searchArticleResult);
-						break;
-					case COMMENT:
-						SearchCommentResult searchCommentResult = getCommentSearchResponse(searchResponse);
+						return null;
+					}));
+		}
+
+		if (this.hasNextPage(include, searchAfters, Constants.SEARCH_INCLUDE_TYPE.COMMENT)) {
+			SearchCondition searchCondition = this.getSearchCondition(query, from, size, preTags, postTags, searchAfters,
+					Constants.SEARCH_INCLUDE_TYPE.COMMENT, Constants.SEARCH_COMMENT_TIMEOUT_MS);
+
+			searches.add(this.withTimeout(searchBackend.searchComments(searchCondition), Constants.SEARCH_COMMENT_TIMEOUT_MS)
+					.handleAsync((searchDocuments, e) -> {
+						SearchCommentResult searchCommentResult;
+
+						if (Objects.nonNull(searchDocuments)) {
+							searchCommentResult = new SearchCommentResult();
+							searchCommentResult.setTook(searchDocuments.getTook());
+							searchCommentResult.setTimedOut(searchDocuments.getTimedOut());
+							searchCommentResult.setTotalCount(searchDocuments.getTotalCount());
+							searchCommentResult.setComments(searchDocuments.getDocuments());
+							searchCommentResult.setNextCursor(this.getNextCursor(searchAfters, Constants.SEARCH_INCLUDE_TYPE.COMMENT,
+									searchDocuments, size));
+						} else if (this.isSearchTimeout(e, Constants.SEARCH_INCLUDE_TYPE.COMMENT)) {
+							searchCommentResult = new SearchCommentResult();
+							searchCommentResult.setTook(Constants.SEARCH_COMMENT_TIMEOUT_MS);
+							searchCommentResult.setTotalCount(0L);
+							searchCommentResult.setComments(Collections.emptyList());
+							searchCommentResult.setTimedOut(true);
+						} else {
+							failedTypes.add(Constants.SEARCH_INCLUDE_TYPE.COMMENT);
+							return null;
+						}
+
 						searchUnifiedResponse.setCommentResult(searchCommentResult);
-						break;
-					case GALLERY:
-						SearchGalleryResult searchGalleryResult = getGallerySearchResponse(searchResponse);
+						return null;
+					}));
+		}
+
+		if (this.hasNextPage(include, searchAfters, Constants.SEARCH_INCLUDE_TYPE.GALLERY)) {
+			Integer gallerySize = size < 10 ? 4 : size;
+			SearchCondition searchCondition = this.getSearchCondition(query, from, gallerySize, preTags, postTags, searchAfters,
+					Constants.SEARCH_INCLUDE_TYPE.GALLERY, Constants.SEARCH_GALLERY_TIMEOUT_MS);
+
+			searches.add(this.withTimeout(searchBackend.searchGalleries(searchCondition), Constants.SEARCH_GALLERY_TIMEOUT_MS)
+					.handleAsync((searchDocuments, e) -> {
+						SearchGalleryResult searchGalleryResult;
+
+						if (Objects.nonNull(searchDocuments)) {
+							searchGalleryResult = new SearchGalleryResult();
+							searchGalleryResult.setTook(searchDocuments.getTook());
+							searchGalleryResult.setTimedOut(searchDocuments.getTimedOut());
+							searchGalleryResult.setTotalCount(searchDocuments.getTotalCount());
+							searchGalleryResult.setGalleries(searchDocuments.getDocuments());
+							searchGalleryResult.setNextCursor(this.getNextCursor(searchAfters, Constants.SEARCH_INCLUDE_TYPE.GALLERY,
+									searchDocuments, gallerySize));
+						} else if (this.isSearchTimeout(e, Constants.SEARCH_INCLUDE_TYPE.GALLERY)) {
+							searchGalleryResult = new SearchGalleryResult();
+							searchGalleryResult.setTook(Constants.SEARCH_GALLERY_TIMEOUT_MS);
+							searchGalleryResult.setTotalCount(0L);
+							searchGalleryResult.setGalleries(Collections.emptyList());
+							searchGalleryResult.setTimedOut(true);
+						} else {
+							failedTypes.add(Constants.SEARCH_INCLUDE_TYPE.GALLERY);
+							return null;
+						}
+
 						searchUnifiedResponse.setGalleryResult(searchGalleryResult);
-						break;
-				}
-			}
+						return null;
+					}));
 		}
 
-		return searchUnifiedResponse;
+		return CompletableFuture.allOf(searches.toArray(new CompletableFuture[0]))
+				.thenApply(done -> {
+					if (! searches.isEmpty() && failedTypes.size() == searches.size())
+						throw new ServiceException(ServiceError.ELASTICSEARCH_SEARCH_FAILED);
+
+					return searchUnifiedResponse;
+				});
 	}
 
-	public PopularSearchWordResult aggregateSearchWord(LocalDate gteDate, Integer size) {
+	/**
+	 * 찾을 종류인지. cursor 방식의 두번째 페이지부터는 cursor 를 받은 종류만 찾는다. (cursor 가 빈 목록이면 첫 페이지)
+	 */
+	private Boolean hasNextPage(String include, Map<Constants.SEARCH_INCLUDE_TYPE, Object[]> searchAfters,
+								Constants.SEARCH_INCLUDE_TYPE type) {
 
-		SearchRequestBuilder searchRequestBuilder = client.prepareSearch()
-				.setIndices(elasticsearchProperties.getIndexSearchWord())
-				.setTypes(Constants.ES_TYPE_SEARCH_WORD)
-				.setSize(0)
-				.setQuery(
-						QueryBuilders.rangeQuery("registerDate").gte(gteDate.toString())
-				)
-				.addAggregation(
-						AggregationBuilders
-								.terms("popular_word_aggs")
-								.field("word")
-								.size(size)
-				);
-
-		log.debug("aggregateSearchWord Query:\n{}", searchRequestBuilder);
-
-		SearchResponse searchResponse = searchRequestBuilder.execute().actionGet();
-		Terms popularWordTerms = searchResponse.getAggregations().get("popular_word_aggs");
-
-		List<EsTermsBucket> popularWords = popularWordTerms.getBuckets().stream()
-				.map(entry -> {
-					EsTermsBucket esTermsBucket = new EsTermsBucket();
-					esTermsBucket.setKey(entry.getKeyAsString());
-					esTermsBucket.setCount(entry.getDocCount());
-					return esTermsBucket;
-				})
-				.collect(Collectors.toList());
+		if (! StringUtils.contains(include, type.name()))
+			return false;
 
-		return new PopularSearchWordResult() {{
-			setTook(searchResponse.getTook().getMillis());
-			setPopularSearchWords(popularWords);
-		}};
+		return Objects.isNull(searchAfters) || searchAfters.isEmpty() || searchAfters.containsKey(type);
 	}
 
-	public void indexDocumentArticle(EsArticle esArticle) {
+	/**
+	 * 검색 백엔드에는 timeoutMs 안에 찾은 것까지만 돌려달라고 하고,
+	 * Constants.SEARCH_TIMEOUT_GRACE_MS 를 더 기다려도 응답이 없으면 TimeoutException 으로 끝낸다.
+	 */
+	private <T> CompletableFuture<T> withTimeout(CompletableFuture<T> search, long timeoutMs) {
+
+		ScheduledFuture<?> timeout = searchTimeoutScheduler.schedule(() -> search.completeExceptionally(new TimeoutException()),
+				timeoutMs + Constants.SEARCH_TIMEOUT_GRACE_MS, TimeUnit.MILLISECONDS);
 
-		String id = esArticle.getId();
+		search.whenComplete((result, e) -> timeout.cancel(false));
 
-		try {
-			IndexResponse response = client.prepareIndex()
-					.setIndex(elasticsearchProperties.getIndexBoard())
-					.setType(Constants.ES_TYPE_ARTICLE)
-					.setId(id)
-					.setSource(ObjectMapperUtils.writeValueAsString(esArticle), XContentType.JSON)
-					.get();
+		return search;
+	}
 
-		} catch (IOException e) {
-			throw new ServiceException(ServiceError.ELASTICSEARCH_INDEX_FAILED, e.getCause());
+	/**
+	 * 시간이 지나 끝나지 못한 검색인지. 그 밖의 실패는 로그를 남긴다.
+	 */
+	private Boolean isSearchTimeout(Throwable e, Constants.SEARCH_INCLUDE_TYPE type) {
+
+		Throwable cause = e instanceof CompletionException && Objects.nonNull(e.getCause()) ? e.getCause() : e;
+
+		if (cause instanceof TimeoutException) {
+			log.warn("{} search timed out.", type);
+			return true;
 		}
-	}
 
-	public void deleteDocumentBoard(String id) {
-		DeleteResponse response = client.prepareDelete()
-				.setIndex(elasticsearchProperties.getIndexBoard())
-				.setType(Constants.ES_TYPE_ARTICLE)
-				.setId(id)
-				.get();
+		log.error("{} search failed.", type, cause);
 
-		if (! response.status().equals(RestStatus.OK))
-			log.info("board id {} is not found. so can't delete it!", id);
+		return false;
 	}
 
-	public void indexDocumentBoardComment(EsComment esComment) {
+	private Boolean isTimedOut(SearchUnifiedResponse searchUnifiedResponse) {
+		return (Objects.nonNull(searchUnifiedResponse.getArticleResult()) && Boolean.TRUE.equals(searchUnifiedResponse.getArticleResult().getTimedOut()))
+				|| (Objects.nonNull(searchUnifiedResponse.getCommentResult()) && Boolean.TRUE.equals(searchUnifiedResponse.getCommentResult().getTimedOut()))
+				|| (Objects.nonNull(searchUnifiedResponse.getGalleryResult()) && Boolean.TRUE.equals(searchUnifiedResponse.getGalleryResult().getTimedOut()));
+	}
 
-		String id = esComment.getId();
-		String parentBoardId = esComment.getArticle().getId();
+	/**
+	 * 최근 Constants.SEARCH_POPULAR_WORD_WINDOW_DAYS 일의 인기 검색어. PopularSearchWordService 가 미리 만들어 둔 목록을 쓴다.
+	 */
+	public PopularSearchWordResult getPopularSearchWords(Integer size) {
 
-		try {
-			IndexResponse response = client.prepareIndex()
-					.setIndex(elasticsearchProperties.getIndexBoard())
-					.setType(Constants.ES_TYPE_COMMENT)
-					.setId(id)
-					.setParent(parentBoardId)
-					.setSource(ObjectMapperUtils.writeValueAsString(esComment), XContentType.JSON)
-					.get();
+		List<EsTermsBucket> popularWords = popularSearchWordService.getPopularWords(size);
 
-		} catch (IOException e) {
-			throw new ServiceException(ServiceError.ELASTICSEARCH_INDEX_FAILED, e.getCause());
-		}
+		return new PopularSearchWordResult() {{
+			setTook(0L);
+			setPopularSearchWords(popularWords);
+		}};
 	}
 
-	public void deleteDocumentBoardComment(String id) {
+	/**
+	 * 검색어 자동 완성
+	 */
+	public SearchSuggestResult getSuggestions(String q, Integer size) {
 
-		DeleteResponse response = client.prepareDelete()
-				.setIndex(elasticsearchProperties.getIndexBoard())
-				.setType(Constants.ES_TYPE_COMMENT)
-				.setId(id)
-				.get();
+		List<SearchSuggestion> suggestions = searchSuggestService.getSuggestions(q, size);
 
-		if (! response.status().equals(RestStatus.OK))
-			log.info("comment id {} is not found. so can't delete it!", id);
+		return new SearchSuggestResult() {{
+			setSuggestions(suggestions);
+		}};
+	}
+
+	/**
+	 * 이 날짜 이후의 인기 검색어. 검색 백엔드에 쌓인 검색어를 센다.
+	 */
+	public PopularSearchWordResult aggregateSearchWord(LocalDate gteDate, Integer size) {
+		return searchBackend.aggregateSearchWord(gteDate, size);
 	}
 
+	/*
+	 * 색인/삭제는 검색 백엔드에 bulk 로 보내고 끝나기를 기다린다. 반영하지 못한 요청을 돌려받아서,
+	 * 메시지를 받아 부른 쪽이 그 요청을 만든 메시지만 확인(ack)하지 않고 다시 받게 한다.
+	 */
+
 	// TODO : 구현 해야 함
 	public void createDocumentJakduComment(EsJakduComment EsJakduComment) {}
 
-	public void indexDocumentGallery(EsGallery esGallery) {
+	/**
+	 * 색인/삭제 요청들을 보내고, 반영하지 못한 요청들을 돌려준다.
+	 */
+	public List<DocWriteRequest<?>> execute(List<DocWriteRequest<?>> requests) {
+		return searchBackend.execute(requests);
+	}
 
-		String id = esGallery.getId();
+	public IndexRequest getArticleIndexRequest(EsArticle esArticle) {
+		return new IndexRequest(elasticsearchProperties.getIndexBoard(), Constants.ES_TYPE_ARTICLE, esArticle.getId())
+				.source(this.toSource(esArticle), XContentType.JSON);
+	}
 
-		try {
-			IndexResponse response = client.prepareIndex()
-					.setIndex(elasticsearchProperties.getIndexGallery())
-					.setType(Constants.ES_TYPE_GALLERY)
-					.setId(id)
-					.setSource(ObjectMapperUtils.writeValueAsString(esGallery), XContentType.JSON)
-					.get();
+	public DeleteRequest getArticleDeleteRequest(String id) {
+		return new DeleteRequest(elasticsearchProperties.getIndexBoard(), Constants.ES_TYPE_ARTICLE, id);
+	}
 
-		} catch (IOException e) {
-			throw new ServiceException(ServiceError.ELASTICSEARCH_INDEX_FAILED, e.getCause());
-		}
+	/**
+	 * 댓글은 글과 따로 색인한다. 검색 결과에 보여줄 글의 정보는 댓글 문서의 article 에 들어 있다.
+	 */
+	public IndexRequest getCommentIndexRequest(EsComment esComment) {
+		return new IndexRequest(elasticsearchProperties.getIndexComment(), Constants.ES_TYPE_COMMENT, esComment.getId())
+				.source(this.toSource(esComment), XContentType.JSON);
 	}
 
-	public void deleteDocumentGallery(String id) {
+	public DeleteRequest getCommentDeleteRequest(String id) {
+		return new DeleteRequest(elasticsearchProperties.getIndexComment(), Constants.ES_TYPE_COMMENT, id);
+	}
 
-		DeleteResponse response = client.prepareDelete()
-				.setIndex(elasticsearchProperties.getIndexGallery())
-				.setType(Constants.ES_TYPE_GALLERY)
-				.setId(id)
-				.get();
+	/**
+	 * 글이 바뀌면 그 글의 댓글 문서들에 넣어둔 글의 정보를 고친다.
+	 */
+	public void updateCommentArticles(Collection<EsArticle> esArticles) {
+		searchBackend.updateCommentArticles(esArticles);
+	}
 
-		if (! response.status().equals(RestStatus.OK))
-			log.info("gallery id {} is not found. so can't delete it!", id);
+	public IndexRequest getGalleryIndexRequest(EsGallery esGallery) {
+		return new IndexRequest(elasticsearchProperties.getIndexGallery(), Constants.ES_TYPE_GALLERY, esGallery.getId())
+				.source(this.toSource(esGallery), XContentType.JSON);
 	}
 
-	public void indexDocumentSearchWord(EsSearchWord esSearchWord) {
+	public DeleteRequest getGalleryDeleteRequest(String id) {
+		return new DeleteRequest(elasticsearchProperties.getIndexGallery(), Constants.ES_TYPE_GALLERY, id);
+	}
 
-		try {
-			IndexRequestBuilder indexRequestBuilder = client.prepareIndex();
-			IndexResponse response = indexRequestBuilder
-					.setIndex(elasticsearchProperties.getIndexSearchWord())
-					.setType(Constants.ES_TYPE_SEARCH_WORD)
-					.setSource(ObjectMapperUtils.writeValueAsString(esSearchWord), XContentType.JSON)
-					.get();
+	/**
+	 * 검색어는 ID 없이 검색한 날의 색인에 쌓는다.
+	 */
+	public IndexRequest getSearchWordIndexRequest(EsSearchWord esSearchWord) {
+		LocalDate registerDate = Objects.nonNull(esSearchWord.getRegisterDate()) ? esSearchWord.getRegisterDate().toLocalDate() : LocalDate.now();
 
-			log.debug("indexDocumentSearchWord Source:\n {}", indexRequestBuilder.request().getDescription());
+		return new IndexRequest(searchWordIndexService.getIndex(registerDate), Constants.ES_TYPE_SEARCH_WORD)
+				.source(this.toSource(esSearchWord), XContentType.JSON);
+	}
 
+	private String toSource(Object document) {
+		try {
+			return ObjectMapperUtils.writeValueAsString(document);
 		} catch (IOException e) {
 			throw new ServiceException(ServiceError.ELASTICSEARCH_INDEX_FAILED, e.getCause());
 		}
 	}
 
-	private SearchRequestBuilder getArticleSearchRequestBuilder(String query, Integer from, Integer size, String preTags,
-																String postTags) {
-
-		HighlightBuilder highlightBuilder = new HighlightBuilder()
-				.noMatchSize(Constants.SEARCH_NO_MATCH_SIZE)
-				.fragmentSize(Constants.SEARCH_FRAGMENT_SIZE)
-				.field("subject", Constants.SEARCH_FRAGMENT_SIZE, 0)
-				.field("content", Constants.SEARCH_FRAGMENT_SIZE, 1);
-
-		SearchRequestBuilder searchRequestBuilder = client.prepareSearch()
-				.setIndices(elasticsearchProperties.getIndexBoard())
-				.setTypes(Constants.ES_TYPE_ARTICLE)
-				.setFetchSource(null, new String[]{"subject", "content"})
-				.setQuery(
-						QueryBuilders.boolQuery()
-								.should(QueryBuilders.multiMatchQuery(query, "subject", "content").field("subject", 1.5f))
-				)
-				.setFrom(from)
-				.setSize(size);
-
-		if (StringUtils.isNotBlank(preTags))
-			highlightBuilder.preTags(preTags);
-
-		if (StringUtils.isNotBlank(postTags))
-			highlightBuilder.postTags(postTags);
-
-		searchRequestBuilder.highlighter(highlightBuilder);
-		log.debug("getArticleSearchRequestBuilder Query:\n{}", searchRequestBuilder);
-
-		return searchRequestBuilder;
+	/**
+	 * cursor 방식이면 from 대신 앞 페이지 마지막 문서의 정렬 값을 넘긴다.
+	 */
+	private SearchCondition getSearchCondition(String query, Integer from, Integer size, String preTags, String postTags,
+											   Map<Constants.SEARCH_INCLUDE_TYPE, Object[]> searchAfters,
+											   Constants.SEARCH_INCLUDE_TYPE type, long timeoutMs) {
+
+		SearchCondition searchCondition = new SearchCondition();
+		searchCondition.setQuery(query);
+		searchCondition.setFrom(from);
+		searchCondition.setSize(size);
+		searchCondition.setPreTags(preTags);
+		searchCondition.setPostTags(postTags);
+		searchCondition.setCursor(Objects.nonNull(searchAfters));
+		searchCondition.setSearchAfter(Objects.nonNull(searchAfters) ? searchAfters.get(type) : null);
+		searchCondition.setTimeoutMs(timeoutMs);
+
+		return searchCondition;
 	}
 
-	private SearchArticleResult getArticleSearchResponse(SearchResponse searchResponse) {
-		SearchHits searchHits = searchResponse.getHits();
-
-		List<ArticleSource> searchList = Arrays.stream(searchHits.getHits())
-				.map(searchHit -> {
-					Map<String, Object> sourceMap = searchHit.getSourceAsMap();
-					EsArticleSource esArticleSource = ObjectMapperUtils.convertValue(sourceMap, EsArticleSource.class);
-					esArticleSource.setScore(searchHit.getScore());
+	private SearchArticleResult getArticleSearchResult(SearchDocuments<EsArticleSource> searchDocuments) {
 
-					Map<String, List<String>> highlight = this.getHighlight(searchHit.getHighlightFields().entrySet());
-					esArticleSource.setHighlight(highlight);
-
-					return esArticleSource;
-				})
+		List<ArticleSource> searchList = searchDocuments.getDocuments().stream()
 				.map(esArticleSource -> {
 					ArticleSource articleSource = new ArticleSource();
-					BeanUtils.copyProperties(esArticleSource, articleSource);
+					articleSource.setId(esArticleSource.getId());
+					articleSource.setSeq(esArticleSource.getSeq());
+					articleSource.setBoard(esArticleSource.getBoard());
+					articleSource.setCategory(esArticleSource.getCategory());
+					articleSource.setWriter(esArticleSource.getWriter());
+					articleSource.setScore(esArticleSource.getScore());
+					articleSource.setHighlight(esArticleSource.getHighlight());
 
 					if (! ObjectUtils.isEmpty(esArticleSource.getGalleries())) {
 						List<BoardGallerySimple> boardGalleries = esArticleSource.getGalleries().stream()
@@ -332,141 +482,70 @@ public class SearchService {
 				.collect(Collectors.toList());
 
 		return new SearchArticleResult() {{
-			setTook(searchResponse.getTook().getMillis());
-			setTotalCount(searchHits.getTotalHits());
+			setTook(searchDocuments.getTook());
+			setTimedOut(searchDocuments.getTimedOut());
+			setTotalCount(searchDocuments.getTotalCount());
 			setArticles(searchList);
 		}};
 	}
 
-	private SearchRequestBuilder getCommentSearchRequestBuilder(String query, Integer from, Integer size, String preTags,
-																String postTags) {
-
-		HighlightBuilder highlightBuilder = new HighlightBuilder()
-				.noMatchSize(Constants.SEARCH_NO_MATCH_SIZE)
-				.fragmentSize(Constants.SEARCH_FRAGMENT_SIZE)
-				.field("content", Constants.SEARCH_FRAGMENT_SIZE, 1);
-
-		SearchRequestBuilder searchRequestBuilder = client.prepareSearch()
-				.setIndices(elasticsearchProperties.getIndexBoard())
-				.setTypes(Constants.ES_TYPE_COMMENT)
-				.setFetchSource(null, new String[]{"content"})
-				.setQuery(
-						QueryBuilders.boolQuery()
-								.must(QueryBuilders.matchQuery("content", query))
-								.must(JoinQueryBuilders
-                                        .hasParentQuery(Constants.ES_TYPE_ARTICLE, QueryBuilders.matchAllQuery(), false)
-                                        .innerHit(new InnerHitBuilder())
-								)
-				)
-				.setFrom(from)
-				.setSize(size);
-
-		if (StringUtils.isNotBlank(preTags))
-			highlightBuilder.preTags(preTags);
-
-		if (StringUtils.isNotBlank(postTags))
-			highlightBuilder.postTags(postTags);
-
-		searchRequestBuilder.highlighter(highlightBuilder);
-		log.debug("getBoardCommentSearchRequestBuilder Query:\n{}", searchRequestBuilder);
-
-		return searchRequestBuilder;
-	}
-
-	private SearchCommentResult getCommentSearchResponse(SearchResponse searchResponse) {
-		SearchHits searchHits = searchResponse.getHits();
-
-		List<EsCommentSource> searchList = Arrays.stream(searchHits.getHits())
-				.map(searchHit -> {
-					Map<String, Object> sourceMap = searchHit.getSourceAsMap();
-					EsCommentSource esCommentSource = ObjectMapperUtils.convertValue(sourceMap, EsCommentSource.class);
-					esCommentSource.setScore(searchHit.getScore());
-
-					if (! searchHit.getInnerHits().isEmpty()) {
-						SearchHit[] innerSearchHits = searchHit.getInnerHits().get(Constants.ES_TYPE_ARTICLE).getHits();
-						Map<String, Object> innerSourceMap = innerSearchHits[ innerSearchHits.length - 1 ].getSourceAsMap();
-						EsParentArticle esParentArticle = ObjectMapperUtils.convertValue(innerSourceMap, EsParentArticle.class);
-
-						esCommentSource.setArticle(esParentArticle);
-					}
+	/**
+	 * 다음 페이지의 cursor. 한 페이지를 다 채우지 못했으면 다음 페이지가 없다.
+	 */
+	private String getNextCursor(Map<Constants.SEARCH_INCLUDE_TYPE, Object[]> searchAfters, Constants.SEARCH_INCLUDE_TYPE type,
+								 SearchDocuments<?> searchDocuments, Integer size) {
 
-					Map<String, List<String>> highlight = this.getHighlight(searchHit.getHighlightFields().entrySet());
-					esCommentSource.setHighlight(highlight);
+		if (Objects.isNull(searchAfters) || Objects.isNull(searchDocuments.getLastSortValues())
+				|| searchDocuments.getDocuments().size() < size)
+			return null;
 
-					return esCommentSource;
-				})
-				.collect(Collectors.toList());
+		Map<String, Object> cursor = new HashMap<>();
+		cursor.put("type", type.name());
+		cursor.put("after", searchDocuments.getLastSortValues());
 
-		return new SearchCommentResult() {{
-			setTook(searchResponse.getTook().getMillis());
-			setTotalCount(searchHits.getTotalHits());
-			setComments(searchList);
-		}};
+		try {
+			return Base64.getUrlEncoder().withoutPadding().encodeToString(
+					ObjectMapperUtils.writeValueAsString(cursor).getBytes(StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			throw new ServiceException(ServiceError.INTERNAL_SERVER_ERROR, e);
+		}
 	}
 
-	private SearchRequestBuilder getGallerySearchRequestBuilder(String query, Integer from, Integer size, String preTags,
-																String postTags) {
-
-		HighlightBuilder highlightBuilder = new HighlightBuilder()
-				.noMatchSize(Constants.SEARCH_NO_MATCH_SIZE)
-				.fragmentSize(Constants.SEARCH_FRAGMENT_SIZE)
-				.field("name", Constants.SEARCH_FRAGMENT_SIZE, 0);
-
-		SearchRequestBuilder searchRequestBuilder = client.prepareSearch()
-				.setIndices(elasticsearchProperties.getIndexGallery())
-				.setTypes(Constants.ES_TYPE_GALLERY)
-				.setFetchSource(null, new String[]{"name"})
-				.setQuery(QueryBuilders.matchQuery("name", query))
-				.setFrom(from)
-				.setSize(size);
-
-		if (StringUtils.isNotBlank(preTags))
-			highlightBuilder.preTags(preTags);
-
-		if (StringUtils.isNotBlank(postTags))
-			highlightBuilder.postTags(postTags);
+	private Map<Constants.SEARCH_INCLUDE_TYPE, Object[]> decodeCursors(List<String> cursors) {
 
-		searchRequestBuilder.highlighter(highlightBuilder);
-		log.debug("getGallerySearchRequestBuilder Query:\n{}", searchRequestBuilder);
+		Map<Constants.SEARCH_INCLUDE_TYPE, Object[]> searchAfters = new EnumMap<>(Constants.SEARCH_INCLUDE_TYPE.class);
 
-		return searchRequestBuilder;
-	}
+		for (String cursor : cursors) {
+			if (StringUtils.isBlank(cursor))
+				continue;
 
-	private SearchGalleryResult getGallerySearchResponse(SearchResponse searchResponse) {
-		SearchHits searchHits = searchResponse.getHits();
+			try {
+				Map cursorMap = ObjectMapperUtils.readValue(Base64.getUrlDecoder().decode(cursor), Map.class);
+				List<?> after = (List<?>) cursorMap.get("after");
 
-		List<EsGallerySource> searchList = Arrays.stream(searchHits.getHits())
-				.map(searchHit -> {
-					Map<String, Object> sourceMap = searchHit.getSourceAsMap();
-					EsGallerySource esGallerySource = ObjectMapperUtils.convertValue(sourceMap, EsGallerySource.class);
-					esGallerySource.setScore(searchHit.getScore());
+				if (Objects.isNull(after) || after.size() != 2)
+					throw new ServiceException(ServiceError.INVALID_PARAMETER);
 
-					Map<String, List<String>> highlight = this.getHighlight(searchHit.getHighlightFields().entrySet());
-					esGallerySource.setHighlight(highlight);
+				searchAfters.put(Constants.SEARCH_INCLUDE_TYPE.valueOf(String.valueOf(cursorMap.get("type"))), after.toArray());
 
-					return esGallerySource;
-				})
-				.collect(Collectors.toList());
+			} catch (IOException | IllegalArgumentException | ClassCastException e) {
+				throw new ServiceException(ServiceError.INVALID_PARAMETER, e);
+			}
+		}
 
-		return new SearchGalleryResult() {{
-			setTook(searchResponse.getTook().getMillis());
-			setTotalCount(searchHits.getTotalHits());
-			setGalleries(searchList);
-		}};
+		return searchAfters;
 	}
 
-	private Map<String, List<String>> getHighlight(Set<Map.Entry<String, HighlightField>> entrySet) {
-		Map<String, List<String>> highlight = new HashMap<>();
+	private static class CachedSearchResult {
+		private final SearchUnifiedResponse response;
+		private final long documentChanges;
+		private final long expiresAt;
 
-		for (Map.Entry<String, HighlightField> highlightField : entrySet) {
-			List<String> fragments = new ArrayList<>();
-			for (Text text : highlightField.getValue().fragments()) {
-				fragments.add(text.string());
-			}
-			highlight.put(highlightField.getKey(), fragments);
+		private CachedSearchResult(SearchUnifiedResponse response, long documentChanges, long expiresAt) {
+			this.response = response;
+			this.documentChanges = documentChanges;
+			this.expiresAt = expiresAt;
 		}
-
-		return highlight;
 	}
 
 }
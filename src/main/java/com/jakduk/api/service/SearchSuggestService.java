@@ -0,0 +1,183 @@
+package com.jakduk.api.service;
+
+import com.jakduk.api.common.Constants;
+import com.jakduk.api.common.util.JakdukUtils;
+import com.jakduk.api.common.util.SuggestTrie;
+import com.jakduk.api.model.db.Article;
+import com.jakduk.api.model.db.FootballClub;
+import com.jakduk.api.model.elasticsearch.EsTermsBucket;
+import com.jakduk.api.repository.article.ArticleRepository;
+import com.jakduk.api.repository.footballclub.FootballClubRepository;
+import com.jakduk.api.restcontroller.vo.search.SearchSuggestion;
+import org.apache.commons.lang3.StringUtils;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.CollectionUtils;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * 검색어 자동 완성
+ *
+ * 글 제목, 축구단 이름, 인기 검색어를 서버 메모리의 SuggestTrie 에 넣어 두고 앞글자로 찾는다. ES 에 묻지 않는다.
+ * 새 글과 고친 글의 제목은 바로 넣고, 지운 글과 고치기 전 제목은 Constants.SEARCH_SUGGEST_REBUILD_INTERVAL_MS 마다 새로 만들 때 빠진다.
+ */
+
+@Service
+public class SearchSuggestService {
+
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	@Autowired private ArticleRepository articleRepository;
+	@Autowired private FootballClubRepository footballClubRepository;
+	@Autowired private PopularSearchWordService popularSearchWordService;
+
+	private volatile SuggestTrie suggestTrie = new SuggestTrie(Constants.SEARCH_SUGGEST_MAX_SIZE);
+
+	// 새로 만드는 중인 트라이. 만드는 동안 들어온 글 제목도 넣어야 바꿔 끼운 뒤에 빠지지 않는다.
+	private SuggestTrie buildingTrie;
+
+	@PostConstruct
+	public void init() {
+		this.rebuild();
+	}
+
+	/**
+	 * 앞글자로 시작하는 자동 완성 항목
+	 */
+	public List<SearchSuggestion> getSuggestions(String prefix, Integer size) {
+
+		String key = this.normalize(prefix);
+
+		if (StringUtils.isEmpty(key))
+			return Collections.emptyList();
+
+		int limit = Math.min(Objects.nonNull(size) ? size : Constants.SEARCH_SUGGEST_MAX_SIZE, Constants.SEARCH_SUGGEST_MAX_SIZE);
+
+		return suggestTrie.suggest(key, limit).stream()
+				.map(entry -> new SearchSuggestion(entry.getText(), entry.getType()))
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * 쓰거나 고친 글의 제목을 넣는다.
+	 */
+	public void addArticle(String subject) {
+
+		String text = StringUtils.normalizeSpace(JakdukUtils.stripHtmlTag(subject));
+
+		synchronized (this) {
+			this.put(suggestTrie, text, Constants.SEARCH_SUGGEST_TYPE.ARTICLE, 1L);
+
+			if (Objects.nonNull(buildingTrie))
+				this.put(buildingTrie, text, Constants.SEARCH_SUGGEST_TYPE.ARTICLE, 1L);
+		}
+	}
+
+	/**
+	 * 모든 항목을 새 트라이에 넣고 바꿔 끼운다.
+	 */
+	@Scheduled(initialDelay = Constants.SEARCH_SUGGEST_REBUILD_INTERVAL_MS, fixedDelay = Constants.SEARCH_SUGGEST_REBUILD_INTERVAL_MS)
+	public void rebuild() {
+
+		SuggestTrie trie = new SuggestTrie(Constants.SEARCH_SUGGEST_MAX_SIZE);
+
+		synchronized (this) {
+			buildingTrie = trie;
+		}
+
+		try {
+			this.putFootballClubs(trie);
+			this.putArticles(trie);
+			this.putPopularWords(trie);
+
+			synchronized (this) {
+				suggestTrie = trie;
+			}
+
+			log.info("search suggestions were rebuilt. size={}", trie.size());
+
+		} catch (RuntimeException e) {
+			log.warn("failed to rebuild search suggestions.", e);
+		} finally {
+			synchronized (this) {
+				buildingTrie = null;
+			}
+		}
+	}
+
+	/**
+	 * 인기 검색어는 자주 바뀌므로 따로 넣는다. 검색 횟수가 weight 라서 늘어난 만큼 앞으로 온다.
+	 */
+	@Scheduled(initialDelayString = "${jakduk.search.popular-word-refresh-interval-ms:60000}",
+			fixedDelayString = "${jakduk.search.popular-word-refresh-interval-ms:60000}")
+	public void refreshPopularWords() {
+		this.putPopularWords(suggestTrie);
+	}
+
+	private void putFootballClubs(SuggestTrie trie) {
+
+		for (FootballClub footballClub : footballClubRepository.findAll()) {
+			if (CollectionUtils.isEmpty(footballClub.getNames()))
+				continue;
+
+			footballClub.getNames().forEach(localName -> {
+				this.put(trie, localName.getFullName(), Constants.SEARCH_SUGGEST_TYPE.FOOTBALL_CLUB, Constants.SEARCH_SUGGEST_FOOTBALL_CLUB_WEIGHT);
+				this.put(trie, localName.getShortName(), Constants.SEARCH_SUGGEST_TYPE.FOOTBALL_CLUB, Constants.SEARCH_SUGGEST_FOOTBALL_CLUB_WEIGHT);
+			});
+		}
+	}
+
+	private void putArticles(SuggestTrie trie) {
+
+		ObjectId lastId = null;
+
+		while (true) {
+			List<Article> articles = articleRepository.findPostsGreaterThanId(lastId, Constants.ES_REINDEX_PAGE_SIZE);
+
+			if (articles.isEmpty())
+				break;
+
+			articles.forEach(article -> this.put(trie, StringUtils.normalizeSpace(JakdukUtils.stripHtmlTag(article.getSubject())),
+					Constants.SEARCH_SUGGEST_TYPE.ARTICLE, 1L));
+
+			lastId = new ObjectId(articles.get(articles.size() - 1).getId());
+		}
+	}
+
+	private void putPopularWords(SuggestTrie trie) {
+
+		List<EsTermsBucket> popularWords = popularSearchWordService.getPopularWords(Constants.SEARCH_POPULAR_WORD_MAX_SIZE);
+
+		popularWords.forEach(popularWord ->
+				this.put(trie, popularWord.getKey(), Constants.SEARCH_SUGGEST_TYPE.SEARCH_WORD,
+						Objects.nonNull(popularWord.getCount()) ? popularWord.getCount() : 0L));
+	}
+
+	private void put(SuggestTrie trie, String text, Constants.SEARCH_SUGGEST_TYPE type, long weight) {
+
+		String key = this.normalize(text);
+
+		if (StringUtils.isEmpty(key))
+			return;
+
+		trie.put(key, StringUtils.truncate(text, Constants.SEARCH_SUGGEST_MAX_KEY_LENGTH), type.name(), weight);
+	}
+
+	// 검색어와 같은 방식으로 공백을 줄이고 소문자로 바꾼다.
+	private String normalize(String text) {
+		String key = StringUtils.lowerCase(StringUtils.normalizeSpace(text), Locale.ROOT);
+
+		return StringUtils.truncate(key, Constants.SEARCH_SUGGEST_MAX_KEY_LENGTH);
+	}
+
+}
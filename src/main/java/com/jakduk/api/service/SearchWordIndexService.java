@@ -0,0 +1,332 @@
+package com.jakduk.api.service;
+
+import com.jakduk.api.common.Constants;
+import com.jakduk.api.configuration.JakdukProperties;
+import com.jakduk.api.repository.JobLeaseRepository;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.admin.indices.alias.Alias;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregation;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.TermsValuesSourceBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 검색어 색인
+ *
+ * 검색어는 날짜별 색인(<index-search-word>-yyyy.MM.dd)에 쌓고, 모든 날짜별 색인은 <index-search-word>_log alias 로 묶인다.
+ * search-word-retention-days 가 지난 날짜는 검색어별 검색 수를 월별 집계 색인(<index-search-word>_rollup-yyyy.MM)에 남기고
+ * 날짜별 색인을 통째로 지운다. 집계 색인도 search-word-rollup-retention-months 가 지나면 통째로 지운다.
+ * 보관 기간이 지났어도 아직 집계해서 지우지 못한 날짜별 색인은, 그 날짜의 집계 문서 대신 그대로 검색한다.
+ * 검색 백엔드가 lucene 이면 ES 에는 아무것도 하지 않는다.
+ */
+
+@Service
+public class SearchWordIndexService {
+
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	private static final DateTimeFormatter DAILY_INDEX_FORMATTER = DateTimeFormatter.ofPattern("yyyy.MM.dd");
+	private static final DateTimeFormatter ROLLUP_INDEX_FORMATTER = DateTimeFormatter.ofPattern("yyyy.MM");
+
+	private static final String ROLLUP_JOB_ID = "searchWordRollup";
+
+	private static final String SEARCH_WORD_MAPPING = "{\"properties\":{" +
+			"\"id\":{\"type\":\"keyword\"}," +
+			"\"word\":{\"type\":\"keyword\"}," +
+			"\"writer\":{\"properties\":{" +
+			"\"providerId\":{\"type\":\"keyword\"},\"userId\":{\"type\":\"keyword\"},\"username\":{\"type\":\"keyword\"}}}," +
+			"\"registerDate\":{\"type\":\"date\"}}}";
+
+	private static final String SEARCH_WORD_ROLLUP_MAPPING = "{\"properties\":{" +
+			"\"date\":{\"type\":\"date\",\"format\":\"yyyy-MM-dd\"}," +
+			"\"word\":{\"type\":\"keyword\"}," +
+			"\"count\":{\"type\":\"long\"}}}";
+
+	@Resource private JakdukProperties.Elasticsearch elasticsearchProperties;
+
+	@Autowired private Client client;
+	@Autowired private ElasticsearchBulkService elasticsearchBulkService;
+	@Autowired private JobLeaseRepository jobLeaseRepository;
+
+	private String leaseOwner;
+
+	@PostConstruct
+	public void init() {
+
+		try {
+			leaseOwner = InetAddress.getLocalHost().getHostName() + "-" + UUID.randomUUID();
+		} catch (UnknownHostException e) {
+			leaseOwner = "localhost-" + UUID.randomUUID();
+		}
+
+		if (this.isLuceneBackend())
+			return;
+
+		String index = elasticsearchProperties.getIndexSearchWord();
+
+		// 날짜별 색인은 처음 색인될 때 만들어지므로, 매핑은 템플릿으로 건다.
+		try {
+			client.admin().indices().preparePutTemplate(index)
+					.setPatterns(Collections.singletonList(index + "-*"))
+					.setSettings(Settings.builder().put("index.number_of_shards", 1))
+					.addMapping(Constants.ES_TYPE_SEARCH_WORD, SEARCH_WORD_MAPPING, XContentType.JSON)
+					.addAlias(new Alias(this.getLogAlias()))
+					.get();
+
+			client.admin().indices().preparePutTemplate(index + "_rollup")
+					.setPatterns(Collections.singletonList(index + "_rollup-*"))
+					.setSettings(Settings.builder().put("index.number_of_shards", 1))
+					.addMapping(Constants.ES_TYPE_SEARCH_WORD_ROLLUP, SEARCH_WORD_ROLLUP_MAPPING, XContentType.JSON)
+					.get();
+
+		} catch (RuntimeException e) {
+			log.warn("failed to put search word index templates. index={}", index, e);
+		}
+	}
+
+	/**
+	 * 검색어를 색인할 날짜별 색인
+	 */
+	public String getIndex(LocalDate date) {
+		return elasticsearchProperties.getIndexSearchWord() + "-" + date.format(DAILY_INDEX_FORMATTER);
+	}
+
+	/**
+	 * 모든 날짜별 색인을 묶은 alias
+	 */
+	public String getLogAlias() {
+		return elasticsearchProperties.getIndexSearchWord() + "_log";
+	}
+
+	/**
+	 * 이 날짜 이후의 검색어 집계에 필요한 색인들. 날짜별 색인이 남아 있는 날은 날짜별 색인을, 그 전은 월별 집계 색인을 쓴다.
+	 * 없는 색인은 검색할 때 무시한다.
+	 *
+	 * @param unrolledDates getUnrolledDates 로 구한, 보관 기간이 지났지만 날짜별 색인이 남아 있는 날짜들
+	 */
+	public List<String> getIndices(LocalDate gteDate, Collection<LocalDate> unrolledDates) {
+
+		LocalDate today = LocalDate.now();
+		LocalDate retentionStartDate = this.getRetentionStartDate();
+
+		List<String> indices = new ArrayList<>();
+
+		for (LocalDate date = gteDate.isAfter(retentionStartDate) ? gteDate : retentionStartDate; ! date.isAfter(today); date = date.plusDays(1))
+			indices.add(this.getIndex(date));
+
+		unrolledDates.forEach(date -> indices.add(this.getIndex(date)));
+
+		if (gteDate.isBefore(retentionStartDate)) {
+			YearMonth lastRollupMonth = YearMonth.from(retentionStartDate.minusDays(1));
+
+			for (YearMonth month = YearMonth.from(gteDate); ! month.isAfter(lastRollupMonth); month = month.plusMonths(1))
+				indices.add(this.getRollupIndex(month));
+		}
+
+		return indices;
+	}
+
+	/**
+	 * 보관 기간이 지났지만 아직 집계해서 지우지 못한 날짜별 색인의 날짜들. 이 날짜 이후만 본다.
+	 * 매일 집계하기 전(00:05)까지와 집계에 실패해서 남겨 둔 날이 여기에 든다. 이런 날은 집계 문서가 없거나 덜 있으므로 날짜별 색인을 쓴다.
+	 */
+	public List<LocalDate> getUnrolledDates(LocalDate gteDate) {
+
+		LocalDate retentionStartDate = this.getRetentionStartDate();
+
+		if (! gteDate.isBefore(retentionStartDate))
+			return Collections.emptyList();
+
+		return this.getIndicesByDate(elasticsearchProperties.getIndexSearchWord() + "-",
+				suffix -> LocalDate.parse(suffix, DAILY_INDEX_FORMATTER)).values().stream()
+				.filter(date -> ! date.isBefore(gteDate) && date.isBefore(retentionStartDate))
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * 날짜별 색인이 남아 있는 첫 날. 이 전의 검색어는 월별 집계 색인에 있다.
+	 */
+	public LocalDate getRetentionStartDate() {
+		int retentionDays = Objects.nonNull(elasticsearchProperties.getSearchWordRetentionDays()) ?
+				Math.max(1, elasticsearchProperties.getSearchWordRetentionDays()) : 7;
+
+		return LocalDate.now().minusDays(retentionDays - 1);
+	}
+
+	/**
+	 * 보관 기간이 지난 날짜별 색인을 집계한 뒤 지우고, 보관 기간이 지난 월별 집계 색인을 지운다.
+	 * 모든 서버에서 같은 시각에 돌므로 JobLease 를 잡은 서버만 한다.
+	 */
+	@Scheduled(cron = "0 5 0 * * *")
+	public void rollupAndPurge() {
+
+		if (this.isLuceneBackend())
+			return;
+
+		String index = elasticsearchProperties.getIndexSearchWord();
+		LocalDate retentionStartDate = this.getRetentionStartDate();
+
+		try {
+			LocalDateTime now = LocalDateTime.now();
+
+			if (! jobLeaseRepository.acquireLease(ROLLUP_JOB_ID, leaseOwner, now, now.plus(Constants.ES_SEARCH_WORD_ROLLUP_LEASE_MS, ChronoUnit.MILLIS))) {
+				log.debug("search word rollup is running on another server.");
+				return;
+			}
+
+			Map<String, LocalDate> dailyIndices = this.getIndicesByDate(index + "-", suffix -> LocalDate.parse(suffix, DAILY_INDEX_FORMATTER));
+
+			for (Map.Entry<String, LocalDate> entry : dailyIndices.entrySet()) {
+				if (! entry.getValue().isBefore(retentionStartDate))
+					continue;
+
+				int failed = this.rollup(entry.getKey(), entry.getValue());
+
+				// 집계를 다 남기지 못했으면 날짜별 색인을 지우지 않고 다음에 다시 집계한다. 집계 문서 ID 가 같으므로 덮어쓴다.
+				if (failed > 0) {
+					log.error("failed to rollup search words. so keep the index. index={}, failed={}", entry.getKey(), failed);
+					continue;
+				}
+
+				client.admin().indices().prepareDelete(entry.getKey()).get();
+
+				log.info("search word index rolled up and deleted. index={}", entry.getKey());
+			}
+
+			int retentionMonths = Objects.nonNull(elasticsearchProperties.getSearchWordRollupRetentionMonths()) ?
+					Math.max(1, elasticsearchProperties.getSearchWordRollupRetentionMonths()) : 12;
+
+			YearMonth rollupRetentionStartMonth = YearMonth.now().minusMonths(retentionMonths - 1);
+
+			List<String> expiredRollupIndices = this.getIndicesByDate(index + "_rollup-",
+					suffix -> YearMonth.parse(suffix, ROLLUP_INDEX_FORMATTER).atDay(1)).entrySet().stream()
+					.filter(entry -> YearMonth.from(entry.getValue()).isBefore(rollupRetentionStartMonth))
+					.map(Map.Entry::getKey)
+					.collect(Collectors.toList());
+
+			if (! expiredRollupIndices.isEmpty()) {
+				client.admin().indices().prepareDelete(expiredRollupIndices.toArray(new String[0])).get();
+
+				log.info("expired search word rollup indices deleted. indices={}", expiredRollupIndices);
+			}
+
+		} catch (RuntimeException e) {
+			log.error("failed to rollup search word indices.", e);
+		}
+	}
+
+	/**
+	 * 날짜별 색인의 검색어별 검색 수를 월별 집계 색인에 남긴다.
+	 *
+	 * @return 남기지 못한 집계 문서 개수
+	 */
+	private int rollup(String index, LocalDate date) {
+
+		String rollupIndex = this.getRollupIndex(YearMonth.from(date));
+		Map<String, Object> afterKey = null;
+		int failed = 0;
+
+		while (true) {
+			CompositeAggregationBuilder wordsAggregation = AggregationBuilders
+					.composite("words", Collections.singletonList(new TermsValuesSourceBuilder("word").field("word")))
+					.size(Constants.ES_SEARCH_WORD_ROLLUP_PAGE_SIZE);
+
+			if (Objects.nonNull(afterKey))
+				wordsAggregation.aggregateAfter(afterKey);
+
+			SearchResponse searchResponse = client.prepareSearch(index)
+					.setTypes(Constants.ES_TYPE_SEARCH_WORD)
+					.setSize(0)
+					.addAggregation(wordsAggregation)
+					.get();
+
+			CompositeAggregation words = searchResponse.getAggregations().get("words");
+
+			if (words.getBuckets().isEmpty())
+				return failed;
+
+			List<DocWriteRequest<?>> requests = words.getBuckets().stream()
+					.<DocWriteRequest<?>>map(bucket -> {
+						String word = String.valueOf(bucket.getKey().get("word"));
+
+						Map<String, Object> source = new HashMap<>();
+						source.put("date", date.toString());
+						source.put("word", word);
+						source.put("count", bucket.getDocCount());
+
+						return new IndexRequest(rollupIndex, Constants.ES_TYPE_SEARCH_WORD_ROLLUP,
+								date + "_" + DigestUtils.md5DigestAsHex(word.getBytes(StandardCharsets.UTF_8)))
+								.source(source);
+					})
+					.collect(Collectors.toList());
+
+			failed += elasticsearchBulkService.execute(requests);
+			afterKey = words.afterKey();
+
+			if (Objects.isNull(afterKey))
+				return failed;
+		}
+	}
+
+	private Boolean isLuceneBackend() {
+		return Constants.SEARCH_BACKEND_LUCENE.equals(elasticsearchProperties.getBackend());
+	}
+
+	private String getRollupIndex(YearMonth month) {
+		return elasticsearchProperties.getIndexSearchWord() + "_rollup-" + month.format(ROLLUP_INDEX_FORMATTER);
+	}
+
+	/**
+	 * 이름이 prefix 로 시작하는 색인들과 이름에 붙은 날짜. 날짜를 읽을 수 없는 색인은 뺀다.
+	 */
+	private Map<String, LocalDate> getIndicesByDate(String prefix, Function<String, LocalDate> parser) {
+
+		String[] indices = client.admin().indices().prepareGetIndex()
+				.addIndices(prefix + "*")
+				.setIndicesOptions(IndicesOptions.lenientExpandOpen())
+				.get()
+				.getIndices();
+
+		Map<String, LocalDate> indicesByDate = new TreeMap<>();
+
+		for (String index : indices) {
+			String suffix = index.substring(prefix.length());
+
+			try {
+				indicesByDate.put(index, parser.apply(suffix));
+			} catch (DateTimeParseException e) {
+				log.debug("not a search word index. index={}", index);
+			}
+		}
+
+		return indicesByDate;
+	}
+
+}
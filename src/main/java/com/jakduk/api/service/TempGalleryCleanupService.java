@@ -0,0 +1,215 @@
+package com.jakduk.api.service;
+
+import com.jakduk.api.common.Constants;
+import com.jakduk.api.configuration.JakdukProperties;
+import com.jakduk.api.model.db.Gallery;
+import com.jakduk.api.model.db.UserPicture;
+import com.jakduk.api.repository.JobLeaseRepository;
+import com.jakduk.api.repository.gallery.GalleryRepository;
+import com.jakduk.api.repository.user.UserPictureRepository;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+/**
+ * 글/댓글/회원과 엮이지 않고 TEMP 상태로 남은 사진(Gallery, UserPicture) 청소
+ *
+ * jakduk.storage.temp-expiration-hours 보다 오래된 TEMP 사진을 temp-cleanup-batch-size 만큼씩 찾아서,
+ * Mongo document 를 지우고 사진 파일은 temp-cleanup-threads 개의 쓰레드로 나눠 지운다.
+ * DB 와 디스크에 부담을 주지 않도록 한번 돌 때 temp-cleanup-max-per-run 개까지만 지우고, 묶음 사이에 쉰다.
+ *
+ * 모든 서버에서 돌므로 JobLease 를 잡은 서버만 한다. 아이템은 TEMP 인 것만 하나씩 지우고, 이번에 지운 것의 파일만 지운다.
+ * 그 사이 글과 엮였거나 다른 곳에서 먼저 지운 것의 파일을 지우면 Media 참조 수가 두 번 줄어든다.
+ */
+
+@Service
+public class TempGalleryCleanupService {
+
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	private static final String CLEANUP_JOB_ID = "tempGalleryCleanup";
+
+	@Resource private JakdukProperties.Storage storageProperties;
+
+	@Autowired private GalleryRepository galleryRepository;
+	@Autowired private UserPictureRepository userPictureRepository;
+	@Autowired private CommonGalleryService commonGalleryService;
+	@Autowired private UserPictureService userPictureService;
+	@Autowired private JobLeaseRepository jobLeaseRepository;
+
+	private String leaseOwner;
+
+	private ExecutorService fileRemovalExecutor;
+
+	// 통계
+	private final AtomicLong runs = new AtomicLong();
+	private final AtomicLong deletedGalleries = new AtomicLong();
+	private final AtomicLong deletedUserPictures = new AtomicLong();
+	private final AtomicLong reclaimedBytes = new AtomicLong();
+	private final AtomicLong failedFileRemovals = new AtomicLong();
+	private volatile LocalDateTime lastRunAt;
+
+	@PostConstruct
+	public void init() {
+		try {
+			leaseOwner = InetAddress.getLocalHost().getHostName() + "-" + UUID.randomUUID();
+		} catch (UnknownHostException e) {
+			leaseOwner = "localhost-" + UUID.randomUUID();
+		}
+
+		int threads = Objects.nonNull(storageProperties.getTempCleanupThreads()) ? storageProperties.getTempCleanupThreads() : 4;
+		fileRemovalExecutor = Executors.newFixedThreadPool(Math.max(1, threads));
+	}
+
+	@PreDestroy
+	public void destroy() {
+		fileRemovalExecutor.shutdown();
+	}
+
+	@Scheduled(initialDelayString = "${jakduk.storage.temp-cleanup-interval-ms:3600000}",
+			fixedDelayString = "${jakduk.storage.temp-cleanup-interval-ms:3600000}")
+	public void cleanup() {
+
+		if (! Boolean.TRUE.equals(storageProperties.getTempCleanupEnabled()))
+			return;
+
+		LocalDateTime now = LocalDateTime.now();
+
+		if (! jobLeaseRepository.acquireLease(CLEANUP_JOB_ID, leaseOwner, now, now.plus(Constants.TEMP_CLEANUP_LEASE_MS, ChronoUnit.MILLIS))) {
+			log.debug("temp gallery cleanup is running on another server.");
+			return;
+		}
+
+		int expirationHours = Objects.nonNull(storageProperties.getTempExpirationHours()) ? storageProperties.getTempExpirationHours() : 24;
+
+		// ObjectId 에 생성 시각이 들어있으므로, 기준 시각으로 만든 ObjectId 보다 작으면 오래된 것이다.
+		ObjectId expirationId = new ObjectId(Date.from(Instant.now().minus(expirationHours, ChronoUnit.HOURS)));
+
+		long galleries = this.sweep(expirationId,
+				id -> galleryRepository.findTempGalleriesBefore(id, this.getBatchSize()),
+				Gallery::getId,
+				galleryRepository::findAndRemoveTempGallery,
+				commonGalleryService::removeGalleryFiles);
+
+		long userPictures = this.sweep(expirationId,
+				id -> userPictureRepository.findTempUserPicturesBefore(id, this.getBatchSize()),
+				UserPicture::getId,
+				userPictureRepository::findAndRemoveTempUserPicture,
+				userPictureService::removeUserPictureFiles);
+
+		deletedGalleries.addAndGet(galleries);
+		deletedUserPictures.addAndGet(userPictures);
+		runs.incrementAndGet();
+		lastRunAt = LocalDateTime.now(ZoneId.systemDefault());
+
+		log.info("temp gallery cleanup finished. galleries={}, userPictures={}, statistics={}", galleries, userPictures,
+				this.getStatistics());
+	}
+
+	/**
+	 * 청소 통계
+	 */
+	public Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<>();
+		statistics.put("runs", runs.get());
+		statistics.put("deletedGalleries", deletedGalleries.get());
+		statistics.put("deletedUserPictures", deletedUserPictures.get());
+		statistics.put("reclaimedBytes", reclaimedBytes.get());
+		statistics.put("failedFileRemovals", failedFileRemovals.get());
+		statistics.put("lastRunAt", lastRunAt);
+
+		return statistics;
+	}
+
+	/**
+	 * TEMP 아이템들을 묶음 단위로 지운다.
+	 *
+	 * @param expirationId 이 ID 보다 오래된 것만 지운다
+	 * @param finder 오래된 TEMP 아이템 묶음을 가져온다
+	 * @param idGetter 아이템 ID
+	 * @param remover TEMP 상태인 것만 지우고 지운 아이템을 준다. 지우지 못했으면 null
+	 * @param fileRemover 아이템의 파일을 지우고 지운 크기를 준다
+	 * @return 지운 아이템 개수
+	 */
+	private <T> long sweep(ObjectId expirationId, Function<ObjectId, List<T>> finder, Function<T, String> idGetter,
+						   Function<String, T> remover, ToLongFunction<T> fileRemover) {
+
+		int maxPerRun = Objects.nonNull(storageProperties.getTempCleanupMaxPerRun()) ? storageProperties.getTempCleanupMaxPerRun() : 1000;
+		long batchInterval = Objects.nonNull(storageProperties.getTempCleanupBatchIntervalMs()) ?
+				storageProperties.getTempCleanupBatchIntervalMs() : 1000L;
+
+		long processed = 0L;
+		long deleted = 0L;
+
+		while (processed < maxPerRun) {
+			List<T> items = finder.apply(expirationId);
+
+			if (items.isEmpty())
+				break;
+
+			// 찾은 후 글과 엮여서 TEMP 가 아니게 됐거나 이미 지워진 것은 지우지 못한다. 그 파일은 지우면 안 된다.
+			List<T> removedItems = items.stream()
+					.map(item -> remover.apply(idGetter.apply(item)))
+					.filter(Objects::nonNull)
+					.collect(Collectors.toList());
+
+			deleted += removedItems.size();
+
+			List<CompletableFuture<Long>> removals = removedItems.stream()
+					.map(item -> CompletableFuture.supplyAsync(() -> this.removeFiles(item, idGetter, fileRemover), fileRemovalExecutor))
+					.collect(Collectors.toList());
+
+			reclaimedBytes.addAndGet(removals.stream().mapToLong(CompletableFuture::join).sum());
+
+			processed += items.size();
+
+			if (items.size() < this.getBatchSize())
+				break;
+
+			try {
+				Thread.sleep(batchInterval);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+
+		return deleted;
+	}
+
+	private <T> long removeFiles(T item, Function<T, String> idGetter, ToLongFunction<T> fileRemover) {
+		try {
+			return fileRemover.applyAsLong(item);
+		} catch (RuntimeException e) {
+			failedFileRemovals.incrementAndGet();
+			log.warn("failed to remove files of temp item. id={}, {}", idGetter.apply(item), e.getMessage());
+			return 0L;
+		}
+	}
+
+	private int getBatchSize() {
+		return Objects.nonNull(storageProperties.getTempCleanupBatchSize()) ? storageProperties.getTempCleanupBatchSize() : 100;
+	}
+
+}
@@ -0,0 +1,265 @@
+package com.jakduk.api.service;
+
+import com.jakduk.api.common.Constants;
+import com.jakduk.api.common.util.FileUtils;
+import com.jakduk.api.common.util.ImageUtils;
+import com.jakduk.api.exception.ServiceError;
+import com.jakduk.api.exception.ServiceException;
+import com.jakduk.api.model.db.Gallery;
+import com.jakduk.api.model.db.JobCheckpoint;
+import com.jakduk.api.repository.JobCheckpointRepository;
+import com.jakduk.api.repository.gallery.GalleryRepository;
+import net.coobird.thumbnailator.geometry.Positions;
+import org.apache.commons.lang3.StringUtils;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 사진첩 썸네일 다시 만들기
+ *
+ * _id 순으로 사진들을 묶음 단위로 읽어서 CPU 코어 수 만큼의 fork-join pool 로 썸네일을 만든다.
+ * 묶음이 끝날 때마다 진행 상태(JobCheckpoint)를 저장하므로, 중단되거나 서버가 재시작되어도 이어서 할 수 있다.
+ */
+
+@Service
+public class ThumbnailRegenerationService {
+
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	private static final String JOB_ID = "thumbnail-regeneration";
+	private static final Integer PAGE_SIZE = 200;
+
+	@Autowired private GalleryRepository galleryRepository;
+	@Autowired private JobCheckpointRepository jobCheckpointRepository;
+	@Autowired private CommonGalleryService commonGalleryService;
+
+	private final ForkJoinPool imagePool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+	private final ExecutorService jobExecutor = Executors.newSingleThreadExecutor();
+
+	private final AtomicBoolean running = new AtomicBoolean(false);
+	private volatile boolean stopRequested = false;
+
+	// 이번 실행의 처리 속도를 구하기 위함
+	private volatile long runStartedAt;
+	private volatile long processedAtRunStart;
+
+	@PreDestroy
+	public void destroy() {
+		stopRequested = true;
+		jobExecutor.shutdown();
+		imagePool.shutdown();
+	}
+
+	/**
+	 * 썸네일을 다시 만든다.
+	 * 사진 ID 가 있으면 그 사진만 바로 만들고, 없으면 전체 사진에 대한 작업을 시작한다.
+	 * 같은 크기로 하다가 멈춘 작업이 있으면 이어서 한다.
+	 *
+	 * @param width 가로 길이
+	 * @param height 세로 길이
+	 * @param galleryId 사진 ID
+	 */
+	public void regenerate(Integer width, Integer height, String galleryId) {
+
+		if (StringUtils.isNotBlank(galleryId)) {
+			Gallery gallery = galleryRepository.findOneById(galleryId)
+					.orElseThrow(() -> new ServiceException(ServiceError.NOT_FOUND_GALLERY));
+
+			if (! this.regenerateThumbnail(gallery, width, height))
+				throw new ServiceException(ServiceError.GALLERY_IO_ERROR);
+
+			return;
+		}
+
+		if (! running.compareAndSet(false, true))
+			throw new ServiceException(ServiceError.JOB_ALREADY_RUNNING);
+
+		try {
+			JobCheckpoint checkpoint = jobCheckpointRepository.findOneById(JOB_ID)
+					.filter(saved -> saved.getStatus() != Constants.JOB_STATUS_TYPE.COMPLETED)
+					.filter(saved -> width.equals(saved.getWidth()) && height.equals(saved.getHeight()))
+					.orElseGet(() -> {
+						JobCheckpoint newCheckpoint = new JobCheckpoint();
+						newCheckpoint.setId(JOB_ID);
+						newCheckpoint.setWidth(width);
+						newCheckpoint.setHeight(height);
+						newCheckpoint.setTotal(galleryRepository.count());
+						newCheckpoint.setProcessed(0L);
+						newCheckpoint.setFailed(0L);
+						newCheckpoint.setStartedAt(LocalDateTime.now());
+
+						return newCheckpoint;
+					});
+
+			checkpoint.setStatus(Constants.JOB_STATUS_TYPE.RUNNING);
+			checkpoint.setUpdatedAt(LocalDateTime.now());
+			jobCheckpointRepository.save(checkpoint);
+
+			stopRequested = false;
+			runStartedAt = System.currentTimeMillis();
+			processedAtRunStart = checkpoint.getProcessed();
+
+			log.info("thumbnail regeneration started. width={}, height={}, lastId={}", width, height, checkpoint.getLastId());
+
+			jobExecutor.submit(() -> this.run(checkpoint));
+
+		} catch (RuntimeException e) {
+			running.set(false);
+			throw e;
+		}
+	}
+
+	/**
+	 * 진행 중인 작업을 멈춘다. 지금 하고 있는 묶음까지만 하고 멈춘다.
+	 */
+	public void stop() {
+		stopRequested = true;
+	}
+
+	/**
+	 * 진행 상태와 남은 시간
+	 */
+	public Map<String, Object> getProgress() {
+
+		Map<String, Object> progress = new LinkedHashMap<>();
+		progress.put("running", running.get());
+
+		JobCheckpoint checkpoint = jobCheckpointRepository.findOneById(JOB_ID).orElse(null);
+
+		if (Objects.isNull(checkpoint))
+			return progress;
+
+		long total = checkpoint.getTotal();
+		long processed = checkpoint.getProcessed();
+
+		progress.put("status", checkpoint.getStatus());
+		progress.put("width", checkpoint.getWidth());
+		progress.put("height", checkpoint.getHeight());
+		progress.put("total", total);
+		progress.put("processed", processed);
+		progress.put("failed", checkpoint.getFailed());
+		progress.put("percent", total > 0 ? Math.min(100D, processed * 100D / total) : 100D);
+		progress.put("startedAt", checkpoint.getStartedAt());
+		progress.put("updatedAt", checkpoint.getUpdatedAt());
+
+		if (running.get()) {
+			double elapsedSeconds = (System.currentTimeMillis() - runStartedAt) / 1000D;
+			double perSecond = elapsedSeconds > 0 ? (processed - processedAtRunStart) / elapsedSeconds : 0D;
+
+			progress.put("perSecond", perSecond);
+			progress.put("etaSeconds", perSecond > 0 ? (long) (Math.max(0L, total - processed) / perSecond) : null);
+		}
+
+		return progress;
+	}
+
+	private void run(JobCheckpoint checkpoint) {
+
+		try {
+			while (true) {
+				ObjectId lastId = StringUtils.isNotBlank(checkpoint.getLastId()) ? new ObjectId(checkpoint.getLastId()) : null;
+				List<Gallery> galleries = galleryRepository.findGalleriesAfter(lastId, PAGE_SIZE);
+
+				if (galleries.isEmpty()) {
+					checkpoint.setStatus(Constants.JOB_STATUS_TYPE.COMPLETED);
+					break;
+				}
+
+				// 같은 Media 를 쓰는 사진들은 썸네일도 같으므로 한번만 만든다.
+				Set<Path> thumbnailPaths = ConcurrentHashMap.newKeySet();
+
+				long failed = imagePool.submit(() -> galleries.parallelStream()
+						.filter(gallery -> thumbnailPaths.add(commonGalleryService.getGalleryFilePath(gallery, Constants.IMAGE_TYPE.THUMBNAIL)))
+						.filter(gallery -> ! this.regenerateThumbnail(gallery, checkpoint.getWidth(), checkpoint.getHeight()))
+						.count()
+				).get();
+
+				checkpoint.setLastId(galleries.get(galleries.size() - 1).getId());
+				checkpoint.setProcessed(checkpoint.getProcessed() + galleries.size());
+				checkpoint.setFailed(checkpoint.getFailed() + failed);
+				checkpoint.setUpdatedAt(LocalDateTime.now());
+				jobCheckpointRepository.save(checkpoint);
+
+				if (stopRequested) {
+					checkpoint.setStatus(Constants.JOB_STATUS_TYPE.STOPPED);
+					break;
+				}
+			}
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			checkpoint.setStatus(Constants.JOB_STATUS_TYPE.STOPPED);
+		} catch (ExecutionException | RuntimeException e) {
+			log.error("thumbnail regeneration stopped. lastId={}", checkpoint.getLastId(), e);
+			checkpoint.setStatus(Constants.JOB_STATUS_TYPE.STOPPED);
+		} finally {
+			checkpoint.setUpdatedAt(LocalDateTime.now());
+			jobCheckpointRepository.save(checkpoint);
+			running.set(false);
+
+			log.info("thumbnail regeneration {}. processed={}, failed={}", checkpoint.getStatus(), checkpoint.getProcessed(),
+					checkpoint.getFailed());
+		}
+	}
+
+	/**
+	 * 원본 사진으로부터 썸네일을 만든다.
+	 *
+	 * @return 성공 여부
+	 */
+	private boolean regenerateThumbnail(Gallery gallery, Integer width, Integer height) {
+
+		Path imagePath = commonGalleryService.getGalleryFilePath(gallery, Constants.IMAGE_TYPE.FULL);
+		Path thumbnailPath = commonGalleryService.getGalleryFilePath(gallery, Constants.IMAGE_TYPE.THUMBNAIL);
+
+		if (Files.notExists(imagePath, LinkOption.NOFOLLOW_LINKS)) {
+			log.warn("image file not found. galleryId={}, path={}", gallery.getId(), imagePath);
+			return false;
+		}
+
+		try {
+			// 썸네일은 contentType 의 확장자 경로에서 읽는다. 알 수 없는 타입(octet-stream)은 원본과 같은 포맷으로 만들어서 그 경로에 둔다.
+			String formatName = StringUtils.split(gallery.getContentType(), "/")[1];
+
+			if ("octet-stream".equals(formatName))
+				formatName = ImageUtils.readFormatName(imagePath);
+
+			Files.createDirectories(thumbnailPath.getParent());
+
+			// 다 만든 다음에 옮겨서, 만드는 중인 파일을 읽지 않도록 한다.
+			Path tempPath = thumbnailPath.resolveSibling(thumbnailPath.getFileName() + ".tmp");
+
+			FileUtils.writeSmallImage(imagePath, tempPath, formatName, width, height, Positions.TOP_CENTER);
+			Files.move(tempPath, thumbnailPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			return true;
+
+		} catch (IOException | RuntimeException e) {
+			log.warn("failed to regenerate thumbnail. galleryId={}", gallery.getId(), e);
+			return false;
+		}
+	}
+
+}
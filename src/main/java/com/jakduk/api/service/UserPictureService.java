@@ -1,12 +1,24 @@
 package com.jakduk.api.service;
 
+import com.jakduk.api.common.Constants;
+import com.jakduk.api.common.util.FileUtils;
+import com.jakduk.api.configuration.JakdukProperties;
 import com.jakduk.api.exception.ServiceError;
 import com.jakduk.api.exception.ServiceException;
 import com.jakduk.api.model.db.UserPicture;
 import com.jakduk.api.repository.user.UserPictureRepository;
+import org.apache.commons.lang3.StringUtils;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.Resource;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
 /**
  * Created by pyohwan on 17. 2. 16.
  */
@@ -14,11 +26,64 @@ import org.springframework.stereotype.Service;
 @Service
 public class UserPictureService {
 
+    @Resource
+    private JakdukProperties.Storage storageProperties;
+
     @Autowired
     private UserPictureRepository userPictureRepository;
 
+    @Autowired
+    private MediaStoreService mediaStoreService;
+
     public UserPicture findOneById(String id) {
         return userPictureRepository.findOneById(id)
                 .orElseThrow(() -> new ServiceException(ServiceError.NOT_FOUND_USER_IMAGE));
     }
+
+    /**
+     * 프로필 사진 파일 경로를 가져온다.
+     * 내용 주소 저장소(Media)에 있으면 그 경로를, 아니면 예전 날짜별 경로를 준다.
+     */
+    public Path getUserPictureFilePath(UserPicture userPicture, Constants.IMAGE_SIZE_TYPE sizeType) {
+
+        Path filePath;
+
+        if (StringUtils.isNotBlank(userPicture.getMediaId())) {
+            Constants.MEDIA_DERIVATIVE_TYPE derivativeType = sizeType == Constants.IMAGE_SIZE_TYPE.LARGE ?
+                    Constants.MEDIA_DERIVATIVE_TYPE.IMAGE : Constants.MEDIA_DERIVATIVE_TYPE.USER_PICTURE_SMALL;
+
+            filePath = mediaStoreService.getDerivativePath(userPicture.getMediaId(), userPicture.getContentType(), derivativeType);
+        } else {
+            LocalDate localDate = new ObjectId(userPicture.getId()).getDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+            String imagePath = sizeType == Constants.IMAGE_SIZE_TYPE.LARGE ?
+                    storageProperties.getUserPictureLargePath() : storageProperties.getUserPictureSmallPath();
+
+            filePath = FileUtils.getImageFilePath(imagePath, localDate, userPicture.getId(), userPicture.getContentType());
+        }
+
+        if (Files.notExists(filePath, LinkOption.NOFOLLOW_LINKS))
+            throw new ServiceException(ServiceError.NOT_FOUND_USER_IMAGE);
+
+        return filePath;
+    }
+
+    /**
+     * 프로필 사진 파일을 지운다.
+     * 내용 주소 저장소(Media)에 있는 사진은 참조만 끊는다. 참조하는 곳이 없어야 파일이 지워진다.
+     *
+     * @return 지운 파일 크기의 합
+     */
+    public long removeUserPictureFiles(UserPicture userPicture) {
+
+        if (StringUtils.isNotBlank(userPicture.getMediaId()))
+            return mediaStoreService.release(userPicture.getMediaId());
+
+        LocalDate localDate = new ObjectId(userPicture.getId()).getDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+        String fileName = userPicture.getId() + "." + StringUtils.split(userPicture.getContentType(), "/")[1];
+
+        long reclaimedBytes = FileUtils.removeImageFile(storageProperties.getUserPictureLargePath(), localDate, fileName);
+        reclaimedBytes += FileUtils.removeImageFile(storageProperties.getUserPictureSmallPath(), localDate, fileName);
+
+        return reclaimedBytes;
+    }
 }
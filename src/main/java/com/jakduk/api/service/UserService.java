@@ -6,7 +6,6 @@ import com.jakduk.api.common.rabbitmq.RabbitMQPublisher;
 import com.jakduk.api.common.util.AuthUtils;
 import com.jakduk.api.common.util.FileUtils;
 import com.jakduk.api.common.util.JakdukUtils;
-import com.jakduk.api.configuration.JakdukProperties;
 import com.jakduk.api.configuration.security.JakdukAuthority;
 import com.jakduk.api.exception.ServiceError;
 import com.jakduk.api.exception.ServiceException;
@@ -27,7 +26,6 @@ import com.jakduk.api.repository.user.UserRepository;
 import com.jakduk.api.restcontroller.vo.user.UserPasswordFindResponse;
 import com.jakduk.api.restcontroller.vo.user.UserProfileResponse;
 import org.apache.commons.lang3.StringUtils;
-import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -35,10 +33,11 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.time.LocalDate;
+import java.io.InputStream;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
@@ -49,7 +48,6 @@ public class UserService {
 
 	private final Logger log = LoggerFactory.getLogger(this.getClass());
 
-	@Resource private JakdukProperties.Storage storageProperties;
 	@Resource private AuthUtils authUtils;
 
 	@Autowired private RabbitMQPublisher rabbitMQPublisher;
@@ -59,6 +57,8 @@ public class UserService {
 	@Autowired private UserProfileRepository userProfileRepository;
 	@Autowired private UserPictureRepository userPictureRepository;
 	@Autowired private TokenRepository tokenRepository;
+	@Autowired private MediaStoreService mediaStoreService;
+	@Autowired private UserPictureService userPictureService;
 
 	public Optional<User> findOneByProviderIdAndProviderUserId(Constants.ACCOUNT_TYPE providerId, String providerUserId) {
 		return userRepository.findOneByProviderIdAndProviderUserId(providerId, providerUserId);
@@ -161,30 +161,33 @@ public class UserService {
 		}
 		// SNS에서 사용중인 사진을 User와 연동
 		else if (StringUtils.isNotBlank(largePictureUrl)) {
+			Path tempFilePath = null;
+
 			try {
 				FileUtils.FileInfo fileInfo = FileUtils.getBytesByUrl(largePictureUrl);
 
 				if (! StringUtils.startsWithIgnoreCase(fileInfo.getContentType(), "image/"))
 					throw new ServiceException(ServiceError.FILE_ONLY_IMAGE_TYPE_CAN_BE_UPLOADED);
 
+				tempFilePath = FileUtils.createTempFile();
+				String hash = FileUtils.writeTempFileWithHash(new ByteArrayInputStream(fileInfo.getBytes()), tempFilePath);
+
+				mediaStoreService.acquire(hash, fileInfo.getContentType(), fileInfo.getContentLength(), tempFilePath,
+						Constants.MEDIA_DERIVATIVE_TYPE.IMAGE, Constants.MEDIA_DERIVATIVE_TYPE.USER_PICTURE_SMALL);
+
 				userPicture = new UserPicture();
 				userPicture.setStatus(Constants.GALLERY_STATUS_TYPE.TEMP);
 				userPicture.setContentType(fileInfo.getContentType());
+				userPicture.setMediaId(hash);
 
-				userPictureRepository.save(userPicture);
-
-				ObjectId objectId = new ObjectId(userPicture.getId());
-				LocalDate localDate = objectId.getDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-
-				FileUtils.writeImageFile(storageProperties.getUserPictureLargePath(), localDate, userPicture.getId(), fileInfo.getContentType(),
-						fileInfo.getContentLength(), fileInfo.getBytes());
-				FileUtils.writeSmallImageFile(storageProperties.getUserPictureSmallPath(), localDate, userPicture.getId(), fileInfo.getContentType(),
-						Constants.USER_SMALL_PICTURE_SIZE_WIDTH, Constants.USER_SMALL_PICTURE_SIZE_HEIGHT, fileInfo.getBytes());
+				this.saveUserPicture(userPicture);
 
 				user.setUserPicture(userPicture);
 
 			} catch (IOException e) {
 				throw new ServiceException(ServiceError.IO_EXCEPTION, e);
+			} finally {
+				FileUtils.deleteTempFile(tempFilePath);
 			}
 		}
 
@@ -222,6 +225,8 @@ public class UserService {
 		User user = userRepository.findOneById(userId)
 				.orElseThrow(() -> new ServiceException(ServiceError.NOT_FOUND_USER));
 
+		UserPicture oldUserPicture = user.getUserPicture();
+
 		if (StringUtils.isNotBlank(email))
 			user.setEmail(StringUtils.trim(email));
 
@@ -251,6 +256,12 @@ public class UserService {
 		if (Objects.nonNull(userPicture)) {
 			userPicture.setStatus(Constants.GALLERY_STATUS_TYPE.ENABLE);
 			userPictureRepository.save(userPicture);
+
+			// 바꾸기 전 사진은 지우고 미디어 참조를 끊는다.
+			if (Objects.nonNull(oldUserPicture) && ! oldUserPicture.getId().equals(userPicture.getId())) {
+				userPictureRepository.delete(oldUserPicture);
+				userPictureService.removeUserPictureFiles(oldUserPicture);
+			}
 		}
 
 		log.debug("User edited. user={}", user);
@@ -343,26 +354,31 @@ public class UserService {
 	/**
 	 * 프로필 이미지 올리기
 	 */
-	public UserPicture uploadUserPicture(String contentType, long size, byte[] bytes) {
+	public UserPicture uploadUserPicture(String contentType, long size, InputStream inputStream) {
 
-		UserPicture userPicture = new UserPicture();
-		userPicture.setStatus(Constants.GALLERY_STATUS_TYPE.TEMP);
-		userPicture.setContentType(contentType);
+		Path tempFilePath = null;
 
-		userPictureRepository.save(userPicture);
+		try {
+			tempFilePath = FileUtils.createTempFile();
+			String hash = FileUtils.writeTempFileWithHash(inputStream, tempFilePath);
 
-		ObjectId objectId = new ObjectId(userPicture.getId());
-		LocalDate localDate = objectId.getDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+			// 같은 내용의 사진 파일이 이미 있으면 다시 만들지 않고 참조 수만 늘린다.
+			mediaStoreService.acquire(hash, contentType, size, tempFilePath,
+					Constants.MEDIA_DERIVATIVE_TYPE.IMAGE, Constants.MEDIA_DERIVATIVE_TYPE.USER_PICTURE_SMALL);
 
-		try {
-			FileUtils.writeImageFile(storageProperties.getUserPictureLargePath(), localDate, userPicture.getId(), contentType, size, bytes);
-			FileUtils.writeSmallImageFile(storageProperties.getUserPictureSmallPath(), localDate, userPicture.getId(), contentType,
-					Constants.USER_SMALL_PICTURE_SIZE_WIDTH, Constants.USER_SMALL_PICTURE_SIZE_HEIGHT, bytes);
+			UserPicture userPicture = new UserPicture();
+			userPicture.setStatus(Constants.GALLERY_STATUS_TYPE.TEMP);
+			userPicture.setContentType(contentType);
+			userPicture.setMediaId(hash);
+
+			this.saveUserPicture(userPicture);
 
 			return userPicture;
 
 		} catch (IOException e) {
 			throw new ServiceException(ServiceError.GALLERY_IO_ERROR, e);
+		} finally {
+			FileUtils.deleteTempFile(tempFilePath);
 		}
 	}
 
@@ -417,4 +433,14 @@ public class UserService {
 		userRepository.deleteById(id);
 	}
 
+	// 미디어 참조를 늘린 다음 저장하지 못하면 참조를 끊는다.
+	private void saveUserPicture(UserPicture userPicture) {
+		try {
+			userPictureRepository.save(userPicture);
+		} catch (RuntimeException e) {
+			mediaStoreService.release(userPicture.getMediaId());
+			throw e;
+		}
+	}
+
 }
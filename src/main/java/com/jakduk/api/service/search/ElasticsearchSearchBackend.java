@@ -0,0 +1,442 @@
+package com.jakduk.api.service.search;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.jakduk.api.common.Constants;
+import com.jakduk.api.common.util.ObjectMapperUtils;
+import com.jakduk.api.configuration.JakdukProperties;
+import com.jakduk.api.exception.ServiceError;
+import com.jakduk.api.exception.ServiceException;
+import com.jakduk.api.model.elasticsearch.*;
+import com.jakduk.api.restcontroller.vo.search.PopularSearchWordResult;
+import com.jakduk.api.service.ElasticsearchBulkService;
+import com.jakduk.api.service.SearchWordIndexService;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.text.Text;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.MoreLikeThisQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.reindex.BulkByScrollResponse;
+import org.elasticsearch.index.reindex.UpdateByQueryAction;
+import org.elasticsearch.index.reindex.UpdateByQueryRequestBuilder;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.BucketOrder;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.metrics.sum.Sum;
+import org.elasticsearch.search.fetch.subphase.highlight.HighlightBuilder;
+import org.elasticsearch.search.fetch.subphase.highlight.HighlightField;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Elasticsearch 클러스터에서 찾는다. 색인/삭제는 ElasticsearchBulkService 로 bulk 로 보낸다.
+ */
+
+@Service
+@ConditionalOnProperty(prefix = "jakduk.elasticsearch", name = "backend", havingValue = Constants.SEARCH_BACKEND_ELASTICSEARCH,
+		matchIfMissing = true)
+public class ElasticsearchSearchBackend implements SearchBackend {
+
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	// 찾은 문서의 _source 를 읽는 reader. 설정이 끝난 ObjectMapper 에서 만들어 두고 같이 쓴다.
+	private static final ObjectReader ARTICLE_SOURCE_READER = ObjectMapperUtils.getObjectMapper().readerFor(EsArticleSource.class);
+	private static final ObjectReader COMMENT_SOURCE_READER = ObjectMapperUtils.getObjectMapper().readerFor(EsCommentSource.class);
+	private static final ObjectReader GALLERY_SOURCE_READER = ObjectMapperUtils.getObjectMapper().readerFor(EsGallerySource.class);
+
+	@Resource private JakdukProperties.Elasticsearch elasticsearchProperties;
+
+	@Autowired private Client client;
+	@Autowired private ElasticsearchBulkService elasticsearchBulkService;
+	@Autowired private SearchWordIndexService searchWordIndexService;
+
+	@Override
+	public CompletableFuture<SearchDocuments<EsArticleSource>> searchArticles(SearchCondition searchCondition) {
+
+		HighlightBuilder highlightBuilder = new HighlightBuilder()
+				.noMatchSize(Constants.SEARCH_NO_MATCH_SIZE)
+				.fragmentSize(Constants.SEARCH_FRAGMENT_SIZE)
+				.field("subject", Constants.SEARCH_FRAGMENT_SIZE, 0)
+				.field("content", Constants.SEARCH_FRAGMENT_SIZE, 1);
+
+		SearchRequestBuilder searchRequestBuilder = client.prepareSearch()
+				.setIndices(elasticsearchProperties.getIndexBoard())
+				.setTypes(Constants.ES_TYPE_ARTICLE)
+				.setFetchSource(null, new String[]{"subject", "content"})
+				.setQuery(
+						QueryBuilders.boolQuery()
+								.should(QueryBuilders.multiMatchQuery(searchCondition.getQuery(), "subject", "content").field("subject", 1.5f))
+				);
+
+		this.setPage(searchRequestBuilder, highlightBuilder, searchCondition);
+		log.debug("searchArticles Query:\n{}", searchRequestBuilder);
+
+		return this.executeSearch(searchRequestBuilder, searchCondition, this::toArticleSource);
+	}
+
+	@Override
+	public CompletableFuture<SearchDocuments<EsCommentSource>> searchComments(SearchCondition searchCondition) {
+
+		HighlightBuilder highlightBuilder = new HighlightBuilder()
+				.noMatchSize(Constants.SEARCH_NO_MATCH_SIZE)
+				.fragmentSize(Constants.SEARCH_FRAGMENT_SIZE)
+				.field("content", Constants.SEARCH_FRAGMENT_SIZE, 1);
+
+		SearchRequestBuilder searchRequestBuilder = client.prepareSearch()
+				.setIndices(elasticsearchProperties.getIndexComment())
+				.setTypes(Constants.ES_TYPE_COMMENT)
+				.setFetchSource(null, new String[]{"content"})
+				.setQuery(QueryBuilders.matchQuery("content", searchCondition.getQuery()));
+
+		this.setPage(searchRequestBuilder, highlightBuilder, searchCondition);
+		log.debug("searchComments Query:\n{}", searchRequestBuilder);
+
+		return this.executeSearch(searchRequestBuilder, searchCondition, this::toCommentSource);
+	}
+
+	@Override
+	public CompletableFuture<SearchDocuments<EsGallerySource>> searchGalleries(SearchCondition searchCondition) {
+
+		HighlightBuilder highlightBuilder = new HighlightBuilder()
+				.noMatchSize(Constants.SEARCH_NO_MATCH_SIZE)
+				.fragmentSize(Constants.SEARCH_FRAGMENT_SIZE)
+				.field("name", Constants.SEARCH_FRAGMENT_SIZE, 0);
+
+		SearchRequestBuilder searchRequestBuilder = client.prepareSearch()
+				.setIndices(elasticsearchProperties.getIndexGallery())
+				.setTypes(Constants.ES_TYPE_GALLERY)
+				.setFetchSource(null, new String[]{"name"})
+				.setQuery(QueryBuilders.matchQuery("name", searchCondition.getQuery()));
+
+		this.setPage(searchRequestBuilder, highlightBuilder, searchCondition);
+		log.debug("searchGalleries Query:\n{}", searchRequestBuilder);
+
+		return this.executeSearch(searchRequestBuilder, searchCondition, this::toGallerySource);
+	}
+
+	/**
+	 * ES 가 색인된 이 글의 제목, 본문에서 드문 단어들을 뽑아서 찾는다.
+	 */
+	@Override
+	public CompletableFuture<SearchDocuments<EsArticleSource>> searchRelatedArticles(String articleId, Integer size) {
+
+		SearchCondition searchCondition = new SearchCondition();
+		searchCondition.setFrom(0);
+		searchCondition.setSize(size);
+		searchCondition.setTimeoutMs(Constants.RELATED_ARTICLE_TIMEOUT_MS);
+
+		MoreLikeThisQueryBuilder.Item[] likeItems = new MoreLikeThisQueryBuilder.Item[]{
+				new MoreLikeThisQueryBuilder.Item(elasticsearchProperties.getIndexBoard(), Constants.ES_TYPE_ARTICLE, articleId)};
+
+		SearchRequestBuilder searchRequestBuilder = client.prepareSearch()
+				.setIndices(elasticsearchProperties.getIndexBoard())
+				.setTypes(Constants.ES_TYPE_ARTICLE)
+				.setFetchSource(null, new String[]{"content"})
+				.setQuery(
+						QueryBuilders.moreLikeThisQuery(new String[]{"subject", "content"}, null, likeItems)
+								.minTermFreq(1)
+								.minDocFreq(Constants.RELATED_ARTICLE_MIN_DOC_FREQ)
+								.maxQueryTerms(Constants.RELATED_ARTICLE_MAX_QUERY_TERMS)
+				)
+				.setFrom(0)
+				.setSize(size);
+
+		log.debug("searchRelatedArticles Query:\n{}", searchRequestBuilder);
+
+		return this.executeSearch(searchRequestBuilder, searchCondition, searchHit -> {
+			EsArticleSource esArticleSource = this.readSource(searchHit, ARTICLE_SOURCE_READER);
+			esArticleSource.setScore(searchHit.getScore());
+
+			return esArticleSource;
+		});
+	}
+
+	/**
+	 * 날짜별 검색어 색인과 월별 집계 색인 중 필요한 것만 검색한다.
+	 * 날짜별 색인의 검색어는 1 번으로, 집계 문서는 count 번으로 센다.
+	 * 아직 집계하지 못한 날짜별 색인이 남아 있는 날은 날짜별 색인으로 세고, 그 날의 집계 문서는 두 번 세지 않도록 뺀다.
+	 */
+	@Override
+	public PopularSearchWordResult aggregateSearchWord(LocalDate gteDate, Integer size) {
+
+		LocalDate retentionStartDate = searchWordIndexService.getRetentionStartDate();
+		List<LocalDate> unrolledDates = searchWordIndexService.getUnrolledDates(gteDate);
+
+		BoolQueryBuilder rollupQuery = QueryBuilders.boolQuery()
+				.must(QueryBuilders.rangeQuery("date").gte(gteDate.toString()).lt(retentionStartDate.toString()));
+
+		if (! unrolledDates.isEmpty())
+			rollupQuery.mustNot(QueryBuilders.termsQuery("date", unrolledDates.stream().map(LocalDate::toString).collect(Collectors.toList())));
+
+		SearchRequestBuilder searchRequestBuilder = client.prepareSearch()
+				.setIndices(searchWordIndexService.getIndices(gteDate, unrolledDates).toArray(new String[0]))
+				.setIndicesOptions(IndicesOptions.lenientExpandOpen())
+				.setTypes(Constants.ES_TYPE_SEARCH_WORD, Constants.ES_TYPE_SEARCH_WORD_ROLLUP)
+				.setSize(0)
+				.setQuery(
+						QueryBuilders.boolQuery()
+								.should(QueryBuilders.rangeQuery("registerDate").gte(gteDate.toString()))
+								.should(rollupQuery)
+								.minimumShouldMatch(1)
+				)
+				.addAggregation(
+						AggregationBuilders
+								.terms("popular_word_aggs")
+								.field("word")
+								.size(size)
+								.order(BucketOrder.aggregation("word_count", false))
+								.subAggregation(AggregationBuilders.sum("word_count").field("count").missing(1))
+				);
+
+		log.debug("aggregateSearchWord Query:\n{}", searchRequestBuilder);
+
+		SearchResponse searchResponse = searchRequestBuilder.execute().actionGet();
+
+		if (Objects.isNull(searchResponse.getAggregations())) {
+			return new PopularSearchWordResult() {{
+				setTook(searchResponse.getTook().getMillis());
+				setPopularSearchWords(Collections.emptyList());
+			}};
+		}
+
+		Terms popularWordTerms = searchResponse.getAggregations().get("popular_word_aggs");
+
+		List<EsTermsBucket> popularWords = popularWordTerms.getBuckets().stream()
+				.map(entry -> {
+					EsTermsBucket esTermsBucket = new EsTermsBucket();
+					esTermsBucket.setKey(entry.getKeyAsString());
+					esTermsBucket.setCount((long) ((Sum) entry.getAggregations().get("word_count")).getValue());
+					return esTermsBucket;
+				})
+				.collect(Collectors.toList());
+
+		return new PopularSearchWordResult() {{
+			setTook(searchResponse.getTook().getMillis());
+			setPopularSearchWords(popularWords);
+		}};
+	}
+
+	/*
+	 * 색인/삭제는 ElasticsearchBulkService 로 bulk 로 보내고 응답을 기다린다.
+	 * 실패나 지울 문서가 없는 경우는 ElasticsearchBulkService 에서 로그와 통계로도 남는다.
+	 */
+
+	@Override
+	public List<DocWriteRequest<?>> execute(List<DocWriteRequest<?>> requests) {
+		return elasticsearchBulkService.executeAndGetFailed(requests);
+	}
+
+	/**
+	 * 한번의 update by query 로 고친다. 끝나기를 기다리지 않는다.
+	 */
+	@Override
+	public void updateCommentArticles(Collection<EsArticle> esArticles) {
+
+		if (esArticles.isEmpty())
+			return;
+
+		Map<String, Object> articles = new HashMap<>();
+
+		esArticles.forEach(esArticle -> {
+			Map<String, Object> article = new HashMap<>();
+			article.put("id", esArticle.getId());
+			article.put("seq", esArticle.getSeq());
+			article.put("board", esArticle.getBoard());
+			article.put("category", esArticle.getCategory());
+			article.put("subject", esArticle.getSubject());
+
+			articles.put(esArticle.getId(), article);
+		});
+
+		UpdateByQueryRequestBuilder updateByQueryRequestBuilder = UpdateByQueryAction.INSTANCE.newRequestBuilder(client)
+				.source(elasticsearchProperties.getIndexComment())
+				.abortOnVersionConflict(false)
+				.filter(QueryBuilders.termsQuery("article.id", articles.keySet()))
+				.script(new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG,
+						"ctx._source.article = params.articles[ctx._source.article.id]",
+						Collections.singletonMap("articles", articles)));
+
+		updateByQueryRequestBuilder.execute(new ActionListener<BulkByScrollResponse>() {
+			@Override
+			public void onResponse(BulkByScrollResponse response) {
+				log.debug("comment articles updated. articles={}, updated={}, conflicts={}",
+						articles.size(), response.getUpdated(), response.getVersionConflicts());
+			}
+
+			@Override
+			public void onFailure(Exception e) {
+				log.error("failed to update comment articles. articles={}", articles.keySet(), e);
+			}
+		});
+	}
+
+	@Override
+	public long getDocumentChanges() {
+		return elasticsearchBulkService.getDocumentChanges();
+	}
+
+	/**
+	 * 페이지와 하이라이트 태그를 정한다.
+	 * cursor 방식이면 점수, id 순으로 정렬하고 앞 페이지의 마지막 문서 다음부터 찾는다.
+	 * 같은 점수는 _source 의 id(keyword) 로 나눈다. _id 로 정렬하면 fielddata 를 메모리에 올려야 한다.
+	 */
+	private void setPage(SearchRequestBuilder searchRequestBuilder, HighlightBuilder highlightBuilder, SearchCondition searchCondition) {
+
+		if (StringUtils.isNotBlank(searchCondition.getPreTags()))
+			highlightBuilder.preTags(searchCondition.getPreTags());
+
+		if (StringUtils.isNotBlank(searchCondition.getPostTags()))
+			highlightBuilder.postTags(searchCondition.getPostTags());
+
+		searchRequestBuilder
+				.highlighter(highlightBuilder)
+				.setSize(searchCondition.getSize());
+
+		if (! Boolean.TRUE.equals(searchCondition.getCursor())) {
+			searchRequestBuilder.setFrom(searchCondition.getFrom());
+			return;
+		}
+
+		searchRequestBuilder
+				.setFrom(0)
+				.addSort(SortBuilders.scoreSort())
+				.addSort(SortBuilders.fieldSort("id").order(SortOrder.ASC).unmappedType("keyword"));
+
+		if (Objects.nonNull(searchCondition.getSearchAfter()))
+			searchRequestBuilder.searchAfter(searchCondition.getSearchAfter());
+	}
+
+	/**
+	 * 검색을 비동기로 보낸다. ES 에는 timeoutMs 안에 샤드에서 찾은 것까지만 돌려달라고 한다.
+	 */
+	private <T> CompletableFuture<SearchDocuments<T>> executeSearch(SearchRequestBuilder searchRequestBuilder,
+																	SearchCondition searchCondition, Function<SearchHit, T> mapper) {
+
+		CompletableFuture<SearchDocuments<T>> future = new CompletableFuture<>();
+
+		searchRequestBuilder.setTimeout(TimeValue.timeValueMillis(searchCondition.getTimeoutMs()));
+		searchRequestBuilder.execute(new ActionListener<SearchResponse>() {
+			@Override
+			public void onResponse(SearchResponse searchResponse) {
+				try {
+					future.complete(toSearchDocuments(searchResponse, searchCondition, mapper));
+				} catch (RuntimeException e) {
+					future.completeExceptionally(e);
+				}
+			}
+
+			@Override
+			public void onFailure(Exception e) {
+				future.completeExceptionally(e);
+			}
+		});
+
+		return future;
+	}
+
+	private <T> SearchDocuments<T> toSearchDocuments(SearchResponse searchResponse, SearchCondition searchCondition,
+													 Function<SearchHit, T> mapper) {
+
+		SearchHit[] hits = searchResponse.getHits().getHits();
+
+		List<T> documents = Arrays.stream(hits)
+				.map(mapper)
+				.collect(Collectors.toList());
+
+		SearchDocuments<T> searchDocuments = new SearchDocuments<>();
+		searchDocuments.setTook(searchResponse.getTook().getMillis());
+		searchDocuments.setTimedOut(searchResponse.isTimedOut());
+		searchDocuments.setTotalCount(searchResponse.getHits().getTotalHits());
+		searchDocuments.setDocuments(documents);
+
+		if (Boolean.TRUE.equals(searchCondition.getCursor()) && hits.length > 0)
+			searchDocuments.setLastSortValues(hits[hits.length - 1].getSortValues());
+
+		return searchDocuments;
+	}
+
+	/*
+	 * 찾은 hit 를 점수, 하이라이트와 함께 읽는다. src/jmh 의 벤치마크에서도 부른다.
+	 */
+
+	EsArticleSource toArticleSource(SearchHit searchHit) {
+		EsArticleSource esArticleSource = this.readSource(searchHit, ARTICLE_SOURCE_READER);
+		esArticleSource.setScore(searchHit.getScore());
+		esArticleSource.setHighlight(this.getHighlight(searchHit.getHighlightFields()));
+
+		return esArticleSource;
+	}
+
+	EsCommentSource toCommentSource(SearchHit searchHit) {
+		EsCommentSource esCommentSource = this.readSource(searchHit, COMMENT_SOURCE_READER);
+		esCommentSource.setScore(searchHit.getScore());
+		esCommentSource.setHighlight(this.getHighlight(searchHit.getHighlightFields()));
+
+		return esCommentSource;
+	}
+
+	EsGallerySource toGallerySource(SearchHit searchHit) {
+		EsGallerySource esGallerySource = this.readSource(searchHit, GALLERY_SOURCE_READER);
+		esGallerySource.setScore(searchHit.getScore());
+		esGallerySource.setHighlight(this.getHighlight(searchHit.getHighlightFields()));
+
+		return esGallerySource;
+	}
+
+	/**
+	 * hit 의 _source 를 Map 으로 바꾸지 않고 바이트에서 바로 읽는다.
+	 */
+	private <T> T readSource(SearchHit searchHit, ObjectReader reader) {
+		BytesRef source = searchHit.getSourceRef().toBytesRef();
+
+		try {
+			return reader.readValue(source.bytes, source.offset, source.length);
+		} catch (IOException e) {
+			throw new ServiceException(ServiceError.IO_EXCEPTION, e);
+		}
+	}
+
+	private Map<String, List<String>> getHighlight(Map<String, HighlightField> highlightFields) {
+
+		if (highlightFields.isEmpty())
+			return Collections.emptyMap();
+
+		Map<String, List<String>> highlight = new HashMap<>((int) (highlightFields.size() / 0.75f) + 1);
+
+		highlightFields.forEach((field, highlightField) -> {
+			Text[] fragments = highlightField.fragments();
+			String[] texts = new String[fragments.length];
+
+			for (int i = 0; i < fragments.length; i++)
+				texts[i] = fragments[i].string();
+
+			highlight.put(field, Arrays.asList(texts));
+		});
+
+		return highlight;
+	}
+
+}
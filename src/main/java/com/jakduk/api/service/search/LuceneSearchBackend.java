@@ -0,0 +1,662 @@
+package com.jakduk.api.service.search;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.jakduk.api.common.Constants;
+import com.jakduk.api.common.util.ObjectMapperUtils;
+import com.jakduk.api.configuration.JakdukProperties;
+import com.jakduk.api.exception.ServiceError;
+import com.jakduk.api.exception.ServiceException;
+import com.jakduk.api.model.elasticsearch.*;
+import com.jakduk.api.restcontroller.vo.search.PopularSearchWordResult;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.cjk.CJKAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queries.mlt.MoreLikeThis;
+import org.apache.lucene.search.*;
+import org.apache.lucene.search.highlight.Highlighter;
+import org.apache.lucene.search.highlight.InvalidTokenOffsetsException;
+import org.apache.lucene.search.highlight.NullFragmenter;
+import org.apache.lucene.search.highlight.QueryScorer;
+import org.apache.lucene.search.highlight.SimpleHTMLFormatter;
+import org.apache.lucene.search.highlight.SimpleSpanFragmenter;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.QueryBuilder;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+/**
+ * ES 없이 서버 안의 Lucene 색인에서 찾는다. 혼자 도는 서버나 테스트, 벤치마크용.
+ *
+ * jakduk.elasticsearch.lucene-path 아래에 ES 색인 이름(index-board, index-comment ...)으로 색인을 하나씩 두고, 메모리 맵(MMapDirectory)으로 연다.
+ * 색인/삭제는 바로 IndexWriter 에 쓰고 near-real-time reader 를 다시 열어서 곧바로 찾을 수 있게 한다.
+ * 디스크에는 Constants.LUCENE_COMMIT_INTERVAL_MS 마다, 그리고 종료할 때 commit 한다.
+ *
+ * 글, 댓글, 사진의 _source 는 ES 와 같은 JSON 으로 저장하고, 점수와 하이라이트도 ES 와 같은 모양으로 돌려준다.
+ * 검색어는 날짜별 색인과 월별 집계 없이 한 색인에 쌓는다.
+ */
+
+@Service
+@ConditionalOnProperty(prefix = "jakduk.elasticsearch", name = "backend", havingValue = Constants.SEARCH_BACKEND_LUCENE)
+public class LuceneSearchBackend implements SearchBackend {
+
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	private static final String FIELD_ID = "_id";
+	private static final String FIELD_SOURCE = "_source";
+	private static final String DEFAULT_PRE_TAGS = "<em>";
+	private static final String DEFAULT_POST_TAGS = "</em>";
+
+	private static final ObjectReader ARTICLE_SOURCE_READER = ObjectMapperUtils.getObjectMapper().readerFor(EsArticleSource.class);
+	private static final ObjectReader COMMENT_SOURCE_READER = ObjectMapperUtils.getObjectMapper().readerFor(EsCommentSource.class);
+	private static final ObjectReader GALLERY_SOURCE_READER = ObjectMapperUtils.getObjectMapper().readerFor(EsGallerySource.class);
+	private static final ObjectReader ARTICLE_READER = ObjectMapperUtils.getObjectMapper().readerFor(EsArticle.class);
+	private static final ObjectReader COMMENT_READER = ObjectMapperUtils.getObjectMapper().readerFor(EsComment.class);
+	private static final ObjectReader GALLERY_READER = ObjectMapperUtils.getObjectMapper().readerFor(EsGallery.class);
+	private static final ObjectReader SEARCH_WORD_READER = ObjectMapperUtils.getObjectMapper().readerFor(EsSearchWord.class);
+
+	@Resource private JakdukProperties.Elasticsearch elasticsearchProperties;
+
+	// 한글은 형태소 분석 없이 두 글자씩 자른다.
+	private final Analyzer analyzer = new CJKAnalyzer();
+	private final QueryBuilder queryBuilder = new QueryBuilder(analyzer);
+
+	private final ExecutorService searchExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+	// 검색어를 뺀 문서가 색인/삭제된 횟수
+	private final AtomicLong documentChanges = new AtomicLong();
+
+	private LuceneIndex boardIndex;
+	private LuceneIndex commentIndex;
+	private LuceneIndex galleryIndex;
+	private LuceneIndex searchWordIndex;
+
+	@PostConstruct
+	public void init() {
+
+		Path path = Paths.get(elasticsearchProperties.getLucenePath());
+
+		try {
+			boardIndex = new LuceneIndex(path.resolve(elasticsearchProperties.getIndexBoard()), analyzer);
+			commentIndex = new LuceneIndex(path.resolve(elasticsearchProperties.getIndexComment()), analyzer);
+			galleryIndex = new LuceneIndex(path.resolve(elasticsearchProperties.getIndexGallery()), analyzer);
+			searchWordIndex = new LuceneIndex(path.resolve(elasticsearchProperties.getIndexSearchWord()), analyzer);
+		} catch (IOException e) {
+			throw new ServiceException(ServiceError.IO_EXCEPTION, e);
+		}
+
+		log.info("lucene search backend opened. path={}", path);
+	}
+
+	@PreDestroy
+	public void destroy() {
+
+		searchExecutor.shutdown();
+
+		for (LuceneIndex luceneIndex : Arrays.asList(boardIndex, commentIndex, galleryIndex, searchWordIndex)) {
+			try {
+				luceneIndex.close();
+			} catch (IOException e) {
+				log.error("failed to close lucene index. path={}", luceneIndex.path, e);
+			}
+		}
+	}
+
+	/**
+	 * 바뀐 색인을 디스크에 남긴다. 찾는 데는 commit 이 필요 없다.
+	 */
+	@Scheduled(initialDelay = Constants.LUCENE_COMMIT_INTERVAL_MS, fixedDelay = Constants.LUCENE_COMMIT_INTERVAL_MS)
+	public void commit() {
+
+		for (LuceneIndex luceneIndex : Arrays.asList(boardIndex, commentIndex, galleryIndex, searchWordIndex)) {
+			try {
+				if (luceneIndex.indexWriter.hasUncommittedChanges())
+					luceneIndex.indexWriter.commit();
+			} catch (IOException e) {
+				log.error("failed to commit lucene index. path={}", luceneIndex.path, e);
+			}
+		}
+	}
+
+	/**
+	 * ES 의 multi_match(best_fields) 처럼 제목과 본문 중 점수가 높은 쪽을 쓴다. 제목은 1.5 배.
+	 */
+	@Override
+	public CompletableFuture<SearchDocuments<EsArticleSource>> searchArticles(SearchCondition searchCondition) {
+
+		Query query = new DisjunctionMaxQuery(Arrays.asList(
+				new BoostQuery(this.createQuery("subject", searchCondition.getQuery()), 1.5f),
+				this.createQuery("content", searchCondition.getQuery())), 0f);
+
+		return this.search(boardIndex, query, searchCondition, (source, score) -> {
+			EsArticleSource esArticleSource = this.readSource(source, ARTICLE_SOURCE_READER);
+
+			Map<String, List<String>> highlight = new HashMap<>();
+			this.putHighlight(highlight, query, "subject", esArticleSource.getSubject(), 0, searchCondition);
+			this.putHighlight(highlight, query, "content", esArticleSource.getContent(), 1, searchCondition);
+
+			// ES 와 같이 본문은 하이라이트로만 돌려준다.
+			esArticleSource.setSubject(null);
+			esArticleSource.setContent(null);
+			esArticleSource.setScore(score);
+			esArticleSource.setHighlight(highlight);
+
+			return esArticleSource;
+		});
+	}
+
+	@Override
+	public CompletableFuture<SearchDocuments<EsCommentSource>> searchComments(SearchCondition searchCondition) {
+
+		Query query = this.createQuery("content", searchCondition.getQuery());
+
+		return this.search(commentIndex, query, searchCondition, (source, score) -> {
+			EsCommentSource esCommentSource = this.readSource(source, COMMENT_SOURCE_READER);
+
+			Map<String, List<String>> highlight = new HashMap<>();
+			this.putHighlight(highlight, query, "content", esCommentSource.getContent(), 1, searchCondition);
+
+			esCommentSource.setContent(null);
+			esCommentSource.setScore(score);
+			esCommentSource.setHighlight(highlight);
+
+			return esCommentSource;
+		});
+	}
+
+	@Override
+	public CompletableFuture<SearchDocuments<EsGallerySource>> searchGalleries(SearchCondition searchCondition) {
+
+		Query query = this.createQuery("name", searchCondition.getQuery());
+
+		return this.search(galleryIndex, query, searchCondition, (source, score) -> {
+			EsGallerySource esGallerySource = this.readSource(source, GALLERY_SOURCE_READER);
+
+			Map<String, List<String>> highlight = new HashMap<>();
+			this.putHighlight(highlight, query, "name", esGallerySource.getName(), 0, searchCondition);
+
+			esGallerySource.setName(null);
+			esGallerySource.setScore(score);
+			esGallerySource.setHighlight(highlight);
+
+			return esGallerySource;
+		});
+	}
+
+	/**
+	 * 제목, 본문은 저장하지 않으므로 이 글의 _source 를 다시 분석해서 드문 단어들을 뽑는다.
+	 */
+	@Override
+	public CompletableFuture<SearchDocuments<EsArticleSource>> searchRelatedArticles(String articleId, Integer size) {
+
+		SearchCondition searchCondition = new SearchCondition();
+		searchCondition.setFrom(0);
+		searchCondition.setSize(size);
+
+		BooleanQuery.Builder query = new BooleanQuery.Builder();
+
+		try {
+			IndexSearcher indexSearcher = boardIndex.searcherManager.acquire();
+
+			try {
+				TopDocs topDocs = indexSearcher.search(new TermQuery(new Term(FIELD_ID, articleId)), 1);
+
+				if (topDocs.scoreDocs.length == 0)
+					return CompletableFuture.completedFuture(this.emptySearchDocuments());
+
+				BytesRef source = indexSearcher.doc(topDocs.scoreDocs[0].doc, Collections.singleton(FIELD_SOURCE)).getBinaryValue(FIELD_SOURCE);
+				EsArticle esArticle = this.readSource(source, ARTICLE_READER);
+
+				MoreLikeThis moreLikeThis = new MoreLikeThis(indexSearcher.getIndexReader());
+				moreLikeThis.setAnalyzer(analyzer);
+				moreLikeThis.setFieldNames(new String[]{"subject", "content"});
+				moreLikeThis.setMinTermFreq(1);
+				moreLikeThis.setMinDocFreq(Constants.RELATED_ARTICLE_MIN_DOC_FREQ);
+				moreLikeThis.setMaxQueryTerms(Constants.RELATED_ARTICLE_MAX_QUERY_TERMS);
+
+				query.add(moreLikeThis.like("subject", new StringReader(StringUtils.defaultString(esArticle.getSubject()))),
+						BooleanClause.Occur.SHOULD);
+				query.add(moreLikeThis.like("content", new StringReader(StringUtils.defaultString(esArticle.getContent()))),
+						BooleanClause.Occur.SHOULD);
+				query.add(new TermQuery(new Term(FIELD_ID, articleId)), BooleanClause.Occur.MUST_NOT);
+
+			} finally {
+				boardIndex.searcherManager.release(indexSearcher);
+			}
+		} catch (IOException e) {
+			throw new ServiceException(ServiceError.IO_EXCEPTION, e);
+		}
+
+		return this.search(boardIndex, query.build(), searchCondition, (source, score) -> {
+			EsArticleSource esArticleSource = this.readSource(source, ARTICLE_SOURCE_READER);
+			esArticleSource.setContent(null);
+			esArticleSource.setScore(score);
+
+			return esArticleSource;
+		});
+	}
+
+	/**
+	 * 이 날짜 이후의 검색어를 doc values 에서 바로 센다.
+	 */
+	@Override
+	public PopularSearchWordResult aggregateSearchWord(LocalDate gteDate, Integer size) {
+
+		long startedAt = System.currentTimeMillis();
+		Map<String, Long> counts = new HashMap<>();
+
+		try {
+			IndexSearcher indexSearcher = searchWordIndex.searcherManager.acquire();
+
+			try {
+				indexSearcher.search(LongPoint.newRangeQuery("registerDate", this.toEpochMilli(gteDate.atStartOfDay()), Long.MAX_VALUE),
+						new SimpleCollector() {
+							private SortedDocValues words;
+
+							@Override
+							protected void doSetNextReader(LeafReaderContext context) throws IOException {
+								words = DocValues.getSorted(context.reader(), "word");
+							}
+
+							@Override
+							public void collect(int doc) throws IOException {
+								if (words.advanceExact(doc))
+									counts.merge(words.binaryValue().utf8ToString(), 1L, Long::sum);
+							}
+
+							@Override
+							public boolean needsScores() {
+								return false;
+							}
+						});
+			} finally {
+				searchWordIndex.searcherManager.release(indexSearcher);
+			}
+		} catch (IOException e) {
+			throw new ServiceException(ServiceError.IO_EXCEPTION, e);
+		}
+
+		List<EsTermsBucket> popularWords = counts.entrySet().stream()
+				.sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+				.limit(size)
+				.map(entry -> new EsTermsBucket(entry.getKey(), entry.getValue()))
+				.collect(Collectors.toList());
+
+		return new PopularSearchWordResult() {{
+			setTook(System.currentTimeMillis() - startedAt);
+			setPopularSearchWords(popularWords);
+		}};
+	}
+
+	@Override
+	public List<DocWriteRequest<?>> execute(List<DocWriteRequest<?>> requests) {
+
+		Set<LuceneIndex> changedIndices = new HashSet<>();
+		List<DocWriteRequest<?>> failed = new ArrayList<>();
+
+		for (DocWriteRequest<?> request : requests) {
+			try {
+				LuceneIndex luceneIndex = this.getIndex(request.type());
+
+				if (request instanceof IndexRequest) {
+					Document document = this.toDocument(request.type(), request.id(), ((IndexRequest) request).source().toBytesRef());
+
+					if (Objects.nonNull(request.id()))
+						luceneIndex.indexWriter.updateDocument(new Term(FIELD_ID, request.id()), document);
+					else
+						luceneIndex.indexWriter.addDocument(document);
+				} else {
+					luceneIndex.indexWriter.deleteDocuments(new Term(FIELD_ID, request.id()));
+				}
+
+				changedIndices.add(luceneIndex);
+
+				if (luceneIndex != searchWordIndex)
+					documentChanges.incrementAndGet();
+
+			} catch (IOException | RuntimeException e) {
+				failed.add(request);
+				log.error("failed to write lucene document. type={}, id={}", request.type(), request.id(), e);
+			}
+		}
+
+		changedIndices.forEach(this::refresh);
+
+		return failed;
+	}
+
+	/**
+	 * 글의 댓글 문서들을 읽어서 글의 정보만 바꿔 다시 쓴다.
+	 */
+	@Override
+	public void updateCommentArticles(Collection<EsArticle> esArticles) {
+
+		if (esArticles.isEmpty())
+			return;
+
+		int updated = 0;
+
+		try {
+			IndexSearcher indexSearcher = commentIndex.searcherManager.acquire();
+
+			try {
+				for (EsArticle esArticle : esArticles) {
+					List<Integer> docIds = new ArrayList<>();
+
+					// 점수와 순서가 필요 없으므로, 색인 크기만큼 자리를 잡는 TopDocs 대신 맞는 문서 번호만 모은다.
+					indexSearcher.search(new TermQuery(new Term("article.id", esArticle.getId())),
+							new SimpleCollector() {
+								private int docBase;
+
+								@Override
+								protected void doSetNextReader(LeafReaderContext context) {
+									docBase = context.docBase;
+								}
+
+								@Override
+								public void collect(int doc) {
+									docIds.add(docBase + doc);
+								}
+
+								@Override
+								public boolean needsScores() {
+									return false;
+								}
+							});
+
+					for (Integer docId : docIds) {
+						BytesRef source = indexSearcher.doc(docId, Collections.singleton(FIELD_SOURCE)).getBinaryValue(FIELD_SOURCE);
+						EsComment esComment = this.readSource(source, COMMENT_READER);
+
+						EsParentArticle article = new EsParentArticle();
+						article.setId(esArticle.getId());
+						article.setSeq(esArticle.getSeq());
+						article.setBoard(esArticle.getBoard());
+						article.setCategory(esArticle.getCategory());
+						article.setSubject(esArticle.getSubject());
+						esComment.setArticle(article);
+
+						byte[] newSource = ObjectMapperUtils.writeValueAsString(esComment).getBytes(StandardCharsets.UTF_8);
+
+						commentIndex.indexWriter.updateDocument(new Term(FIELD_ID, esComment.getId()),
+								this.toDocument(Constants.ES_TYPE_COMMENT, esComment.getId(), new BytesRef(newSource)));
+						updated++;
+					}
+				}
+			} finally {
+				commentIndex.searcherManager.release(indexSearcher);
+			}
+		} catch (IOException e) {
+			log.error("failed to update comment articles. articles={}", esArticles.size(), e);
+		}
+
+		if (updated > 0) {
+			documentChanges.incrementAndGet();
+			this.refresh(commentIndex);
+		}
+
+		log.debug("comment articles updated. articles={}, updated={}", esArticles.size(), updated);
+	}
+
+	@Override
+	public long getDocumentChanges() {
+		return documentChanges.get();
+	}
+
+	/**
+	 * 검색어를 분석해서 하나라도 맞는 문서를 찾는다. (ES 의 match 쿼리)
+	 */
+	private Query createQuery(String field, String text) {
+		Query query = queryBuilder.createBooleanQuery(field, StringUtils.defaultString(text));
+		return Objects.nonNull(query) ? query : new MatchNoDocsQuery();
+	}
+
+	/**
+	 * 쓰레드풀에서 찾는다. cursor 방식이면 점수, _id 순으로 정렬하고 앞 페이지의 마지막 문서 다음부터 찾는다.
+	 */
+	private <T> CompletableFuture<SearchDocuments<T>> search(LuceneIndex luceneIndex, Query query, SearchCondition searchCondition,
+															 BiFunction<BytesRef, Float, T> mapper) {
+
+		return CompletableFuture.supplyAsync(() -> {
+			long startedAt = System.currentTimeMillis();
+
+			try {
+				IndexSearcher indexSearcher = luceneIndex.searcherManager.acquire();
+
+				try {
+					TopDocs topDocs;
+					ScoreDoc[] hits;
+
+					if (Boolean.TRUE.equals(searchCondition.getCursor())) {
+						Sort sort = new Sort(SortField.FIELD_SCORE, new SortField(FIELD_ID, SortField.Type.STRING));
+						Object[] searchAfter = searchCondition.getSearchAfter();
+						FieldDoc after = Objects.nonNull(searchAfter) ?
+								new FieldDoc(Integer.MAX_VALUE, Float.NaN,
+										new Object[]{((Number) searchAfter[0]).floatValue(), new BytesRef(String.valueOf(searchAfter[1]))}) : null;
+
+						topDocs = indexSearcher.searchAfter(after, query, Math.max(1, searchCondition.getSize()), sort, true, false);
+						hits = topDocs.scoreDocs;
+					} else {
+						topDocs = indexSearcher.search(query, Math.max(1, searchCondition.getFrom() + searchCondition.getSize()));
+						hits = Arrays.copyOfRange(topDocs.scoreDocs, Math.min(searchCondition.getFrom(), topDocs.scoreDocs.length),
+								topDocs.scoreDocs.length);
+					}
+
+					List<T> documents = new ArrayList<>(hits.length);
+
+					for (ScoreDoc hit : hits) {
+						BytesRef source = indexSearcher.doc(hit.doc, Collections.singleton(FIELD_SOURCE)).getBinaryValue(FIELD_SOURCE);
+						documents.add(mapper.apply(source, hit.score));
+					}
+
+					SearchDocuments<T> searchDocuments = new SearchDocuments<>();
+					searchDocuments.setTook(System.currentTimeMillis() - startedAt);
+					searchDocuments.setTimedOut(false);
+					searchDocuments.setTotalCount(topDocs.totalHits);
+					searchDocuments.setDocuments(documents);
+
+					if (Boolean.TRUE.equals(searchCondition.getCursor()) && hits.length > 0) {
+						Object[] fields = ((FieldDoc) hits[hits.length - 1]).fields;
+						searchDocuments.setLastSortValues(new Object[]{fields[0], ((BytesRef) fields[1]).utf8ToString()});
+					}
+
+					return searchDocuments;
+
+				} finally {
+					luceneIndex.searcherManager.release(indexSearcher);
+				}
+			} catch (IOException e) {
+				throw new ServiceException(ServiceError.IO_EXCEPTION, e);
+			}
+		}, searchExecutor);
+	}
+
+	/**
+	 * ES 하이라이트와 같이 맞는 부분이 있으면 조각을, 없으면 앞에서부터 Constants.SEARCH_NO_MATCH_SIZE 글자를 넣는다.
+	 *
+	 * @param numberOfFragments 0 이면 조각으로 자르지 않고 전체를 하이라이트한다.
+	 */
+	private void putHighlight(Map<String, List<String>> highlight, Query query, String field, String text, int numberOfFragments,
+							  SearchCondition searchCondition) {
+
+		if (StringUtils.isEmpty(text))
+			return;
+
+		QueryScorer queryScorer = new QueryScorer(query, field);
+		Highlighter highlighter = new Highlighter(new SimpleHTMLFormatter(
+				StringUtils.defaultIfBlank(searchCondition.getPreTags(), DEFAULT_PRE_TAGS),
+				StringUtils.defaultIfBlank(searchCondition.getPostTags(), DEFAULT_POST_TAGS)), queryScorer);
+
+		highlighter.setTextFragmenter(numberOfFragments == 0 ?
+				new NullFragmenter() : new SimpleSpanFragmenter(queryScorer, Constants.SEARCH_FRAGMENT_SIZE));
+
+		String[] fragments;
+
+		try {
+			fragments = highlighter.getBestFragments(analyzer, field, text, Math.max(1, numberOfFragments));
+		} catch (IOException | InvalidTokenOffsetsException e) {
+			throw new ServiceException(ServiceError.IO_EXCEPTION, e);
+		}
+
+		if (fragments.length > 0)
+			highlight.put(field, Arrays.asList(fragments));
+		else
+			highlight.put(field, Collections.singletonList(StringUtils.left(text, Constants.SEARCH_NO_MATCH_SIZE)));
+	}
+
+	private Document toDocument(String type, String id, BytesRef source) throws IOException {
+
+		Document document = new Document();
+		document.add(new StoredField(FIELD_SOURCE, source));
+
+		if (Objects.nonNull(id)) {
+			document.add(new StringField(FIELD_ID, id, Field.Store.NO));
+			document.add(new SortedDocValuesField(FIELD_ID, new BytesRef(id)));
+		}
+
+		switch (type) {
+			case Constants.ES_TYPE_ARTICLE:
+				EsArticle esArticle = this.readSource(source, ARTICLE_READER);
+				this.addText(document, "subject", esArticle.getSubject());
+				this.addText(document, "content", esArticle.getContent());
+				break;
+
+			case Constants.ES_TYPE_COMMENT:
+				EsComment esComment = this.readSource(source, COMMENT_READER);
+				this.addText(document, "content", esComment.getContent());
+
+				if (Objects.nonNull(esComment.getArticle()) && Objects.nonNull(esComment.getArticle().getId()))
+					document.add(new StringField("article.id", esComment.getArticle().getId(), Field.Store.NO));
+				break;
+
+			case Constants.ES_TYPE_GALLERY:
+				EsGallery esGallery = this.readSource(source, GALLERY_READER);
+				this.addText(document, "name", esGallery.getName());
+				break;
+
+			case Constants.ES_TYPE_SEARCH_WORD:
+				EsSearchWord esSearchWord = this.readSource(source, SEARCH_WORD_READER);
+				LocalDateTime registerDate = Objects.nonNull(esSearchWord.getRegisterDate()) ? esSearchWord.getRegisterDate() : LocalDateTime.now();
+
+				document.add(new StringField("word", StringUtils.defaultString(esSearchWord.getWord()), Field.Store.NO));
+				document.add(new SortedDocValuesField("word", new BytesRef(StringUtils.defaultString(esSearchWord.getWord()))));
+				document.add(new LongPoint("registerDate", this.toEpochMilli(registerDate)));
+				break;
+		}
+
+		return document;
+	}
+
+	private <T> SearchDocuments<T> emptySearchDocuments() {
+		SearchDocuments<T> searchDocuments = new SearchDocuments<>();
+		searchDocuments.setTook(0L);
+		searchDocuments.setTimedOut(false);
+		searchDocuments.setTotalCount(0L);
+		searchDocuments.setDocuments(Collections.emptyList());
+
+		return searchDocuments;
+	}
+
+	private void addText(Document document, String field, String text) {
+		if (StringUtils.isNotEmpty(text))
+			document.add(new TextField(field, text, Field.Store.NO));
+	}
+
+	private LuceneIndex getIndex(String type) {
+		switch (type) {
+			case Constants.ES_TYPE_ARTICLE:
+				return boardIndex;
+			case Constants.ES_TYPE_COMMENT:
+				return commentIndex;
+			case Constants.ES_TYPE_GALLERY:
+				return galleryIndex;
+			case Constants.ES_TYPE_SEARCH_WORD:
+				return searchWordIndex;
+			default:
+				throw new ServiceException(ServiceError.ELASTICSEARCH_NOT_FOUND_INDEX);
+		}
+	}
+
+	/**
+	 * 쓴 문서가 바로 검색되도록 near-real-time reader 를 다시 연다.
+	 */
+	private void refresh(LuceneIndex luceneIndex) {
+		try {
+			luceneIndex.searcherManager.maybeRefreshBlocking();
+		} catch (IOException e) {
+			log.error("failed to refresh lucene index. path={}", luceneIndex.path, e);
+		}
+	}
+
+	private <T> T readSource(BytesRef source, ObjectReader reader) {
+		try {
+			return reader.readValue(source.bytes, source.offset, source.length);
+		} catch (IOException e) {
+			throw new ServiceException(ServiceError.IO_EXCEPTION, e);
+		}
+	}
+
+	private long toEpochMilli(LocalDateTime localDateTime) {
+		return localDateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+	}
+
+	private static class LuceneIndex {
+		private final Path path;
+		private final Directory directory;
+		private final IndexWriter indexWriter;
+		private final SearcherManager searcherManager;
+
+		private LuceneIndex(Path path, Analyzer analyzer) throws IOException {
+			this.path = path;
+			this.directory = new MMapDirectory(path);
+			this.indexWriter = new IndexWriter(directory, new IndexWriterConfig(analyzer)
+					.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
+			this.searcherManager = new SearcherManager(indexWriter, null);
+		}
+
+		private void close() throws IOException {
+			searcherManager.close();
+			indexWriter.close();
+			directory.close();
+		}
+	}
+
+}
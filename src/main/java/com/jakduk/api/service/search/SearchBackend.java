@@ -0,0 +1,57 @@
+package com.jakduk.api.service.search;
+
+import com.jakduk.api.model.elasticsearch.EsArticle;
+import com.jakduk.api.model.elasticsearch.EsArticleSource;
+import com.jakduk.api.model.elasticsearch.EsCommentSource;
+import com.jakduk.api.model.elasticsearch.EsGallerySource;
+import com.jakduk.api.restcontroller.vo.search.PopularSearchWordResult;
+import org.elasticsearch.action.DocWriteRequest;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 글, 댓글, 사진, 검색어를 색인하고 찾는 곳
+ *
+ * jakduk.elasticsearch.backend 가 elasticsearch(기본)면 ES 클러스터를, lucene 이면 서버 안의 Lucene 색인을 쓴다.
+ * 색인/삭제 요청은 어느 쪽이든 ES 의 IndexRequest, DeleteRequest 로 주고받는다. 문서의 종류는 type 으로 나눈다.
+ */
+
+public interface SearchBackend {
+
+	CompletableFuture<SearchDocuments<EsArticleSource>> searchArticles(SearchCondition searchCondition);
+
+	CompletableFuture<SearchDocuments<EsCommentSource>> searchComments(SearchCondition searchCondition);
+
+	CompletableFuture<SearchDocuments<EsGallerySource>> searchGalleries(SearchCondition searchCondition);
+
+	/**
+	 * 이 글과 제목, 본문이 비슷한 글 (more like this). 이 글은 빠진다.
+	 */
+	CompletableFuture<SearchDocuments<EsArticleSource>> searchRelatedArticles(String articleId, Integer size);
+
+	/**
+	 * 이 날짜 이후에 많이 검색된 검색어
+	 */
+	PopularSearchWordResult aggregateSearchWord(LocalDate gteDate, Integer size);
+
+	/**
+	 * 색인/삭제 요청을 바로 보내고 끝나기를 기다린다.
+	 *
+	 * @return 반영하지 못한 요청들
+	 */
+	List<DocWriteRequest<?>> execute(List<DocWriteRequest<?>> requests);
+
+	/**
+	 * 글이 바뀌면 그 글의 댓글 문서들에 넣어둔 글의 정보를 고친다.
+	 */
+	void updateCommentArticles(Collection<EsArticle> esArticles);
+
+	/**
+	 * 검색어를 뺀 문서가 색인/삭제된 횟수. 검색 결과 캐시가 이 값이 바뀌면 버려진다.
+	 */
+	long getDocumentChanges();
+
+}
@@ -0,0 +1,81 @@
+package com.jakduk.api.service.search;
+
+/**
+ * 검색 백엔드에 넘기는 검색 조건
+ */
+
+public class SearchCondition {
+
+	private String query; // 정규화한 검색어
+	private Integer from; // 페이지 시작 위치. cursor 방식이면 쓰지 않는다.
+	private Integer size; // 페이지 크기
+	private String preTags; // 하이라이트 시작 태그
+	private String postTags; // 하이라이트 끝 태그
+	private Boolean cursor; // 점수, _id 순으로 정렬하고 searchAfter 다음부터 찾는지
+	private Object[] searchAfter; // 앞 페이지 마지막 문서의 정렬 값. 첫 페이지는 null
+	private Long timeoutMs; // 이 시간 안에 찾은 것까지만 돌려받는다.
+
+	public String getQuery() {
+		return query;
+	}
+
+	public void setQuery(String query) {
+		this.query = query;
+	}
+
+	public Integer getFrom() {
+		return from;
+	}
+
+	public void setFrom(Integer from) {
+		this.from = from;
+	}
+
+	public Integer getSize() {
+		return size;
+	}
+
+	public void setSize(Integer size) {
+		this.size = size;
+	}
+
+	public String getPreTags() {
+		return preTags;
+	}
+
+	public void setPreTags(String preTags) {
+		this.preTags = preTags;
+	}
+
+	public String getPostTags() {
+		return postTags;
+	}
+
+	public void setPostTags(String postTags) {
+		this.postTags = postTags;
+	}
+
+	public Boolean getCursor() {
+		return cursor;
+	}
+
+	public void setCursor(Boolean cursor) {
+		this.cursor = cursor;
+	}
+
+	public Object[] getSearchAfter() {
+		return searchAfter;
+	}
+
+	public void setSearchAfter(Object[] searchAfter) {
+		this.searchAfter = searchAfter;
+	}
+
+	public Long getTimeoutMs() {
+		return timeoutMs;
+	}
+
+	public void setTimeoutMs(Long timeoutMs) {
+		this.timeoutMs = timeoutMs;
+	}
+}
@@ -0,0 +1,56 @@
+package com.jakduk.api.service.search;
+
+import java.util.List;
+
+/**
+ * 검색 백엔드가 돌려주는 한 페이지의 문서. 문서에는 점수와 하이라이트가 들어 있다.
+ */
+
+public class SearchDocuments<T> {
+
+	private Long took;
+	private Boolean timedOut; // 시간 안에 다 찾지 못하고 찾은 것까지만 돌려줬는지
+	private Long totalCount;
+	private List<T> documents;
+	private Object[] lastSortValues; // cursor 방식일 때 마지막 문서의 정렬 값
+
+	public Long getTook() {
+		return took;
+	}
+
+	public void setTook(Long took) {
+		this.took = took;
+	}
+
+	public Boolean getTimedOut() {
+		return timedOut;
+	}
+
+	public void setTimedOut(Boolean timedOut) {
+		this.timedOut = timedOut;
+	}
+
+	public Long getTotalCount() {
+		return totalCount;
+	}
+
+	public void setTotalCount(Long totalCount) {
+		this.totalCount = totalCount;
+	}
+
+	public List<T> getDocuments() {
+		return documents;
+	}
+
+	public void setDocuments(List<T> documents) {
+		this.documents = documents;
+	}
+
+	public Object[] getLastSortValues() {
+		return lastSortValues;
+	}
+
+	public void setLastSortValues(Object[] lastSortValues) {
+		this.lastSortValues = lastSortValues;
+	}
+}
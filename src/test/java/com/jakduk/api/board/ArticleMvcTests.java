@@ -348,11 +348,20 @@ public class ArticleMvcTests {
         latestArticle.setSubject("작성자의 최근 글 제목");
         latestArticle.setGalleries(simpleGalleries);
 
+        RelatedArticle relatedArticle = new RelatedArticle();
+        relatedArticle.setId("58e9959b807d71113a999c7f");
+        relatedArticle.setSeq(220);
+        relatedArticle.setBoard(Constants.BOARD_TYPE.FOOTBALL.name());
+        relatedArticle.setWriter(commonWriter);
+        relatedArticle.setSubject("비슷한 글 제목");
+        relatedArticle.setScore(3.2f);
+
         GetArticleDetailResponse expectResponse = new GetArticleDetailResponse();
         expectResponse.setArticle(articleDetail);
         expectResponse.setPrevArticle(prevPost);
         expectResponse.setNextArticle(nextPost);
         expectResponse.setLatestArticlesByWriter(Arrays.asList(latestArticle));
+        expectResponse.setRelatedArticles(Arrays.asList(relatedArticle));
 
         when(articleService.getArticleDetail(any(CommonWriter.class), any(Constants.BOARD_TYPE.class), anyInt(), anyBoolean()))
                 .thenReturn(ResponseEntity.ok().body(expectResponse));
@@ -401,7 +410,14 @@ public class ArticleMvcTests {
                                 fieldWithPath("latestArticlesByWriter.[].seq").type(JsonFieldType.NUMBER).description("글번호"),
                                 subsectionWithPath("latestArticlesByWriter.[].writer").type(JsonFieldType.OBJECT).description("글쓴이"),
                                 fieldWithPath("latestArticlesByWriter.[].subject").type(JsonFieldType.STRING).description("글제목"),
-                                subsectionWithPath("latestArticlesByWriter.[].galleries").type(JsonFieldType.ARRAY).description("그림 목록")
+                                subsectionWithPath("latestArticlesByWriter.[].galleries").type(JsonFieldType.ARRAY).description("그림 목록"),
+                                fieldWithPath("relatedArticles").type(JsonFieldType.ARRAY).description("비슷한 글. 글이 색인된 뒤에 미리 찾아 둔다."),
+                                fieldWithPath("relatedArticles.[].id").type(JsonFieldType.STRING).description("글 ID"),
+                                fieldWithPath("relatedArticles.[].seq").type(JsonFieldType.NUMBER).description("글번호"),
+                                fieldWithPath("relatedArticles.[].board").type(JsonFieldType.STRING).description("게시판"),
+                                subsectionWithPath("relatedArticles.[].writer").type(JsonFieldType.OBJECT).description("글쓴이"),
+                                fieldWithPath("relatedArticles.[].subject").type(JsonFieldType.STRING).description("글제목"),
+                                fieldWithPath("relatedArticles.[].score").type(JsonFieldType.NUMBER).description("비슷한 정도")
                         )
                 ));
     }
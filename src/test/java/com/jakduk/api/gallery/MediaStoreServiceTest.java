@@ -0,0 +1,118 @@
+package com.jakduk.api.gallery;
+
+import com.jakduk.api.common.Constants;
+import com.jakduk.api.common.util.FileUtils;
+import com.jakduk.api.configuration.JakdukProperties;
+import com.jakduk.api.model.db.Media;
+import com.jakduk.api.repository.media.MediaRepository;
+import com.jakduk.api.service.GalleryVariantService;
+import com.jakduk.api.service.MediaStoreService;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MediaStoreServiceTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private MediaStoreService sut;
+    private Path mediaPath;
+
+    @Before
+    public void setUp() throws IOException {
+        mediaPath = temporaryFolder.newFolder("media").toPath();
+
+        JakdukProperties.Storage storageProperties = new JakdukProperties().new Storage();
+        storageProperties.setMediaPath(mediaPath.toString());
+
+        MediaRepository mediaRepository = mock(MediaRepository.class);
+        when(mediaRepository.increaseReferenceCount(anyString(), anyString(), anyLong(), any())).thenAnswer(invocation -> {
+            Media media = new Media();
+            media.setId(invocation.getArgument(0));
+            media.setContentType(invocation.getArgument(1));
+            media.setReferenceCount(1);
+
+            return media;
+        });
+
+        sut = new MediaStoreService();
+        ReflectionTestUtils.setField(sut, "storageProperties", storageProperties);
+        ReflectionTestUtils.setField(sut, "mediaRepository", mediaRepository);
+        ReflectionTestUtils.setField(sut, "galleryVariantService", mock(GalleryVariantService.class));
+    }
+
+    @Test
+    public void 사진첩_사진을_올리면_원본과_썸네일을_만든다() throws IOException {
+        Path sourcePath = this.writeImage(1200, 800, "jpeg");
+        String hash = FileUtils.computeHash(sourcePath);
+
+        sut.acquire(hash, "image/jpeg", Files.size(sourcePath), sourcePath,
+                Constants.MEDIA_DERIVATIVE_TYPE.IMAGE, Constants.MEDIA_DERIVATIVE_TYPE.GALLERY_THUMBNAIL);
+
+        Path imagePath = sut.getDerivativePath(hash, "image/jpeg", Constants.MEDIA_DERIVATIVE_TYPE.IMAGE);
+        Path thumbnailPath = sut.getDerivativePath(hash, "image/jpeg", Constants.MEDIA_DERIVATIVE_TYPE.GALLERY_THUMBNAIL);
+
+        BufferedImage thumbnail = ImageIO.read(thumbnailPath.toFile());
+
+        Assert.assertTrue(Files.exists(imagePath));
+        Assert.assertEquals(Constants.GALLERY_THUMBNAIL_SIZE_WIDTH.intValue(), thumbnail.getWidth());
+        Assert.assertEquals(Constants.GALLERY_THUMBNAIL_SIZE_HEIGHT.intValue(), thumbnail.getHeight());
+        Assert.assertEquals("만드는 중인 파일이 남지 않는다.", 2, this.getMediaFiles().size());
+    }
+
+    @Test
+    public void 회원_사진을_올리면_작은_사진을_만든다() throws IOException {
+        Path sourcePath = this.writeImage(300, 400, "png");
+        String hash = FileUtils.computeHash(sourcePath);
+
+        sut.acquire(hash, "image/png", Files.size(sourcePath), sourcePath,
+                Constants.MEDIA_DERIVATIVE_TYPE.IMAGE, Constants.MEDIA_DERIVATIVE_TYPE.USER_PICTURE_SMALL);
+
+        Path smallPath = sut.getDerivativePath(hash, "image/png", Constants.MEDIA_DERIVATIVE_TYPE.USER_PICTURE_SMALL);
+        BufferedImage small = ImageIO.read(smallPath.toFile());
+
+        Assert.assertEquals(Constants.USER_SMALL_PICTURE_SIZE_WIDTH.intValue(), small.getWidth());
+        Assert.assertEquals(Constants.USER_SMALL_PICTURE_SIZE_HEIGHT.intValue(), small.getHeight());
+        Assert.assertEquals(2, this.getMediaFiles().size());
+    }
+
+    private Path writeImage(int width, int height, String formatName) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, Color.BLUE, width, height, Color.ORANGE));
+        graphics.fillRect(0, 0, width, height);
+        graphics.dispose();
+
+        Path sourcePath = temporaryFolder.newFile("upload." + formatName).toPath();
+        ImageIO.write(image, formatName, sourcePath.toFile());
+
+        return sourcePath;
+    }
+
+    private List<Path> getMediaFiles() throws IOException {
+        try (Stream<Path> paths = Files.walk(mediaPath)) {
+            return paths.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.jakduk.api.rabbitmq;
+
+import com.jakduk.api.common.Constants;
+import com.jakduk.api.common.rabbitmq.OutboxRelay;
+import com.jakduk.api.common.rabbitmq.RabbitMQPublisher;
+import com.jakduk.api.common.util.ObjectMapperUtils;
+import com.jakduk.api.configuration.JakdukProperties;
+import com.jakduk.api.configuration.rabbitmq.RabbitMQ;
+import com.jakduk.api.model.db.OutboxMessage;
+import com.jakduk.api.model.elasticsearch.EsArticle;
+import com.jakduk.api.model.rabbitmq.EmailPayload;
+import com.jakduk.api.repository.outbox.OutboxMessageRepository;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class RabbitMQPublisherOutboxTest {
+
+    private RabbitMQPublisher sut;
+    private RabbitTemplate rabbitTemplate;
+    private OutboxMessageRepository outboxMessageRepository;
+    private OutboxRelay outboxRelay;
+
+    @Before
+    public void setUp() {
+        RabbitMQ elasticsearchQueue = new RabbitMQ();
+        elasticsearchQueue.setEnabled(true);
+
+        RabbitMQ emailQueue = new RabbitMQ();
+        emailQueue.setEnabled(false);
+
+        JakdukProperties.Rabbitmq rabbitmqProperties = new JakdukProperties().new Rabbitmq();
+        rabbitmqProperties.setExchangeName("jakduk-test");
+        rabbitmqProperties.getQueues().put("elasticsearch", elasticsearchQueue);
+        rabbitmqProperties.getQueues().put("email", emailQueue);
+
+        rabbitTemplate = mock(RabbitTemplate.class);
+        when(rabbitTemplate.getMessageConverter()).thenReturn(new Jackson2JsonMessageConverter(ObjectMapperUtils.getObjectMapper()));
+
+        outboxMessageRepository = mock(OutboxMessageRepository.class);
+        outboxRelay = mock(OutboxRelay.class);
+
+        sut = new RabbitMQPublisher();
+        ReflectionTestUtils.setField(sut, "rabbitmqProperties", rabbitmqProperties);
+        ReflectionTestUtils.setField(sut, "rabbitTemplate", rabbitTemplate);
+        ReflectionTestUtils.setField(sut, "outboxMessageRepository", outboxMessageRepository);
+        ReflectionTestUtils.setField(sut, "outboxRelay", outboxRelay);
+    }
+
+    @Test
+    public void 브로커에_보내지_않고_outbox_에_쌓는다() throws Exception {
+        EsArticle esArticle = new EsArticle();
+        esArticle.setId("595bb024290ad3035636f2ba");
+        esArticle.setSubject("subject01");
+
+        sut.publishElasticsearch("test.elasticsearch.index-document-article", esArticle);
+
+        ArgumentCaptor<OutboxMessage> captor = ArgumentCaptor.forClass(OutboxMessage.class);
+        verify(outboxMessageRepository).save(captor.capture());
+        verify(outboxRelay).wakeUp();
+        verify(rabbitTemplate, never()).convertAndSend(anyString(), anyString(), any(Object.class));
+
+        OutboxMessage outboxMessage = captor.getValue();
+
+        Assert.assertEquals("elasticsearch", outboxMessage.getQueue());
+        Assert.assertEquals("test.elasticsearch.index-document-article", outboxMessage.getRoutingKey());
+        Assert.assertEquals(Constants.OUTBOX_STATUS_TYPE.PENDING, outboxMessage.getStatus());
+        Assert.assertEquals("subject01", ObjectMapperUtils.readValue(outboxMessage.getBody(), EsArticle.class).getSubject());
+        Assert.assertEquals(EsArticle.class.getName(), outboxMessage.getHeaders().get("__TypeId__"));
+    }
+
+    @Test
+    public void 꺼진_큐의_메시지는_쌓지_않는다() {
+        sut.publishEmail("test.email.welcome", new EmailPayload());
+
+        verify(outboxMessageRepository, never()).save(any(OutboxMessage.class));
+        verify(outboxRelay, never()).wakeUp();
+    }
+
+}
@@ -0,0 +1,172 @@
+package com.jakduk.api.search;
+
+import com.jakduk.api.common.Constants;
+import com.jakduk.api.common.util.ObjectMapperUtils;
+import com.jakduk.api.configuration.JakdukProperties;
+import com.jakduk.api.model.elasticsearch.EsArticle;
+import com.jakduk.api.model.elasticsearch.EsArticleSource;
+import com.jakduk.api.model.elasticsearch.EsComment;
+import com.jakduk.api.model.elasticsearch.EsCommentSource;
+import com.jakduk.api.model.elasticsearch.EsParentArticle;
+import com.jakduk.api.service.search.LuceneSearchBackend;
+import com.jakduk.api.service.search.SearchCondition;
+import com.jakduk.api.service.search.SearchDocuments;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class LuceneSearchBackendTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private LuceneSearchBackend sut;
+
+	@Before
+	public void setUp() throws Exception {
+		JakdukProperties.Elasticsearch elasticsearchProperties = new JakdukProperties().new Elasticsearch();
+		elasticsearchProperties.setIndexBoard("board");
+		elasticsearchProperties.setIndexComment("comment");
+		elasticsearchProperties.setIndexGallery("gallery");
+		elasticsearchProperties.setIndexSearchWord("search_word");
+		elasticsearchProperties.setLucenePath(temporaryFolder.getRoot().getAbsolutePath());
+
+		sut = new LuceneSearchBackend();
+		ReflectionTestUtils.setField(sut, "elasticsearchProperties", elasticsearchProperties);
+		sut.init();
+
+		sut.execute(Arrays.asList(
+				this.getArticleIndexRequest("a1", "손흥민 골", "토트넘에서 손흥민이 골을 넣었다."),
+				this.getArticleIndexRequest("a2", "경기 후기", "손흥민 선수의 도움"),
+				this.getArticleIndexRequest("a3", "날씨", "오늘은 비가 온다.")));
+	}
+
+	@After
+	public void tearDown() {
+		sut.destroy();
+	}
+
+	@Test
+	public void 색인한_글을_바로_찾고_하이라이트한다() {
+		SearchDocuments<EsArticleSource> searchDocuments = sut.searchArticles(this.getSearchCondition(false, null)).join();
+
+		Assert.assertEquals(Long.valueOf(2L), searchDocuments.getTotalCount());
+		Assert.assertEquals("a1", searchDocuments.getDocuments().get(0).getId());
+		Assert.assertTrue(searchDocuments.getDocuments().get(0).getHighlight().get("subject").get(0).contains("<em>"));
+		Assert.assertNull(searchDocuments.getDocuments().get(0).getContent());
+	}
+
+	@Test
+	public void cursor_로_다음_페이지를_찾는다() {
+		SearchDocuments<EsArticleSource> first = sut.searchArticles(this.getSearchCondition(true, null)).join();
+
+		Assert.assertEquals(1, first.getDocuments().size());
+		Assert.assertNotNull(first.getLastSortValues());
+
+		// cursor 는 JSON 으로 오가므로 점수는 Double 로 돌아온다.
+		Object[] searchAfter = new Object[]{((Number) first.getLastSortValues()[0]).doubleValue(), first.getLastSortValues()[1]};
+		SearchDocuments<EsArticleSource> second = sut.searchArticles(this.getSearchCondition(true, searchAfter)).join();
+
+		Assert.assertEquals(1, second.getDocuments().size());
+		Assert.assertNotEquals(first.getDocuments().get(0).getId(), second.getDocuments().get(0).getId());
+	}
+
+	@Test
+	public void 지운_글은_찾지_않는다() {
+		long documentChanges = sut.getDocumentChanges();
+
+		sut.execute(Collections.singletonList(new DeleteRequest("board", Constants.ES_TYPE_ARTICLE, "a1")));
+
+		SearchDocuments<EsArticleSource> searchDocuments = sut.searchArticles(this.getSearchCondition(false, null)).join();
+
+		Assert.assertEquals(Long.valueOf(1L), searchDocuments.getTotalCount());
+		Assert.assertEquals(documentChanges + 1, sut.getDocumentChanges());
+	}
+
+	@Test
+	public void 비슷한_글을_찾는다() {
+		SearchDocuments<EsArticleSource> searchDocuments = sut.searchRelatedArticles("a1", 5).join();
+
+		Assert.assertEquals(1, searchDocuments.getDocuments().size());
+		Assert.assertEquals("a2", searchDocuments.getDocuments().get(0).getId());
+		Assert.assertEquals("경기 후기", searchDocuments.getDocuments().get(0).getSubject());
+		Assert.assertTrue(sut.searchRelatedArticles("none", 5).join().getDocuments().isEmpty());
+	}
+
+	@Test
+	public void 글을_고치면_그_글의_댓글만_글_정보를_바꾼다() throws Exception {
+		sut.execute(Arrays.asList(
+				this.getCommentIndexRequest("c1", "a1", "손흥민 최고"),
+				this.getCommentIndexRequest("c2", "a1", "손흥민 골 축하"),
+				this.getCommentIndexRequest("c3", "a2", "손흥민 도움")));
+
+		EsArticle esArticle = new EsArticle();
+		esArticle.setId("a1");
+		esArticle.setSeq(1);
+		esArticle.setBoard("FREE");
+		esArticle.setSubject("고친 제목");
+
+		sut.updateCommentArticles(Collections.singletonList(esArticle));
+
+		Map<String, String> subjects = sut.searchComments(this.getSearchCondition(false, null)).join().getDocuments().stream()
+				.collect(Collectors.toMap(EsCommentSource::getId, comment -> comment.getArticle().getSubject()));
+
+		Assert.assertEquals(3, subjects.size());
+		Assert.assertEquals("고친 제목", subjects.get("c1"));
+		Assert.assertEquals("고친 제목", subjects.get("c2"));
+		Assert.assertEquals("subject-a2", subjects.get("c3"));
+	}
+
+	private IndexRequest getCommentIndexRequest(String id, String articleId, String content) throws Exception {
+		EsParentArticle article = new EsParentArticle();
+		article.setId(articleId);
+		article.setSeq(1);
+		article.setBoard("FREE");
+		article.setSubject("subject-" + articleId);
+
+		EsComment esComment = new EsComment();
+		esComment.setId(id);
+		esComment.setArticle(article);
+		esComment.setContent(content);
+
+		return new IndexRequest("comment", Constants.ES_TYPE_COMMENT, id)
+				.source(ObjectMapperUtils.writeValueAsString(esComment), XContentType.JSON);
+	}
+
+	private IndexRequest getArticleIndexRequest(String id, String subject, String content) throws Exception {
+		EsArticle esArticle = new EsArticle();
+		esArticle.setId(id);
+		esArticle.setSeq(1);
+		esArticle.setBoard("FREE");
+		esArticle.setSubject(subject);
+		esArticle.setContent(content);
+
+		return new IndexRequest("board", Constants.ES_TYPE_ARTICLE, id)
+				.source(ObjectMapperUtils.writeValueAsString(esArticle), XContentType.JSON);
+	}
+
+	private SearchCondition getSearchCondition(Boolean cursor, Object[] searchAfter) {
+		SearchCondition searchCondition = new SearchCondition();
+		searchCondition.setQuery("손흥민");
+		searchCondition.setFrom(0);
+		searchCondition.setSize(cursor ? 1 : 10);
+		searchCondition.setCursor(cursor);
+		searchCondition.setSearchAfter(searchAfter);
+		searchCondition.setTimeoutMs(Constants.SEARCH_ARTICLE_TIMEOUT_MS);
+
+		return searchCondition;
+	}
+
+}
@@ -0,0 +1,132 @@
+package com.jakduk.api.search;
+
+import com.jakduk.api.common.Constants;
+import com.jakduk.api.common.util.UrlGenerationUtils;
+import com.jakduk.api.model.elasticsearch.EsArticleSource;
+import com.jakduk.api.model.elasticsearch.EsCommentSource;
+import com.jakduk.api.restcontroller.vo.search.ArticleSource;
+import com.jakduk.api.restcontroller.vo.search.SearchArticleResult;
+import com.jakduk.api.service.SearchService;
+import com.jakduk.api.service.search.ElasticsearchSearchBackend;
+import com.jakduk.api.service.search.SearchDocuments;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.text.Text;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.fetch.subphase.highlight.HighlightField;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * ES 가 돌려준 hit 의 _source 바이트를 검색 결과로 읽는다.
+ */
+public class SearchHitSourceTest {
+
+	// 글 검색에서 받은 hit 의 _source. content 는 setFetchSource 로 뺀다.
+	private static final String ARTICLE_SOURCE = "{\"id\":\"5a0f6e4b7b6f5a2b1c3d4e5f\",\"seq\":32,\"board\":\"FREE\",\"category\":\"FOOTBALL\","
+			+ "\"writer\":{\"userId\":\"58b7b9dd716dce06b10e449a\",\"username\":\"jakduk\",\"providerId\":\"JAKDUK\"},"
+			+ "\"subject\":\"손흥민 골\",\"galleries\":[\"5a0f6e4b7b6f5a2b1c3d4e62\",\"5a0f6e4b7b6f5a2b1c3d4e61\"]}";
+
+	private static final String COMMENT_SOURCE = "{\"id\":\"5a0f6e4b7b6f5a2b1c3d4e70\","
+			+ "\"article\":{\"id\":\"5a0f6e4b7b6f5a2b1c3d4e5f\",\"seq\":32,\"board\":\"FREE\",\"subject\":\"손흥민 골\"},"
+			+ "\"writer\":{\"userId\":\"58b7b9dd716dce06b10e449a\",\"username\":\"jakduk\",\"providerId\":\"JAKDUK\"}}";
+
+	private ElasticsearchSearchBackend searchBackend;
+	private SearchService searchService;
+
+	@Before
+	public void setUp() {
+		UrlGenerationUtils urlGenerationUtils = mock(UrlGenerationUtils.class);
+		when(urlGenerationUtils.generateGalleryUrl(Constants.IMAGE_SIZE_TYPE.SMALL, "5a0f6e4b7b6f5a2b1c3d4e61"))
+				.thenReturn("https://api.jakduk.com/gallery/thumbnail/5a0f6e4b7b6f5a2b1c3d4e61");
+
+		searchBackend = new ElasticsearchSearchBackend();
+
+		searchService = new SearchService();
+		ReflectionTestUtils.setField(searchService, "urlGenerationUtils", urlGenerationUtils);
+	}
+
+	@Test
+	public void 글_hit_의_source_와_하이라이트를_읽는다() {
+		Map<String, HighlightField> highlightFields = new HashMap<>();
+		highlightFields.put("subject", new HighlightField("subject", new Text[]{new Text("<em>손흥민</em> 골")}));
+		highlightFields.put("content", new HighlightField("content",
+				new Text[]{new Text("토트넘에서 <em>손흥민</em>이"), new Text("<em>손흥민</em>의 도움")}));
+
+		EsArticleSource esArticleSource = ReflectionTestUtils.invokeMethod(searchBackend, "toArticleSource",
+				this.getSearchHit("5a0f6e4b7b6f5a2b1c3d4e5f", ARTICLE_SOURCE, 3.2f, highlightFields));
+
+		Assert.assertEquals("5a0f6e4b7b6f5a2b1c3d4e5f", esArticleSource.getId());
+		Assert.assertEquals(Integer.valueOf(32), esArticleSource.getSeq());
+		Assert.assertEquals("FOOTBALL", esArticleSource.getCategory());
+		Assert.assertEquals("jakduk", esArticleSource.getWriter().getUsername());
+		Assert.assertEquals(Constants.ACCOUNT_TYPE.JAKDUK, esArticleSource.getWriter().getProviderId());
+		Assert.assertNull(esArticleSource.getContent());
+		Assert.assertEquals(Arrays.asList("5a0f6e4b7b6f5a2b1c3d4e62", "5a0f6e4b7b6f5a2b1c3d4e61"), esArticleSource.getGalleries());
+		Assert.assertEquals(Float.valueOf(3.2f), esArticleSource.getScore());
+		Assert.assertEquals(Collections.singletonList("<em>손흥민</em> 골"), esArticleSource.getHighlight().get("subject"));
+		Assert.assertEquals(Arrays.asList("토트넘에서 <em>손흥민</em>이", "<em>손흥민</em>의 도움"), esArticleSource.getHighlight().get("content"));
+	}
+
+	@Test
+	public void 하이라이트가_없는_댓글_hit_는_빈_하이라이트로_읽는다() {
+		EsCommentSource esCommentSource = ReflectionTestUtils.invokeMethod(searchBackend, "toCommentSource",
+				this.getSearchHit("5a0f6e4b7b6f5a2b1c3d4e70", COMMENT_SOURCE, 1.5f, Collections.emptyMap()));
+
+		Assert.assertEquals("5a0f6e4b7b6f5a2b1c3d4e70", esCommentSource.getId());
+		Assert.assertEquals("손흥민 골", esCommentSource.getArticle().getSubject());
+		Assert.assertEquals(Integer.valueOf(32), esCommentSource.getArticle().getSeq());
+		Assert.assertEquals("58b7b9dd716dce06b10e449a", esCommentSource.getWriter().getUserId());
+		Assert.assertTrue(esCommentSource.getHighlight().isEmpty());
+	}
+
+	@Test
+	public void 글_검색_결과에_첫_사진의_썸네일과_하이라이트를_넣는다() {
+		Map<String, HighlightField> highlightFields = Collections.singletonMap("subject",
+				new HighlightField("subject", new Text[]{new Text("<em>손흥민</em> 골")}));
+
+		EsArticleSource esArticleSource = ReflectionTestUtils.invokeMethod(searchBackend, "toArticleSource",
+				this.getSearchHit("5a0f6e4b7b6f5a2b1c3d4e5f", ARTICLE_SOURCE, 3.2f, highlightFields));
+
+		SearchDocuments<EsArticleSource> searchDocuments = new SearchDocuments<>();
+		searchDocuments.setTook(5L);
+		searchDocuments.setTimedOut(false);
+		searchDocuments.setTotalCount(1L);
+		searchDocuments.setDocuments(Collections.singletonList(esArticleSource));
+
+		SearchArticleResult searchArticleResult = ReflectionTestUtils.invokeMethod(searchService, "getArticleSearchResult", searchDocuments);
+		ArticleSource articleSource = searchArticleResult.getArticles().get(0);
+
+		Assert.assertEquals(Long.valueOf(1L), searchArticleResult.getTotalCount());
+		Assert.assertEquals("5a0f6e4b7b6f5a2b1c3d4e5f", articleSource.getId());
+		Assert.assertEquals("FREE", articleSource.getBoard());
+		Assert.assertEquals("jakduk", articleSource.getWriter().getUsername());
+		Assert.assertEquals(Float.valueOf(3.2f), articleSource.getScore());
+		Assert.assertEquals(Collections.singletonList("<em>손흥민</em> 골"), articleSource.getHighlight().get("subject"));
+
+		// 사진 ID 순으로 첫 사진 하나만 보여준다.
+		Assert.assertEquals(1, articleSource.getGalleries().size());
+		Assert.assertEquals("5a0f6e4b7b6f5a2b1c3d4e61", articleSource.getGalleries().get(0).getId());
+		Assert.assertEquals("https://api.jakduk.com/gallery/thumbnail/5a0f6e4b7b6f5a2b1c3d4e61",
+				articleSource.getGalleries().get(0).getThumbnailUrl());
+	}
+
+	private SearchHit getSearchHit(String id, String source, float score, Map<String, HighlightField> highlightFields) {
+		SearchHit searchHit = new SearchHit(0, id, new Text("doc"), Collections.emptyMap());
+		searchHit.sourceRef(new BytesArray(source));
+		searchHit.score(score);
+		searchHit.highlightFields(highlightFields);
+
+		return searchHit;
+	}
+
+}
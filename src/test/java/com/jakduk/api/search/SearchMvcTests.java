@@ -31,11 +31,12 @@ import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
-import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.when;
@@ -46,7 +47,9 @@ import static org.springframework.restdocs.mockmvc.RestDocumentationRequestBuild
 import static org.springframework.restdocs.payload.PayloadDocumentation.*;
 import static org.springframework.restdocs.request.RequestDocumentation.parameterWithName;
 import static org.springframework.restdocs.request.RequestDocumentation.requestParameters;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringRunner.class)
@@ -164,9 +167,9 @@ public class SearchMvcTests {
         expectResponse.setGalleryResult(searchGalleryResult);
 
         when(searchService.searchUnified(anyString(), anyString(), anyInt(), anyInt(), anyString(), anyString()))
-                .thenReturn(expectResponse);
+                .thenReturn(CompletableFuture.completedFuture(expectResponse));
 
-        mvc.perform(
+        MvcResult mvcResult = mvc.perform(
                 get("/api/search")
                         .param("q", "test")
                         .param("w", "ARTICLE;COMMENT;GALLERY")
@@ -176,6 +179,10 @@ public class SearchMvcTests {
                         .param("styleClass", "description")
                         .header("Cookie", "JSESSIONID=3F0E029648484BEAEF6B5C3578164E99")
                         .accept(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(asyncDispatch(mvcResult))
                 .andExpect(status().isOk())
                 .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
                 .andExpect(content().json(ObjectMapperUtils.writeValueAsString(expectResponse)))
@@ -226,6 +233,72 @@ public class SearchMvcTests {
                         ));
     }
 
+    @Test
+    @WithMockJakdukUser
+    public void searchUnifiedCursorTest() throws Exception {
+
+        SearchArticleResult searchArticleResult = new SearchArticleResult();
+        searchArticleResult.setTook(12L);
+        searchArticleResult.setTotalCount(9L);
+        searchArticleResult.setArticles(
+                Arrays.asList(
+                        new ArticleSource() {
+                            {
+                                setId("58b7b9dd716dce06b10e449a");
+                                setSeq(2);
+                                setBoard(Constants.BOARD_TYPE.FOOTBALL.name());
+                                setCategory(boardCategory.getCode());
+                                setWriter(commonWriter);
+                                setScore(4.9219737F);
+                                setHighlight(
+                                        new HashMap<String, List<String>>() {{
+                                            put("subject", Arrays.asList("Summernote insert-image 테스트"));
+                                        }}
+                                );
+                            }})
+        );
+        searchArticleResult.setNextCursor("eyJ0eXBlIjoiQVJUSUNMRSIsImFmdGVyIjpbNC45MjE5NzM3LCI1OGI3YjlkZDcxNmRjZTA2YjEwZTQ0OWEiXX0");
+
+        SearchUnifiedResponse expectResponse = new SearchUnifiedResponse();
+        expectResponse.setArticleResult(searchArticleResult);
+
+        when(searchService.searchUnified(anyString(), anyString(), anyInt(), anyInt(), anyString(), anyString(), anyList()))
+                .thenReturn(CompletableFuture.completedFuture(expectResponse));
+
+        MvcResult mvcResult = mvc.perform(
+                get("/api/search")
+                        .param("q", "test")
+                        .param("w", "ARTICLE")
+                        .param("size", "1")
+                        .param("cursor", "true")
+                        .param("after", "eyJ0eXBlIjoiQVJUSUNMRSIsImFmdGVyIjpbNS4xMDIzLCI1OGI3YjlkZDcxNmRjZTA2YjEwZTQ0OTkiXX0")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(content().json(ObjectMapperUtils.writeValueAsString(expectResponse)))
+                .andDo(
+                        document("search-unified-cursor",
+                                requestParameters(
+                                        parameterWithName("q").description("검색어"),
+                                        parameterWithName("w").description("검색 범위. ARTICLE;COMMENT;GALLERY"),
+                                        parameterWithName("size").description("(default 10) 페이지 크기"),
+                                        parameterWithName("cursor").description("(default false) true 면 from 대신 cursor 로 페이지를 넘긴다."),
+                                        parameterWithName("after").description("(optional) 앞 페이지 결과들의 nextCursor. 검색 범위마다 하나씩 여러 번 줄 수 있다.")
+                                ),
+                                responseFields(
+                                        fieldWithPath("articleResult").type(JsonFieldType.OBJECT).description("매칭된 글 객체"),
+                                        fieldWithPath("articleResult.took").type(JsonFieldType.NUMBER).description("찾는데 걸린 시간(ms)"),
+                                        fieldWithPath("articleResult.totalCount").type(JsonFieldType.NUMBER).description("매칭되는 아이템 수"),
+                                        subsectionWithPath("articleResult.articles").type(JsonFieldType.ARRAY).description("매칭되는 게시물 목록"),
+                                        fieldWithPath("articleResult.nextCursor").type(JsonFieldType.STRING).description("다음 페이지의 cursor. 마지막 페이지면 없다.")
+                                )
+                        ));
+    }
+
     @Test
     @WithMockUser
     public void searchPopularWordsTest() throws Exception {
@@ -239,7 +312,7 @@ public class SearchMvcTests {
                         new EsTermsBucket("축구", 21L)
                 ));
 
-        when(searchService.aggregateSearchWord(any(LocalDate.class), anyInt()))
+        when(searchService.getPopularSearchWords(anyInt()))
                 .thenReturn(expectResponse);
 
         mvc.perform(
@@ -263,4 +336,41 @@ public class SearchMvcTests {
                         ));
     }
 
+    @Test
+    @WithMockUser
+    public void searchSuggestTest() throws Exception {
+
+        SearchSuggestResult expectResponse = new SearchSuggestResult();
+        expectResponse.setSuggestions(
+                Arrays.asList(
+                        new SearchSuggestion("손흥민", Constants.SEARCH_SUGGEST_TYPE.SEARCH_WORD.name()),
+                        new SearchSuggestion("손흥민 골 장면", Constants.SEARCH_SUGGEST_TYPE.ARTICLE.name())
+                ));
+
+        when(searchService.getSuggestions(anyString(), anyInt()))
+                .thenReturn(expectResponse);
+
+        mvc.perform(
+                get("/api/search/suggest")
+                        .param("q", "손흥")
+                        .param("size", "5")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(content().json(ObjectMapperUtils.writeValueAsString(expectResponse)))
+                .andDo(
+                        document("search-suggest",
+                                requestParameters(
+                                        parameterWithName("q").description("입력 중인 검색어"),
+                                        parameterWithName("size").description("(default 5, 최대 " + Constants.SEARCH_SUGGEST_MAX_SIZE + ") 반환 개수")
+                                ),
+                                responseFields(
+                                        fieldWithPath("suggestions").type(JsonFieldType.ARRAY).description("자동 완성 목록"),
+                                        fieldWithPath("suggestions.[].text").type(JsonFieldType.STRING).description("자동 완성 검색어"),
+                                        fieldWithPath("suggestions.[].type").type(JsonFieldType.STRING)
+                                                .description("종류. " + Arrays.asList(Constants.SEARCH_SUGGEST_TYPE.values()))
+                                )
+                        ));
+    }
+
 }
@@ -0,0 +1,36 @@
+package com.jakduk.api.utils;
+
+import com.jakduk.api.common.util.HammingBKTree;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class HammingBKTreeTest {
+
+    @Test
+    public void 해밍거리_이내만_가까운순으로_찾는다() {
+        HammingBKTree tree = new HammingBKTree();
+        tree.add(0b0000L, "a");
+        tree.add(0b0001L, "b");
+        tree.add(0b0111L, "c");
+        tree.add(0xFFFFL, "d");
+        tree.add(0b0001L, "e");
+
+        List<String> ids = tree.search(0b0000L, 1).stream()
+                .map(HammingBKTree.Match::getId)
+                .collect(Collectors.toList());
+
+        Assert.assertEquals("a", ids.get(0));
+        Assert.assertEquals(3, ids.size());
+        Assert.assertTrue(ids.contains("b") && ids.contains("e"));
+
+        tree.remove(0b0001L, "b");
+
+        Assert.assertEquals(4, tree.size());
+        Assert.assertEquals(2, tree.search(0b0000L, 1).size());
+        Assert.assertEquals(3, tree.search(0b0000L, 3).size());
+    }
+
+}
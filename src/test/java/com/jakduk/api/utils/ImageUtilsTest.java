@@ -0,0 +1,70 @@
+package com.jakduk.api.utils;
+
+import com.jakduk.api.common.util.ImageUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+
+public class ImageUtilsTest {
+
+    @Test
+    public void 세로로_돌리면_가로세로가_바뀐다() {
+        BufferedImage image = new BufferedImage(40, 20, BufferedImage.TYPE_INT_RGB);
+
+        BufferedImage oriented = ImageUtils.applyOrientation(image, 6);
+
+        Assert.assertEquals(20, oriented.getWidth());
+        Assert.assertEquals(40, oriented.getHeight());
+        Assert.assertSame(image, ImageUtils.applyOrientation(image, 1));
+    }
+
+    @Test
+    public void 미리보기는_긴쪽이_16px() throws IOException {
+        Path imagePath = Files.createTempFile("image-utils-test", ".png");
+
+        try {
+            ImageIO.write(new BufferedImage(800, 400, BufferedImage.TYPE_INT_ARGB), "png", imagePath.toFile());
+
+            Dimension dimension = ImageUtils.readImageDimension(imagePath);
+            Assert.assertEquals(new Dimension(800, 400), dimension);
+
+            String placeholder = ImageUtils.createPlaceholder(imagePath);
+            Assert.assertTrue(placeholder.startsWith("data:image/jpeg;base64,"));
+
+            byte[] bytes = Base64.getDecoder().decode(placeholder.substring("data:image/jpeg;base64,".length()));
+            BufferedImage preview = ImageIO.read(new ByteArrayInputStream(bytes));
+
+            Assert.assertEquals(16, preview.getWidth());
+            Assert.assertEquals(8, preview.getHeight());
+        } finally {
+            Files.deleteIfExists(imagePath);
+        }
+    }
+
+    @Test
+    public void 색이_적은_PNG는_색을_잃지않고_팔레트로_줄인다() throws IOException {
+        BufferedImage screenshot = new BufferedImage(400, 300, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = screenshot.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, 400, 300);
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(10, 10, 200, 40);
+        graphics.dispose();
+
+        byte[] optimized = ImageUtils.optimize(screenshot, "png");
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(optimized));
+
+        Assert.assertTrue(optimized.length < ImageUtils.encode(screenshot, "png").length);
+        Assert.assertEquals(screenshot.getRGB(20, 20), decoded.getRGB(20, 20));
+        Assert.assertEquals(screenshot.getRGB(300, 200), decoded.getRGB(300, 200));
+    }
+
+}
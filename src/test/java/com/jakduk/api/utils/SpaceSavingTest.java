@@ -0,0 +1,41 @@
+package com.jakduk.api.utils;
+
+import com.jakduk.api.common.util.SpaceSaving;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class SpaceSavingTest {
+
+    @Test
+    public void 카운터가_모자라도_자주_나온_아이템은_남는다() {
+        // 250 번 중 250 / 10 번보다 많이 나온 아이템은 남는다.
+        SpaceSaving spaceSaving = new SpaceSaving(10);
+
+        for (int i = 0; i < 100; i++) {
+            spaceSaving.offer("손흥민");
+
+            if (i % 2 == 0)
+                spaceSaving.offer("이강인");
+
+            spaceSaving.offer("word" + i);
+        }
+
+        List<SpaceSaving.Counter> top = spaceSaving.top(2);
+
+        Assert.assertEquals(10, spaceSaving.size());
+        Assert.assertEquals("손흥민", top.get(0).getItem());
+        Assert.assertEquals(100L, top.get(0).getCount());
+        Assert.assertEquals("이강인", top.get(1).getItem());
+        Assert.assertTrue(top.get(1).getCount() - top.get(1).getError() <= 50L);
+        Assert.assertTrue(top.get(1).getCount() >= 50L);
+
+        SpaceSaving merged = new SpaceSaving(3);
+        merged.offer("이강인", 200L);
+        merged.merge(spaceSaving.top(3));
+
+        Assert.assertEquals("이강인", merged.top(1).get(0).getItem());
+    }
+
+}
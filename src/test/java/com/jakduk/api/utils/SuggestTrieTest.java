@@ -0,0 +1,51 @@
+package com.jakduk.api.utils;
+
+import com.jakduk.api.common.util.SuggestTrie;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class SuggestTrieTest {
+
+    @Test
+    public void 앞글자로_weight_가_큰_순서대로_찾는다() {
+        SuggestTrie suggestTrie = new SuggestTrie(2);
+        suggestTrie.put("손흥민 골", "손흥민 골", "ARTICLE", 1L);
+        suggestTrie.put("손흥민", "손흥민", "SEARCH_WORD", 30L);
+        suggestTrie.put("손준호", "손준호", "SEARCH_WORD", 10L);
+        suggestTrie.put("수원 삼성", "수원 삼성", "FOOTBALL_CLUB", 100L);
+
+        Assert.assertEquals(4, suggestTrie.size());
+        Assert.assertEquals(Arrays.asList("손흥민", "손준호"), this.texts(suggestTrie.suggest("손", 10)));
+        // label 중간에서 끝나는 앞글자
+        Assert.assertEquals(Arrays.asList("손흥민", "손흥민 골"), this.texts(suggestTrie.suggest("손흥", 10)));
+        Assert.assertEquals("수원 삼성", suggestTrie.suggest("수원 ", 10).get(0).getText());
+        Assert.assertTrue(suggestTrie.suggest("손흥민 골대", 10).isEmpty());
+        Assert.assertTrue(suggestTrie.suggest("이강인", 10).isEmpty());
+    }
+
+    @Test
+    public void weight_가_커지면_앞으로_온다() {
+        SuggestTrie suggestTrie = new SuggestTrie(2);
+        suggestTrie.put("abc", "abc", "SEARCH_WORD", 5L);
+        suggestTrie.put("abd", "abd", "SEARCH_WORD", 3L);
+        suggestTrie.put("abe", "abe", "SEARCH_WORD", 1L);
+
+        Assert.assertEquals(Arrays.asList("abc", "abd"), this.texts(suggestTrie.suggest("ab", 10)));
+
+        suggestTrie.put("abe", "abe", "SEARCH_WORD", 10L);
+        // 작은 weight 로는 바뀌지 않는다.
+        suggestTrie.put("abc", "abc", "SEARCH_WORD", 1L);
+
+        Assert.assertEquals(Arrays.asList("abe", "abc"), this.texts(suggestTrie.suggest("a", 10)));
+        Assert.assertEquals(1, suggestTrie.suggest("a", 1).size());
+        Assert.assertEquals(3, suggestTrie.size());
+    }
+
+    private List<String> texts(List<SuggestTrie.Entry> entries) {
+        return entries.stream().map(SuggestTrie.Entry::getText).collect(Collectors.toList());
+    }
+}